@@ -34,21 +34,40 @@
  * ----- END LICENSE BLOCK -----
  */
 
-import org.apache.commons.io.IOUtils;
+import export.JdbcSink;
+import export.TamoxdataExport;
+import export.TamoxdataSink;
 import org.apache.log4j.Logger;
+import org.apache.poi.ss.util.CellReference;
+import org.pharmgkb.ColumnProfile;
+import org.pharmgkb.DeltaOutput;
+import org.pharmgkb.DelimitedSubjectSource;
+import org.pharmgkb.EvaluationStore;
+import org.pharmgkb.GenotypeCaller;
 import org.pharmgkb.ItpcSheet;
-import org.pharmgkb.Subject;
+import org.pharmgkb.SubjectEvaluation;
+import org.pharmgkb.SubjectPipeline;
+import org.pharmgkb.SubjectSource;
+import org.pharmgkb.SummaryWorkbook;
+import org.pharmgkb.WorkbookOutput;
+import service.EvaluationService;
 import summary.AbstractSummary;
 import summary.GenotypeSummary;
 import summary.InclusionSummary;
 import summary.MetabStatusSummary;
+import util.ChangeAudit;
 import util.CliHelper;
+import util.DirectoryWatcher;
+import util.ExcelUtils;
+import util.ItpcUtils;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileFilter;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by IntelliJ IDEA.
@@ -58,9 +77,30 @@ import java.util.List;
  */
 public class Parser {
   private static final Logger sf_logger = Logger.getLogger(Parser.class);
+  /** number of changed values that can wait to be written to the audit file */
+  private static final int sf_auditCapacity = 1 << 14;
+  /** how often the watched directory is looked at */
+  private static final long sf_watchInterval = 1000;
   private File m_fileInput;
   private boolean m_doHighlight = false;
-  protected ItpcSheet dataSheet;
+  private boolean m_doStreaming = false;
+  private boolean m_streamOutput = false;
+  private boolean m_deltaOutput = false;
+  private boolean m_changeAudit = false;
+  private boolean m_useSnapshot = false;
+  private boolean m_verifyGenotypes = false;
+  private int m_threads = 1;
+  private TamoxdataExport.Format m_sqlFormat = TamoxdataExport.Format.insert;
+  private int m_sqlBatch = 1;
+  private int m_sqlRollover = 0;
+  private String m_jdbcUrl = null;
+  private int m_jdbcBatch = 500;
+  private int m_jdbcCommit = 10000;
+  private File m_storeFile = null;
+  private File m_watchDirectory = null;
+  private long m_watchQuiet = 5000;
+  private int m_httpPort = -1;
+  protected SubjectSource dataSheet;
 
   public static void main(String[] args) {
     try {
@@ -68,7 +108,18 @@ public class Parser {
 
       Parser parser = new Parser();
       parser.parseArgs(args);
-      parser.parseFile();
+      if (parser.m_verifyGenotypes) {
+        parser.verifyGenotypes();
+      }
+      else if (parser.m_httpPort >= 0) {
+        parser.serve();
+      }
+      else if (parser.m_watchDirectory != null) {
+        parser.watch();
+      }
+      else {
+        parser.parseFile();
+      }
     }
     catch (Exception ex) {
       sf_logger.error("Error running parser", ex);
@@ -80,51 +131,233 @@ public class Parser {
       throw new Exception("Input file doesn't exist");
     }
 
-    File sqlFile = new File(getFileInput().getAbsolutePath().replaceAll("\\.xls", ".sql"));
-    FileWriter fw = new FileWriter(sqlFile);
+    TamoxdataSink export;
+    if (m_jdbcUrl != null) {
+      export = JdbcSink.open(m_jdbcUrl, m_jdbcBatch, m_jdbcCommit);
+    }
+    else {
+      String exportPath = getFileInput().getAbsolutePath().replaceFirst("\\.[^.]*$", "");
+      export = TamoxdataExport.newExport(m_sqlFormat, exportPath, m_sqlBatch, m_sqlRollover);
+    }
 
-    dataSheet = new ItpcSheet(getFileInput(), m_doHighlight);
-    List<AbstractSummary> summaries = Arrays.asList(
-        new GenotypeSummary(),
-        new MetabStatusSummary(),
-        new InclusionSummary()
-    );
+    // everything written is given up on if the parse fails, so partial output isn't left behind
+    ChangeAudit audit = null;
+    DeltaOutput delta = null;
+    WorkbookOutput output = null;
+    boolean parsed = false;
+    dataSheet = null;
+    try {
+      if (m_changeAudit) {
+        String auditPath = ItpcUtils.getOutputFile(getFileInput()).getPath().replaceFirst("\\.xlsx?$", "");
+        audit = new ChangeAudit(new File(auditPath + ".audit.csv"), sf_auditCapacity);
+        ExcelUtils.setChangeAudit(audit);
+      }
 
-    int sampleCount = 0;
-    while (dataSheet.hasNext()) {
+      if (DelimitedSubjectSource.isDelimitedFile(getFileInput())) {
+        dataSheet = new DelimitedSubjectSource(getFileInput());
+        output = new SummaryWorkbook(getFileInput());
+      }
+      else {
+        // the workbook isn't written back in delta mode so there's no need to load it
+        ItpcSheet sheet = new ItpcSheet(getFileInput(), m_doHighlight, m_doStreaming || m_deltaOutput, m_useSnapshot,
+            m_streamOutput && !m_deltaOutput);
+        dataSheet = sheet;
+        output = sheet;
+      }
+      if (m_deltaOutput) {
+        String deltaPath = ItpcUtils.getOutputFile(getFileInput()).getPath().replaceFirst("\\.xlsx?$", "");
+        delta = dataSheet.startDeltaOutput(new File(deltaPath + ".results.tsv"), new File(deltaPath + ".changes.tsv"));
+      }
+      List<AbstractSummary> summaries = Arrays.asList(
+          new GenotypeSummary(),
+          new MetabStatusSummary(),
+          new InclusionSummary()
+      );
+
+      int sampleCount = 0;
+      EvaluationStore store = null;
+      if (m_storeFile != null) {
+        // in watch mode each input file gets its own store in the given directory
+        store = EvaluationStore.open(m_watchDirectory == null ? m_storeFile
+            : new File(m_storeFile, getFileInput().getName() + ".evaluations"));
+      }
+      SubjectPipeline pipeline = new SubjectPipeline(dataSheet, m_threads, store);
       try {
-        Subject subject = dataSheet.next();
-        dataSheet.writeSubjectCalculatedColumns(subject);
+        SubjectEvaluation evaluation;
+        while ((evaluation = pipeline.next()) != null) {
+          try {
+            dataSheet.writeSubjectCalculatedColumns(pipeline.getCurrentRowIndex(), evaluation);
 
-        fw.write(subject.makeSqlInsert());
-        fw.write("\n");
+            export.write(evaluation.getSqlValues());
 
-        for (AbstractSummary summ : summaries) {
-          summ.addSubject(subject);
+            for (AbstractSummary summ : summaries) {
+              summ.addSubject(evaluation);
+            }
+
+            sampleCount++;
+          }
+          catch (Exception ex) {
+            throw new Exception("Exception on line "+pipeline.getCurrentRowIndex(), ex);
+          }
+        }
+      }
+      finally {
+        pipeline.close();
+      }
+      sf_logger.info("Parsed " + sampleCount + " samples");
+      if (audit != null) {
+        ExcelUtils.setChangeAudit(null);
+        audit.close();
+        sf_logger.info("Wrote " + audit.getChangeCount() + " changed values to " + audit.getFile());
+        for (Map.Entry<Integer,Integer> entry : audit.getColumnCounts().entrySet()) {
+          sf_logger.info("  " + CellReference.convertNumToColString(entry.getKey()) + ": " + entry.getValue() +
+              " changed");
         }
+      }
+
+      dataSheet.close();
 
-        sampleCount++;
+      for (AbstractSummary summ : summaries) {
+        summ.writeToWorkbook(output.getWorkbook());
       }
-      catch (Exception ex) {
-        throw new Exception("Exception on line "+dataSheet.getCurrentRowIndex(), ex);
+
+      output.saveOutput();
+      if (delta != null) {
+        delta.close();
+        sf_logger.info("Wrote results to " + delta.getResultsFile() + " and " + delta.getChangeCount() +
+            " changed values to " + delta.getChangesFile());
+      }
+      // closing the export commits the load, so it waits until nothing else can fail
+      export.close();
+      parsed = true;
+
+      // the store only saves work on the next run, so it's saved once everything else is written
+      if (store != null) {
+        store.save();
+        sf_logger.info("Evaluated " + store.getEvaluatedCount() + " new or changed rows, reused " +
+            store.getReusedCount() + " from " + store.getFile());
+      }
+    }
+    finally {
+      if (!parsed) {
+        abortParse(export, audit, delta, output);
       }
     }
-    sf_logger.info("Parsed " + sampleCount + " samples");
+  }
 
-    fw.write("commit;\n");
-    IOUtils.closeQuietly(fw);
+  /**
+   * Releases everything a failed parse had open.  The export and the delta files are deleted since the parse didn't
+   * finish, and the evaluation store isn't saved.  The change audit is kept, it shows what had been changed up to
+   * the failure.
+   */
+  private void abortParse(TamoxdataSink export, ChangeAudit audit, DeltaOutput delta, WorkbookOutput output) {
+    try {
+      if (audit != null) {
+        ExcelUtils.setChangeAudit(null);
+        try {
+          audit.close();
+        }
+        catch (IOException ex) {
+          sf_logger.warn("Error closing " + audit.getFile(), ex);
+        }
+      }
+      if (delta != null) {
+        delta.abort();
+      }
+      if (dataSheet != null) {
+        dataSheet.close();
+      }
+      if (output != null) {
+        output.discardOutput();
+      }
+    }
+    finally {
+      export.abort();
+    }
+  }
 
-    for (AbstractSummary summ : summaries) {
-      summ.writeToWorkbook(dataSheet.getWorkbook());
+  /**
+   * Keeps running and parses each input file that lands in the watch directory, or changes, once it's been left
+   * alone for the quiet period.  Files already there when this starts and the files the parser writes are left
+   * alone.  A file that fails to parse is logged and skipped until it changes again.
+   * @throws Exception if the directory can't be watched
+   */
+  protected void watch() throws Exception {
+    if (!m_watchDirectory.isDirectory()) {
+      throw new Exception("Not a directory: " + m_watchDirectory);
+    }
+    if (m_storeFile != null && !m_storeFile.isDirectory() && !m_storeFile.mkdirs()) {
+      throw new Exception("Can't make evaluation store directory: " + m_storeFile);
     }
 
-    dataSheet.saveOutput();
+    DirectoryWatcher watcher = new DirectoryWatcher(m_watchDirectory, new FileFilter() {
+      public boolean accept(File file) {
+        String name = file.getName().toLowerCase();
+        if (name.startsWith(".") || name.startsWith("~$") || ItpcUtils.isOutputFile(file)) {
+          return false;
+        }
+        return name.endsWith(".xls") || name.endsWith(".xlsx") || name.endsWith(".csv") || name.endsWith(".tsv");
+      }
+    }, m_watchQuiet);
+    watcher.skipExisting();
+    sf_logger.info("Watching " + m_watchDirectory + " for input files");
+
+    while (true) {
+      for (File file : watcher.poll()) {
+        sf_logger.info("Parsing " + file);
+        setFileInput(file);
+        try {
+          parseFile();
+        }
+        catch (Exception ex) {
+          sf_logger.error("Error parsing " + file, ex);
+        }
+        finally {
+          ExcelUtils.setChangeAudit(null);
+        }
+      }
+      Thread.sleep(sf_watchInterval);
+    }
+  }
+
+  /**
+   * Starts serving evaluations over HTTP.  This returns once the server is up, which keeps running on its own threads.
+   * @throws Exception if the server can't be started
+   */
+  protected void serve() throws Exception {
+    int workers = m_threads > 1 ? m_threads : Runtime.getRuntime().availableProcessors();
+    new EvaluationService(m_httpPort, workers).start();
+  }
+
+  protected void verifyGenotypes() throws Exception {
+    int mismatches = GenotypeCaller.verify();
+    if (mismatches > 0) {
+      throw new Exception(mismatches + " genotype calls don't match the calling rules");
+    }
   }
 
   protected void parseArgs(String[] args) throws Exception {
     CliHelper cli = new CliHelper(getClass(), false);
-    cli.addOption("f", "file", "ITPC excel file to read", "pathToFile");
+    cli.addOption("f", "file", "ITPC excel file, or .csv/.tsv export of the data sheet, to read", "pathToFile");
     cli.addOption("hi", "highlight", "Highlight changed values");
+    cli.addOption("st", "stream", "Stream the data sheet instead of loading the whole workbook (calculated columns are not written back)");
+    cli.addOption("sx", "streamXlsx", "Stream the data sheet and write the output as .xlsx a row at a time, with the calculated columns filled in (Excel input only)");
+    cli.addOption("delta", "deltaOutput", "Write only the subject IDs and calculated columns to a results file, with a report of the values that changed, instead of a copy of the data sheet");
+    cli.addOption("audit", "changeAudit", "Write the changed values to a .audit.csv file next to the output, with counts by column, instead of logging each one");
+    cli.addOption("inc", "incremental", "Keep the evaluation of every row in this file and reuse it for rows that haven't changed since the last run (a directory of them in watch mode)", "file");
+    cli.addOption("http", "httpPort", "Serve evaluations of JSON subjects at http://127.0.0.1:<port>/evaluate instead of parsing a file, with -t worker threads (defaults to one per processor)", "port");
+    cli.addOption("w", "watch", "Keep running and parse each .xls, .xlsx, .csv or .tsv file that's added to or changed in this directory", "directory");
+    cli.addOption("wq", "watchQuiet", "Milliseconds a file has to go unchanged before it's parsed in watch mode, defaults to 5000", "millis");
+    cli.addOption("prof", "profiles", "Directory to save column profiles to and reuse them from", "directory");
+    cli.addOption("vg", "verifyGenotypes", "Check every entry of the genotype call table against the calling rules instead of parsing a file");
+    cli.addOption("t", "threads", "Number of threads to evaluate subjects with, defaults to 1", "count");
+    cli.addOption("sqlf", "sqlFormat", "Format of the file to load the tamoxdata table from: insert (default), copy or binary", "format");
+    cli.addOption("batch", "sqlBatch", "Number of rows per insert statement, defaults to 1", "count");
+    cli.addOption("roll", "sqlRollover", "Start a new load file after this many rows, defaults to no limit", "count");
+    cli.addOption("jdbc", "jdbcUrl", "Insert tamoxdata rows straight into the database at this JDBC URL instead of writing a load file", "url");
+    cli.addOption("jbatch", "jdbcBatch", "Number of rows to send to the database at a time, defaults to 500", "count");
+    cli.addOption("jcommit", "jdbcCommit", "Number of rows to insert between commits, 0 to commit once at the end, defaults to 10000", "count");
+    cli.addOption("snap", "snapshot", "Keep a snapshot of the data sheet next to the file and read from it while the file is unchanged (when reading the snapshot the output is written as .xlsx like -sx)");
 
     try {
       cli.parse(args);
@@ -151,6 +384,139 @@ public class Parser {
       m_doHighlight = true;
     }
 
+    if (cli.hasOption("-st")) {
+      m_doStreaming = true;
+    }
+
+    if (cli.hasOption("-sx")) {
+      m_streamOutput = true;
+    }
+
+    if (cli.hasOption("-delta")) {
+      m_deltaOutput = true;
+    }
+
+    if (cli.hasOption("-audit")) {
+      m_changeAudit = true;
+    }
+
+    if (cli.hasOption("-vg")) {
+      m_verifyGenotypes = true;
+    }
+
+    if (cli.hasOption("-t")) {
+      try {
+        m_threads = Integer.parseInt(cli.getValue("-t"));
+      }
+      catch (NumberFormatException ex) {
+        throw new Exception("Not a number of threads: " + cli.getValue("-t"));
+      }
+      if (m_threads < 1) {
+        throw new Exception("Need at least 1 thread: " + m_threads);
+      }
+    }
+
+    if (cli.hasOption("-sqlf")) {
+      try {
+        m_sqlFormat = TamoxdataExport.Format.valueOf(cli.getValue("-sqlf"));
+      }
+      catch (IllegalArgumentException ex) {
+        throw new Exception("Not a load file format: " + cli.getValue("-sqlf"));
+      }
+    }
+
+    if (cli.hasOption("-batch")) {
+      try {
+        m_sqlBatch = Integer.parseInt(cli.getValue("-batch"));
+      }
+      catch (NumberFormatException ex) {
+        throw new Exception("Not a number of rows: " + cli.getValue("-batch"));
+      }
+      if (m_sqlBatch < 1) {
+        throw new Exception("Need at least 1 row per insert: " + m_sqlBatch);
+      }
+    }
+
+    if (cli.hasOption("-roll")) {
+      try {
+        m_sqlRollover = Integer.parseInt(cli.getValue("-roll"));
+      }
+      catch (NumberFormatException ex) {
+        throw new Exception("Not a number of rows: " + cli.getValue("-roll"));
+      }
+      if (m_sqlRollover < 0) {
+        throw new Exception("Rows per file can't be negative: " + m_sqlRollover);
+      }
+    }
+
+    if (cli.hasOption("-jdbc")) {
+      m_jdbcUrl = cli.getValue("-jdbc");
+    }
+
+    if (cli.hasOption("-jbatch")) {
+      try {
+        m_jdbcBatch = Integer.parseInt(cli.getValue("-jbatch"));
+      }
+      catch (NumberFormatException ex) {
+        throw new Exception("Not a number of rows: " + cli.getValue("-jbatch"));
+      }
+      if (m_jdbcBatch < 1) {
+        throw new Exception("Need at least 1 row per batch: " + m_jdbcBatch);
+      }
+    }
+
+    if (cli.hasOption("-jcommit")) {
+      try {
+        m_jdbcCommit = Integer.parseInt(cli.getValue("-jcommit"));
+      }
+      catch (NumberFormatException ex) {
+        throw new Exception("Not a number of rows: " + cli.getValue("-jcommit"));
+      }
+      if (m_jdbcCommit < 0) {
+        throw new Exception("Rows per commit can't be negative: " + m_jdbcCommit);
+      }
+    }
+
+    if (cli.hasOption("-snap")) {
+      m_useSnapshot = true;
+    }
+
+    if (cli.hasOption("-http")) {
+      try {
+        m_httpPort = Integer.parseInt(cli.getValue("-http"));
+      }
+      catch (NumberFormatException ex) {
+        throw new Exception("Not a port number: " + cli.getValue("-http"));
+      }
+      if (m_httpPort < 0 || m_httpPort > 65535) {
+        throw new Exception("Port out of range: " + m_httpPort);
+      }
+    }
+
+    if (cli.hasOption("-w")) {
+      m_watchDirectory = new File(cli.getValue("-w"));
+    }
+
+    if (cli.hasOption("-wq")) {
+      try {
+        m_watchQuiet = Long.parseLong(cli.getValue("-wq"));
+      }
+      catch (NumberFormatException ex) {
+        throw new Exception("Not a number of milliseconds: " + cli.getValue("-wq"));
+      }
+      if (m_watchQuiet < 0) {
+        throw new Exception("Quiet period can't be negative: " + m_watchQuiet);
+      }
+    }
+
+    if (cli.hasOption("-inc")) {
+      m_storeFile = new File(cli.getValue("-inc"));
+    }
+
+    if (cli.hasOption("-prof")) {
+      ColumnProfile.setDirectory(new File(cli.getValue("-prof")));
+    }
+
   }
 
   public File getFileInput() {
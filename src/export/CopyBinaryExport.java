@@ -0,0 +1,79 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package export;
+
+/**
+ * Writes tamoxdata rows in PostgreSQL's COPY binary format, for loading with
+ * <code>COPY tamoxdata FROM 'file' WITH BINARY</code>.  Every column is sent as UTF-8 text, which is the binary form
+ * of the text and varchar columns the table uses.
+ *
+ * @author Ryan Whaley
+ */
+public class CopyBinaryExport extends TamoxdataExport {
+  private static final byte[] sf_signature = new byte[]{'P','G','C','O','P','Y','\n',(byte)0xff,'\r','\n',0};
+
+  public CopyBinaryExport(String basePath, int rowsPerFile) {
+    super(basePath, Format.binary.getExtension(), rowsPerFile);
+  }
+
+  protected void encodeHeader(RowBuffer buffer) {
+    for (byte b : sf_signature) {
+      buffer.append(b);
+    }
+    buffer.appendInt(0); // flags
+    buffer.appendInt(0); // header extension length
+  }
+
+  protected void encodeRow(RowBuffer buffer, String[] values) {
+    buffer.appendShort(values.length);
+    for (String value : values) {
+      if (value == null) {
+        buffer.appendInt(-1);
+      }
+      else {
+        int lengthPosition = buffer.length();
+        buffer.appendInt(0);
+        buffer.appendUtf8(value);
+        buffer.setInt(lengthPosition, buffer.length() - lengthPosition - 4);
+      }
+    }
+  }
+
+  protected void encodeTrailer(RowBuffer buffer) {
+    buffer.appendShort(-1);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package export;
+
+/**
+ * Writes tamoxdata rows as a psql script that loads them with one <code>COPY ... FROM stdin</code> in PostgreSQL's
+ * text format: tab separated columns, <code>\N</code> for null, and backslash, tab, newline and carriage return
+ * escaped with a backslash.
+ *
+ * @author Ryan Whaley
+ */
+public class CopyTextExport extends TamoxdataExport {
+
+  public CopyTextExport(String basePath, int rowsPerFile) {
+    super(basePath, Format.copy.getExtension(), rowsPerFile);
+  }
+
+  protected void encodeHeader(RowBuffer buffer) {
+    buffer.appendAscii("COPY ").appendAscii(TABLE).appendAscii(" (");
+    appendColumns(buffer);
+    buffer.appendAscii(") FROM stdin;\n");
+  }
+
+  protected void encodeRow(RowBuffer buffer, String[] values) {
+    for (int i=0; i<values.length; i++) {
+      if (i > 0) {
+        buffer.append('\t');
+      }
+      appendValue(buffer, values[i]);
+    }
+    buffer.append('\n');
+  }
+
+  protected void encodeTrailer(RowBuffer buffer) {
+    buffer.appendAscii("\\.\n");
+  }
+
+  private static void appendValue(RowBuffer buffer, String value) {
+    if (value == null) {
+      buffer.appendAscii("\\N");
+      return;
+    }
+    for (int i=0; i<value.length(); ) {
+      int codePoint = value.codePointAt(i);
+      switch (codePoint) {
+        case '\\':
+          buffer.appendAscii("\\\\");
+          break;
+        case '\t':
+          buffer.appendAscii("\\t");
+          break;
+        case '\n':
+          buffer.appendAscii("\\n");
+          break;
+        case '\r':
+          buffer.appendAscii("\\r");
+          break;
+        default:
+          buffer.appendCodePoint(codePoint);
+      }
+      i += Character.charCount(codePoint);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package export;
+
+/**
+ * Writes tamoxdata rows as a SQL script of INSERT statements, ending with a commit.  A batch size of 1 writes one
+ * statement per row, larger batch sizes put that many rows in each multi-row INSERT.  Values are quoted with any
+ * single quotes doubled, and a null value is written as NULL.
+ *
+ * @author Ryan Whaley
+ */
+public class InsertExport extends TamoxdataExport {
+  private final int m_batchSize;
+  private int m_batchRows = 0;
+
+  public InsertExport(String basePath, int batchSize, int rowsPerFile) {
+    super(basePath, Format.insert.getExtension(), rowsPerFile);
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Need at least 1 row per insert: " + batchSize);
+    }
+    m_batchSize = batchSize;
+  }
+
+  /**
+   * Makes a single row INSERT statement, with no line break after it.
+   * @param values a value for each of the {@link #COLUMNS}, null for no value
+   * @return the SQL statement
+   */
+  public static String makeInsert(String[] values) {
+    RowBuffer buffer = new RowBuffer();
+    appendInsert(buffer);
+    appendValues(buffer, values);
+    buffer.append(';');
+    return buffer.toString();
+  }
+
+  protected void encodeHeader(RowBuffer buffer) {
+    m_batchRows = 0;
+  }
+
+  protected void encodeRow(RowBuffer buffer, String[] values) {
+    if (m_batchRows == 0) {
+      appendInsert(buffer);
+    }
+    else {
+      buffer.appendAscii(",\n");
+    }
+    appendValues(buffer, values);
+
+    m_batchRows++;
+    if (m_batchRows == m_batchSize) {
+      buffer.appendAscii(";\n");
+      m_batchRows = 0;
+    }
+  }
+
+  protected void encodeTrailer(RowBuffer buffer) {
+    if (m_batchRows > 0) {
+      buffer.appendAscii(";\n");
+      m_batchRows = 0;
+    }
+    buffer.appendAscii("commit;\n");
+  }
+
+  private static void appendInsert(RowBuffer buffer) {
+    buffer.appendAscii("insert into ").appendAscii(TABLE).append('(');
+    appendColumns(buffer);
+    buffer.appendAscii(") values ");
+  }
+
+  private static void appendValues(RowBuffer buffer, String[] values) {
+    buffer.append('(');
+    for (int i=0; i<values.length; i++) {
+      if (i > 0) {
+        buffer.append(',');
+      }
+      appendValue(buffer, values[i]);
+    }
+    buffer.append(')');
+  }
+
+  private static void appendValue(RowBuffer buffer, String value) {
+    if (value == null) {
+      buffer.appendAscii("NULL");
+      return;
+    }
+    buffer.append('\'');
+    for (int i=0; i<value.length(); ) {
+      int codePoint = value.codePointAt(i);
+      if (codePoint == '\'') {
+        buffer.append('\'');
+      }
+      buffer.appendCodePoint(codePoint);
+      i += Character.charCount(codePoint);
+    }
+    buffer.append('\'');
+  }
+}
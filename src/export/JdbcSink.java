@@ -0,0 +1,244 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package export;
+
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Streams tamoxdata rows straight into a database with a batched {@link PreparedStatement}, so there's no SQL file
+ * to replay afterwards.  Rows are sent to the database in batches and committed every so many rows, and whatever is
+ * left over is sent and committed on close.  If the load is aborted the rows since the last commit are rolled back,
+ * but rows that were already committed stay, so a commit interval of 0 is needed for the load to be all or nothing.
+ * <p/>
+ * The JDBC driver for the database has to be on the classpath.
+ *
+ * @author Ryan Whaley
+ */
+public class JdbcSink implements TamoxdataSink {
+  private static final Logger sf_logger = Logger.getLogger(JdbcSink.class);
+
+  private final Connection m_connection;
+  private final boolean m_ownsConnection;
+  private final PreparedStatement m_statement;
+  private final int m_batchSize;
+  private final int m_commitInterval;
+  private int m_batchRows = 0;
+  private int m_uncommittedRows = 0;
+  private int m_rows = 0;
+  private boolean m_closed = false;
+
+  /**
+   * Makes a sink that writes to the given connection, which is left open on close.  Auto-commit is turned off.
+   * @param connection the database to write to
+   * @param batchSize rows to send to the database at a time
+   * @param commitInterval rows to write between commits, 0 to only commit on close
+   * @throws SQLException if the insert statement can't be prepared
+   */
+  public JdbcSink(Connection connection, int batchSize, int commitInterval) throws SQLException {
+    this(connection, false, batchSize, commitInterval);
+  }
+
+  private JdbcSink(Connection connection, boolean ownsConnection, int batchSize, int commitInterval)
+      throws SQLException {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Need at least 1 row per batch: " + batchSize);
+    }
+    if (commitInterval < 0) {
+      throw new IllegalArgumentException("Rows per commit can't be negative: " + commitInterval);
+    }
+    m_connection = connection;
+    m_ownsConnection = ownsConnection;
+    m_batchSize = batchSize;
+    m_commitInterval = commitInterval;
+
+    m_connection.setAutoCommit(false);
+    m_statement = m_connection.prepareStatement(makeInsert());
+  }
+
+  /**
+   * Opens a connection to the database at the given JDBC URL and makes a sink that closes it when it's done.
+   * @param url a JDBC URL, with any user and password the driver needs
+   * @param batchSize rows to send to the database at a time
+   * @param commitInterval rows to write between commits, 0 to only commit on close
+   * @throws SQLException if the database can't be connected to
+   */
+  public static JdbcSink open(String url, int batchSize, int commitInterval) throws SQLException {
+    Connection connection = DriverManager.getConnection(url);
+    try {
+      return new JdbcSink(connection, true, batchSize, commitInterval);
+    }
+    catch (SQLException ex) {
+      connection.close();
+      throw ex;
+    }
+  }
+
+  public void write(String[] values) throws SQLException {
+    if (m_closed) {
+      throw new IllegalStateException("Sink is already closed");
+    }
+    if (values.length != TamoxdataExport.COLUMNS.length) {
+      throw new IllegalArgumentException("Expected " + TamoxdataExport.COLUMNS.length + " values, got " +
+          values.length);
+    }
+
+    for (int i=0; i<values.length; i++) {
+      if (values[i] == null) {
+        m_statement.setNull(i+1, Types.VARCHAR);
+      }
+      else {
+        m_statement.setString(i+1, values[i]);
+      }
+    }
+    m_statement.addBatch();
+    m_batchRows++;
+    m_uncommittedRows++;
+    m_rows++;
+
+    boolean commitDue = m_commitInterval > 0 && m_uncommittedRows >= m_commitInterval;
+    if (m_batchRows >= m_batchSize || commitDue) {
+      executeBatch();
+    }
+    if (commitDue) {
+      commit();
+    }
+  }
+
+  /**
+   * Sends and commits any rows that are left, then closes the statement, and the connection if this sink opened
+   * it.  If the last rows can't be written the open transaction is rolled back.
+   * @throws SQLException if the last rows can't be written
+   */
+  public void close() throws SQLException {
+    if (m_closed) {
+      return;
+    }
+    m_closed = true;
+    try {
+      executeBatch();
+      commit();
+    }
+    catch (SQLException ex) {
+      rollback();
+      throw ex;
+    }
+    finally {
+      closeQuietly();
+    }
+  }
+
+  /**
+   * Rolls back the rows that haven't been committed and closes the statement, and the connection if this sink opened
+   * it.
+   */
+  public void abort() {
+    if (m_closed) {
+      return;
+    }
+    m_closed = true;
+    try {
+      rollback();
+    }
+    finally {
+      closeQuietly();
+    }
+  }
+
+  public int getRowCount() {
+    return m_rows;
+  }
+
+  private void executeBatch() throws SQLException {
+    if (m_batchRows > 0) {
+      m_statement.executeBatch();
+      m_batchRows = 0;
+    }
+  }
+
+  private void commit() throws SQLException {
+    m_connection.commit();
+    m_uncommittedRows = 0;
+  }
+
+  private void rollback() {
+    try {
+      m_connection.rollback();
+    }
+    catch (SQLException ex) {
+      sf_logger.warn("Couldn't roll back the tamoxdata load", ex);
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      m_statement.close();
+    }
+    catch (SQLException ex) {
+      sf_logger.warn("Couldn't close the insert statement", ex);
+    }
+    finally {
+      if (m_ownsConnection) {
+        try {
+          m_connection.close();
+        }
+        catch (SQLException ex) {
+          sf_logger.warn("Couldn't close the database connection", ex);
+        }
+      }
+    }
+  }
+
+  private static String makeInsert() {
+    StringBuilder sb = new StringBuilder("insert into ").append(TamoxdataExport.TABLE).append('(');
+    StringBuilder params = new StringBuilder();
+    for (int i=0; i<TamoxdataExport.COLUMNS.length; i++) {
+      if (i > 0) {
+        sb.append(',');
+        params.append(',');
+      }
+      sb.append(TamoxdataExport.COLUMNS[i]);
+      params.append('?');
+    }
+    return sb.append(") values (").append(params).append(')').toString();
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A growable byte array that export rows are encoded into.  One buffer is reset and reused for every row, so
+ * encoding a row doesn't make any new Strings or byte arrays once the buffer is big enough.
+ *
+ * @author Ryan Whaley
+ */
+class RowBuffer {
+  private byte[] m_bytes = new byte[4096];
+  private int m_length = 0;
+
+  public void reset() {
+    m_length = 0;
+  }
+
+  public int length() {
+    return m_length;
+  }
+
+  public RowBuffer append(int b) {
+    ensure(1);
+    m_bytes[m_length++] = (byte)b;
+    return this;
+  }
+
+  /**
+   * Appends a String that's known to be plain ASCII, like SQL keywords and column names.
+   */
+  public RowBuffer appendAscii(String string) {
+    ensure(string.length());
+    for (int i=0; i<string.length(); i++) {
+      m_bytes[m_length++] = (byte)string.charAt(i);
+    }
+    return this;
+  }
+
+  /**
+   * Appends one Unicode code point as UTF-8.
+   */
+  public RowBuffer appendCodePoint(int codePoint) {
+    ensure(4);
+    if (codePoint < 0x80) {
+      m_bytes[m_length++] = (byte)codePoint;
+    }
+    else if (codePoint < 0x800) {
+      m_bytes[m_length++] = (byte)(0xc0 | (codePoint >> 6));
+      m_bytes[m_length++] = (byte)(0x80 | (codePoint & 0x3f));
+    }
+    else if (codePoint < 0x10000) {
+      m_bytes[m_length++] = (byte)(0xe0 | (codePoint >> 12));
+      m_bytes[m_length++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+      m_bytes[m_length++] = (byte)(0x80 | (codePoint & 0x3f));
+    }
+    else {
+      m_bytes[m_length++] = (byte)(0xf0 | (codePoint >> 18));
+      m_bytes[m_length++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+      m_bytes[m_length++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+      m_bytes[m_length++] = (byte)(0x80 | (codePoint & 0x3f));
+    }
+    return this;
+  }
+
+  /**
+   * Appends a String as UTF-8 with nothing escaped.
+   */
+  public RowBuffer appendUtf8(String string) {
+    for (int i=0; i<string.length(); ) {
+      int codePoint = string.codePointAt(i);
+      appendCodePoint(codePoint);
+      i += Character.charCount(codePoint);
+    }
+    return this;
+  }
+
+  /**
+   * Appends a 16 bit int in network byte order.
+   */
+  public RowBuffer appendShort(int value) {
+    ensure(2);
+    m_bytes[m_length++] = (byte)(value >> 8);
+    m_bytes[m_length++] = (byte)value;
+    return this;
+  }
+
+  /**
+   * Appends a 32 bit int in network byte order.
+   */
+  public RowBuffer appendInt(int value) {
+    ensure(4);
+    setInt(m_length, value);
+    m_length += 4;
+    return this;
+  }
+
+  /**
+   * Overwrites 4 bytes that have already been appended with a 32 bit int in network byte order, for filling in a
+   * length once what it measures has been appended.
+   */
+  public void setInt(int position, int value) {
+    m_bytes[position]   = (byte)(value >> 24);
+    m_bytes[position+1] = (byte)(value >> 16);
+    m_bytes[position+2] = (byte)(value >> 8);
+    m_bytes[position+3] = (byte)value;
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(m_bytes, 0, m_length);
+  }
+
+  public String toString() {
+    try {
+      return new String(m_bytes, 0, m_length, "UTF-8");
+    }
+    catch (java.io.UnsupportedEncodingException ex) {
+      throw new IllegalStateException("No UTF-8", ex);
+    }
+  }
+
+  private void ensure(int extra) {
+    if (m_length + extra > m_bytes.length) {
+      byte[] bytes = new byte[Math.max(m_bytes.length*2, m_length+extra)];
+      System.arraycopy(m_bytes, 0, bytes, 0, m_length);
+      m_bytes = bytes;
+    }
+  }
+}
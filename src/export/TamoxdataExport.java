@@ -0,0 +1,263 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package export;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes subject rows for the tamoxdata table to one or more load files.  Each row is encoded into a reused
+ * {@link RowBuffer} and written through a buffered stream.  When a limit on rows per file is set, the export rolls
+ * over to a new file when a file is full, and every file can be loaded on its own.
+ * <p/>
+ * The first file is named after the base path plus the format's extension, later ones get <code>.part2</code>,
+ * <code>.part3</code> and so on before the extension.
+ *
+ * @author Ryan Whaley
+ */
+public abstract class TamoxdataExport implements TamoxdataSink {
+  public static final String TABLE = "tamoxdata";
+  public static final String[] COLUMNS = new String[]{
+      "subjectid",
+      "projectid",
+      "ageatdiagnosis",
+      "menostatusatdx",
+      "maxtumordim",
+      "numposnodes",
+      "grading",
+      "erstatus",
+      "pgrstatus",
+      "radiotherapy",
+      "cyp2d6_1",
+      "cyp2d6_2",
+      "crit1",
+      "crit2",
+      "crit3",
+      "genosource"
+  };
+
+  public enum Format {
+    /** SQL script of INSERT statements, several rows to a statement if a batch size is set */
+    insert(".sql"),
+    /** psql script with the rows in PostgreSQL COPY text format */
+    copy(".sql"),
+    /** PostgreSQL COPY binary file, for <code>COPY tamoxdata FROM 'file' WITH BINARY</code> */
+    binary(".pgcopy");
+
+    private final String m_extension;
+
+    Format(String extension) {
+      m_extension = extension;
+    }
+
+    public String getExtension() {
+      return m_extension;
+    }
+  }
+
+  private final String m_basePath;
+  private final String m_extension;
+  private final int m_rowsPerFile;
+  private final RowBuffer m_buffer = new RowBuffer();
+  private final List<File> m_files = new ArrayList<File>();
+  private OutputStream m_out = null;
+  private int m_fileRows = 0;
+  private int m_rows = 0;
+  private boolean m_closed = false;
+
+  protected TamoxdataExport(String basePath, String extension, int rowsPerFile) {
+    if (rowsPerFile < 0) {
+      throw new IllegalArgumentException("Rows per file can't be negative: " + rowsPerFile);
+    }
+    m_basePath = basePath;
+    m_extension = extension;
+    m_rowsPerFile = rowsPerFile;
+  }
+
+  /**
+   * Makes an export in the given format.
+   * @param format the kind of load file to write
+   * @param basePath the path to name the files after, without an extension
+   * @param batchSize rows per INSERT statement, only used by the insert format
+   * @param rowsPerFile the most rows to put in one file before rolling over to the next, 0 for no limit
+   * @return a new export, no file is opened until the first row or close
+   */
+  public static TamoxdataExport newExport(Format format, String basePath, int batchSize, int rowsPerFile) {
+    switch (format) {
+      case copy:
+        return new CopyTextExport(basePath, rowsPerFile);
+      case binary:
+        return new CopyBinaryExport(basePath, rowsPerFile);
+      default:
+        return new InsertExport(basePath, batchSize, rowsPerFile);
+    }
+  }
+
+  /**
+   * Writes one row.
+   * @param values a value for each of the {@link #COLUMNS}, null for no value
+   * @throws IOException if the file can't be written
+   */
+  public void write(String[] values) throws IOException {
+    if (m_closed) {
+      throw new IllegalStateException("Export is already closed");
+    }
+    if (values.length != COLUMNS.length) {
+      throw new IllegalArgumentException("Expected " + COLUMNS.length + " values, got " + values.length);
+    }
+    if (m_out != null && m_rowsPerFile > 0 && m_fileRows >= m_rowsPerFile) {
+      finishFile();
+    }
+    if (m_out == null) {
+      startFile();
+    }
+
+    m_buffer.reset();
+    encodeRow(m_buffer, values);
+    m_buffer.writeTo(m_out);
+    m_fileRows++;
+    m_rows++;
+  }
+
+  /**
+   * Finishes the current file.  If no rows were written there will still be one file with nothing in it to load.
+   * @throws IOException if the file can't be written
+   */
+  public void close() throws IOException {
+    if (m_closed) {
+      return;
+    }
+    m_closed = true;
+    if (m_out == null) {
+      startFile();
+    }
+    finishFile();
+  }
+
+  /**
+   * Closes the current file without finishing it and deletes every file written so far, since a partial load file
+   * would load a partial table.
+   */
+  public void abort() {
+    if (m_closed) {
+      return;
+    }
+    m_closed = true;
+    IOUtils.closeQuietly(m_out);
+    m_out = null;
+    for (File file : m_files) {
+      file.delete();
+    }
+  }
+
+  /**
+   * The files written so far, in order
+   */
+  public List<File> getFiles() {
+    return Collections.unmodifiableList(m_files);
+  }
+
+  public int getRowCount() {
+    return m_rows;
+  }
+
+  private void startFile() throws IOException {
+    File file;
+    if (m_files.isEmpty()) {
+      file = new File(m_basePath + m_extension);
+    }
+    else {
+      file = new File(m_basePath + ".part" + (m_files.size()+1) + m_extension);
+    }
+    m_out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+    m_files.add(file);
+    m_fileRows = 0;
+
+    m_buffer.reset();
+    encodeHeader(m_buffer);
+    m_buffer.writeTo(m_out);
+  }
+
+  private void finishFile() throws IOException {
+    try {
+      m_buffer.reset();
+      encodeTrailer(m_buffer);
+      m_buffer.writeTo(m_out);
+      m_out.flush();
+    }
+    finally {
+      IOUtils.closeQuietly(m_out);
+      m_out = null;
+    }
+  }
+
+  /**
+   * Encodes whatever goes at the start of each file.
+   */
+  protected abstract void encodeHeader(RowBuffer buffer);
+
+  /**
+   * Encodes one row.
+   * @param values a value for each of the {@link #COLUMNS}, null for no value
+   */
+  protected abstract void encodeRow(RowBuffer buffer, String[] values);
+
+  /**
+   * Encodes whatever goes at the end of each file.
+   */
+  protected abstract void encodeTrailer(RowBuffer buffer);
+
+  /**
+   * Appends the column list, like <code>subjectid,projectid,...</code>
+   */
+  protected static void appendColumns(RowBuffer buffer) {
+    for (int i=0; i<COLUMNS.length; i++) {
+      if (i > 0) {
+        buffer.append(',');
+      }
+      buffer.appendAscii(COLUMNS[i]);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package export;
+
+/**
+ * Somewhere the rows of the tamoxdata table are sent to, either a load file or a database connection.
+ *
+ * @author Ryan Whaley
+ */
+public interface TamoxdataSink {
+
+  /**
+   * Sends one row.
+   * @param values a value for each of the {@link TamoxdataExport#COLUMNS}, null for no value
+   * @throws Exception if the row can't be written
+   */
+  public void write(String[] values) throws Exception;
+
+  /**
+   * Finishes sending rows and releases whatever the sink holds open.  Calling it again does nothing.
+   * @throws Exception if the last rows can't be written
+   */
+  public void close() throws Exception;
+
+  /**
+   * Gives up on the rows sent so far, after the rows couldn't all be made, and releases whatever the sink holds open.
+   * Calling it after the sink is closed does nothing.
+   */
+  public void abort();
+
+  /**
+   * The number of rows written so far
+   */
+  public int getRowCount();
+}
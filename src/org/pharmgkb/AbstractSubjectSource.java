@@ -0,0 +1,340 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+package org.pharmgkb;
+
+import com.google.common.base.Joiner;
+import org.apache.log4j.Logger;
+import util.ItpcUtils;
+import util.RowView;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Base class for the sources of ITPC subjects.  It reads the rows one at a time and hands each one to the
+ * {@link SubjectParser} it extends.  Subclasses only have to supply the rows, as an iterator of column values or of
+ * {@link RowView}s, and deal with the output.
+ * <br/>
+ * Nothing in here touches POI so sources that don't read Excel files never have to load it.
+ *
+ * @author Ryan Whaley
+ */
+public abstract class AbstractSubjectSource extends SubjectParser implements SubjectSource {
+  private static final Logger sf_logger = Logger.getLogger(AbstractSubjectSource.class);
+
+  private int m_rowIndex = -1;
+  private RowView m_currentDataRow = null;
+  private Iterator<? extends RowView> m_sampleIterator = null;
+  private DeltaOutput m_deltaOutput = null;
+  private final SortedMap<Integer,String[]> m_previousValues = new TreeMap<Integer,String[]>();
+
+  /**
+   * Gets the name new column profiles get, taken from the name of the input file.
+   */
+  @Override
+  protected String getProfileName() {
+    File inputFile = getInputFile();
+    if (inputFile == null) {
+      return super.getProfileName();
+    }
+    return inputFile.getName().replaceFirst("\\.[^.]*$", "");
+  }
+
+  protected Iterator<? extends RowView> getSampleIterator() {
+    return m_sampleIterator;
+  }
+
+  protected void setSampleIterator(Iterator<List<String>> sampleIterator) {
+    setRowIterator(RowView.wrap(sampleIterator));
+  }
+
+  /**
+   * Sets where the rows come from.  The iterator is free to hand out the same view for every row since each row is
+   * done with before the next one is read.
+   * @param rowIterator an iterator of the rows of the data sheet, starting with the header row
+   */
+  protected void setRowIterator(Iterator<? extends RowView> rowIterator) {
+    m_sampleIterator = rowIterator;
+
+    if (getSampleIterator().hasNext()) {
+      setCurrentDataRow(getSampleIterator().next());
+    }
+  }
+
+  public boolean hasNext() {
+    return getCurrentDataRow()!=null
+            && getCurrentDataRow().size() > 0
+            && !getCurrentDataRow().isBlank(0);
+  }
+
+  public Subject next() {
+    dataRowRead(getCurrentDataRow());
+    rowIndexPlus();
+    Subject subject = parseSubject(getCurrentDataRow());
+    readNextDataRow();
+    return subject;
+  }
+
+  /**
+   * Only the columns that get parsed are copied, the calculated columns the change report needs have already been
+   * kept by {@link #dataRowRead(RowView)}.  Synchronized so sources that write back into the sheet they read from
+   * can lock out writes while a row is read.
+   */
+  public synchronized RowView nextRow() {
+    if (!hasNext()) {
+      return null;
+    }
+    dataRowRead(getCurrentDataRow());
+    rowIndexPlus();
+    RowView row = RowView.copyOf(getCurrentDataRow(), getParsedColumns());
+    readNextDataRow();
+    return row;
+  }
+
+  /**
+   * Called with each data row before it's parsed.  Header and legend rows, which are skipped, don't come through
+   * here.
+   * @param row the data row
+   */
+  protected void dataRowRead(RowView row) {
+    if (m_deltaOutput != null) {
+      // what the row had in the calculated columns, for the change report, this is called before the row index
+      // moves to it
+      String[] previous = new String[genoSourceIdx - newFirstDiseaseEventIdx + 1];
+      for (int i=0; i<previous.length; i++) {
+        previous[i] = row.getString(newFirstDiseaseEventIdx + i);
+      }
+      m_previousValues.put(getCurrentRowIndex() + 1, previous);
+    }
+  }
+
+  public DeltaOutput startDeltaOutput(File resultsFile, File changesFile) throws IOException {
+    if (getCurrentRowIndex() > 1) {
+      throw new IllegalStateException("Data rows have already been read");
+    }
+    String[] titles = getCalculatedTitles();
+    m_deltaOutput = new DeltaOutput(resultsFile, changesFile,
+        Arrays.asList(titles).subList(newFirstDiseaseEventIdx, titles.length));
+    return m_deltaOutput;
+  }
+
+  /**
+   * Writes the calculated columns of a Subject to the delta output, if there is one.  Sources call this first from
+   * {@link #writeSubjectCalculatedColumns(int, SubjectEvaluation)} and skip writing to their own output if it
+   * returns true.
+   * @param rowIndex the index of the row the Subject came from
+   * @param evaluation the evaluation of the Subject
+   * @return true if the values went to the delta output
+   */
+  protected synchronized boolean writeDelta(int rowIndex, SubjectEvaluation evaluation) {
+    if (m_deltaOutput == null) {
+      return false;
+    }
+    String[] previous = m_previousValues.remove(rowIndex);
+    String[] values = getCalculatedValues(evaluation);
+    String[] calculated = new String[values.length - newFirstDiseaseEventIdx];
+    System.arraycopy(values, newFirstDiseaseEventIdx, calculated, 0, calculated.length);
+    if (previous == null) {
+      previous = new String[calculated.length];
+    }
+    try {
+      m_deltaOutput.write(rowIndex, evaluation.getSubject().getSubjectId(), previous, calculated);
+    }
+    catch (IOException ex) {
+      throw new IllegalStateException("Error writing row " + (rowIndex+1) + " to " + m_deltaOutput.getResultsFile(),
+          ex);
+    }
+    return true;
+  }
+
+  /**
+   * Gets the titles of the calculated columns, which go in the header row.
+   * @return the titles indexed by column, the columns before <code>newFirstDiseaseEventIdx</code> are null
+   */
+  protected String[] getCalculatedTitles() {
+    String[] values = new String[genoSourceIdx + 1];
+
+    values[newFirstDiseaseEventIdx] = "First Disease Event (calculated)";
+    values[diagToEventCalcIdx] = "Time from Primary Diagnosis to First Disease Event (calculated)";
+
+    values[allele1finalIdx] = "CYP2D6 Allele 1 (Final)";
+    values[allele2finalIdx] = "CYP2D6 Allele 2 (Final)";
+    values[genotypeIdx] = "CYP2D6 Genotype (Final)";
+    values[genoMetabStatusIdx] = "Metabolizer Status based on Genotypes only (Final)";
+    values[weakIdx] = "Weak Drug (PharmGKB)";
+    values[potentIdx] = "Potent Drug (PharmGKB)";
+    values[scoreIdx] = "CYP2D6 Genotype Score (Final)";
+    values[metabStatusIdx] = "Metabolizer Status based on CYP2D6 Genotype Score (Final)";
+
+    values[incAgeIdx] = "Inc 1\nPostmenopausal";
+    values[incNonmetaIdx] = "Inc 2a\nNon-metastatic invasive cancer";
+    values[incPriorHistIdx] = "Inc 2b\nNo prior history of contralateral breast cancer";
+    values[incErPosIdx] = "Inc 3\nER Positive";
+    values[incSysTherIdx] = "Inc 4\nSystemic therapy prior to surgery";
+    values[incAdjTamoxIdx] = "Inc 4a\nAdjuvant tamoxifen initiated within 6 months";
+    values[incDurationIdx] = "Inc 4b\nTamoxifen duration intended 5 years";
+    values[incTamoxDoseIdx] = "Inc 4c\nTamoxifen dose intended 20mg/day";
+    values[incChemoIdx] = "Inc 5\nNo adjuvant chemotherapy";
+    values[incHormoneIdx] = "Inc 6\nNo additional adjuvant hormonal therapy";
+    values[incDnaCollectionIdx] = "Inc 7\nTiming of DNA Collection";
+    values[incFollowupIdx] = "Inc 8\nAdequate follow-up";
+    values[incGenoDataAvailIdx] = "Inc 9\nCYP2D6 *4 genotype data available for assessment";
+
+    values[exclude1Idx] = "Exclusion 1:\ntime of event unknown";
+    values[exclude2Idx] = "Exclusion 2:\nDFST agrees with Additional Cancer and Patient Death";
+    values[exclude3Idx] = "Exclusion 3:\nCheck survival time against Patient Death";
+    values[exclude4Idx] = "Exclusion 4:\nDFST agrees with Additional Cancer and survival time";
+
+    values[includeCrit1Idx] = "Criterion 1";
+    values[includeCrit2Idx] = "Criterion 2";
+    values[includeCrit3Idx] = "Criterion 3";
+    values[bfciIdx] = "BCFI(Breast-Cancer Free Interval)";
+    values[genoSourceIdx] = "Genotyping Source";
+    return values;
+  }
+
+  /**
+   * Gets the values of the calculated columns for a Subject.
+   * @return the values indexed by column, the columns before <code>newFirstDiseaseEventIdx</code> are null
+   */
+  protected String[] getCalculatedValues(SubjectEvaluation evaluation) {
+    Subject subject = evaluation.getSubject();
+    String[] values = new String[genoSourceIdx + 1];
+
+    values[newFirstDiseaseEventIdx] = evaluation.getFirstDiseaseEventCalc();
+    values[diagToEventCalcIdx] = evaluation.getDiagToEventDaysCalc();
+
+    values[allele1finalIdx] = evaluation.getGenotypeFinal().get(0);
+    values[allele2finalIdx] = evaluation.getGenotypeFinal().get(1);
+    values[genotypeIdx] = evaluation.getMetabolizerStatus();
+    values[genoMetabStatusIdx] = evaluation.getGenotypeMetabolizerGroup();
+    values[weakIdx] = evaluation.getWeak().toString();
+    values[potentIdx] = evaluation.getPotent().toString();
+    values[scoreIdx] = ItpcUtils.floatDisplay(evaluation.getScore());
+    values[metabStatusIdx] = evaluation.getMetabolizerGroup();
+
+    values[incAgeIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion1));
+    values[incNonmetaIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion2a));
+    values[incPriorHistIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion2b));
+    values[incErPosIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion3));
+    values[incSysTherIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion4));
+    values[incAdjTamoxIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion4a));
+    values[incDurationIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion4b));
+    values[incTamoxDoseIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion4c));
+    values[incChemoIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion5));
+    values[incHormoneIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion6));
+    values[incDnaCollectionIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion7));
+    values[incFollowupIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion8));
+    values[incGenoDataAvailIdx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.Inclusion9));
+
+    values[exclude1Idx] = ItpcUtils.valueToExclusion(evaluation.get(SubjectEvaluation.Check.Exclude1));
+    values[exclude2Idx] = ItpcUtils.valueToExclusion(evaluation.get(SubjectEvaluation.Check.Exclude4));
+    values[exclude3Idx] = ItpcUtils.valueToExclusion(evaluation.get(SubjectEvaluation.Check.Exclude5));
+    values[exclude4Idx] = ItpcUtils.valueToExclusion(evaluation.get(SubjectEvaluation.Check.Exclude6));
+
+    values[includeCrit1Idx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.IncludeCrit1));
+    values[includeCrit2Idx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.IncludeCrit2));
+    values[includeCrit3Idx] = ItpcUtils.valueToInclusion(evaluation.get(SubjectEvaluation.Check.IncludeCrit3));
+
+    values[bfciIdx] = evaluation.getBreastCancerFreeInterval();
+    values[genoSourceIdx] = Joiner.on(',').join(subject.getSampleSources());
+    return values;
+  }
+
+
+  public void skipNext() {
+    rowIndexPlus();
+    readNextDataRow();
+  }
+
+  private void readNextDataRow() {
+    if (getSampleIterator().hasNext()) {
+      setCurrentDataRow(getSampleIterator().next());
+    }
+    else {
+      setCurrentDataRow(null);
+      close();
+    }
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException(getClass().getName() + " does not support removing Subjects");
+  }
+
+  public int getCurrentRowIndex() {
+    return m_rowIndex;
+  }
+
+  private void rowIndexPlus() {
+    m_rowIndex++;
+  }
+
+  /**
+   * Gets the row that will be read by the next call to <code>next</code>.  It's only good until then.
+   * @return the current data row, null if there are no more rows
+   */
+  public RowView getCurrentDataRow() {
+    return m_currentDataRow;
+  }
+
+  public void setCurrentDataRow(RowView m_currentDataRow) {
+    this.m_currentDataRow = m_currentDataRow;
+  }
+
+  /**
+   * Gets the file the subjects are read from.
+   * @return the input file
+   */
+  public abstract File getInputFile();
+
+  /**
+   * Releases the input if it's being streamed.  This is called automatically once the last Subject has been read.
+   */
+  public void close() {
+    if (m_sampleIterator instanceof Closeable) {
+      try {
+        ((Closeable)m_sampleIterator).close();
+      }
+      catch (IOException ex) {
+        sf_logger.warn("Error closing " + getInputFile(), ex);
+      }
+    }
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import util.ItpcUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An allele string as it appears in a {@link Genotype}, parsed once. The stripped name, metabolizer class, score,
+ * priority and sort number of every distinct allele string are worked out the first time it is seen and the
+ * resulting Allele is kept, so calling genotypes doesn't run the allele regexes over and over for the same text.
+ * <br/>
+ * Only valid alleles are kept, up to {@link #sf_maxAlleles} spellings of them, since the strings come from whatever
+ * a spreadsheet or a service request holds.  Anything else is parsed again each time it's seen.
+ *
+ * @author Ryan Whaley
+ */
+public final class Allele {
+  private static final Pattern sf_numberPattern = Pattern.compile("\\D*(\\d+)\\D*");
+
+  private static final Map<String,Genotype.Metabolizer> sf_metabMap = new HashMap<String,Genotype.Metabolizer>();
+  static {
+    sf_metabMap.put("*3",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*4",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*5",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*6",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*7",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*8",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*11",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*12",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*13",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*14",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*15",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*16",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*18",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*19",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*20",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*40",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*42",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*44",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*56",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*38",Genotype.Metabolizer.PM);
+    sf_metabMap.put("*4XN",Genotype.Metabolizer.PM);
+
+    sf_metabMap.put("*9",Genotype.Metabolizer.IM);
+    sf_metabMap.put("*9XN",Genotype.Metabolizer.IM);
+    sf_metabMap.put("*10",Genotype.Metabolizer.IM);
+    sf_metabMap.put("*10XN",Genotype.Metabolizer.IM);
+    sf_metabMap.put("*17",Genotype.Metabolizer.IM);
+    sf_metabMap.put("*29",Genotype.Metabolizer.IM);
+    sf_metabMap.put("*37",Genotype.Metabolizer.IM);
+    sf_metabMap.put("*41",Genotype.Metabolizer.IM);
+    sf_metabMap.put("*41XN",Genotype.Metabolizer.IM);
+    sf_metabMap.put("*45",Genotype.Metabolizer.IM);
+    sf_metabMap.put("*46",Genotype.Metabolizer.IM);
+
+    sf_metabMap.put("*1",Genotype.Metabolizer.EM);
+    sf_metabMap.put("*2",Genotype.Metabolizer.EM);
+    sf_metabMap.put("*2A",Genotype.Metabolizer.EM);
+    sf_metabMap.put("*33",Genotype.Metabolizer.EM);
+    sf_metabMap.put("*35",Genotype.Metabolizer.EM);
+    sf_metabMap.put("*39",Genotype.Metabolizer.EM);
+    sf_metabMap.put("*43",Genotype.Metabolizer.EM);
+
+    sf_metabMap.put("*1XN",Genotype.Metabolizer.UM);
+    sf_metabMap.put("*2XN",Genotype.Metabolizer.UM);
+    sf_metabMap.put("*35XN",Genotype.Metabolizer.UM);
+    sf_metabMap.put("*39XN",Genotype.Metabolizer.UM);
+
+    sf_metabMap.put("Unknown", Genotype.Metabolizer.Unknown);
+  }
+
+  private static final Map<Genotype.Metabolizer,Float> sf_scoreMap = new HashMap<Genotype.Metabolizer,Float>();
+  static {
+    sf_scoreMap.put(Genotype.Metabolizer.PM, 0f);
+    sf_scoreMap.put(Genotype.Metabolizer.IM, 0.5f);
+    sf_scoreMap.put(Genotype.Metabolizer.EM, 1f);
+    sf_scoreMap.put(Genotype.Metabolizer.UM, 2f);
+  }
+
+  private static final Map<Genotype.Metabolizer,Integer> sf_priorityMap = new HashMap<Genotype.Metabolizer,Integer>();
+  static {
+    sf_priorityMap.put(Genotype.Metabolizer.PM,1); // top priority
+    sf_priorityMap.put(Genotype.Metabolizer.IM,2);
+    sf_priorityMap.put(Genotype.Metabolizer.EM,3);
+    sf_priorityMap.put(Genotype.Metabolizer.UM,4);
+    sf_priorityMap.put(Genotype.Metabolizer.Unknown, 5); // bottom priority
+  }
+
+  /** the most allele strings to keep, real data only spells the few dozen mapped alleles a handful of ways */
+  private static final int sf_maxAlleles = 10000;
+  private static final ConcurrentMap<String,Allele> sf_alleles = new ConcurrentHashMap<String,Allele>();
+
+  private final String m_text;
+  private final String m_name;
+  private final Genotype.Metabolizer m_metabolizer;
+  private final boolean m_valid;
+  private final Float m_score;
+  private final Integer m_priority;
+  private final int m_number;
+
+  private Allele(String text) {
+    m_text = text;
+    m_name = ItpcUtils.alleleStrip(text);
+    m_metabolizer = m_name == null ? null : sf_metabMap.get(m_name);
+    m_valid = m_metabolizer != null || text.equals("Unknown");
+    m_score = m_metabolizer == null ? null : sf_scoreMap.get(m_metabolizer);
+    m_priority = m_metabolizer == null ? null : sf_priorityMap.get(m_metabolizer);
+
+    int number = -1;
+    Matcher matcher = sf_numberPattern.matcher(text);
+    if (matcher.find()) {
+      try {
+        number = Integer.parseInt(matcher.group(1));
+      }
+      catch (NumberFormatException ex) {
+        // too many digits to sort by, leave it unordered
+      }
+    }
+    m_number = number;
+  }
+
+  /**
+   * Gets the Allele for an allele string, parsing it the first time a valid allele string is seen.
+   * @param text an allele string like "*4" or "*2xn"
+   * @return the Allele for <code>text</code>, never null
+   */
+  public static Allele forText(String text) {
+    Allele allele = sf_alleles.get(text);
+    if (allele == null) {
+      allele = new Allele(text);
+      if (allele.isValid() && sf_alleles.size() < sf_maxAlleles) {
+        Allele existing = sf_alleles.putIfAbsent(text, allele);
+        if (existing != null) {
+          allele = existing;
+        }
+      }
+    }
+    return allele;
+  }
+
+  /**
+   * The allele string this was parsed from
+   * @return the original allele string
+   */
+  public String getText() {
+    return m_text;
+  }
+
+  /**
+   * The stripped version of the allele used for mapping, see {@link ItpcUtils#alleleStrip(String)}
+   * @return the stripped allele, null if the allele is malformed
+   */
+  public String getName() {
+    return m_name;
+  }
+
+  /**
+   * The metabolizer class of the allele
+   * @return a Metabolizer, null if the allele isn't mapped
+   */
+  public Genotype.Metabolizer getMetabolizer() {
+    return m_metabolizer;
+  }
+
+  /**
+   * Whether this allele can be part of a Genotype
+   * @return true if the allele is mapped to a metabolizer class or is "Unknown"
+   */
+  public boolean isValid() {
+    return m_valid;
+  }
+
+  /**
+   * The activity score of the allele
+   * @return the score, null for unknown or unmapped alleles
+   */
+  public Float getScore() {
+    return m_score;
+  }
+
+  /**
+   * The activity score of an allele in a metabolizer class
+   * @param metabolizer a metabolizer class
+   * @return the score, null for the Unknown class
+   */
+  static Float getScore(Genotype.Metabolizer metabolizer) {
+    return sf_scoreMap.get(metabolizer);
+  }
+
+  /**
+   * The priority of the allele when picking which alleles to keep in a Genotype, lower numbers are kept first
+   * @return the priority, null for unmapped alleles
+   */
+  public Integer getPriority() {
+    return m_priority;
+  }
+
+  /**
+   * The first number in the allele string, used to put the alleles of a Genotype in order
+   * @return the number, -1 if the allele string has no usable number
+   */
+  public int getNumber() {
+    return m_number;
+  }
+
+  public String toString() {
+    return m_text;
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The fields of the ITPC data sheet that are found by the text of their column header.
+ * <br/>
+ * Each field has a rule that its (trimmed, lower case) header has to pass.  A header goes to the first field, in the
+ * order they're declared here, whose rule it passes, so more specific rules have to come before more general ones.
+ *
+ * @author Ryan Whaley
+ */
+public enum Column {
+  SUBJECT_ID(Match.CONTAINS, "subject id"),
+  PROJECT_SITE(Match.EQUALS, "project site"),
+  GENDER(Match.CONTAINS, "gender"),
+  AGE(Match.CONTAINS, "age at diagnosis"),
+  RACE(Match.CONTAINS, "race", "omb"),
+  METASTATIC(Match.EQUALS, "metastatic disease at primary disease"),
+  TUMOR_DIMENSION(Match.CONTAINS, "maximum dimension of tumor"),
+  NUM_POSITIVE_NODES(Match.EQUALS, "number of positive nodes"),
+  TUMOR_GRADING(Match.EQUALS, "nottingham grade"),
+  PGR_STATUS(Match.EQUALS, "progesterone receptor"),
+  RADIO(Match.EQUALS, "radiation treatment"),
+  MENO_STATUS(Match.CONTAINS, "menopause status at diagnosis"),
+  ER_STATUS(Match.EQUALS, "estrogen receptor"),
+  DURATION(Match.CONTAINS, "intended tamoxifen duration"),
+  TAMOX_DOSE(Match.CONTAINS, "intended tamoxifen dose"),
+  TUMOR_SOURCE(Match.CONTAINS, "if tumor or tissue was dna source"),
+  BLOOD_SOURCE(Match.CONTAINS, "blood or buccal cells"),
+  PRIOR_HISTORY(Match.CONTAINS, "prior history of cancer"),
+  PRIOR_SITES(Match.CONTAINS, "sites of prior cancer"),
+  PRIOR_DCIS(Match.CONTAINS, "prior invasive breast cancer or dcis"),
+  CHEMO(Match.EQUALS, "chemotherapy"),
+  HORMONE(Match.CONTAINS, "additional hormone or other treatment after breast surgery?"),
+  SYSTEMIC_THER(Match.CONTAINS, "systemic therapy prior to surgery?"),
+  FOLLOWUP(Match.CONTAINS, "annual physical exam after breast cancer surgery"),
+  TIME_BTW_SURG_TAMOX(Match.CONTAINS, "time between definitive breast cancer surgery"),
+  FIRST_ADJ_ENDO_THER(Match.CONTAINS, "first adjuvant endocrine therapy"),
+  PROJECT_NOTES(Match.CONTAINS, "project notes"),
+  OTHER_GENO(Match.EQUALS, "other cyp2d6 genotyping"),
+  RS4986774(Match.CONTAINS_NOT, "rs4986774", "source"),
+  RS1065852(Match.CONTAINS_NOT, "rs1065852", "source"),
+  RS3892097(Match.CONTAINS_NOT, "rs3892097", "source"),
+  RS5030655(Match.CONTAINS_NOT, "rs5030655", "source"),
+  RS16947(Match.CONTAINS_NOT, "rs16947", "source"),
+  RS28371706(Match.CONTAINS_NOT, "rs28371706", "source"),
+  RS28371725(Match.CONTAINS_NOT, "rs28371725", "source"),
+  SAMPLE_SOURCE(Match.EQUALS,
+      "rs4986774 genotyping source",
+      "rs1065852 genotyping source",
+      "rs3892097 genotyping source",
+      "CYP2D6*5 genotyping source",
+      "rs5030655 genotyping source",
+      "rs16947 genotyping source",
+      "rs28371706 genotyping source",
+      "rs28371725 genotyping source"),
+  STAR5(Match.CONTAINS_NOT, "cyp2d6 *5", "source"),
+  FLUOXETINE(Match.CONTAINS, "fluoxetine"),
+  PAROXETINE(Match.CONTAINS, "paroxetine"),
+  QUINIDINE(Match.CONTAINS, "quinidine"),
+  BUPROPRION(Match.CONTAINS, "buproprion"),
+  DULOXETINE(Match.CONTAINS, "duloxetine"),
+  CIMETIDINE(Match.CONTAINS, "cimetidine"),
+  SERTRALINE(Match.CONTAINS, "sertraline"),
+  CITALOPRAM(Match.EQUALS, "citalopram"),
+  AMPLICHIP(Match.CONTAINS, "amplichip call"),
+  ADDITIONAL_CANCER(Match.EQUALS, "additional cancer?"),  // column BP
+  ADD_CX_IPSILATERAL(Match.CONTAINS, "time from diagnosis to ipsilateral local or regional recurrence"),  // column BR
+  ADD_CX_DISTANT_RECUR(Match.CONTAINS, "time from diagnosis to distant recurrence"),  // column BS
+  ADD_CX_CONTRALATERAL(Match.CONTAINS, "time from diagnosis to contralateral breast cancer"),  // column BT
+  ADD_CX_SECOND_INVASIVE(Match.CONTAINS, "time from diagnosis to second primary invasive cancer"),  // column BU
+  ADD_CX_LAST_EVAL(Match.CONTAINS, "time from diagnosis to date of last disease evaluation"),  // column BX
+  DAYS_DIAG_TO_DEATH(Match.EQUALS, "time from diagnosis until death if the patient has died"),  // column CE
+  PATIENT_DIED(Match.EQUALS, "has the patient died?"),  // column CD
+  DISEASE_FREE_SURVIVAL_TIME(Match.CONTAINS, "enter disease-free survival time"),  // column BO
+  SURVIVAL_NOT_DIED(Match.CONTAINS, "survival time if patient has not died"),  // column CI
+  CAUSE_OF_DEATH(Match.EQUALS, "cause of death if the patient has died");
+
+  /**
+   * The ways a header can be matched against the terms of a rule.
+   */
+  public enum Match {
+    /** the header contains every term */
+    CONTAINS,
+    /** the header is exactly one of the terms */
+    EQUALS,
+    /** the header contains the first term and none of the others */
+    CONTAINS_NOT
+  }
+
+  private final Match m_match;
+  private final List<String> m_terms;
+
+  Column(Match match, String... terms) {
+    m_match = match;
+    m_terms = Collections.unmodifiableList(Arrays.asList(terms));
+  }
+
+  public Match getMatch() {
+    return m_match;
+  }
+
+  public List<String> getTerms() {
+    return m_terms;
+  }
+
+  /**
+   * Checks whether more than one column can go to this field.
+   * @return true if every matching column is kept, false if only the last one is
+   */
+  public boolean isMultiple() {
+    return this == SAMPLE_SOURCE;
+  }
+}
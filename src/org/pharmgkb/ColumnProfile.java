@@ -0,0 +1,413 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import util.KeywordMatcher;
+import util.Med;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+
+/**
+ * The mapping of the fields of the ITPC data sheet to column indexes for one particular header row.
+ * <br/>
+ * Header rows are matched against the rules of all the {@link Column}s at once: every "contains" term is compiled
+ * into a single {@link KeywordMatcher} and every "equals" term into one lookup table, so each header is only
+ * scanned once.  The resulting profile is cached by the signature of the header row, so files with identical header
+ * rows skip the matching entirely.  If a profile directory has been set, profiles are also saved there as named
+ * <code>.profile</code> files and loaded back on later runs.  Saved profiles carry a hash of the rules they were
+ * matched with, so they're ignored as soon as a rule changes.
+ *
+ * @author Ryan Whaley
+ */
+public class ColumnProfile {
+  private static final Logger sf_logger = Logger.getLogger(ColumnProfile.class);
+  private static final String sf_extension = ".profile";
+  /** the version of the rules, a hash of every {@link Column} rule in order and the med names */
+  private static final String sf_version = makeRulesVersion();
+
+  private static final KeywordMatcher sf_keywordMatcher;
+  private static final List<Column> sf_keywordRules = Lists.newArrayList();
+  private static final List<int[]> sf_keywordRuleTerms = Lists.newArrayList();
+  private static final Map<String,Column> sf_exactRules = Maps.newHashMap();
+  private static final Map<String,Med> sf_medHeaders = Maps.newHashMap();
+  static {
+    List<String> keywords = Lists.newArrayList();
+    Map<String,Integer> keywordIdx = Maps.newHashMap();
+
+    for (Column column : Column.values()) {
+      if (column.getMatch() == Column.Match.EQUALS) {
+        for (String term : column.getTerms()) {
+          if (!sf_exactRules.containsKey(term)) {
+            sf_exactRules.put(term, column);
+          }
+        }
+        continue;
+      }
+
+      int[] terms = new int[column.getTerms().size()];
+      for (int i=0; i<terms.length; i++) {
+        String term = column.getTerms().get(i);
+        if (!keywordIdx.containsKey(term)) {
+          keywordIdx.put(term, keywords.size());
+          keywords.add(term);
+        }
+        terms[i] = keywordIdx.get(term);
+      }
+      sf_keywordRules.add(column);
+      sf_keywordRuleTerms.add(terms);
+    }
+    sf_keywordMatcher = new KeywordMatcher(keywords);
+
+    for (Med med : Med.values()) {
+      sf_medHeaders.put(med.name(), med);
+    }
+  }
+
+  private static final Map<String,ColumnProfile> sf_profiles = Maps.newHashMap();
+  private static File s_directory = null;
+
+  private String m_name;
+  private final String m_signature;
+  private final Map<Column,Integer> m_columns = new EnumMap<Column,Integer>(Column.class);
+  private final SortedSet<Integer> m_sampleSourceColumns = new TreeSet<Integer>();
+  private final Map<Med,Integer> m_medColumns = new EnumMap<Med,Integer>(Med.class);
+
+
+  private ColumnProfile(String name, String signature) {
+    m_name = name;
+    m_signature = signature;
+  }
+
+  /**
+   * Sets the directory that profiles get saved to and loaded from.  Profiles already in memory are dropped and the
+   * ones in the directory are loaded.
+   * @param directory a directory, created if it doesn't exist yet, or null to only keep profiles in memory
+   */
+  public static synchronized void setDirectory(File directory) {
+    s_directory = directory;
+    sf_profiles.clear();
+    if (directory != null) {
+      if (!directory.exists() && !directory.mkdirs()) {
+        sf_logger.warn("Can't make profile directory " + directory);
+      }
+      loadProfiles(directory);
+    }
+  }
+
+  /**
+   * Gets the profile for the given header row, matching the headers and saving a new profile if no file with the
+   * same header row has been seen before.
+   * @param headers the values of the header row, one per column
+   * @param name the name to give the profile if a new one has to be made
+   * @return the profile for the header row
+   */
+  public static synchronized ColumnProfile forHeaders(List<String> headers, String name) {
+    String signature = makeSignature(headers);
+    ColumnProfile profile = sf_profiles.get(signature);
+    if (profile != null) {
+      sf_logger.info("Using column profile " + profile.getName());
+      return profile;
+    }
+
+    profile = match(headers, name, signature);
+    sf_profiles.put(signature, profile);
+    if (s_directory != null) {
+      profile.save(s_directory);
+    }
+    return profile;
+  }
+
+  /**
+   * Figures out which column each of the fields is in based on the text of the header row.
+   */
+  private static ColumnProfile match(List<String> headers, String name, String signature) {
+    ColumnProfile profile = new ColumnProfile(name, signature);
+
+    for (int idx=0; idx<headers.size(); idx++) {
+      String header = headers.get(idx);
+      if (header == null) {
+        continue;
+      }
+
+      Med med = sf_medHeaders.get(header);
+      if (med != null) {
+        profile.m_medColumns.put(med, idx);
+      }
+
+      header = header.trim().toLowerCase();
+      Column column = sf_exactRules.get(header);
+
+      BitSet found = sf_keywordMatcher.match(header);
+      for (int i=0; i<sf_keywordRules.size(); i++) {
+        Column rule = sf_keywordRules.get(i);
+        if (column != null && column.ordinal() < rule.ordinal()) {
+          // the exact match comes first
+          break;
+        }
+        if (matches(rule, sf_keywordRuleTerms.get(i), found)) {
+          column = rule;
+          break;
+        }
+      }
+
+      if (column != null) {
+        profile.setIndex(column, idx);
+      }
+    }
+    return profile;
+  }
+
+  private static boolean matches(Column rule, int[] terms, BitSet found) {
+    if (rule.getMatch() == Column.Match.CONTAINS_NOT) {
+      if (!found.get(terms[0])) {
+        return false;
+      }
+      for (int i=1; i<terms.length; i++) {
+        if (found.get(terms[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    for (int term : terms) {
+      if (!found.get(term)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Makes a hash of the header row that's the same for any two identical header rows.
+   */
+  private static String makeSignature(List<String> headers) {
+    StringBuilder sb = new StringBuilder();
+    for (String header : headers) {
+      sb.append(header == null ? "\u0001" : header).append('\u0000');
+    }
+    return hash(sb.toString());
+  }
+
+  /**
+   * Makes a hash of everything the matching depends on, so a change to any rule gives a different version.
+   */
+  private static String makeRulesVersion() {
+    StringBuilder sb = new StringBuilder();
+    for (Column column : Column.values()) {
+      sb.append(column.name()).append('\u0000').append(column.getMatch().name());
+      for (String term : column.getTerms()) {
+        sb.append('\u0000').append(term);
+      }
+      sb.append('\u0001');
+    }
+    for (Med med : Med.values()) {
+      sb.append(med.name()).append('\u0001');
+    }
+    return hash(sb.toString());
+  }
+
+  private static String hash(String text) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException("SHA-1 is not available", ex);
+    }
+
+    try {
+      digest.update(text.getBytes("UTF-8"));
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException("UTF-8 is not available", ex);
+    }
+
+    StringBuilder hash = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hash.append(String.format("%02x", b));
+    }
+    return hash.toString();
+  }
+
+  private void setIndex(Column column, int idx) {
+    if (column.isMultiple()) {
+      m_sampleSourceColumns.add(idx);
+    }
+    else {
+      m_columns.put(column, idx);
+    }
+  }
+
+  public String getName() {
+    return m_name;
+  }
+
+  public String getSignature() {
+    return m_signature;
+  }
+
+  /**
+   * Gets the index of the column the given field is in.
+   * @param column a field of the data sheet
+   * @return the 0-based column index, -1 if the field wasn't found
+   */
+  public int getIndex(Column column) {
+    Integer idx = m_columns.get(column);
+    return idx == null ? -1 : idx;
+  }
+
+  /**
+   * Gets the indexes of all the genotyping source columns.
+   * @return the 0-based column indexes
+   */
+  public Set<Integer> getSampleSourceColumns() {
+    return Collections.unmodifiableSet(m_sampleSourceColumns);
+  }
+
+  /**
+   * Gets the indexes of the columns that hold the status of each med.
+   * @return a map of med to 0-based column index
+   */
+  public Map<Med,Integer> getMedColumns() {
+    return Collections.unmodifiableMap(m_medColumns);
+  }
+
+
+  /**
+   * Saves this profile in the given directory as <code>name.profile</code>.  If a different profile already has
+   * that name, the start of the signature is added to the name.
+   */
+  private void save(File directory) {
+    File file = new File(directory, m_name + sf_extension);
+    if (file.exists()) {
+      m_name = m_name + "-" + m_signature.substring(0, 8);
+      file = new File(directory, m_name + sf_extension);
+    }
+
+    Properties props = new Properties();
+    props.setProperty("name", m_name);
+    props.setProperty("signature", m_signature);
+    props.setProperty("version", sf_version);
+    for (Map.Entry<Column,Integer> entry : m_columns.entrySet()) {
+      props.setProperty(entry.getKey().name(), entry.getValue().toString());
+    }
+    props.setProperty(Column.SAMPLE_SOURCE.name(), Joiner.on(',').join(m_sampleSourceColumns));
+    for (Map.Entry<Med,Integer> entry : m_medColumns.entrySet()) {
+      props.setProperty("med." + entry.getKey().name(), entry.getValue().toString());
+    }
+
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(file);
+      props.store(out, "ITPC column profile");
+      sf_logger.info("Saved column profile " + file);
+    }
+    catch (IOException ex) {
+      sf_logger.warn("Error saving column profile " + file, ex);
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  private static void loadProfiles(File directory) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    for (File file : files) {
+      if (!file.getName().endsWith(sf_extension)) {
+        continue;
+      }
+      try {
+        ColumnProfile profile = load(file);
+        if (profile != null) {
+          sf_profiles.put(profile.getSignature(), profile);
+        }
+      }
+      catch (Exception ex) {
+        sf_logger.warn("Ignoring bad column profile " + file, ex);
+      }
+    }
+  }
+
+  private static ColumnProfile load(File file) throws IOException {
+    Properties props = new Properties();
+    InputStream in = new FileInputStream(file);
+    try {
+      props.load(in);
+    }
+    finally {
+      IOUtils.closeQuietly(in);
+    }
+
+    if (!sf_version.equals(props.getProperty("version"))) {
+      sf_logger.info("Ignoring column profile made with other column rules: " + file);
+      return null;
+    }
+
+    ColumnProfile profile = new ColumnProfile(props.getProperty("name"), props.getProperty("signature"));
+    for (Column column : Column.values()) {
+      String value = props.getProperty(column.name());
+      if (StringUtils.isBlank(value)) {
+        continue;
+      }
+      for (String idx : value.split(",")) {
+        profile.setIndex(column, Integer.parseInt(idx.trim()));
+      }
+    }
+    for (Med med : Med.values()) {
+      String value = props.getProperty("med." + med.name());
+      if (value != null) {
+        profile.m_medColumns.put(med, Integer.parseInt(value.trim()));
+      }
+    }
+    return profile;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import org.apache.log4j.Logger;
+import util.MappedDelimitedIterator;
+
+import java.io.File;
+
+
+/**
+ * A source of ITPC subjects from the "Combined_Data" sheet exported as delimited text.  Files ending in .csv are
+ * read as comma separated, anything else as tab separated.  The file has the same layout as the sheet: a header
+ * row, a legend row, then one row per subject.
+ * <br/>
+ * The file is memory-mapped and only the columns that get parsed into a {@link Subject} are ever decoded.  No POI
+ * classes are used at all, the summary sheets go to a separate {@link SummaryWorkbook}.  Since there's no sheet to
+ * write to, calculated columns are not written back, they can only go to a {@link DeltaOutput}.
+ *
+ * @author Ryan Whaley
+ */
+public class DelimitedSubjectSource extends AbstractSubjectSource {
+  private static final Logger sf_logger = Logger.getLogger(DelimitedSubjectSource.class);
+
+  private File m_inputFile;
+
+
+  /**
+   * Constructor for a delimited text export of the ITPC data sheet.
+   * @param file a .csv, .tsv or .txt file
+   * @throws Exception can occur from file I/O or if there is no header row
+   */
+  public DelimitedSubjectSource(File file) throws Exception {
+    if (file == null || !isDelimitedFile(file)) {
+      throw new Exception("File not in right format: " + file);
+    }
+
+    m_inputFile = file;
+    sf_logger.info("Using input file: " + m_inputFile);
+
+    char delimiter = file.getName().toLowerCase().endsWith(".csv") ? ',' : '\t';
+    try {
+      setSampleIterator(new MappedDelimitedIterator(file, delimiter));
+      parseColumnIndexes(getCurrentDataRow());
+
+      skipNext(); // skip header row
+      skipNext(); // skip legend row
+    }
+    catch (Exception ex) {
+      close();
+      throw new Exception("Error initializing ITPC data file", ex);
+    }
+  }
+
+  /**
+   * Checks whether the given file looks like a delimited text file, based on its extension.
+   * @param file a file
+   * @return true if the file ends in .csv, .tsv or .txt
+   */
+  public static boolean isDelimitedFile(File file) {
+    String name = file.getName().toLowerCase();
+    return name.endsWith(".csv") || name.endsWith(".tsv") || name.endsWith(".txt");
+  }
+
+  public File getInputFile() {
+    return m_inputFile;
+  }
+
+  public void writeSubjectCalculatedColumns(int rowIndex, SubjectEvaluation evaluation) {
+    // nowhere else to write them
+    writeDelta(rowIndex, evaluation);
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.util.List;
+
+
+/**
+ * Writes just the calculated columns of each Subject instead of a whole copy of the input workbook.  There are two
+ * tab separated files:
+ * <ul>
+ * <li>the results, with a header row and then the subject ID and calculated column values of every Subject</li>
+ * <li>the changes, with one row for each calculated value that's different from what the input file already had
+ * in that column, the same changes that get logged when they're written back to the workbook</li>
+ * </ul>
+ * Values with tabs, line breaks or quotes in them are wrapped in double quotes, so both files read back as the
+ * same values with {@link util.MappedDelimitedIterator} or a spreadsheet.
+ *
+ * @author Ryan Whaley
+ */
+public class DeltaOutput implements Closeable {
+  private final File m_resultsFile;
+  private final File m_changesFile;
+  private Writer m_results;
+  private Writer m_changes;
+  private List<String> m_titles;
+  private int m_rowCount = 0;
+  private int m_changeCount = 0;
+
+  /**
+   * Starts the results and changes files.
+   * @param resultsFile the file to write the calculated values to
+   * @param changesFile the file to write the changed values to
+   * @param titles the titles of the calculated columns, in order
+   * @throws IOException if the files can't be written
+   */
+  public DeltaOutput(File resultsFile, File changesFile, List<String> titles) throws IOException {
+    m_resultsFile = resultsFile;
+    m_changesFile = changesFile;
+    m_titles = titles;
+    try {
+      m_results = openWriter(resultsFile);
+      m_changes = openWriter(changesFile);
+
+      writeField(m_results, "Subject ID");
+      for (String title : titles) {
+        m_results.write('\t');
+        writeField(m_results, title);
+      }
+      m_results.write('\n');
+
+      m_changes.write("Row\tSubject ID\tColumn\tOld Value\tNew Value\n");
+    }
+    catch (IOException ex) {
+      close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Writes the calculated values of one Subject.
+   * @param rowIndex the 0-based index of the Subject's row in the input
+   * @param subjectId the ID of the Subject
+   * @param oldValues what the input had in each calculated column, null for blank
+   * @param newValues the calculated values, null for no value
+   * @throws IOException if the files can't be written
+   */
+  public void write(int rowIndex, String subjectId, String[] oldValues, String[] newValues) throws IOException {
+    writeField(m_results, subjectId);
+    for (String value : newValues) {
+      m_results.write('\t');
+      writeField(m_results, value);
+    }
+    m_results.write('\n');
+    m_rowCount++;
+
+    for (int i=0; i<newValues.length; i++) {
+      // a missing new value doesn't replace anything, just like writing it back to the sheet
+      if (newValues[i] != null && oldValues[i] != null && !oldValues[i].equals(newValues[i])) {
+        m_changes.write(Integer.toString(rowIndex+1));
+        m_changes.write('\t');
+        writeField(m_changes, subjectId);
+        m_changes.write('\t');
+        writeField(m_changes, m_titles.get(i));
+        m_changes.write('\t');
+        writeField(m_changes, oldValues[i]);
+        m_changes.write('\t');
+        writeField(m_changes, newValues[i]);
+        m_changes.write('\n');
+        m_changeCount++;
+      }
+    }
+  }
+
+  public File getResultsFile() {
+    return m_resultsFile;
+  }
+
+  public File getChangesFile() {
+    return m_changesFile;
+  }
+
+  /**
+   * Gets the number of Subjects written so far.
+   * @return the number of result rows
+   */
+  public int getRowCount() {
+    return m_rowCount;
+  }
+
+  /**
+   * Gets the number of calculated values that were different from the input so far.
+   * @return the number of change rows
+   */
+  public int getChangeCount() {
+    return m_changeCount;
+  }
+
+  /**
+   * Finishes both files.
+   * @throws IOException if the last of the files can't be written
+   */
+  public void close() throws IOException {
+    try {
+      if (m_results != null) {
+        m_results.close();
+      }
+      if (m_changes != null) {
+        m_changes.close();
+      }
+    }
+    finally {
+      IOUtils.closeQuietly(m_results);
+      IOUtils.closeQuietly(m_changes);
+      m_results = null;
+      m_changes = null;
+    }
+  }
+
+  /**
+   * Closes the files and deletes them, for when the parse fails part way through and the files would only hold some
+   * of the Subjects.
+   */
+  public void abort() {
+    try {
+      close();
+    }
+    catch (IOException ex) {
+      // they're getting deleted anyway
+    }
+    m_resultsFile.delete();
+    m_changesFile.delete();
+  }
+
+  private static Writer openWriter(File file) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+  }
+
+  private static void writeField(Writer writer, String value) throws IOException {
+    if (value == null) {
+      return;
+    }
+    boolean quote = false;
+    for (int i=0; i<value.length() && !quote; i++) {
+      char c = value.charAt(i);
+      quote = c == '\t' || c == '\n' || c == '\r' || c == '"';
+    }
+    if (!quote) {
+      writer.write(value);
+      return;
+    }
+    writer.write('"');
+    writer.write(value.replace("\"", "\"\""));
+    writer.write('"');
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import export.InsertExport;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.log4j.Logger;
+import util.*;
+
+import java.io.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Keeps the {@link SubjectEvaluation} of every data row in a file between runs, keyed by the row's
+ * {@link SubjectSource#fingerprintRow(RowView) fingerprint}, so rows that haven't changed since the last run don't
+ * have to be parsed and evaluated again.
+ * <br/>
+ * The evaluations from the last run are loaded when the store is opened.  Each row of this run is looked up by its
+ * fingerprint and only evaluated if it isn't found.  Saving the store writes the evaluations of this run's rows, so
+ * rows that have since been changed or removed drop out.
+ * <br/>
+ * The file is thrown away if it was written by a different version of the rules.  The rules are identified by a digest
+ * of the compiled classes that turn a row into an evaluation (see {@link #sf_ruleClasses}), so any change to them,
+ * and any rebuild with a different compiler, starts over with an empty store.  {@link #sf_version} is the version of
+ * the file layout and only has to go up when that changes.
+ *
+ * @author Ryan Whaley
+ */
+public class EvaluationStore {
+  private static final Logger sf_logger = Logger.getLogger(EvaluationStore.class);
+  private static final int sf_magic = 0x49545045; // "ITPE"
+  private static final int sf_version = 2;
+  /** the classes that parse a row and evaluate the subject in it, along with the classes nested in them */
+  private static final Class<?>[] sf_ruleClasses = new Class<?>[] {
+      SubjectParser.class, AbstractSubjectSource.class, ItpcSheet.class, DelimitedSubjectSource.class, Column.class,
+      Subject.class, SubjectEvaluation.class, Genotype.class, Allele.class, GenotypeCaller.class, VariantAlleles.class,
+      CellValue.class, ItpcUtils.class, Med.class, StringPair.class, Value.class, InsertExport.class,
+  };
+  private static byte[] s_rulesDigest = null;
+
+  private final File m_file;
+  private final Map<Key,SubjectEvaluation> m_previous;
+  private final ConcurrentMap<Key,SubjectEvaluation> m_current = new ConcurrentHashMap<Key,SubjectEvaluation>();
+  private final AtomicInteger m_reusedCount = new AtomicInteger();
+  private final AtomicInteger m_evaluatedCount = new AtomicInteger();
+
+  private EvaluationStore(File file, Map<Key,SubjectEvaluation> previous) {
+    m_file = file;
+    m_previous = previous;
+  }
+
+  /**
+   * Opens a store, loading the evaluations from the last run if the file exists and was written by this version of
+   * the rules.
+   * @param file the file the evaluations are kept in
+   * @return the store
+   * @throws IOException if the file can't be read
+   */
+  public static EvaluationStore open(File file) throws IOException {
+    Map<Key,SubjectEvaluation> previous = new HashMap<Key,SubjectEvaluation>();
+    if (!file.exists()) {
+      return new EvaluationStore(file, previous);
+    }
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    try {
+      if (in.readInt() != sf_magic) {
+        throw new IOException("Not an evaluation store: " + file);
+      }
+      if (in.readInt() != sf_version || !Arrays.equals(readBytes(in), getRulesDigest())) {
+        sf_logger.info("Evaluations in " + file + " are from a different version of the rules, evaluating every row");
+        return new EvaluationStore(file, previous);
+      }
+      int count = in.readInt();
+      for (int i=0; i<count; i++) {
+        previous.put(new Key(readBytes(in)), SubjectEvaluation.readFrom(in));
+      }
+    }
+    finally {
+      IOUtils.closeQuietly(in);
+    }
+    return new EvaluationStore(file, previous);
+  }
+
+  public File getFile() {
+    return m_file;
+  }
+
+  /**
+   * Gets the evaluation of a data row, reusing the one from the last run if the row hasn't changed.  This is safe to
+   * call from several threads at once.
+   * @param source the source the row came from
+   * @param fields the data row
+   * @return the evaluation of the row's Subject
+   */
+  public SubjectEvaluation evaluate(SubjectSource source, RowView fields) {
+    Key key = new Key(source.fingerprintRow(fields));
+    SubjectEvaluation evaluation = m_previous.get(key);
+    if (evaluation != null) {
+      m_reusedCount.incrementAndGet();
+    }
+    else {
+      evaluation = new SubjectEvaluation(source.parseSubject(fields));
+      m_evaluatedCount.incrementAndGet();
+    }
+    m_current.put(key, evaluation);
+    return evaluation;
+  }
+
+  /**
+   * Gets the number of rows whose evaluation was reused from the last run.
+   * @return the number of rows that weren't evaluated
+   */
+  public int getReusedCount() {
+    return m_reusedCount.get();
+  }
+
+  /**
+   * Gets the number of rows that were new or had changed since the last run.
+   * @return the number of rows that were evaluated
+   */
+  public int getEvaluatedCount() {
+    return m_evaluatedCount.get();
+  }
+
+  /**
+   * Writes the evaluations of the rows seen in this run to the file, replacing the last run's.  The file is written
+   * next to the old one first so a failed save leaves the old one in place.
+   * @throws IOException if the file can't be written
+   */
+  public void save() throws IOException {
+    File tempFile = new File(m_file.getAbsolutePath() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+    try {
+      out.writeInt(sf_magic);
+      out.writeInt(sf_version);
+      writeBytes(out, getRulesDigest());
+      out.writeInt(m_current.size());
+      for (Map.Entry<Key,SubjectEvaluation> entry : m_current.entrySet()) {
+        writeBytes(out, entry.getKey().m_fingerprint);
+        entry.getValue().writeTo(out);
+      }
+      out.close();
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+    }
+
+    if (m_file.exists() && !m_file.delete()) {
+      throw new IOException("Can't replace " + m_file);
+    }
+    if (!tempFile.renameTo(m_file)) {
+      throw new IOException("Can't rename " + tempFile + " to " + m_file);
+    }
+  }
+
+  private static byte[] readBytes(DataInput in) throws IOException {
+    byte[] bytes = new byte[in.readUnsignedByte()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    out.writeByte(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Gets a SHA-1 digest of the class files of the {@link #sf_ruleClasses}, which identifies the version of the rules
+   * that made the evaluations in a store.
+   * @return the digest of the rule classes
+   */
+  static synchronized byte[] getRulesDigest() {
+    if (s_rulesDigest == null) {
+      MessageDigest digest;
+      try {
+        digest = MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException ex) {
+        throw new IllegalStateException("SHA-1 is not available", ex);
+      }
+
+      OutputStream out = new DigestOutputStream(new NullOutputStream(), digest);
+      try {
+        for (Class<?> ruleClass : sf_ruleClasses) {
+          digestClass(ruleClass, out);
+        }
+      }
+      catch (IOException ex) {
+        throw new IllegalStateException("Can't read the rule classes", ex);
+      }
+      s_rulesDigest = digest.digest();
+    }
+    return s_rulesDigest;
+  }
+
+  private static void digestClass(Class<?> cls, OutputStream out) throws IOException {
+    String name = cls.getName();
+    InputStream in = cls.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class");
+    if (in == null) {
+      throw new IOException("Can't find the class file of " + name);
+    }
+    try {
+      IOUtils.copy(in, out);
+    }
+    finally {
+      IOUtils.closeQuietly(in);
+    }
+    for (Class<?> nested : cls.getDeclaredClasses()) {
+      digestClass(nested, out);
+    }
+  }
+
+
+  /**
+   * A row fingerprint as a map key
+   */
+  private static class Key {
+    private final byte[] m_fingerprint;
+    private final int m_hashCode;
+
+    Key(byte[] fingerprint) {
+      m_fingerprint = fingerprint;
+      m_hashCode = Arrays.hashCode(fingerprint);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && Arrays.equals(m_fingerprint, ((Key)o).m_fingerprint);
+    }
+
+    @Override
+    public int hashCode() {
+      return m_hashCode;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import com.google.common.base.Joiner;
+import util.Med;
+import util.RowView;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+
+/**
+ * Turns sets of named fields, like the ones a web service gets, into {@link Subject}s the same way a row of the data
+ * sheet is.  It has no file and no rows of its own, so it only parses and never writes anything.
+ * <br/>
+ * The fields are named after the {@link Column}s, like <code>SUBJECT_ID</code> or <code>RS1065852</code>, and the
+ * {@link Med}s, like <code>Paroxetine</code>, ignoring case.  They hold what the data sheet would have in those
+ * columns.  Behind the scenes each field gets a column of a made-up header row that matches it, so the Subjects are
+ * parsed by {@link #parseSubject(RowView)} like any other.
+ *
+ * @author Ryan Whaley
+ */
+public class FieldSubjectParser extends SubjectParser {
+  /** the column of the made-up header row for each field name, upper case */
+  private final Map<String,Integer> m_fieldColumns = new LinkedHashMap<String,Integer>();
+
+  public FieldSubjectParser() throws Exception {
+    List<String> headers = new ArrayList<String>();
+    Set<Med> meds = EnumSet.noneOf(Med.class);
+    for (Column column : Column.values()) {
+      Med med = findMed(column.name());
+      if (med != null) {
+        // the med status columns are matched on the exact name of the med
+        meds.add(med);
+        addField(headers, column.name(), med.name());
+      }
+      else if (column.getMatch() == Column.Match.CONTAINS) {
+        addField(headers, column.name(), Joiner.on(' ').join(column.getTerms()));
+      }
+      else {
+        addField(headers, column.name(), column.getTerms().get(0));
+      }
+    }
+    for (Med med : Med.values()) {
+      if (!meds.contains(med)) {
+        addField(headers, med.name(), med.name());
+      }
+    }
+    parseColumnIndexes(headers);
+
+    for (Column column : Column.values()) {
+      int idx = m_fieldColumns.get(column.name());
+      if (column.isMultiple() ? !sampleSourceIdxs.contains(idx) : getColumnIndex(column) != idx) {
+        throw new IllegalStateException("Header for " + column + " doesn't match it");
+      }
+    }
+  }
+
+  private void addField(List<String> headers, String field, String header) {
+    m_fieldColumns.put(field.toUpperCase(), headers.size());
+    headers.add(header);
+  }
+
+  private static Med findMed(String name) {
+    for (Med med : Med.values()) {
+      if (med.name().equalsIgnoreCase(name)) {
+        return med;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the names of all the fields a Subject can have.
+   * @return the field names, upper case
+   */
+  public Set<String> getFieldNames() {
+    return Collections.unmodifiableSet(m_fieldColumns.keySet());
+  }
+
+  /**
+   * Checks that every field is one a Subject can have, without parsing anything.
+   * @param fields the values of the fields, keyed by field name
+   * @throws IllegalArgumentException if one of the fields isn't known
+   */
+  public void checkFields(Map<String,?> fields) {
+    for (String field : fields.keySet()) {
+      if (!m_fieldColumns.containsKey(field.toUpperCase())) {
+        throw new IllegalArgumentException("Unknown field: " + field);
+      }
+    }
+  }
+
+  /**
+   * Makes a Subject from named fields.  Numbers are used as written, lists are joined with commas, and fields that
+   * are left out are blank.  This is safe to call from several threads at once.
+   * @param fields the values of the fields, keyed by field name
+   * @return a new Subject
+   * @throws IllegalArgumentException if one of the fields isn't known
+   */
+  public Subject parseFields(Map<String,?> fields) {
+    final String[] values = new String[m_fieldColumns.size()];
+    Arrays.fill(values, "");
+    for (Map.Entry<String,?> entry : fields.entrySet()) {
+      Integer idx = m_fieldColumns.get(entry.getKey().toUpperCase());
+      if (idx == null) {
+        throw new IllegalArgumentException("Unknown field: " + entry.getKey());
+      }
+      values[idx] = toText(entry.getValue());
+    }
+
+    return parseSubject(new RowView() {
+      public int size() {
+        return values.length;
+      }
+
+      public String getString(int col) {
+        return col < values.length ? values[col] : null;
+      }
+    });
+  }
+
+  private static String toText(Object value) {
+    if (value == null) {
+      return "";
+    }
+    if (value instanceof BigDecimal) {
+      return ((BigDecimal)value).toPlainString();
+    }
+    if (value instanceof Collection) {
+      return Joiner.on(',').useForNull("").join((Collection<?>)value);
+    }
+    return value.toString();
+  }
+
+}
@@ -38,12 +38,9 @@ package org.pharmgkb;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
-import util.ItpcUtils;
 import util.StringPair;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Created by IntelliJ IDEA.
@@ -58,78 +55,145 @@ public class Genotype extends StringPair {
   public static final String POOR = "Poor";
   public static final String UNKNOWN = "Unknown";
 
-  private static final Pattern sf_numberPattern = Pattern.compile("\\D*(\\d+)\\D*");
-  private static final Logger sf_logger = Logger.getLogger(Genotype.class);
+  /**
+   * Metabolizer groups a genotype can be in based on the metabolizer classes of its alleles
+   */
+  public enum MetabolizerGroup {
+    Extensive(EXTENSIVE),
+    Intermediate(INTERMEDIATE),
+    Poor(POOR),
+    Unknown(UNKNOWN);
 
-  private static final Map<String,Metabolizer> metabMap = new HashMap<String,Metabolizer>();
-  static {
-    metabMap.put("*3",Metabolizer.PM);
-    metabMap.put("*4",Metabolizer.PM);
-    metabMap.put("*5",Metabolizer.PM);
-    metabMap.put("*6",Metabolizer.PM);
-    metabMap.put("*7",Metabolizer.PM);
-    metabMap.put("*8",Metabolizer.PM);
-    metabMap.put("*11",Metabolizer.PM);
-    metabMap.put("*12",Metabolizer.PM);
-    metabMap.put("*13",Metabolizer.PM);
-    metabMap.put("*14",Metabolizer.PM);
-    metabMap.put("*15",Metabolizer.PM);
-    metabMap.put("*16",Metabolizer.PM);
-    metabMap.put("*18",Metabolizer.PM);
-    metabMap.put("*19",Metabolizer.PM);
-    metabMap.put("*20",Metabolizer.PM);
-    metabMap.put("*40",Metabolizer.PM);
-    metabMap.put("*42",Metabolizer.PM);
-    metabMap.put("*44",Metabolizer.PM);
-    metabMap.put("*56",Metabolizer.PM);
-    metabMap.put("*38",Metabolizer.PM);
-    metabMap.put("*4XN",Metabolizer.PM);
-
-    metabMap.put("*9",Metabolizer.IM);
-    metabMap.put("*9XN",Metabolizer.IM);
-    metabMap.put("*10",Metabolizer.IM);
-    metabMap.put("*10XN",Metabolizer.IM);
-    metabMap.put("*17",Metabolizer.IM);
-    metabMap.put("*29",Metabolizer.IM);
-    metabMap.put("*37",Metabolizer.IM);
-    metabMap.put("*41",Metabolizer.IM);
-    metabMap.put("*41XN",Metabolizer.IM);
-    metabMap.put("*45",Metabolizer.IM);
-    metabMap.put("*46",Metabolizer.IM);
-
-    metabMap.put("*1",Metabolizer.EM);
-    metabMap.put("*2",Metabolizer.EM);
-    metabMap.put("*2A",Metabolizer.EM);
-    metabMap.put("*33",Metabolizer.EM);
-    metabMap.put("*35",Metabolizer.EM);
-    metabMap.put("*39",Metabolizer.EM);
-    metabMap.put("*43",Metabolizer.EM);
-
-    metabMap.put("*1XN",Metabolizer.UM);
-    metabMap.put("*2XN",Metabolizer.UM);
-    metabMap.put("*35XN",Metabolizer.UM);
-    metabMap.put("*39XN",Metabolizer.UM);
-
-    metabMap.put("Unknown", Metabolizer.Unknown);
-  }
+    private final String m_text;
 
-  private static final Map<Metabolizer,Float> scoreMap = new HashMap<Metabolizer,Float>();
-  static {
-    scoreMap.put(Metabolizer.PM, 0f);
-    scoreMap.put(Metabolizer.IM, 0.5f);
-    scoreMap.put(Metabolizer.EM, 1f);
-    scoreMap.put(Metabolizer.UM, 2f);
+    MetabolizerGroup(String text) {
+      m_text = text;
+    }
+
+    public String getText() {
+      return m_text;
+    }
   }
 
-  private static final Map<Metabolizer,Integer> priorityMap = new HashMap<Metabolizer,Integer>();
-  static {
-    priorityMap.put(Metabolizer.PM,1); // top priority
-    priorityMap.put(Metabolizer.IM,2);
-    priorityMap.put(Metabolizer.EM,3);
-    priorityMap.put(Metabolizer.UM,4);
-    priorityMap.put(Metabolizer.Unknown, 5); // bottom priority
+  /**
+   * The metabolizer status of a genotype: one for every unordered pair of allele metabolizer classes, one for each
+   * class on its own, and Unknown for a genotype with no alleles.  The text, group and activity score of each are
+   * worked out once here so a Genotype only has to look its status up.
+   */
+  public enum MetabolizerStatus {
+    Unknown(null, null, MetabolizerGroup.Unknown),
+    EM(Metabolizer.EM, null, MetabolizerGroup.Unknown),
+    IM(Metabolizer.IM, null, MetabolizerGroup.Unknown),
+    PM(Metabolizer.PM, null, MetabolizerGroup.Unknown),
+    UM(Metabolizer.UM, null, MetabolizerGroup.Unknown),
+    EM_EM(Metabolizer.EM, Metabolizer.EM, MetabolizerGroup.Extensive),
+    EM_IM(Metabolizer.EM, Metabolizer.IM, MetabolizerGroup.Intermediate),
+    EM_PM(Metabolizer.EM, Metabolizer.PM, MetabolizerGroup.Intermediate),
+    EM_UM(Metabolizer.EM, Metabolizer.UM, MetabolizerGroup.Extensive),
+    EM_Unknown(Metabolizer.EM, Metabolizer.Unknown, MetabolizerGroup.Unknown),
+    IM_IM(Metabolizer.IM, Metabolizer.IM, MetabolizerGroup.Intermediate),
+    IM_PM(Metabolizer.IM, Metabolizer.PM, MetabolizerGroup.Intermediate),
+    IM_UM(Metabolizer.IM, Metabolizer.UM, MetabolizerGroup.Extensive),
+    IM_Unknown(Metabolizer.IM, Metabolizer.Unknown, MetabolizerGroup.Unknown),
+    PM_PM(Metabolizer.PM, Metabolizer.PM, MetabolizerGroup.Poor),
+    PM_UM(Metabolizer.PM, Metabolizer.UM, MetabolizerGroup.Intermediate),
+    PM_Unknown(Metabolizer.PM, Metabolizer.Unknown, MetabolizerGroup.Unknown),
+    UM_UM(Metabolizer.UM, Metabolizer.UM, MetabolizerGroup.Extensive),
+    UM_Unknown(Metabolizer.UM, Metabolizer.Unknown, MetabolizerGroup.Unknown),
+    Unknown_Unknown(Metabolizer.Unknown, Metabolizer.Unknown, MetabolizerGroup.Unknown);
+
+    private static final int sf_classCount = Metabolizer.values().length;
+    private static final MetabolizerStatus[] sf_singles = new MetabolizerStatus[sf_classCount];
+    private static final MetabolizerStatus[] sf_pairs = new MetabolizerStatus[sf_classCount*sf_classCount];
+    static {
+      for (MetabolizerStatus status : values()) {
+        if (status.m_first != null && status.m_second == null) {
+          sf_singles[status.m_first.ordinal()] = status;
+        }
+        else if (status.m_first != null) {
+          sf_pairs[status.m_first.ordinal()*sf_classCount + status.m_second.ordinal()] = status;
+          sf_pairs[status.m_second.ordinal()*sf_classCount + status.m_first.ordinal()] = status;
+        }
+      }
+      // an Unknown allele on its own reads the same as no alleles at all
+      sf_singles[Metabolizer.Unknown.ordinal()] = Unknown;
+    }
+
+    private final Metabolizer m_first;
+    private final Metabolizer m_second;
+    private final MetabolizerGroup m_group;
+    private final String m_text;
+    private final Float m_score;
+
+    MetabolizerStatus(Metabolizer first, Metabolizer second, MetabolizerGroup group) {
+      m_first = first;
+      m_second = second;
+      m_group = group;
+
+      if (first == null) {
+        m_text = Genotype.getText(Metabolizer.Unknown);
+      }
+      else if (second == null) {
+        m_text = Genotype.getText(first);
+      }
+      else {
+        String[] texts = new String[]{Genotype.getText(first), Genotype.getText(second)};
+        Arrays.sort(texts, String.CASE_INSENSITIVE_ORDER);
+        m_text = texts[0] + "/" + texts[1];
+      }
+
+      if (second != null && Allele.getScore(first) != null && Allele.getScore(second) != null) {
+        m_score = Allele.getScore(first) + Allele.getScore(second);
+      }
+      else {
+        m_score = null;
+      }
+    }
+
+    /**
+     * Gets the status of a genotype with one allele
+     * @param metabolizer the metabolizer class of the allele, null if it has none
+     * @return a MetabolizerStatus
+     */
+    public static MetabolizerStatus forAllele(Metabolizer metabolizer) {
+      return metabolizer == null ? Unknown : sf_singles[metabolizer.ordinal()];
+    }
+
+    /**
+     * Gets the status of a genotype with two alleles, in either order
+     * @param first the metabolizer class of one allele, null if it has none
+     * @param second the metabolizer class of the other allele, null if it has none
+     * @return a MetabolizerStatus
+     */
+    public static MetabolizerStatus forAlleles(Metabolizer first, Metabolizer second) {
+      int firstIdx = (first == null ? Metabolizer.Unknown : first).ordinal();
+      int secondIdx = (second == null ? Metabolizer.Unknown : second).ordinal();
+      return sf_pairs[firstIdx*sf_classCount + secondIdx];
+    }
+
+    /**
+     * The status as it's written out, like "EM/PM"
+     * @return the status text
+     */
+    public String getText() {
+      return m_text;
+    }
+
+    public MetabolizerGroup getGroup() {
+      return m_group;
+    }
+
+    /**
+     * The activity score of a genotype with this status
+     * @return the sum of the allele scores, null unless both alleles have a scored metabolizer class
+     */
+    public Float getScore() {
+      return m_score;
+    }
   }
 
+  private static final Logger sf_logger = Logger.getLogger(Genotype.class);
+
   public Genotype() {}
 
   public Genotype(String string) {
@@ -146,21 +210,25 @@ public class Genotype extends StringPair {
     addString(s2);
   }
 
+  /**
+   * Makes a copy of this genotype with the same alleles in the same order.
+   * @return a new Genotype
+   */
+  public Genotype copy() {
+    Genotype copy = new Genotype();
+    copy.getStrings().addAll(getStrings());
+    return copy;
+  }
+
   public boolean isValid(String string) {
-    return metabMap.keySet().contains(ItpcUtils.alleleStrip(string)) || string.equals("Unknown");
+    return Allele.forText(string).isValid();
   }
 
   public Float getScore() {
-    Float score = null;
-
-    if (!this.isUncertain()) {
-      score = 0f;
-      for (String allele : this.getStrings()) {
-        score += scoreMap.get(metabMap.get(ItpcUtils.alleleStrip(allele)));
-      }
+    if (this.isUncertain()) {
+      return null;
     }
-
-    return score;
+    return getStatus().getScore();
   }
 
   /**
@@ -197,34 +265,18 @@ public class Genotype extends StringPair {
   protected void reorder() {
     if (getStrings().size()==2) {
 
-      try {
-        Integer int0, int1;
-        Matcher matcher = sf_numberPattern.matcher(getStrings().get(0));
-        if (matcher.find()) {
-          int0 = Integer.parseInt(matcher.group(1));
-        }
-        else {
-          return;
-        }
-
-        matcher.reset(getStrings().get(1));
-        if (matcher.find()) {
-          int1 = Integer.parseInt(matcher.group(1));
-        }
-        else {
-          return;
-        }
-
-        if (int0>int1) {
-          Collections.reverse(getStrings());
-        }
-      }
-      catch (Exception ex) {
+      int int0 = Allele.forText(getStrings().get(0)).getNumber();
+      int int1 = Allele.forText(getStrings().get(1)).getNumber();
+      if (int0 < 0 || int1 < 0) {
         if (sf_logger.isDebugEnabled()) {
           sf_logger.debug("Error reordering: " + getStrings());
         }
+        return;
       }
 
+      if (int0>int1) {
+        Collections.reverse(getStrings());
+      }
     }
   }
 
@@ -243,52 +295,48 @@ public class Genotype extends StringPair {
     }
   }
 
-  public String getMetabolizerStatus() {
-    if (this.getStrings().isEmpty()) {
-      return getText(Metabolizer.Unknown);
+  /**
+   * Gets the metabolizer status of this genotype from the metabolizer classes of its alleles.  A genotype with more
+   * than two alleles doesn't have a status of its own, so it gets Unknown, which has the Unknown group and no score.
+   * @return a MetabolizerStatus, never null
+   */
+  public MetabolizerStatus getStatus() {
+    switch (this.getStrings().size()) {
+      case 0:
+        return MetabolizerStatus.Unknown;
+      case 1:
+        return MetabolizerStatus.forAllele(metabolizer(this.getStrings().get(0)));
+      case 2:
+        return MetabolizerStatus.forAlleles(metabolizer(this.getStrings().get(0)), metabolizer(this.getStrings().get(1)));
+      default:
+        return MetabolizerStatus.Unknown;
     }
+  }
 
-    List<String> genotypes = new ArrayList<String>();
-    for (String allele : this.getStrings()) {
-      if (allele != null && !allele.equals("Unknown") && !metabMap.keySet().contains(ItpcUtils.alleleStrip(allele))) {
-        sf_logger.warn("Can't find map for allele: " + ItpcUtils.alleleStrip(allele));
-      }
-      genotypes.add(getText(metabMap.get(ItpcUtils.alleleStrip(allele))));
+  private static Metabolizer metabolizer(String string) {
+    Allele allele = Allele.forText(string);
+    if (allele.getMetabolizer() == null && !string.equals("Unknown")) {
+      sf_logger.warn("Can't find map for allele: " + allele.getName());
     }
+    return allele.getMetabolizer();
+  }
 
-    StringBuilder genoBuilder = new StringBuilder();
-    Collections.sort(genotypes, String.CASE_INSENSITIVE_ORDER);
-    for (int x = 0; x < genotypes.size(); x++) {
-      genoBuilder.append(genotypes.get(x));
-      if (x != genotypes.size() - 1) {
-        genoBuilder.append("/");
+  public String getMetabolizerStatus() {
+    if (this.getStrings().size() > 2) {
+      // no status covers this many alleles, so list the class of every one of them
+      List<String> texts = new ArrayList<String>();
+      for (String allele : this.getStrings()) {
+        texts.add(getText(metabolizer(allele)));
       }
+      Collections.sort(texts, String.CASE_INSENSITIVE_ORDER);
+      return StringUtils.join(texts, "/");
     }
-    return genoBuilder.toString();
+    return getStatus().getText();
   }
-  
-  public String getMetabolizerGroup() {
-    String group = "Unknown";
 
+  public String getMetabolizerGroup() {
     // modify genoMetabStatusIdx description field if this changes
-    if (getMetabolizerStatus().equals("EM/EM")
-            || getMetabolizerStatus().equals("EM/UM")
-            || getMetabolizerStatus().equals("IM/UM")
-            || getMetabolizerStatus().equals("UM/UM")) {
-      group = "Extensive";
-    }
-    else if (getMetabolizerStatus().equals("EM/PM")
-            || getMetabolizerStatus().equals("IM/IM")
-            || getMetabolizerStatus().equals("IM/PM")
-            || getMetabolizerStatus().equals("PM/UM")
-            || getMetabolizerStatus().equals("EM/IM")) {
-      group = "Intermediate";
-    }
-    else if (getMetabolizerStatus().equals("PM/PM")) {
-      group = "Poor";
-    }
-
-    return group;
+    return getStatus().getGroup().getText();
   }
 
   public boolean isHeteroDeletion() {
@@ -300,7 +348,7 @@ public class Genotype extends StringPair {
   }
 
   private float priority(String allele) {
-    return priorityMap.get(metabMap.get(ItpcUtils.alleleStrip(allele)));
+    return Allele.forText(allele).getPriority();
   }
 
   public boolean is(Metabolizer status1, Metabolizer status2) {
@@ -318,7 +366,7 @@ public class Genotype extends StringPair {
   protected int count(Metabolizer status) {
     int count = 0;
     for (String element : getStrings()) {
-      if (metabMap.get(ItpcUtils.alleleStrip(element)) == status) count++;
+      if (Allele.forText(element).getMetabolizer() == status) count++;
     }
     return count;
   }
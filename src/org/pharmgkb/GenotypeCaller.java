@@ -0,0 +1,310 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Looks up the PharmGKB genotype call of a {@link Subject} by the state of its seven SNPs and its *5 deletion.
+ * <br/>
+ * The calling rules in {@link Subject#calculateGenotypePgkb()} only ask each SNP about a few bases (rs4986774 about
+ * "-" and "a", rs16947 about "c", "t" and "-", and so on), and only about how many of them there are.  So each SNP
+ * is reduced to the multiset of the bases it's asked about, with every other base and "Unknown" counted as the
+ * same "other" base, which leaves 10 to 15 states per SNP.  The states of all seven SNPs and the deletion are packed
+ * into a single int, and the rules are run once per key and remembered, up to {@link #sf_maxCalls} keys.
+ * <br/>
+ * SNPs with more than two alleles can't be packed and are called by running the rules directly.
+ * {@link #verify()} checks that the reduction is sound by calling every key every way it can be spelled.
+ *
+ * @author Ryan Whaley
+ */
+public class GenotypeCaller {
+  private static final Logger sf_logger = Logger.getLogger(GenotypeCaller.class);
+
+  /** the bases the rules ask about, per SNP, in the order of {@link #getVariants(Subject)} */
+  private static final String[][] sf_bases = new String[][] {
+      {"-", "a"},       // rs4986774
+      {"c", "t"},       // rs1065852
+      {"a", "g"},       // rs3892097
+      {"-", "t"},       // rs5030655
+      {"c", "t", "-"},  // rs16947
+      {"c", "t"},       // rs28371706
+      {"a", "g"},       // rs28371725
+  };
+  private static final int[] sf_stateCounts = new int[sf_bases.length];
+  private static final int sf_maxStates;
+  static {
+    int maxStates = 0;
+    for (int i=0; i<sf_bases.length; i++) {
+      // empty, one allele, or an unordered pair, counting the "other" base
+      int classes = sf_bases[i].length + 1;
+      sf_stateCounts[i] = 1 + classes + classes * (classes + 1) / 2;
+      maxStates = Math.max(maxStates, sf_stateCounts[i]);
+    }
+    sf_maxStates = maxStates;
+  }
+  /** the state of each possible allele pair byte, per SNP, see {@link VariantAlleles#getPair()} */
+  private static final int[][] sf_pairStates = new int[sf_bases.length][64];
+  static {
+    for (int i=0; i<sf_bases.length; i++) {
+      for (int pair=0; pair<64; pair++) {
+        sf_pairStates[i][pair] = getState(i, pair & 7, (pair >> 3) & 7);
+      }
+    }
+  }
+
+  /** the most calls to remember, a cohort only reaches a small part of the tens of millions of keys */
+  private static final int sf_maxCalls = 100000;
+  private static final ConcurrentMap<Integer,Genotype> sf_calls = new ConcurrentHashMap<Integer,Genotype>();
+
+  private GenotypeCaller() {
+  }
+
+  /**
+   * Calls the PharmGKB genotype of a subject.
+   * @param subject a subject
+   * @return a new Genotype, the same as the one the calling rules give for the subject
+   */
+  public static Genotype call(Subject subject) {
+    int key = getKey(subject);
+    if (key == -1) {
+      return subject.callGenotypePgkb();
+    }
+
+    Genotype call = sf_calls.get(key);
+    if (call == null) {
+      call = subject.callGenotypePgkb();
+      if (sf_calls.size() < sf_maxCalls) {
+        sf_calls.putIfAbsent(key, call);
+      }
+    }
+    return call.copy();
+  }
+
+  /**
+   * Gets the SNPs that go into the genotype call.
+   * @param subject a subject
+   * @return rs4986774, rs1065852, rs3892097, rs5030655, rs16947, rs28371706 and rs28371725
+   */
+  static VariantAlleles[] getVariants(Subject subject) {
+    return new VariantAlleles[] {
+        subject.getRs4986774(),
+        subject.getRs1065852(),
+        subject.getRs3892097(),
+        subject.getRs5030655(),
+        subject.getRs16947(),
+        subject.getRs28371706(),
+        subject.getRs28371725()
+    };
+  }
+
+  /**
+   * Packs the state of a subject's SNPs and deletion into a key.
+   * @param subject a subject
+   * @return the key, -1 if a SNP has more than two alleles
+   */
+  static int getKey(Subject subject) {
+    VariantAlleles[] variants = getVariants(subject);
+    long pairs = VariantAlleles.pack(variants);
+    if (pairs == -1) {
+      return -1;
+    }
+
+    int key = subject.getDeletion().ordinal();
+    for (int i=0; i<variants.length; i++) {
+      int pair = (int)(pairs >>> (8 * (variants.length - 1 - i))) & 0x3f;
+      key = key * sf_stateCounts[i] + sf_pairStates[i][pair];
+    }
+    return key;
+  }
+
+  /**
+   * Gets the state of one SNP.
+   * @param snp the index of the SNP
+   * @param first the allele code of the first allele, see {@link VariantAlleles#getCode(String)}
+   * @param second the allele code of the second allele
+   * @return the state
+   */
+  private static int getState(int snp, int first, int second) {
+    int classes = sf_bases[snp].length + 1;
+    if (first == VariantAlleles.NONE) {
+      return 0;
+    }
+    if (second == VariantAlleles.NONE) {
+      return 1 + getCodeClass(snp, first);
+    }
+    int c0 = getCodeClass(snp, first);
+    int c1 = getCodeClass(snp, second);
+    int lo = Math.min(c0, c1);
+    int hi = Math.max(c0, c1);
+    return 1 + classes + hi * (hi + 1) / 2 + lo;
+  }
+
+  private static int getCodeClass(int snp, int code) {
+    return code > VariantAlleles.UNKNOWN_CODE ? 0 : getClass(snp, VariantAlleles.getAllele(code));
+  }
+
+  /**
+   * Gets which of the bases the rules ask about an allele is.
+   * @return 1 and up for the bases in {@link #sf_bases}, 0 for any other base
+   */
+  private static int getClass(int snp, String allele) {
+    String[] bases = sf_bases[snp];
+    for (int i=0; i<bases.length; i++) {
+      if (bases[i].equalsIgnoreCase(allele)) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Checks every key against the calling rules.  Every allele pair a SNP can be read as is grouped by the state it
+   * packs to, and each key is called once for every spelling of each of its SNPs' states, so mixed "other" pairs
+   * such as "g/Unknown" are checked along with the rest.  Every call has to match the first spelling's, every
+   * spelling has to pack to the same key, and a remembered call for the key has to match too.
+   * <br/>
+   * This runs the rules about 600 million times, which takes several minutes.
+   * @return the number of keys that got a call that doesn't match
+   */
+  public static int verify() {
+    int mismatches = 0;
+    int keys = 0;
+    int[] states = new int[sf_bases.length];
+    List<List<int[]>> spellings = getSpellings();
+    Subject subject = new Subject();
+
+    for (Subject.Deletion deletion : Subject.Deletion.values()) {
+      Arrays.fill(states, 0);
+      do {
+        int count = 0;
+        for (int i=0; i<sf_bases.length; i++) {
+          count = Math.max(count, spellings.get(i * sf_maxStates + states[i]).size());
+        }
+
+        String expected = null;
+        int key = -1;
+        String mismatch = null;
+        for (int n=0; n<count && mismatch == null; n++) {
+          VariantAlleles[] variants = new VariantAlleles[sf_bases.length];
+          for (int i=0; i<sf_bases.length; i++) {
+            List<int[]> stateSpellings = spellings.get(i * sf_maxStates + states[i]);
+            variants[i] = makeVariant(stateSpellings.get(n % stateSpellings.size()));
+          }
+          subject.setGenotypeInputs(variants, deletion);
+
+          String call = subject.callGenotypePgkb().toString();
+          if (n == 0) {
+            expected = call;
+            key = getKey(subject);
+            Genotype remembered = sf_calls.get(key);
+            if (remembered != null && !remembered.toString().equals(expected)) {
+              mismatch = "remembers " + remembered + " but the rules call " + expected;
+            }
+          }
+          else if (getKey(subject) != key) {
+            mismatch = "has a spelling that packs to " + getKey(subject);
+          }
+          else if (!call.equals(expected)) {
+            mismatch = "calls " + expected + " and " + call;
+          }
+        }
+
+        if (mismatch != null) {
+          if (mismatches < 20) {
+            sf_logger.warn("Key " + key + " " + mismatch);
+          }
+          mismatches++;
+        }
+        keys++;
+      } while (nextStates(states));
+    }
+
+    sf_logger.info("Checked " + keys + " genotype keys, " + mismatches + " mismatches");
+    return mismatches;
+  }
+
+  /**
+   * Groups every allele pair a SNP can be read as, as allele codes, by SNP and state.
+   * @return the pairs for SNP <code>i</code> in state <code>s</code> at <code>i * sf_maxStates + s</code>
+   */
+  private static List<List<int[]>> getSpellings() {
+    List<List<int[]>> spellings = new ArrayList<List<int[]>>();
+    for (int i=0; i<sf_bases.length * sf_maxStates; i++) {
+      spellings.add(new ArrayList<int[]>());
+    }
+    for (int i=0; i<sf_bases.length; i++) {
+      spellings.get(i * sf_maxStates).add(new int[0]);
+      for (int first=1; first<=VariantAlleles.UNKNOWN_CODE; first++) {
+        spellings.get(i * sf_maxStates + getState(i, first, VariantAlleles.NONE)).add(new int[] {first});
+        for (int second=first; second<=VariantAlleles.UNKNOWN_CODE; second++) {
+          spellings.get(i * sf_maxStates + getState(i, first, second)).add(new int[] {first, second});
+        }
+      }
+    }
+    return spellings;
+  }
+
+  private static boolean nextStates(int[] states) {
+    for (int i=states.length-1; i>=0; i--) {
+      states[i]++;
+      if (states[i] < sf_stateCounts[i]) {
+        return true;
+      }
+      states[i] = 0;
+    }
+    return false;
+  }
+
+  /**
+   * Makes the alleles of a SNP from allele codes.
+   */
+  private static VariantAlleles makeVariant(int[] codes) {
+    VariantAlleles variant = new VariantAlleles();
+    for (int code : codes) {
+      variant.addString(VariantAlleles.getAllele(code));
+    }
+    return variant;
+  }
+}
@@ -40,8 +40,12 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import export.InsertExport;
+import export.TamoxdataExport;
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import util.CellValue;
 import util.ItpcUtils;
 import util.Med;
 import util.Value;
@@ -59,7 +63,7 @@ public class Subject {
 
   private String m_subjectId = null;
   private String m_projectSite = null;
-  private String m_age = null;
+  private CellValue m_age = null;
   private String m_gender = null;
   private String m_race = null;
   private String m_menoStatus = null;
@@ -75,7 +79,7 @@ public class Subject {
   private String m_hormoneTherapy = null;
   private String m_systemicTher = null;
   private String m_followup = null;
-  private String m_timeBtwSurgTamox = null;
+  private CellValue m_timeBtwSurgTamox = null;
   private String m_firstAdjEndoTher = null;
   private String m_tumorDimension = null;
   private String m_numPositiveNodes = null;
@@ -84,15 +88,15 @@ public class Subject {
   private String radiotherapy = null;
   private Deletion m_deletion = Deletion.Unknown;
   private Value m_additionalCancer = null;
-  private String m_addCxIpsilateral = null;
-  private String m_addCxDistantRecur = null;
-  private String m_addCxContralateral = null;
-  private String m_addCxSecondInvasive = null;
-  private String m_addCxLastEval = null;
-  private String m_daysDiagtoDeath = null;
+  private CellValue m_addCxIpsilateral = null;
+  private CellValue m_addCxDistantRecur = null;
+  private CellValue m_addCxContralateral = null;
+  private CellValue m_addCxSecondInvasive = null;
+  private CellValue m_addCxLastEval = null;
+  private CellValue m_daysDiagtoDeath = null;
   private Value m_patientDied = null;
-  private String m_diseaseFreeSurvivalTime = null;
-  private String m_survivalNotDied = null;
+  private CellValue m_diseaseFreeSurvivalTime = null;
+  private CellValue m_survivalNotDied = null;
   private String m_causeOfDeath = null;
   private Value m_dcisStatus = Value.Unknown;
 
@@ -108,7 +112,7 @@ public class Subject {
   private VariantAlleles m_rs16947 = new VariantAlleles();
   private VariantAlleles m_rs28371706 = new VariantAlleles();
   private VariantAlleles m_rs28371725 = new VariantAlleles();
-  private Set<SampleSource> m_sampleSources = Sets.newHashSet();
+  private Set<SampleSource> m_sampleSources = EnumSet.noneOf(SampleSource.class);
 
   private Map<Med,Value> m_medStatus = Maps.newHashMap();
 
@@ -263,7 +267,15 @@ public class Subject {
   }
 
   public String getMetabolizerGroup() {
-    Float score = this.getScore();
+    return getMetabolizerGroup(this.getScore());
+  }
+
+  /**
+   * Gets the metabolizer group for an activity score
+   * @param score a genotype score, null if the genotype is uncertain
+   * @return the name of the metabolizer group
+   */
+  static String getMetabolizerGroup(Float score) {
     if (score == null) {
       return "Uncategorized";
     }
@@ -310,7 +322,19 @@ public class Subject {
         || this.getRs28371725().is("g","a");
   }
 
+  /**
+   * Calls the PharmGKB genotype from the SNPs and the *5 deletion.  The call is looked up by {@link GenotypeCaller}
+   * so the rules below only run once for each distinct combination of variant states.
+   */
   public void calculateGenotypePgkb() {
+    this.setGenotypePgkb(GenotypeCaller.call(this));
+  }
+
+  /**
+   * Runs the PharmGKB genotype calling rules on the SNPs and the *5 deletion.
+   * @return a new Genotype
+   */
+  Genotype callGenotypePgkb() {
     Genotype geno = new Genotype();
 
     switch (this.getDeletion()) {
@@ -458,7 +482,23 @@ public class Subject {
       }
     }
 
-    this.setGenotypePgkb(geno);
+    return geno;
+  }
+
+  /**
+   * Sets the inputs of the genotype call without calling it, for checking the calls of {@link GenotypeCaller}.
+   * @param variants the SNPs, in the order of {@link GenotypeCaller#getVariants(Subject)}
+   * @param deletion the *5 deletion
+   */
+  void setGenotypeInputs(VariantAlleles[] variants, Deletion deletion) {
+    m_rs4986774 = variants[0];
+    m_rs1065852 = variants[1];
+    m_rs3892097 = variants[2];
+    m_rs5030655 = variants[3];
+    m_rs16947 = variants[4];
+    m_rs28371706 = variants[5];
+    m_rs28371725 = variants[6];
+    m_deletion = deletion;
   }
 
   public void calculateGenotypeLimited() {
@@ -688,9 +728,9 @@ public class Subject {
       }
     }
     else {
-      if (!ItpcUtils.isBlank(this.getAge())) {
+      if (!isBlank(m_age)) {
         try {
-          Float ageFloat = Float.parseFloat(this.getAge());
+          float ageFloat = m_age.isNumber() ? (float)m_age.getNumber() : Float.parseFloat(m_age.toString());
           if (ageFloat>=50f) {
             return Value.Yes;
           }
@@ -745,8 +785,8 @@ public class Subject {
   }
 
   public Value passInclusion4a() {
-    try {
-      Integer daysBetween = Integer.parseInt(this.getTimeBtwSurgTamox());
+    Integer daysBetween = m_timeBtwSurgTamox == null ? null : m_timeBtwSurgTamox.toInteger();
+    if (daysBetween != null) {
       if (daysBetween<182 && this.getFirstAdjEndoTher().equals("1")) {
         return Value.Yes;
       }
@@ -754,8 +794,8 @@ public class Subject {
         return Value.No;
       }
     }
-    catch (NumberFormatException ex) {
-      if (!ItpcUtils.isBlank(this.getFirstAdjEndoTher()) && !ItpcUtils.isBlank(this.getTimeBtwSurgTamox())) {
+    else {
+      if (!ItpcUtils.isBlank(this.getFirstAdjEndoTher()) && !isBlank(m_timeBtwSurgTamox)) {
         if (this.getFirstAdjEndoTher().equals("1")
             && (this.getTimeBtwSurgTamox().equalsIgnoreCase("< 6 weeks")
             || this.getTimeBtwSurgTamox().equalsIgnoreCase("< 6 months")
@@ -944,18 +984,18 @@ public class Subject {
 
   public Value exclude1() {
     if (getAdditionalCancer() == Value.Yes
-        && (ItpcUtils.isBlank(getAddCxIpsilateral()) || getAddCxIpsilateral().equals("0"))
-        && (ItpcUtils.isBlank(getAddCxDistantRecur()) || getAddCxDistantRecur().equals("0"))
-        && (ItpcUtils.isBlank(getAddCxContralateral()) || getAddCxContralateral().equals("0"))
-        && (ItpcUtils.isBlank(getAddCxSecondInvasive()) || getAddCxSecondInvasive().equals("0"))
+        && (isBlank(m_addCxIpsilateral) || m_addCxIpsilateral.isZero())
+        && (isBlank(m_addCxDistantRecur) || m_addCxDistantRecur.isZero())
+        && (isBlank(m_addCxContralateral) || m_addCxContralateral.isZero())
+        && (isBlank(m_addCxSecondInvasive) || m_addCxSecondInvasive.isZero())
         ) {
       return Value.Yes;
     }
     else if ((getAdditionalCancer() == Value.No || getAdditionalCancer() == Value.Unknown)
-        && (!(ItpcUtils.isBlank(getAddCxIpsilateral()) || getAddCxIpsilateral().equals("0"))
-            || !(ItpcUtils.isBlank(getAddCxDistantRecur()) || getAddCxDistantRecur().equals("0"))
-            || !(ItpcUtils.isBlank(getAddCxContralateral()) || getAddCxContralateral().equals("0"))
-            || !(ItpcUtils.isBlank(getAddCxSecondInvasive()) || getAddCxSecondInvasive().equals("0")))
+        && (!(isBlank(m_addCxIpsilateral) || m_addCxIpsilateral.isZero())
+            || !(isBlank(m_addCxDistantRecur) || m_addCxDistantRecur.isZero())
+            || !(isBlank(m_addCxContralateral) || m_addCxContralateral.isZero())
+            || !(isBlank(m_addCxSecondInvasive) || m_addCxSecondInvasive.isZero()))
       ) {
       return Value.Yes;
     }
@@ -966,7 +1006,7 @@ public class Subject {
 
   // joan suggestion 1
   public Value exclude4() {
-    if ((getAdditionalCancer()==Value.Yes || getPatientDied()==Value.Yes) && !ItpcUtils.isBlank(getDiseaseFreeSurvivalTime())) {
+    if ((getAdditionalCancer()==Value.Yes || getPatientDied()==Value.Yes) && !isBlank(m_diseaseFreeSurvivalTime)) {
       return Value.Yes;
     }
     return Value.No;
@@ -974,7 +1014,7 @@ public class Subject {
 
   // joan suggestion 3
   public Value exclude5() {
-    if (getPatientDied()==Value.Yes && !ItpcUtils.isBlank(getSurvivalNotDied())) {
+    if (getPatientDied()==Value.Yes && !isBlank(m_survivalNotDied)) {
       return Value.Yes;
     }
     return Value.No;
@@ -982,9 +1022,9 @@ public class Subject {
 
   // joan suggestion 5
   public Value exclude6() {
-    Integer dfst = parseDays(getDiseaseFreeSurvivalTime());
-    Integer lde = parseDays(getAddCxLastEval());
-    Integer snd = parseDays(getSurvivalNotDied());
+    Integer dfst = parseDays(m_diseaseFreeSurvivalTime);
+    Integer lde = parseDays(m_addCxLastEval);
+    Integer snd = parseDays(m_survivalNotDied);
 
     if (dfst != null && lde != null && dfst<lde) {
       return Value.Yes;
@@ -1034,10 +1074,14 @@ public class Subject {
   }
 
   public String getAge() {
-    return m_age;
+    return m_age == null ? null : m_age.toString();
   }
 
   public void setAge(String age) {
+    m_age = CellValue.text(age);
+  }
+
+  public void setAgeCell(CellValue age) {
     m_age = age;
   }
 
@@ -1090,10 +1134,14 @@ public class Subject {
   }
 
   public String getTimeBtwSurgTamox() {
-    return m_timeBtwSurgTamox;
+    return m_timeBtwSurgTamox == null ? null : m_timeBtwSurgTamox.toString();
   }
 
   public void setTimeBtwSurgTamox(String timeBtwSurgTamox) {
+    m_timeBtwSurgTamox = CellValue.text(timeBtwSurgTamox);
+  }
+
+  public void setTimeBtwSurgTamoxCell(CellValue timeBtwSurgTamox) {
     m_timeBtwSurgTamox = timeBtwSurgTamox;
   }
 
@@ -1224,42 +1272,62 @@ public class Subject {
   }
 
   public String getAddCxIpsilateral() {
-    return m_addCxIpsilateral;
+    return m_addCxIpsilateral == null ? null : m_addCxIpsilateral.toString();
   }
 
   public void setAddCxIpsilateral(String addCxIpsilateral) {
+    m_addCxIpsilateral = CellValue.text(addCxIpsilateral);
+  }
+
+  public void setAddCxIpsilateralCell(CellValue addCxIpsilateral) {
     m_addCxIpsilateral = addCxIpsilateral;
   }
 
   public String getAddCxDistantRecur() {
-    return m_addCxDistantRecur;
+    return m_addCxDistantRecur == null ? null : m_addCxDistantRecur.toString();
   }
 
   public void setAddCxDistantRecur(String addCxDistantRecur) {
+    m_addCxDistantRecur = CellValue.text(addCxDistantRecur);
+  }
+
+  public void setAddCxDistantRecurCell(CellValue addCxDistantRecur) {
     m_addCxDistantRecur = addCxDistantRecur;
   }
 
   public String getAddCxContralateral() {
-    return m_addCxContralateral;
+    return m_addCxContralateral == null ? null : m_addCxContralateral.toString();
   }
 
   public void setAddCxContralateral(String addCxContralateral) {
+    m_addCxContralateral = CellValue.text(addCxContralateral);
+  }
+
+  public void setAddCxContralateralCell(CellValue addCxContralateral) {
     m_addCxContralateral = addCxContralateral;
   }
 
   public String getAddCxSecondInvasive() {
-    return m_addCxSecondInvasive;
+    return m_addCxSecondInvasive == null ? null : m_addCxSecondInvasive.toString();
   }
 
   public void setAddCxSecondInvasive(String addCxSecondInvasive) {
+    m_addCxSecondInvasive = CellValue.text(addCxSecondInvasive);
+  }
+
+  public void setAddCxSecondInvasiveCell(CellValue addCxSecondInvasive) {
     m_addCxSecondInvasive = addCxSecondInvasive;
   }
 
   public String getAddCxLastEval() {
-    return m_addCxLastEval;
+    return m_addCxLastEval == null ? null : m_addCxLastEval.toString();
   }
 
   public void setAddCxLastEval(String addCxLastEval) {
+    m_addCxLastEval = CellValue.text(addCxLastEval);
+  }
+
+  public void setAddCxLastEvalCell(CellValue addCxLastEval) {
     m_addCxLastEval = addCxLastEval;
   }
 
@@ -1282,33 +1350,33 @@ public class Subject {
       List<String> eventCodes = Lists.newArrayList();
 
       int days = 999999;
-      if (!isInvasive(getAddCxContralateral()) || !(ItpcUtils.isBlank(getAddCxContralateral()) || getAddCxContralateral().equals("0"))) {
+      if (!isInvasive(m_addCxContralateral) || !(isBlank(m_addCxContralateral) || m_addCxContralateral.isZero())) {
         eventCodes.add("3");
-        Integer contraDays = parseDays(getAddCxContralateral());
+        Integer contraDays = parseDays(m_addCxContralateral);
         if (contraDays != null && contraDays<days) {
           days = contraDays;
           code = "3";
         }
       }
-      if (!(ItpcUtils.isBlank(getAddCxDistantRecur()) || getAddCxDistantRecur().equals("0"))) {
+      if (!(isBlank(m_addCxDistantRecur) || m_addCxDistantRecur.isZero())) {
         eventCodes.add("2");
-        Integer distantDays = parseDays(getAddCxDistantRecur());
+        Integer distantDays = parseDays(m_addCxDistantRecur);
         if (distantDays != null && distantDays<days) {
           days = distantDays;
           code = "2";
         }
       }
-      if (!isInvasive(getAddCxIpsilateral()) || !(ItpcUtils.isBlank(getAddCxIpsilateral()) || getAddCxIpsilateral().equals("0"))) {
+      if (!isInvasive(m_addCxIpsilateral) || !(isBlank(m_addCxIpsilateral) || m_addCxIpsilateral.isZero())) {
         eventCodes.add("1");
-        Integer ipsiDays = parseDays(getAddCxIpsilateral());
+        Integer ipsiDays = parseDays(m_addCxIpsilateral);
         if (ipsiDays != null && ipsiDays<days) {
           days = ipsiDays;
           code = "1";
         }
       }
-      if (!(ItpcUtils.isBlank(getAddCxSecondInvasive()) || getAddCxSecondInvasive().equals("0"))) {
+      if (!(isBlank(m_addCxSecondInvasive) || m_addCxSecondInvasive.isZero())) {
         eventCodes.add("4");
-        Integer secondDays = parseDays(getAddCxSecondInvasive());
+        Integer secondDays = parseDays(m_addCxSecondInvasive);
         if (secondDays != null && secondDays<days) {
           days = secondDays;
           code = "4";
@@ -1323,13 +1391,13 @@ public class Subject {
       }
     }
     else if (getAdditionalCancer()==Value.No && getPatientDied()==Value.Yes) {
-      Integer deathDays = parseDays(getDaysDiagtoDeath());
+      Integer deathDays = parseDays(m_daysDiagtoDeath);
       if (deathDays != null && deathDays>0) {
         return new String[]{"5", String.valueOf(deathDays)};
       }
     }
     else if (getAdditionalCancer()==Value.No && getPatientDied()==Value.No) {
-      Integer days = parseDays(getAddCxLastEval());
+      Integer days = parseDays(m_addCxLastEval);
       if (days != null && days>0) {
         return new String[]{"0", String.valueOf(days)};
       }
@@ -1340,6 +1408,17 @@ public class Subject {
     return new String[]{Value.Unknown.toString(), Value.Unknown.toString()};
   }
 
+  private Integer parseDays(CellValue days) {
+    if (days == null || days.isBlank()) {
+      return null;
+    }
+    if (days.isNumber()) {
+      Integer daysInt = days.toInteger();
+      return daysInt != null ? daysInt : -1;
+    }
+    return parseDays(days.toString());
+  }
+
   private Integer parseDays(String daysString) {
     Integer daysInt = null;
 
@@ -1360,10 +1439,14 @@ public class Subject {
   }
 
   public String getDaysDiagtoDeath() {
-    return m_daysDiagtoDeath;
+    return m_daysDiagtoDeath == null ? null : m_daysDiagtoDeath.toString();
   }
 
   public void setDaysDiagtoDeath(String daysDiagtoDeath) {
+    m_daysDiagtoDeath = CellValue.text(daysDiagtoDeath);
+  }
+
+  public void setDaysDiagtoDeathCell(CellValue daysDiagtoDeath) {
     m_daysDiagtoDeath = daysDiagtoDeath;
   }
 
@@ -1392,18 +1475,26 @@ public class Subject {
   }
 
   public String getDiseaseFreeSurvivalTime() {
-    return m_diseaseFreeSurvivalTime;
+    return m_diseaseFreeSurvivalTime == null ? null : m_diseaseFreeSurvivalTime.toString();
   }
 
   public void setDiseaseFreeSurvivalTime(String diseaseFreeSurvivalTime) {
+    m_diseaseFreeSurvivalTime = CellValue.text(diseaseFreeSurvivalTime);
+  }
+
+  public void setDiseaseFreeSurvivalTimeCell(CellValue diseaseFreeSurvivalTime) {
     m_diseaseFreeSurvivalTime = diseaseFreeSurvivalTime;
   }
 
   public String getSurvivalNotDied() {
-    return m_survivalNotDied;
+    return m_survivalNotDied == null ? null : m_survivalNotDied.toString();
   }
 
   public void setSurvivalNotDied(String survivalNotDied) {
+    m_survivalNotDied = CellValue.text(survivalNotDied);
+  }
+
+  public void setSurvivalNotDiedCell(CellValue survivalNotDied) {
     m_survivalNotDied = survivalNotDied;
   }
 
@@ -1424,27 +1515,35 @@ public class Subject {
     return days != null && !days.contains("NI");
   }
 
+  private boolean isInvasive(CellValue days) {
+    return days != null && (days.isNumber() || isInvasive(days.toString()));
+  }
+
+  private static boolean isBlank(CellValue value) {
+    return value == null || value.isBlank();
+  }
+
   public String getBreastCancerFreeInterval() {
     SortedSet<Integer> freeIntervals = Sets.newTreeSet();
 
     if (getCauseOfDeath()!=null && getCauseOfDeath().equals("1")) {
-      freeIntervals.add(parseDays(getDaysDiagtoDeath()));
+      freeIntervals.add(parseDays(m_daysDiagtoDeath));
     }
 
-    if (!ItpcUtils.isBlank(getAddCxIpsilateral())) {
-      Integer ipsiDays = parseDays(getAddCxIpsilateral());
+    if (!isBlank(m_addCxIpsilateral)) {
+      Integer ipsiDays = parseDays(m_addCxIpsilateral);
       if (ipsiDays>0) {
         freeIntervals.add(ipsiDays);
       }
     }
-    if (!ItpcUtils.isBlank(getAddCxDistantRecur())) {
-      Integer days = parseDays(getAddCxDistantRecur());
+    if (!isBlank(m_addCxDistantRecur)) {
+      Integer days = parseDays(m_addCxDistantRecur);
       if (days>0) {
         freeIntervals.add(days);
       }
     }
-    if (!ItpcUtils.isBlank(getAddCxContralateral())) {
-      Integer days = parseDays(getAddCxContralateral());
+    if (!isBlank(m_addCxContralateral)) {
+      Integer days = parseDays(m_addCxContralateral);
       if (days>0) {
         freeIntervals.add(days);
       }
@@ -1475,42 +1574,38 @@ public class Subject {
   }
 
   public String makeSqlInsert() {
-    String insertStmt = "insert into tamoxdata(subjectid," +
-            "projectid," +
-            "ageatdiagnosis," +
-            "menostatusatdx," +
-            "maxtumordim," +
-            "numposnodes," +
-            "grading," +
-            "erstatus," +
-            "pgrstatus," +
-            "radiotherapy," +
-            "cyp2d6_1," +
-            "cyp2d6_2," +
-            "crit1," +
-            "crit2," +
-            "crit3," +
-            "genosource) values (%s);";
-    List<String> fields = Lists.newArrayList();
-
-    fields.add("'"+getSubjectId()+"'");
-    fields.add("'"+getProjectSite()+"'");
-    fields.add("'"+getAge()+"'");
-    fields.add("'"+getMenoStatus()+"'");
-    fields.add("'"+getTumorDimension()+"'");
-    fields.add("'"+getNumPositiveNodes()+"'");
-    fields.add("'"+getTumorGrading()+"'");
-    fields.add("'"+getErStatus()+"'");
-    fields.add("'"+getProgesteroneReceptor()+"'");
-    fields.add("'"+getRadiotherapy()+"'");
-    fields.add("'"+getGenotypeFinal().get(0)+"'");
-    fields.add("'"+getGenotypeFinal().get(1)+"'");
-    fields.add("'"+includeCrit1()+"'");
-    fields.add("'"+includeCrit2()+"'");
-    fields.add("'"+includeCrit3()+"'");
-    fields.add("'"+Joiner.on(",").join(getSampleSources())+"'");
-
-    return String.format(insertStmt, Joiner.on(",").join(fields));
+    return makeSqlInsert(getGenotypeFinal(), includeCrit1(), includeCrit2(), includeCrit3());
+  }
+
+  /**
+   * Makes the SQL insert statement from values that have already been calculated for this subject
+   */
+  String makeSqlInsert(Genotype genotypeFinal, Value crit1, Value crit2, Value crit3) {
+    return InsertExport.makeInsert(getSqlValues(genotypeFinal, crit1, crit2, crit3));
+  }
+
+  /**
+   * Gets the values of this subject for the columns of the tamoxdata table, see {@link TamoxdataExport#COLUMNS}
+   */
+  String[] getSqlValues(Genotype genotypeFinal, Value crit1, Value crit2, Value crit3) {
+    return new String[]{
+        getSubjectId(),
+        getProjectSite(),
+        getAge(),
+        getMenoStatus(),
+        getTumorDimension(),
+        getNumPositiveNodes(),
+        getTumorGrading(),
+        getErStatus(),
+        getProgesteroneReceptor(),
+        getRadiotherapy(),
+        genotypeFinal.get(0),
+        genotypeFinal.get(1),
+        ObjectUtils.toString(crit1, null),
+        ObjectUtils.toString(crit2, null),
+        ObjectUtils.toString(crit3, null),
+        Joiner.on(",").join(getSampleSources())
+    };
   }
 
   public String getNumPositiveNodes() {
@@ -0,0 +1,368 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import export.InsertExport;
+import util.Value;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Everything calculated from a {@link Subject} for the output, worked out once.  The calculated columns, the SQL
+ * export and the summaries all read the same SubjectEvaluation instead of asking the Subject, which would run the
+ * rules again every time.
+ * <br/>
+ * Making an evaluation calculates the subject's limited genotype, so the Subject should be fully read first.  The
+ * include and exclude summaries are put together from the individual checks the same way {@link Subject#include()},
+ * {@link Subject#includeCrit1()} and the rest do.  The Values are packed two bits apiece into a long.
+ * <br/>
+ * An evaluation can be written out and read back with {@link #writeTo(DataOutput)} and {@link #readFrom(DataInput)}
+ * so it can be reused without running the rules again.
+ *
+ * @author Ryan Whaley
+ */
+public final class SubjectEvaluation {
+  /**
+   * The Values kept for a subject, each named after the Subject method it comes from
+   */
+  public enum Check {
+    Inclusion1, Inclusion2a, Inclusion2b, Inclusion3, Inclusion4, Inclusion4a, Inclusion4b, Inclusion4c, Inclusion5,
+    Inclusion6, Inclusion7, Inclusion8, Inclusion9,
+    Exclude1, Exclude4, Exclude5, Exclude6, ExcludeSummary,
+    Include, IncludeWo4a, IncludeCrit1, IncludeCrit2, IncludeCrit3,
+    Weak, Potent
+  }
+
+  private static final Value[] sf_values = Value.values();
+
+  private static final Set<Check> sf_include = EnumSet.range(Check.Inclusion1, Check.Inclusion9);
+  private static final Set<Check> sf_includeWo4a = EnumSet.copyOf(sf_include);
+  static {
+    sf_includeWo4a.remove(Check.Inclusion4a);
+  }
+  private static final Set<Check> sf_includeCrit1 = EnumSet.of(Check.Inclusion1, Check.Inclusion2a,
+      Check.Inclusion3, Check.Inclusion4b, Check.Inclusion4c, Check.Inclusion5, Check.Inclusion6, Check.Inclusion8,
+      Check.Inclusion9);
+  private static final Set<Check> sf_includeCrit2 = EnumSet.of(Check.Inclusion2a, Check.Inclusion3,
+      Check.Inclusion4c, Check.Inclusion5, Check.Inclusion6, Check.Inclusion9);
+  private static final Set<Check> sf_exclude = EnumSet.of(Check.Exclude1, Check.Exclude4, Check.Exclude5,
+      Check.Exclude6);
+
+  private final Subject m_subject;
+  private final Genotype m_genotypeFinal;
+  private final String m_metabolizerStatus;
+  private final String m_genotypeMetabolizerGroup;
+  private final Float m_score;
+  private final String m_metabolizerGroup;
+  private final String m_firstDiseaseEvent;
+  private final String m_diagToEventDays;
+  private final String m_breastCancerFreeInterval;
+  private final long m_values;
+  /** the tamoxdata values of an evaluation that was read back, null if they come from the Subject */
+  private final String[] m_sqlValues;
+
+  /**
+   * Evaluates a subject
+   * @param subject a Subject that has been completely read
+   */
+  public SubjectEvaluation(Subject subject) {
+    subject.calculateGenotypeLimited();
+
+    m_subject = subject;
+    m_genotypeFinal = subject.getGenotypeFinal();
+    m_metabolizerStatus = m_genotypeFinal.getMetabolizerStatus();
+    m_genotypeMetabolizerGroup = m_genotypeFinal.getMetabolizerGroup();
+    m_score = m_genotypeFinal.getScore();
+    m_metabolizerGroup = Subject.getMetabolizerGroup(m_score);
+
+    String[] firstEvent = subject.getFirstEventData();
+    m_firstDiseaseEvent = firstEvent[0];
+    m_diagToEventDays = firstEvent[1];
+    m_breastCancerFreeInterval = subject.getBreastCancerFreeInterval();
+
+    long values = 0;
+    values = set(values, Check.Inclusion1, subject.passInclusion1());
+    values = set(values, Check.Inclusion2a, subject.passInclusion2a());
+    values = set(values, Check.Inclusion2b, subject.passInclusion2b());
+    values = set(values, Check.Inclusion3, subject.passInclusion3());
+    values = set(values, Check.Inclusion4, subject.passInclusion4());
+    values = set(values, Check.Inclusion4a, subject.passInclusion4a());
+    values = set(values, Check.Inclusion4b, subject.passInclusion4b());
+    values = set(values, Check.Inclusion4c, subject.passInclusion4c());
+    values = set(values, Check.Inclusion5, subject.passInclusion5());
+    values = set(values, Check.Inclusion6, subject.passInclusion6());
+    values = set(values, Check.Inclusion7, subject.passInclusion7());
+    values = set(values, Check.Inclusion8, subject.passInclusion8());
+    values = set(values, Check.Inclusion9, subject.passInclusion9());
+
+    values = set(values, Check.Exclude1, subject.exclude1());
+    values = set(values, Check.Exclude4, subject.exclude4());
+    values = set(values, Check.Exclude5, subject.exclude5());
+    values = set(values, Check.Exclude6, subject.exclude6());
+    Value excludeSummary = anyYes(values, sf_exclude);
+    values = set(values, Check.ExcludeSummary, excludeSummary);
+
+    values = set(values, Check.Include, allYes(values, sf_include));
+    values = set(values, Check.IncludeWo4a, allYes(values, sf_includeWo4a));
+    values = set(values, Check.IncludeCrit1,
+        excludeSummary == Value.No ? allYes(values, sf_includeCrit1) : Value.No);
+    values = set(values, Check.IncludeCrit2,
+        excludeSummary == Value.No ? allYes(values, sf_includeCrit2) : Value.No);
+    values = set(values, Check.IncludeCrit3, excludeSummary == Value.No ? Value.Yes : Value.No);
+
+    values = set(values, Check.Weak, subject.getWeak());
+    values = set(values, Check.Potent, subject.getPotent());
+    m_values = values;
+    m_sqlValues = null;
+  }
+
+  private SubjectEvaluation(Subject subject, Genotype genotypeFinal, String metabolizerStatus,
+      String genotypeMetabolizerGroup, Float score, String metabolizerGroup, String firstDiseaseEvent,
+      String diagToEventDays, String breastCancerFreeInterval, long values, String[] sqlValues) {
+    m_subject = subject;
+    m_genotypeFinal = genotypeFinal;
+    m_metabolizerStatus = metabolizerStatus;
+    m_genotypeMetabolizerGroup = genotypeMetabolizerGroup;
+    m_score = score;
+    m_metabolizerGroup = metabolizerGroup;
+    m_firstDiseaseEvent = firstDiseaseEvent;
+    m_diagToEventDays = diagToEventDays;
+    m_breastCancerFreeInterval = breastCancerFreeInterval;
+    m_values = values;
+    m_sqlValues = sqlValues;
+  }
+
+  /**
+   * Writes out everything the output needs from this evaluation, to be read back with {@link #readFrom(DataInput)}.
+   * @param out where to write the evaluation
+   * @throws IOException can occur from I/O
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    writeString(out, m_subject.getSubjectId());
+    writeString(out, m_subject.getProjectSite());
+    int sources = 0;
+    for (Subject.SampleSource source : m_subject.getSampleSources()) {
+      sources |= 1 << source.ordinal();
+    }
+    out.writeInt(sources);
+
+    out.writeByte(m_genotypeFinal.getStrings().size());
+    for (String allele : m_genotypeFinal.getStrings()) {
+      out.writeUTF(allele);
+    }
+    writeString(out, m_metabolizerStatus);
+    writeString(out, m_genotypeMetabolizerGroup);
+    out.writeBoolean(m_score != null);
+    if (m_score != null) {
+      out.writeFloat(m_score);
+    }
+    writeString(out, m_metabolizerGroup);
+    writeString(out, m_firstDiseaseEvent);
+    writeString(out, m_diagToEventDays);
+    writeString(out, m_breastCancerFreeInterval);
+    out.writeLong(m_values);
+
+    String[] sqlValues = getSqlValues();
+    out.writeShort(sqlValues.length);
+    for (String value : sqlValues) {
+      writeString(out, value);
+    }
+  }
+
+  /**
+   * Reads back an evaluation written by {@link #writeTo(DataOutput)}.  Its Subject only has the subject ID, project
+   * site and sample sources filled in, everything else the output needs comes from the evaluation itself.
+   * @param in where to read the evaluation from
+   * @return the evaluation
+   * @throws IOException can occur from I/O
+   */
+  public static SubjectEvaluation readFrom(DataInput in) throws IOException {
+    Subject subject = new Subject();
+    subject.setSubjectId(readString(in));
+    subject.setProjectSite(readString(in));
+    int sources = in.readInt();
+    for (Subject.SampleSource source : Subject.SampleSource.values()) {
+      if ((sources & (1 << source.ordinal())) != 0) {
+        subject.addSampleSource(source);
+      }
+    }
+
+    Genotype genotypeFinal = new Genotype();
+    int alleleCount = in.readByte();
+    for (int i=0; i<alleleCount; i++) {
+      genotypeFinal.getStrings().add(in.readUTF());
+    }
+    String metabolizerStatus = readString(in);
+    String genotypeMetabolizerGroup = readString(in);
+    Float score = in.readBoolean() ? in.readFloat() : null;
+    String metabolizerGroup = readString(in);
+    String firstDiseaseEvent = readString(in);
+    String diagToEventDays = readString(in);
+    String breastCancerFreeInterval = readString(in);
+    long values = in.readLong();
+
+    String[] sqlValues = new String[in.readShort()];
+    for (int i=0; i<sqlValues.length; i++) {
+      sqlValues[i] = readString(in);
+    }
+    return new SubjectEvaluation(subject, genotypeFinal, metabolizerStatus, genotypeMetabolizerGroup, score,
+        metabolizerGroup, firstDiseaseEvent, diagToEventDays, breastCancerFreeInterval, values, sqlValues);
+  }
+
+  private static void writeString(DataOutput out, String string) throws IOException {
+    out.writeBoolean(string != null);
+    if (string != null) {
+      out.writeUTF(string);
+    }
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static long set(long values, Check check, Value value) {
+    return values | ((long)value.ordinal() << (check.ordinal() * 2));
+  }
+
+  private static Value get(long values, Check check) {
+    return sf_values[(int)(values >>> (check.ordinal() * 2)) & 3];
+  }
+
+  private static Value allYes(long values, Set<Check> checks) {
+    for (Check check : checks) {
+      if (get(values, check) != Value.Yes) {
+        return Value.No;
+      }
+    }
+    return Value.Yes;
+  }
+
+  private static Value anyYes(long values, Set<Check> checks) {
+    for (Check check : checks) {
+      if (get(values, check) == Value.Yes) {
+        return Value.Yes;
+      }
+    }
+    return Value.No;
+  }
+
+  /**
+   * Gets the Subject that was evaluated.  If the evaluation was read back with {@link #readFrom(DataInput)}, only
+   * the subject ID, project site and sample sources are filled in.
+   * @return the Subject
+   */
+  public Subject getSubject() {
+    return m_subject;
+  }
+
+  /**
+   * Gets one of the calculated Values
+   * @param check which Value
+   * @return the Value the Subject method of the same name gave
+   */
+  public Value get(Check check) {
+    return get(m_values, check);
+  }
+
+  public Genotype getGenotypeFinal() {
+    return m_genotypeFinal;
+  }
+
+  /**
+   * @return the metabolizer status of the final genotype, like "EM/PM"
+   */
+  public String getMetabolizerStatus() {
+    return m_metabolizerStatus;
+  }
+
+  /**
+   * @return the metabolizer group of the final genotype, like "Extensive"
+   */
+  public String getGenotypeMetabolizerGroup() {
+    return m_genotypeMetabolizerGroup;
+  }
+
+  public Float getScore() {
+    return m_score;
+  }
+
+  /**
+   * @return the metabolizer group of the subject by score, like "Intermediate two"
+   */
+  public String getMetabolizerGroup() {
+    return m_metabolizerGroup;
+  }
+
+  public Value getWeak() {
+    return get(Check.Weak);
+  }
+
+  public Value getPotent() {
+    return get(Check.Potent);
+  }
+
+  public String getFirstDiseaseEventCalc() {
+    return m_firstDiseaseEvent;
+  }
+
+  public String getDiagToEventDaysCalc() {
+    return m_diagToEventDays;
+  }
+
+  public String getBreastCancerFreeInterval() {
+    return m_breastCancerFreeInterval;
+  }
+
+  public String makeSqlInsert() {
+    return InsertExport.makeInsert(getSqlValues());
+  }
+
+  /**
+   * Gets the values for the columns of the tamoxdata table, in the order of {@link export.TamoxdataExport#COLUMNS}
+   */
+  public String[] getSqlValues() {
+    if (m_sqlValues != null) {
+      return m_sqlValues.clone();
+    }
+    return m_subject.getSqlValues(m_genotypeFinal, get(Check.IncludeCrit1), get(Check.IncludeCrit2),
+        get(Check.IncludeCrit3));
+  }
+}
@@ -0,0 +1,507 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+package org.pharmgkb;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import util.CellValue;
+import util.ItpcUtils;
+import util.Med;
+import util.RowView;
+import util.Value;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Turns rows of ITPC data into {@link Subject}s.  It figures out which column holds each field from the header row
+ * and then parses one row at a time, without caring where the rows come from.
+ *
+ * @author Ryan Whaley
+ * @see AbstractSubjectSource
+ */
+public abstract class SubjectParser {
+  private static final Logger sf_logger = Logger.getLogger(SubjectParser.class);
+
+  private ColumnProfile m_profile = null;
+  private final SortedSet<Integer> m_parsedColumns = new TreeSet<Integer>();
+  /** which column each field is in, the start of every row fingerprint */
+  private byte[] m_layout = new byte[0];
+
+  protected int subjectId = -1;
+  protected int projectSiteIdx = -1;
+  protected int ageIdx = -1;
+  protected int genderIdx = -1;
+  protected int raceIdx = -1;
+  protected int menoStatusIdx = -1;
+  protected int metastaticIdx = -1;
+  protected int erStatusIdx = -1;
+  protected int durationIdx = -1;
+  protected int tamoxDoseIdx = -1;
+  protected int tumorSourceIdx = -1;
+  protected int bloodSourceIdx = -1;
+  protected int priorHistoryIdx = -1;
+  protected int priorSitesIdx = -1;
+  protected int priorDcisIdx = -1;
+  protected int chemoIdx = -1;
+  protected int hormoneIdx = -1;
+  protected int systemicTherIdx = -1;
+  protected int followupIdx = -1;
+  protected int timeBtwSurgTamoxIdx = -1;
+  protected int firstAdjEndoTherIdx = -1;
+  protected int projectNotesIdx = -1;
+  protected int tumorDimensionIdx = -1;
+  protected int numPositiveNodesIdx = -1;
+  protected int tumorGradingIdx = -1;
+  protected int pgrStatusIdx = -1;
+  protected int radioIdx = -1;
+  protected int additionalCancerIdx = -1;
+  protected int addCxIpsilateralIdx = -1;
+  protected int addCxDistantRecurIdx = -1;
+  protected int addCxContralateralIdx = -1;
+  protected int addCxSecondInvasiveIdx = -1;
+  protected int addCxLastEvalIdx = -1;
+  protected int daysDiagToDeathIdx = -1;
+  protected int patientDiedIdx = -1;
+  protected int diseaseFreeSurvivalTimeIdx = -1;
+  protected int survivalNotDiedIdx = -1;
+  protected int causeOfDeathIdx = -1;
+
+  protected int fluoxetineCol = -1;
+  protected int paroxetineCol = -1;
+  protected int quinidienCol = -1;
+  protected int buproprionCol = -1;
+  protected int duloxetineCol = -1;
+  protected int cimetidineCol = -1;
+  protected int sertralineCol = -1;
+  protected int citalopramCol = -1;
+
+  protected int rs4986774idx = -1;
+  protected int rs1065852idx = -1;
+  protected int rs3892097idx = -1;
+  protected int star5idx = -1;
+  protected int rs5030655idx = -1;
+  protected int rs16947idx = -1;
+  protected int rs28371706idx = -1;
+  protected int rs28371725idx = -1;
+  protected Set<Integer> sampleSourceIdxs = Sets.newHashSet();
+
+  protected int amplichipidx = -1;
+  protected int otherGenoIdx = -1;
+
+  protected int allele1finalIdx = -1;
+  protected int allele2finalIdx = -1;
+  protected int genotypeIdx = -1;
+  protected int genoMetabStatusIdx = -1;
+  protected int weakIdx = -1;
+  protected int potentIdx = -1;
+  protected int metabStatusIdx = -1;
+  protected int includeCrit1Idx = -1;
+  protected int includeCrit2Idx = -1;
+  protected int includeCrit3Idx = -1;
+  protected int scoreIdx = -1;
+  protected int exclude1Idx = -1;
+  protected int exclude2Idx = -1;
+  protected int exclude3Idx = -1;
+  protected int exclude4Idx = -1;
+  protected int newFirstDiseaseEventIdx = -1;
+  protected int diagToEventCalcIdx = -1;
+
+  protected int incAgeIdx = -1;
+  protected int incNonmetaIdx = -1;
+  protected int incPriorHistIdx = -1;
+  protected int incErPosIdx = -1;
+  protected int incSysTherIdx = -1;
+  protected int incAdjTamoxIdx = -1;
+  protected int incDurationIdx = -1;
+  protected int incTamoxDoseIdx = -1;
+  protected int incChemoIdx = -1;
+  protected int incHormoneIdx = -1;
+  protected int incDnaCollectionIdx = -1;
+  protected int incFollowupIdx = -1;
+  protected int incGenoDataAvailIdx = -1;
+  protected int bfciIdx = -1;
+  protected int genoSourceIdx = -1;
+
+  protected Map<Med,Integer> medIdx = Maps.newHashMap();
+
+  /**
+   * Figures out which column each of the fields is in based on the header row.
+   * @param headerRow the header row
+   * @throws Exception if there is no header row
+   * @see #parseColumnIndexes(List)
+   */
+  protected void parseColumnIndexes(RowView headerRow) throws Exception {
+    parseColumnIndexes(headerRow == null ? null : headerRow.toList());
+  }
+
+  /**
+   * Figures out which column each of the fields is in based on the text of the header row.  The header row is
+   * matched by its {@link ColumnProfile}, which is reused for any later file with the same header row.
+   * @param headers the values of the header row, one per column
+   * @throws Exception if there is no header row
+   */
+  protected void parseColumnIndexes(List<String> headers) throws Exception {
+    if (sf_logger.isDebugEnabled()) {
+      sf_logger.debug("Parsing column indexes and headings");
+    }
+    if (headers == null || headers.isEmpty()) {
+      throw new Exception("No header row found");
+    }
+
+    applyProfile(ColumnProfile.forHeaders(headers, getProfileName()));
+
+    // new columns to add to the end of the template
+    int startPgkbColsIdx = projectNotesIdx+1;
+
+    newFirstDiseaseEventIdx = startPgkbColsIdx;
+    diagToEventCalcIdx = startPgkbColsIdx   + 1;
+    allele1finalIdx = startPgkbColsIdx      + 2;
+    allele2finalIdx = startPgkbColsIdx      + 3;
+    genotypeIdx = startPgkbColsIdx          + 4;
+    genoMetabStatusIdx = startPgkbColsIdx   + 5;
+    weakIdx = startPgkbColsIdx              + 6;
+    potentIdx = startPgkbColsIdx            + 7;
+    scoreIdx = startPgkbColsIdx             + 8;
+    metabStatusIdx = startPgkbColsIdx       + 9;
+
+    incAgeIdx = startPgkbColsIdx            + 10;
+    incNonmetaIdx = startPgkbColsIdx        + 11;
+    incPriorHistIdx = startPgkbColsIdx      + 12;
+    incErPosIdx = startPgkbColsIdx          + 13;
+    incSysTherIdx = startPgkbColsIdx        + 14;
+    incAdjTamoxIdx = startPgkbColsIdx       + 15;
+    incDurationIdx = startPgkbColsIdx       + 16;
+    incTamoxDoseIdx = startPgkbColsIdx      + 17;
+    incChemoIdx = startPgkbColsIdx          + 18;
+    incHormoneIdx = startPgkbColsIdx        + 19;
+    incDnaCollectionIdx = startPgkbColsIdx  + 20;
+    incFollowupIdx = startPgkbColsIdx       + 21;
+    incGenoDataAvailIdx = startPgkbColsIdx  + 22;
+
+    exclude1Idx = startPgkbColsIdx          + 23;
+    exclude2Idx = startPgkbColsIdx          + 24;
+    exclude3Idx = startPgkbColsIdx          + 25;
+    exclude4Idx = startPgkbColsIdx          + 26;
+
+    includeCrit1Idx = startPgkbColsIdx      + 27;
+    includeCrit2Idx = startPgkbColsIdx      + 28;
+    includeCrit3Idx = startPgkbColsIdx      + 29;
+
+    bfciIdx = startPgkbColsIdx              + 30;
+    genoSourceIdx = startPgkbColsIdx        + 31;
+  }
+
+  /**
+   * Sets the column indexes of all the fields from the given profile.
+   * @param profile the column profile for the header row
+   */
+  protected void applyProfile(ColumnProfile profile) {
+    m_profile = profile;
+    subjectId = profile.getIndex(Column.SUBJECT_ID);
+    projectSiteIdx = profile.getIndex(Column.PROJECT_SITE);
+    genderIdx = profile.getIndex(Column.GENDER);
+    ageIdx = profile.getIndex(Column.AGE);
+    raceIdx = profile.getIndex(Column.RACE);
+    metastaticIdx = profile.getIndex(Column.METASTATIC);
+    tumorDimensionIdx = profile.getIndex(Column.TUMOR_DIMENSION);
+    numPositiveNodesIdx = profile.getIndex(Column.NUM_POSITIVE_NODES);
+    tumorGradingIdx = profile.getIndex(Column.TUMOR_GRADING);
+    pgrStatusIdx = profile.getIndex(Column.PGR_STATUS);
+    radioIdx = profile.getIndex(Column.RADIO);
+    menoStatusIdx = profile.getIndex(Column.MENO_STATUS);
+    erStatusIdx = profile.getIndex(Column.ER_STATUS);
+    durationIdx = profile.getIndex(Column.DURATION);
+    tamoxDoseIdx = profile.getIndex(Column.TAMOX_DOSE);
+    tumorSourceIdx = profile.getIndex(Column.TUMOR_SOURCE);
+    bloodSourceIdx = profile.getIndex(Column.BLOOD_SOURCE);
+    priorHistoryIdx = profile.getIndex(Column.PRIOR_HISTORY);
+    priorSitesIdx = profile.getIndex(Column.PRIOR_SITES);
+    priorDcisIdx = profile.getIndex(Column.PRIOR_DCIS);
+    chemoIdx = profile.getIndex(Column.CHEMO);
+    hormoneIdx = profile.getIndex(Column.HORMONE);
+    systemicTherIdx = profile.getIndex(Column.SYSTEMIC_THER);
+    followupIdx = profile.getIndex(Column.FOLLOWUP);
+    timeBtwSurgTamoxIdx = profile.getIndex(Column.TIME_BTW_SURG_TAMOX);
+    firstAdjEndoTherIdx = profile.getIndex(Column.FIRST_ADJ_ENDO_THER);
+    projectNotesIdx = profile.getIndex(Column.PROJECT_NOTES);
+    otherGenoIdx = profile.getIndex(Column.OTHER_GENO);
+    rs4986774idx = profile.getIndex(Column.RS4986774);
+    rs1065852idx = profile.getIndex(Column.RS1065852);
+    rs3892097idx = profile.getIndex(Column.RS3892097);
+    rs5030655idx = profile.getIndex(Column.RS5030655);
+    rs16947idx = profile.getIndex(Column.RS16947);
+    rs28371706idx = profile.getIndex(Column.RS28371706);
+    rs28371725idx = profile.getIndex(Column.RS28371725);
+    sampleSourceIdxs.addAll(profile.getSampleSourceColumns());
+    star5idx = profile.getIndex(Column.STAR5);
+    fluoxetineCol = profile.getIndex(Column.FLUOXETINE);
+    paroxetineCol = profile.getIndex(Column.PAROXETINE);
+    quinidienCol = profile.getIndex(Column.QUINIDINE);
+    buproprionCol = profile.getIndex(Column.BUPROPRION);
+    duloxetineCol = profile.getIndex(Column.DULOXETINE);
+    cimetidineCol = profile.getIndex(Column.CIMETIDINE);
+    sertralineCol = profile.getIndex(Column.SERTRALINE);
+    citalopramCol = profile.getIndex(Column.CITALOPRAM);
+    amplichipidx = profile.getIndex(Column.AMPLICHIP);
+    additionalCancerIdx = profile.getIndex(Column.ADDITIONAL_CANCER);
+    addCxIpsilateralIdx = profile.getIndex(Column.ADD_CX_IPSILATERAL);
+    addCxDistantRecurIdx = profile.getIndex(Column.ADD_CX_DISTANT_RECUR);
+    addCxContralateralIdx = profile.getIndex(Column.ADD_CX_CONTRALATERAL);
+    addCxSecondInvasiveIdx = profile.getIndex(Column.ADD_CX_SECOND_INVASIVE);
+    addCxLastEvalIdx = profile.getIndex(Column.ADD_CX_LAST_EVAL);
+    daysDiagToDeathIdx = profile.getIndex(Column.DAYS_DIAG_TO_DEATH);
+    patientDiedIdx = profile.getIndex(Column.PATIENT_DIED);
+    diseaseFreeSurvivalTimeIdx = profile.getIndex(Column.DISEASE_FREE_SURVIVAL_TIME);
+    survivalNotDiedIdx = profile.getIndex(Column.SURVIVAL_NOT_DIED);
+    causeOfDeathIdx = profile.getIndex(Column.CAUSE_OF_DEATH);
+
+    medIdx.putAll(profile.getMedColumns());
+
+    for (Column column : Column.values()) {
+      if (profile.getIndex(column) >= 0) {
+        m_parsedColumns.add(profile.getIndex(column));
+      }
+    }
+    m_parsedColumns.addAll(sampleSourceIdxs);
+    m_parsedColumns.addAll(medIdx.values());
+
+    StringBuilder layout = new StringBuilder();
+    for (Column column : Column.values()) {
+      layout.append(column.name()).append('=').append(profile.getIndex(column)).append(';');
+    }
+    layout.append("sources=").append(new TreeSet<Integer>(sampleSourceIdxs)).append(';');
+    for (Med med : Med.values()) {
+      layout.append(med.name()).append('=').append(medIdx.get(med)).append(';');
+    }
+    m_layout = layout.toString().getBytes(Charset.forName("UTF-8"));
+  }
+
+  /**
+   * Gets the column a field was found in.
+   * @param column a field of the data sheet
+   * @return the 0-based column index, -1 if the field isn't in the data sheet
+   */
+  int getColumnIndex(Column column) {
+    return m_profile == null ? -1 : m_profile.getIndex(column);
+  }
+
+  /**
+   * Gets the columns {@link #parseSubject(RowView)} reads, which are all the columns a field was found in.
+   * @return the 0-based column indexes, in order
+   */
+  protected SortedSet<Integer> getParsedColumns() {
+    return Collections.unmodifiableSortedSet(m_parsedColumns);
+  }
+
+  /**
+   * Gets the name new column profiles get.
+   */
+  protected String getProfileName() {
+    return "profile";
+  }
+
+  public Subject parseSubject(RowView fields) {
+    Subject subject = new Subject();
+
+    subject.setSubjectId(fields.getString(subjectId));
+    subject.setProjectSite(fields.getString(projectSiteIdx));
+    subject.setAgeCell(fields.getValue(ageIdx));
+    subject.setGender(fields.getString(genderIdx));
+    subject.setRace(fields.getString(raceIdx));
+    subject.setMetastatic(fields.getString(metastaticIdx));
+    subject.setMenoStatus(fields.getString(menoStatusIdx));
+    subject.setErStatus(fields.getString(erStatusIdx));
+    subject.setDuration(fields.getString(durationIdx));
+    subject.setTamoxDose(fields.getString(tamoxDoseIdx));
+    subject.setTumorSource(fields.getString(tumorSourceIdx));
+    subject.setBloodSource(fields.getString(bloodSourceIdx));
+    subject.setPriorHistory(fields.getString(priorHistoryIdx));
+    subject.setPriorDcis(fields.getString(priorDcisIdx));
+    subject.setChemotherapy(fields.getString(chemoIdx));
+    subject.setHormoneTherapy(fields.getString(hormoneIdx));
+    subject.setSystemicTher(fields.getString(systemicTherIdx));
+    subject.setFollowup(fields.getString(followupIdx));
+    subject.setTimeBtwSurgTamoxCell(fields.getValue(timeBtwSurgTamoxIdx));
+    subject.setFirstAdjEndoTher(fields.getString(firstAdjEndoTherIdx));
+    subject.setTumorDimension(fields.getString(tumorDimensionIdx));
+    subject.setNumPositiveNodes(fields.getString(numPositiveNodesIdx));
+    subject.setTumorGrading(fields.getString(tumorGradingIdx));
+    subject.setProgesteroneReceptor(fields.getString(pgrStatusIdx));
+    subject.setRadiotherapy(fields.getString(radioIdx));
+    subject.setAdditionalCancer(fields.getString(additionalCancerIdx));
+    subject.setAddCxIpsilateralCell(fields.getValue(addCxIpsilateralIdx));
+    subject.setAddCxDistantRecurCell(fields.getValue(addCxDistantRecurIdx));
+    subject.setAddCxContralateralCell(fields.getValue(addCxContralateralIdx));
+    subject.setAddCxSecondInvasiveCell(fields.getValue(addCxSecondInvasiveIdx));
+    subject.setAddCxLastEvalCell(fields.getValue(addCxLastEvalIdx));
+    subject.setDaysDiagtoDeathCell(fields.getValue(daysDiagToDeathIdx));
+    subject.setPatientDied(fields.getString(patientDiedIdx));
+    subject.setDiseaseFreeSurvivalTimeCell(fields.getValue(diseaseFreeSurvivalTimeIdx));
+    subject.setSurvivalNotDiedCell(fields.getValue(survivalNotDiedIdx));
+    subject.setCauseOfDeath(fields.getString(causeOfDeathIdx));
+
+    subject.setRs4986774(new VariantAlleles(fields.getString(rs4986774idx)));
+    subject.setRs1065852(new VariantAlleles(fields.getString(rs1065852idx)));
+    subject.setRs3892097(new VariantAlleles(fields.getString(rs3892097idx)));
+    subject.setRs5030655(new VariantAlleles(fields.getString(rs5030655idx)));
+    subject.setRs16947(new VariantAlleles(fields.getString(rs16947idx)));
+    subject.setRs28371706(new VariantAlleles(fields.getString(rs28371706idx)));
+    subject.setRs28371725(new VariantAlleles(fields.getString(rs28371725idx)));
+    subject.setDeletion(fields.getString(star5idx));
+
+    for (Integer idx : sampleSourceIdxs) {
+      String sampleSource = fields.getString(idx);
+      if (sampleSource != null) {
+        if (sampleSource.contains("0")) {
+          subject.addSampleSource(Subject.SampleSource.TUMOR_FFP);
+        }
+        if (sampleSource.contains("1")) {
+          subject.addSampleSource(Subject.SampleSource.BLOOD);
+        }
+        if (sampleSource.contains("2")) {
+          subject.addSampleSource(Subject.SampleSource.BUCCAL);
+        }
+        if (sampleSource.contains("3")) {
+          subject.addSampleSource(Subject.SampleSource.TUMOR_FROZEN);
+        }
+        if (sampleSource.contains("4")) {
+          subject.addSampleSource(Subject.SampleSource.NORMAL_PARAFFIN);
+        }
+      }
+    }
+    if (subject.getSampleSources().isEmpty()) {
+      subject.addSampleSource(Subject.SampleSource.UNKNOWN);
+    }
+
+    subject.setGenotypeAmplichip(fields.getString(amplichipidx));
+    subject.setGenotypeOther(fields.getString(otherGenoIdx));
+
+    for (Med med : medIdx.keySet()) {
+      subject.addMedStatus(med, translateDrugFieldToValue(fields.getString(medIdx.get(med))));
+    }
+
+    subject.setDcisStatus(isDcis(fields.getString(projectNotesIdx)));
+
+    return subject;
+  }
+
+  public byte[] fingerprintRow(RowView fields) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException("SHA-1 is not available", ex);
+    }
+
+    DataOutputStream out = new DataOutputStream(new DigestOutputStream(new NullOutputStream(), digest));
+    try {
+      out.write(m_layout);
+      for (int col : m_parsedColumns) {
+        String text = fields.getString(col);
+        out.writeInt(col);
+        if (text == null) {
+          out.writeInt(-1);
+        }
+        else {
+          out.writeInt(text.length());
+          out.writeChars(text);
+        }
+        // a number can read the same as text but parse differently
+        CellValue value = fields.getValue(col);
+        out.writeBoolean(value != null && value.isNumber());
+        if (value != null && value.isNumber()) {
+          out.writeLong(Double.doubleToLongBits(value.getNumber()));
+        }
+      }
+      out.flush();
+    }
+    catch (IOException ex) {
+      // nothing is actually written anywhere
+      throw new IllegalStateException("Error hashing row", ex);
+    }
+    return digest.digest();
+  }
+
+  private Value translateDrugFieldToValue(String field) {
+    if (ItpcUtils.isBlank(field)) {
+      return Value.Unknown;
+    }
+    else if (field.equals("1")) {
+      return Value.Yes;
+    }
+    else if (field.equals("0")) {
+      return Value.No;
+    }
+    else {
+      return Value.Unknown;
+    }
+  }
+
+  /**
+   * Returns whether a given String contains the DCIS descriptor
+   * @param notes the Subject's notes field as a String
+   * @return a Value if the note contains DCIS test
+   */
+  private Value isDcis(String notes) {
+    Value isDcis = Value.Unknown;
+
+    if (!StringUtils.isBlank(notes)) {
+      if (notes.contains("DCIS, no invasive component")) {
+        isDcis = Value.Yes;
+      }
+      else {
+        isDcis = Value.No;
+      }
+    }
+    return isDcis;
+  }
+
+}
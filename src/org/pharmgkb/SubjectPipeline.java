@@ -0,0 +1,256 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import org.apache.log4j.Logger;
+import util.RowView;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the {@link SubjectEvaluation}s of all the Subjects in a {@link SubjectSource}, in row order.
+ * <br/>
+ * With one thread everything happens on the calling thread, one row at a time.  With more, a reader thread reads
+ * the rows and a pool of that many threads parses and evaluates them, while the caller takes the evaluations in row
+ * order and does the writing.  The rows waiting to be taken are bounded, so the reader waits when the caller falls
+ * behind.
+ * <br/>
+ * With an {@link EvaluationStore}, rows that haven't changed since the last run get their evaluation from the store
+ * instead of being parsed and evaluated.
+ *
+ * @author Ryan Whaley
+ */
+public class SubjectPipeline {
+  private static final Logger sf_logger = Logger.getLogger(SubjectPipeline.class);
+  /** how many rows per evaluation thread can be read ahead of the caller */
+  private static final int sf_rowsPerThread = 64;
+
+  private final SubjectSource m_source;
+  private final int m_threads;
+  private final EvaluationStore m_store;
+  private int m_rowIndex = -1;
+
+  private BlockingQueue<PendingRow> m_pending = null;
+  private ExecutorService m_executor = null;
+  private Thread m_reader = null;
+  private boolean m_done = false;
+
+  /**
+   * Makes a pipeline.  Nothing is read until the first call to {@link #next()}.
+   * @param source the source of the Subjects
+   * @param threads the number of threads to evaluate Subjects with
+   */
+  public SubjectPipeline(SubjectSource source, int threads) {
+    this(source, threads, null);
+  }
+
+  /**
+   * Makes a pipeline that reuses the evaluations of unchanged rows.  Nothing is read until the first call to
+   * {@link #next()}.
+   * @param source the source of the Subjects
+   * @param threads the number of threads to evaluate Subjects with
+   * @param store where to look up and keep the evaluations of rows, null to evaluate every row
+   */
+  public SubjectPipeline(SubjectSource source, int threads, EvaluationStore store) {
+    m_source = source;
+    m_threads = Math.max(1, threads);
+    m_store = store;
+  }
+
+  /**
+   * Gets the evaluation of the next Subject.
+   * @return the next evaluation, null if there are no more Subjects
+   * @throws Exception if the row can't be read, parsed or evaluated, with the row index in the message
+   */
+  public SubjectEvaluation next() throws Exception {
+    if (m_done) {
+      return null;
+    }
+    if (m_threads == 1) {
+      return nextInline();
+    }
+
+    if (m_reader == null) {
+      start();
+    }
+    PendingRow pending = m_pending.take();
+    if (pending == PendingRow.END) {
+      m_done = true;
+      return null;
+    }
+    m_rowIndex = pending.rowIndex;
+    if (pending.error != null) {
+      throw new Exception("Exception on line " + m_rowIndex, pending.error);
+    }
+    try {
+      return pending.evaluation.get();
+    }
+    catch (ExecutionException ex) {
+      throw new Exception("Exception on line " + m_rowIndex, ex.getCause());
+    }
+  }
+
+  private SubjectEvaluation nextInline() throws Exception {
+    if (!m_source.hasNext()) {
+      m_done = true;
+      return null;
+    }
+    try {
+      if (m_store != null) {
+        RowView row = m_source.nextRow();
+        m_rowIndex = m_source.getCurrentRowIndex();
+        return m_store.evaluate(m_source, row);
+      }
+      Subject subject = m_source.next();
+      m_rowIndex = m_source.getCurrentRowIndex();
+      return new SubjectEvaluation(subject);
+    }
+    catch (Exception ex) {
+      throw new Exception("Exception on line " + m_source.getCurrentRowIndex(), ex);
+    }
+  }
+
+  /**
+   * Gets the index of the row the last evaluation came from, see {@link SubjectSource#getCurrentRowIndex()}
+   * @return the row index
+   */
+  public int getCurrentRowIndex() {
+    return m_rowIndex;
+  }
+
+  /**
+   * Stops the reader and evaluation threads.  Call this when done, whether or not all the Subjects were taken.
+   */
+  public void close() {
+    m_done = true;
+    if (m_reader != null) {
+      m_reader.interrupt();
+    }
+    if (m_executor != null) {
+      m_executor.shutdownNow();
+    }
+  }
+
+  private void start() {
+    m_pending = new ArrayBlockingQueue<PendingRow>(m_threads * sf_rowsPerThread);
+    m_executor = Executors.newFixedThreadPool(m_threads, new DaemonThreadFactory("subject-evaluator-"));
+    m_reader = new DaemonThreadFactory("subject-reader-").newThread(new Runnable() {
+      public void run() {
+        read();
+      }
+    });
+    m_reader.start();
+  }
+
+  /**
+   * Reads the rows, on the reader thread, and hands them to the evaluation threads.
+   */
+  private void read() {
+    try {
+      RowView row;
+      while ((row = m_source.nextRow()) != null) {
+        final RowView fields = row;
+        Future<SubjectEvaluation> evaluation = m_executor.submit(new Callable<SubjectEvaluation>() {
+          public SubjectEvaluation call() {
+            if (m_store != null) {
+              return m_store.evaluate(m_source, fields);
+            }
+            return new SubjectEvaluation(m_source.parseSubject(fields));
+          }
+        });
+        m_pending.put(new PendingRow(m_source.getCurrentRowIndex(), evaluation, null));
+      }
+      m_pending.put(PendingRow.END);
+    }
+    catch (InterruptedException ex) {
+      // closed before everything was read
+    }
+    catch (Throwable ex) {
+      try {
+        m_pending.put(new PendingRow(m_source.getCurrentRowIndex() + 1, null, ex));
+      }
+      catch (InterruptedException iex) {
+        sf_logger.warn("Error reading rows", ex);
+      }
+    }
+  }
+
+
+  /**
+   * A row that's been read, with the evaluation of its Subject or the error reading it.
+   */
+  private static class PendingRow {
+    static final PendingRow END = new PendingRow(-1, null, null);
+
+    final int rowIndex;
+    final Future<SubjectEvaluation> evaluation;
+    final Throwable error;
+
+    PendingRow(int rowIndex, Future<SubjectEvaluation> evaluation, Throwable error) {
+      this.rowIndex = rowIndex;
+      this.evaluation = evaluation;
+      this.error = error;
+    }
+  }
+
+
+  /**
+   * Makes daemon threads so a pipeline that wasn't closed can't keep the JVM running.
+   */
+  private static class DaemonThreadFactory implements ThreadFactory {
+    private final String m_prefix;
+    private final AtomicInteger m_count = new AtomicInteger();
+
+    DaemonThreadFactory(String prefix) {
+      m_prefix = prefix;
+    }
+
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, m_prefix + m_count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
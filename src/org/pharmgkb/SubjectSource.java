@@ -0,0 +1,108 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import util.RowView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+
+/**
+ * A source of ITPC {@link Subject}s, one per data row.  Subjects come out of the source in the order they appear in
+ * the input.
+ *
+ * @author Ryan Whaley
+ */
+public interface SubjectSource extends Iterator<Subject> {
+
+  /**
+   * Gets the 0-based index of the row the last Subject returned by <code>next</code> came from, counting the header
+   * and legend rows.
+   * @return the current row index
+   */
+  public int getCurrentRowIndex();
+
+  /**
+   * Reads the next data row without turning it into a Subject, for handing off to {@link #parseSubject(RowView)}
+   * later, possibly on another thread.  This counts as a call to <code>next</code>.
+   * @return a copy of the columns of the row that get parsed, which stays good after more rows are read, null if
+   * there are no more rows
+   */
+  public RowView nextRow();
+
+  /**
+   * Turns a data row into a Subject.  This only reads the column indexes found in the header, so it's safe to call
+   * from several threads at once.
+   * @param fields a data row
+   * @return a new Subject
+   */
+  public Subject parseSubject(RowView fields);
+
+  /**
+   * Makes a hash of everything in a data row that {@link #parseSubject(RowView)} reads, along with which field each
+   * value is for.  Rows with the same fingerprint parse to the same Subject.  This is safe to call from several
+   * threads at once.
+   * @param fields a data row
+   * @return a SHA-1 hash of the row
+   */
+  public byte[] fingerprintRow(RowView fields);
+
+  /**
+   * Writes the derived values of a Subject to the output, if this source has somewhere to write them.  This may be
+   * called while another thread is reading rows with {@link #nextRow()}.
+   * @param rowIndex the index of the row the Subject came from, see {@link #getCurrentRowIndex()}
+   * @param evaluation the evaluation of the Subject
+   */
+  public void writeSubjectCalculatedColumns(int rowIndex, SubjectEvaluation evaluation);
+
+  /**
+   * Sends the calculated columns of each Subject to a results file and a report of the values that changed,
+   * instead of writing them to the output workbook.  This has to be called before the first data row is read.
+   * @param resultsFile the file to write the subject IDs and calculated columns to
+   * @param changesFile the file to write the calculated values that differ from the input to
+   * @return the output, which the caller closes once all the Subjects have been written
+   * @throws IOException if the files can't be written
+   */
+  public DeltaOutput startDeltaOutput(File resultsFile, File changesFile) throws IOException;
+
+  /**
+   * Releases the input.  This is called automatically once the last Subject has been read.
+   */
+  public void close();
+}
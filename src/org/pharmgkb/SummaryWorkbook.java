@@ -0,0 +1,85 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package org.pharmgkb;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.ss.usermodel.Workbook;
+import util.ExcelUtils;
+import util.ItpcUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * The output for an input that has no workbook of its own, like a delimited text export of the data sheet: a new,
+ * empty workbook that only gets the summary sheets.
+ *
+ * @author Ryan Whaley
+ */
+public class SummaryWorkbook implements WorkbookOutput {
+  private static final Logger sf_logger = Logger.getLogger(SummaryWorkbook.class);
+
+  private final File m_inputFile;
+  private Workbook m_workbook = null;
+
+  /**
+   * Makes the output for an input file.  The workbook isn't created until it's asked for.
+   * @param inputFile the file the Subjects are read from, the output is saved next to it
+   */
+  public SummaryWorkbook(File inputFile) {
+    m_inputFile = inputFile;
+  }
+
+  public Workbook getWorkbook() {
+    if (m_workbook == null) {
+      m_workbook = ExcelUtils.newWorkbook(".xls");
+    }
+    return m_workbook;
+  }
+
+  public File saveOutput() throws IOException {
+    File outputFile = ItpcUtils.getOutputFile(m_inputFile);
+    sf_logger.info("Writing output to: " + outputFile);
+    ExcelUtils.saveWorkbook(getWorkbook(), outputFile);
+    return outputFile;
+  }
+
+  public void discardOutput() {
+    m_workbook = null;
+  }
+}
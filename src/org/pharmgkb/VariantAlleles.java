@@ -38,16 +38,30 @@ package org.pharmgkb;
 
 import util.StringPair;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 
 /**
  * This class doesn't allow "Unknown" as a value, it only accepts a,c,g,t, or - (for deletion)
+ * <br/>
+ * The alleles aren't kept as Strings.  Each one is a 3 bit code (see {@link #getCode(String)}) and the pair is kept
+ * sorted in a single byte, the first allele in the low 3 bits and the second in the next 3, so comparing and counting
+ * alleles is done on the byte.  The odd subject with more than two alleles keeps the rest in an overflow array.
  * User: Ryan Whaley
  */
 public class VariantAlleles extends StringPair {
+  static final int NONE = 0;
+  static final int UNKNOWN_CODE = 6;
+  private static final int BITS = 3;
+  private static final int MASK = 7;
+
+  /** the alleles for each code, in the order they sort in */
+  private static final String[] sf_codes = new String[] {null, "-", "a", "c", "g", "t", UNKNOWN};
 
   private static final Set<String> validAlleles = new HashSet<String>();
   static {
@@ -58,6 +72,9 @@ public class VariantAlleles extends StringPair {
     validAlleles.add("-");
   }
 
+  private byte m_pair = 0;
+  private byte[] m_more = null;
+
   public VariantAlleles() {}
 
   public VariantAlleles(String alleles) {
@@ -67,9 +84,8 @@ public class VariantAlleles extends StringPair {
 
     alleles = alleles.trim().toLowerCase();
     String[] data = alleles.split("/");
-    Arrays.sort(data, String.CASE_INSENSITIVE_ORDER);
     for (String base : data) {
-      this.addString(base.trim().toLowerCase());
+      this.addString(base.trim());
     }
   }
 
@@ -77,4 +93,223 @@ public class VariantAlleles extends StringPair {
     return validAlleles.contains(string);
   }
 
+  /**
+   * Gets the code for an allele, ignoring case.  Codes sort the same way the alleles do.
+   * @param allele an allele
+   * @return 1 to 5 for -, a, c, g and t, {@link #UNKNOWN_CODE} for "Unknown", {@link #NONE} for anything else
+   */
+  static int getCode(String allele) {
+    if (allele == null) {
+      return NONE;
+    }
+    if (allele.length() == 1) {
+      switch (allele.charAt(0)) {
+        case '-': return 1;
+        case 'a': case 'A': return 2;
+        case 'c': case 'C': return 3;
+        case 'g': case 'G': return 4;
+        case 't': case 'T': return 5;
+        default: return NONE;
+      }
+    }
+    return allele.equalsIgnoreCase(UNKNOWN) ? UNKNOWN_CODE : NONE;
+  }
+
+  /**
+   * Gets the allele for a code
+   * @param code a code from {@link #getCode(String)}
+   * @return the allele, null for {@link #NONE}
+   */
+  static String getAllele(int code) {
+    return sf_codes[code];
+  }
+
+  /**
+   * Gets the first two alleles packed into a byte
+   * @return the code of the first allele in the low 3 bits and the code of the second in the next 3 bits
+   */
+  byte getPair() {
+    return m_pair;
+  }
+
+  /**
+   * Packs the allele pairs of several variants into a long, one byte per variant with the first variant in the
+   * highest byte used.  All seven SNPs of a subject fit.
+   * @param variants up to 8 variants
+   * @return the packed pairs, -1 if a variant has more than two alleles
+   */
+  public static long pack(VariantAlleles... variants) {
+    long bits = 0;
+    for (VariantAlleles variant : variants) {
+      if (variant.m_more != null) {
+        return -1;
+      }
+      bits = (bits << 8) | variant.m_pair;
+    }
+    return bits;
+  }
+
+  @Override
+  public void addString(String string) {
+    int code = isValid(string) ? getCode(string) : UNKNOWN_CODE;
+    int first = m_pair & MASK;
+    int second = (m_pair >> BITS) & MASK;
+
+    if (first == NONE) {
+      m_pair = (byte)code;
+    }
+    else if (second == NONE) {
+      m_pair = makePair(Math.min(first, code), Math.max(first, code));
+    }
+    else {
+      byte[] codes = getCodes(size() + 1);
+      codes[codes.length - 1] = (byte)code;
+      setCodes(codes, codes.length);
+    }
+  }
+
+  @Override
+  public void removeString(String string) {
+    int code = getCode(string);
+    if (code == NONE || !getAllele(code).equals(string)) {
+      return;
+    }
+    byte[] codes = getCodes(size());
+    for (int i=0; i<codes.length; i++) {
+      if (codes[i] == code) {
+        System.arraycopy(codes, i + 1, codes, i, codes.length - i - 1);
+        setCodes(codes, codes.length - 1);
+        return;
+      }
+    }
+  }
+
+  @Override
+  public List<String> getStrings() {
+    List<String> strings = new ArrayList<String>(size());
+    for (byte code : getCodes(size())) {
+      strings.add(getAllele(code));
+    }
+    return Collections.unmodifiableList(strings);
+  }
+
+  @Override
+  public String get(int i) {
+    if (i < 0 || i >= size()) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+    }
+    if (i < 2) {
+      return getAllele((m_pair >> (BITS * i)) & MASK);
+    }
+    return getAllele(m_more[i - 2]);
+  }
+
+  @Override
+  public int count(String datum) {
+    int code = getCode(datum);
+    if (code == NONE) {
+      return 0;
+    }
+
+    int count = 0;
+    if ((m_pair & MASK) == code) count++;
+    if (((m_pair >> BITS) & MASK) == code) count++;
+    if (m_more != null) {
+      for (byte element : m_more) {
+        if (element == code) count++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public boolean contains(String inString) {
+    return count(inString)>0;
+  }
+
+  @Override
+  public boolean is(String string1, String string2) {
+    if (m_more != null) {
+      return super.is(string1, string2);
+    }
+    int code1 = getCode(string1);
+    int code2 = getCode(string2);
+    if (code1 == NONE || code2 == NONE) {
+      return false;
+    }
+    return m_pair == makePair(Math.min(code1, code2), Math.max(code1, code2));
+  }
+
+  @Override
+  public boolean isUncertain() {
+    return m_more != null || count(UNKNOWN) > 0 || ((m_pair >> BITS) & MASK) == NONE;
+  }
+
+  @Override
+  public boolean hasData() {
+    return m_more == null && ((m_pair >> BITS) & MASK) != NONE;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return m_pair == 0;
+  }
+
+  @Override
+  public int size() {
+    if (m_more != null) {
+      return 2 + m_more.length;
+    }
+    if ((m_pair & MASK) == NONE) {
+      return 0;
+    }
+    return ((m_pair >> BITS) & MASK) == NONE ? 1 : 2;
+  }
+
+  @Override
+  public String toString() {
+    int size = size();
+    StringBuilder sb = new StringBuilder();
+    if (size>=1) {
+      sb.append(get(0));
+    }
+    if (size==2) {
+      sb.append("/");
+      sb.append(get(1));
+    }
+    return sb.toString();
+  }
+
+  private static byte makePair(int first, int second) {
+    return (byte)(first | (second << BITS));
+  }
+
+  /**
+   * Gets the codes of all the alleles in an array with room for at least that many
+   */
+  private byte[] getCodes(int length) {
+    byte[] codes = new byte[length];
+    int size = size();
+    if (size > 0) {
+      codes[0] = (byte)(m_pair & MASK);
+    }
+    if (size > 1) {
+      codes[1] = (byte)((m_pair >> BITS) & MASK);
+    }
+    if (m_more != null) {
+      System.arraycopy(m_more, 0, codes, 2, m_more.length);
+    }
+    return codes;
+  }
+
+  /**
+   * Sorts the first <code>count</code> codes and keeps them as the alleles
+   */
+  private void setCodes(byte[] codes, int count) {
+    Arrays.sort(codes, 0, count);
+    int first = count > 0 ? codes[0] : NONE;
+    int second = count > 1 ? codes[1] : NONE;
+    m_pair = makePair(first, second);
+    m_more = count > 2 ? Arrays.copyOfRange(codes, 2, count) : null;
+  }
 }
@@ -0,0 +1,401 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package service;
+
+import com.google.common.base.Joiner;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.log4j.Logger;
+import org.pharmgkb.FieldSubjectParser;
+import org.pharmgkb.SubjectEvaluation;
+import util.Json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Evaluates Subjects sent over HTTP, for tools that need the genotype calls and inclusion checks for a few subjects
+ * without building a spreadsheet.  The server only listens on the local machine.
+ * <br/>
+ * <code>POST /evaluate</code> takes a JSON object of a Subject's fields (see {@link FieldSubjectParser}) and answers
+ * with its evaluation, or takes an array of up to {@link #sf_maxRequestSubjects} of them and answers with an array of
+ * evaluations in the same order.  A request with a field that isn't known is turned away with a 400, a request bigger
+ * than {@link #sf_maxRequestBytes} is turned away with a 413 before it's all read, and a Subject that still can't be
+ * evaluated gets an object with just an <code>error</code> in its place.
+ * <br/>
+ * The threads that handle the requests don't evaluate anything themselves.  Every Subject goes on one bounded queue,
+ * and each worker thread takes whatever is waiting, up to {@link #sf_maxBatch} Subjects, and evaluates them together.
+ * Under load the workers pick up full batches from many requests at a time, while a lone request is taken as soon as
+ * it arrives instead of waiting for a batch to fill up.  When the queue is full, or the evaluations take too long,
+ * the request is turned away with a 503 and whatever it left on the queue is skipped by the workers.
+ *
+ * @author Ryan Whaley
+ */
+public class EvaluationService {
+  private static final Logger sf_logger = Logger.getLogger(EvaluationService.class);
+  /** the most Subjects a worker evaluates at once */
+  private static final int sf_maxBatch = 64;
+  /** the most Subjects waiting to be evaluated */
+  private static final int sf_queueSize = 8192;
+  /** the most Subjects in one request, so a single request can always fit on the queue */
+  private static final int sf_maxRequestSubjects = 1024;
+  /** the biggest request body read, in bytes, which leaves plenty of room for that many Subjects */
+  static final int sf_maxRequestBytes = 4 * 1024 * 1024;
+  /** threads reading requests and writing responses */
+  private static final int sf_handlerThreads = 32;
+  /** how long a request waits for its evaluations */
+  private static final long sf_timeoutMillis = 30000;
+
+  private final FieldSubjectParser m_parser;
+  private final BlockingQueue<Task> m_queue = new ArrayBlockingQueue<Task>(sf_queueSize);
+  private final List<Thread> m_workers = new ArrayList<Thread>();
+  private final ExecutorService m_handlers;
+  private final HttpServer m_server;
+
+  /**
+   * Makes the service.  Nothing is served until {@link #start()}.
+   * @param port the local port to listen on, 0 for any free port
+   * @param threads the number of worker threads to evaluate Subjects with
+   * @throws Exception if the port can't be opened
+   */
+  public EvaluationService(int port, int threads) throws Exception {
+    m_parser = new FieldSubjectParser();
+    for (int i=1; i<=Math.max(1, threads); i++) {
+      Thread worker = new Thread(new Runnable() {
+        public void run() {
+          work();
+        }
+      }, "evaluation-worker-" + i);
+      worker.setDaemon(true);
+      m_workers.add(worker);
+    }
+
+    m_server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 1024);
+    m_server.createContext("/evaluate", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        handleEvaluate(exchange);
+      }
+    });
+    m_handlers = Executors.newFixedThreadPool(sf_handlerThreads);
+    m_server.setExecutor(m_handlers);
+  }
+
+  public void start() {
+    for (Thread worker : m_workers) {
+      worker.start();
+    }
+    m_server.start();
+    sf_logger.info("Serving evaluations at http://127.0.0.1:" + getPort() + "/evaluate with " + m_workers.size() +
+        " workers");
+  }
+
+  public void stop() {
+    m_server.stop(0);
+    m_handlers.shutdownNow();
+    for (Thread worker : m_workers) {
+      worker.interrupt();
+    }
+  }
+
+  public int getPort() {
+    return m_server.getAddress().getPort();
+  }
+
+  /**
+   * Evaluates Subjects on the worker threads and waits for the results.
+   * @param subjects the fields of each Subject
+   * @return the JSON-ready evaluation of each Subject, or an error for the ones that couldn't be evaluated
+   * @throws IllegalArgumentException if there are more than {@link #sf_maxRequestSubjects} Subjects
+   * @throws RejectedExecutionException if there's no room on the queue, or the evaluations took too long
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public List<Map<String,Object>> evaluate(List<Map<String,Object>> subjects) throws InterruptedException {
+    if (subjects.size() > sf_maxRequestSubjects) {
+      throw new IllegalArgumentException("At most " + sf_maxRequestSubjects + " subjects can be sent at once");
+    }
+
+    CountDownLatch done = new CountDownLatch(subjects.size());
+    List<Task> tasks = new ArrayList<Task>(subjects.size());
+    boolean finished = false;
+    try {
+      for (Map<String,Object> fields : subjects) {
+        Task task = new Task(fields, done);
+        if (!m_queue.offer(task)) {
+          throw new RejectedExecutionException("Too many subjects waiting to be evaluated");
+        }
+        tasks.add(task);
+      }
+      if (!done.await(sf_timeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new RejectedExecutionException("Timed out waiting for evaluations");
+      }
+      finished = true;
+    }
+    finally {
+      if (!finished) {
+        // nobody is waiting for the ones already queued, so the workers pass over them
+        for (Task task : tasks) {
+          task.cancelled = true;
+        }
+      }
+    }
+
+    List<Map<String,Object>> results = new ArrayList<Map<String,Object>>(tasks.size());
+    for (Task task : tasks) {
+      results.add(task.result);
+    }
+    return results;
+  }
+
+  /**
+   * Takes batches of Subjects off the queue and evaluates them, on a worker thread.
+   */
+  private void work() {
+    List<Task> batch = new ArrayList<Task>(sf_maxBatch);
+    try {
+      while (true) {
+        batch.add(m_queue.take());
+        m_queue.drainTo(batch, sf_maxBatch - 1);
+        for (Task task : batch) {
+          if (task.cancelled) {
+            continue;
+          }
+          try {
+            task.result = describe(new SubjectEvaluation(m_parser.parseFields(task.fields)));
+          }
+          catch (Exception ex) {
+            task.result = error(ex.getMessage() == null ? ex.toString() : ex.getMessage());
+          }
+          task.done.countDown();
+        }
+        batch.clear();
+      }
+    }
+    catch (InterruptedException ex) {
+      // stopped
+    }
+  }
+
+  private void handleEvaluate(HttpExchange exchange) throws IOException {
+    try {
+      if (!exchange.getRequestMethod().equals("POST")) {
+        respond(exchange, 405, error("Use POST"));
+        return;
+      }
+      if (!exchange.getRequestURI().getPath().equals("/evaluate")) {
+        respond(exchange, 404, error("Not found"));
+        return;
+      }
+
+      String body = null;
+      if (!isTooLong(exchange.getRequestHeaders().getFirst("Content-Length"))) {
+        body = readBody(exchange.getRequestBody(), sf_maxRequestBytes);
+      }
+      if (body == null) {
+        respond(exchange, 413, error("Requests can be at most " + sf_maxRequestBytes + " bytes"));
+        return;
+      }
+
+      Object request;
+      try {
+        request = Json.parse(body);
+      }
+      catch (IllegalArgumentException ex) {
+        respond(exchange, 400, error(ex.getMessage()));
+        return;
+      }
+
+      List<Map<String,Object>> subjects = new ArrayList<Map<String,Object>>();
+      boolean single = request instanceof Map;
+      if (single) {
+        subjects.add(asSubject(request));
+      }
+      else if (request instanceof List) {
+        if (((List<?>)request).size() > sf_maxRequestSubjects) {
+          respond(exchange, 413, error("At most " + sf_maxRequestSubjects + " subjects can be sent at once"));
+          return;
+        }
+        for (Object element : (List<?>)request) {
+          if (!(element instanceof Map)) {
+            respond(exchange, 400, error("Each subject has to be an object"));
+            return;
+          }
+          subjects.add(asSubject(element));
+        }
+      }
+      else {
+        respond(exchange, 400, error("Send a subject object or an array of them"));
+        return;
+      }
+      try {
+        for (Map<String,Object> fields : subjects) {
+          m_parser.checkFields(fields);
+        }
+      }
+      catch (IllegalArgumentException ex) {
+        respond(exchange, 400, error(ex.getMessage()));
+        return;
+      }
+
+      List<Map<String,Object>> results = evaluate(subjects);
+      respond(exchange, 200, single ? results.get(0) : results);
+    }
+    catch (RejectedExecutionException ex) {
+      respond(exchange, 503, error(ex.getMessage()));
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      respond(exchange, 503, error("Shutting down"));
+    }
+    catch (RuntimeException ex) {
+      sf_logger.error("Error handling request", ex);
+      respond(exchange, 500, error(ex.toString()));
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  private static boolean isTooLong(String contentLength) {
+    if (contentLength == null) {
+      return false;
+    }
+    try {
+      return Long.parseLong(contentLength.trim()) > sf_maxRequestBytes;
+    }
+    catch (NumberFormatException ex) {
+      // the body is still counted as it's read
+      return false;
+    }
+  }
+
+  /**
+   * Reads a request body, giving up as soon as it's known to be too long so a huge body is never held in memory.
+   * @param in the request body
+   * @param maxBytes the most bytes the body can have
+   * @return the body, null if it has more than <code>maxBytes</code> bytes
+   * @throws IOException if the body can't be read
+   */
+  static String readBody(InputStream in, int maxBytes) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer, 0, (int)Math.min(buffer.length, maxBytes + 1L - body.size()))) > 0) {
+      body.write(buffer, 0, read);
+      if (body.size() > maxBytes) {
+        return null;
+      }
+    }
+    return body.toString("UTF-8");
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String,Object> asSubject(Object object) {
+    return (Map<String,Object>)object;
+  }
+
+  private static void respond(HttpExchange exchange, int status, Object body) throws IOException {
+    byte[] bytes = Json.toJson(body).getBytes("UTF-8");
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+
+  private static Map<String,Object> error(String message) {
+    Map<String,Object> error = new LinkedHashMap<String,Object>();
+    error.put("error", message);
+    return error;
+  }
+
+  /**
+   * Puts an evaluation in the form it's sent back in.
+   * @param evaluation the evaluation of a Subject
+   * @return the values of the evaluation, by name
+   */
+  static Map<String,Object> describe(SubjectEvaluation evaluation) {
+    Map<String,Object> result = new LinkedHashMap<String,Object>();
+    result.put("subjectId", evaluation.getSubject().getSubjectId());
+    result.put("genotype", Joiner.on('/').join(evaluation.getGenotypeFinal().getStrings()));
+    result.put("metabolizerStatus", evaluation.getMetabolizerStatus());
+    result.put("genotypeMetabolizerGroup", evaluation.getGenotypeMetabolizerGroup());
+    result.put("score", evaluation.getScore());
+    result.put("metabolizerGroup", evaluation.getMetabolizerGroup());
+    result.put("firstDiseaseEvent", evaluation.getFirstDiseaseEventCalc());
+    result.put("diagToEventDays", evaluation.getDiagToEventDaysCalc());
+    result.put("breastCancerFreeInterval", evaluation.getBreastCancerFreeInterval());
+
+    Map<String,Object> checks = new LinkedHashMap<String,Object>();
+    for (SubjectEvaluation.Check check : SubjectEvaluation.Check.values()) {
+      checks.put(check.name(), evaluation.get(check));
+    }
+    result.put("checks", checks);
+    return result;
+  }
+
+
+  /**
+   * One Subject waiting to be evaluated
+   */
+  private static class Task {
+    final Map<String,Object> fields;
+    final CountDownLatch done;
+    /** written by the worker before counting down, so it's seen by whoever waited on the latch */
+    Map<String,Object> result;
+    /** set once the request has given up on its results */
+    volatile boolean cancelled;
+
+    Task(Map<String,Object> fields, CountDownLatch done) {
+      this.fields = fields;
+      this.done = done;
+    }
+  }
+}
@@ -38,7 +38,10 @@ package summary;
 
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.pharmgkb.Subject;
+import org.pharmgkb.Genotype;
+import org.pharmgkb.SubjectEvaluation;
+
+import java.util.Map;
 
 /**
  * Created by IntelliJ IDEA.
@@ -46,13 +49,54 @@ import org.pharmgkb.Subject;
  * Date: Aug 25, 2010
  */
 public abstract class AbstractSummary {
+  /** metabolizer groups in the order summaries count and list them, counted by ordinal */
+  protected static final Genotype.MetabolizerGroup[] sf_metabolizerGroups = Genotype.MetabolizerGroup.values();
 
   public abstract String getSheetTitle();
 
-  public abstract void addSubject(Subject subject);
+  public abstract void addSubject(SubjectEvaluation evaluation);
 
   public abstract void writeToWorkbook(Workbook wb);
 
+  /**
+   * Makes a new summary of the same kind with nothing added to it yet.
+   * @return an empty summary
+   */
+  public abstract AbstractSummary newEmpty();
+
+  /**
+   * Adds everything that's been added to another summary of the same kind to this one, as if its subjects had been
+   * added here after this summary's own.  Merging is associative, so subjects can be split into consecutive ranges,
+   * summarized separately, and merged in order to get the same summary as adding them all to one.
+   * @param other a summary of the same kind, which isn't changed
+   * @throws IllegalArgumentException if <code>other</code> is a different kind of summary
+   */
+  public abstract void merge(AbstractSummary other);
+
+  /**
+   * Checks that a summary can be merged into this one.
+   * @param other the summary to merge
+   * @throws IllegalArgumentException if <code>other</code> is a different kind of summary
+   */
+  protected void checkMergeable(AbstractSummary other) {
+    if (other == null || other.getClass() != getClass()) {
+      throw new IllegalArgumentException("Can't merge " + (other == null ? null : other.getSheetTitle())
+          + " into " + getSheetTitle());
+    }
+  }
+
+  /**
+   * Adds counts kept in a Map to the counts in another.  New keys go in the order <code>from</code> has them.
+   * @param to the counts to add to
+   * @param from the counts to add
+   */
+  protected static <K> void addCounts(Map<K,Integer> to, Map<K,Integer> from) {
+    for (Map.Entry<K,Integer> entry : from.entrySet()) {
+      Integer count = to.get(entry.getKey());
+      to.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+    }
+  }
+
   /**
    * If the Sheet doesn't already exist in the Workbook, create it.  Otherwise this method
    * will delete the existing one and create a new one
@@ -36,13 +36,13 @@
 
 package summary;
 
-import com.google.common.collect.Maps;
 import org.apache.log4j.Logger;
 import org.apache.poi.ss.usermodel.*;
 import org.pharmgkb.Subject;
-
-import java.util.Map;
-import java.util.SortedMap;
+import org.pharmgkb.SubjectEvaluation;
+import util.CounterCube;
+import util.ItpcUtils;
+import util.Value;
 
 /**
  * Created by IntelliJ IDEA.
@@ -52,84 +52,79 @@ import java.util.SortedMap;
 public class GenotypeSummary extends AbstractSummary {
   private static final Logger sf_logger = Logger.getLogger(GenotypeSummary.class);
   private static final String sf_sheetTitle = "Genotype Summary";
-  private Map<String,Integer> countMap = Maps.newHashMap();
-  private Map<Subject.SampleSource, int[]> sourceMap = Maps.newHashMap();
-  private static final int fourHomo  = 0;
-  private static final int fourHeto  = 1;
-  private static final int fourNon   = 2;
-  private static final int fourTotal = 3;
-  private SortedMap<Integer,int[]> tumorFreqMap = Maps.newTreeMap();
-
-  public GenotypeSummary() {
-    int[] starFour = new int[]{0,0,0,0};
-    sourceMap.put(Subject.SampleSource.TUMOR_FFP, starFour);
-    starFour = new int[]{0,0,0,0};
-    sourceMap.put(Subject.SampleSource.BLOOD, starFour);
-    starFour = new int[]{0,0,0,0};
-    sourceMap.put(Subject.SampleSource.BUCCAL, starFour);
-    starFour = new int[]{0,0,0,0};
-    sourceMap.put(Subject.SampleSource.TUMOR_FROZEN, starFour);
-    starFour = new int[]{0,0,0,0};
-    sourceMap.put(Subject.SampleSource.NORMAL_PARAFFIN, starFour);
-    starFour = new int[]{0,0,0,0};
-    sourceMap.put(Subject.SampleSource.UNKNOWN, starFour);
-    for (int i=0; i<12; i++) {
-      tumorFreqMap.put(i, new int[]{0,0,0,0,0,0});
-    }
-  }
+  private static final int sf_valueCount = Value.values().length;
+  private static final int sf_sourceCount = Subject.SampleSource.values().length;
+
+  // [metabolizer group][weak][potent]
+  private CounterCube countCube = new CounterCube(sf_metabolizerGroups.length, sf_valueCount, sf_valueCount);
+  // [sample source][*4 status]
+  private CounterCube sourceCube = new CounterCube(sf_sourceCount, StarFourStatus.values().length);
+  // [site][sample source]
+  private CounterCube tumorFreqCube = new CounterCube(ItpcUtils.SITE_COUNT, sf_sourceCount);
 
   public String getSheetTitle() {
     return sf_sheetTitle;
   }
 
-  public void addSubject(Subject subject) {
-    if (subject != null) {
+  public void addSubject(SubjectEvaluation evaluation) {
+    if (evaluation != null) {
+      Subject subject = evaluation.getSubject();
       int siteIdx = Integer.parseInt(subject.getProjectSite())-1;
 
-      String key = subject.getGenotypeFinal().getMetabolizerGroup()
-          + "|" + subject.getWeak()
-          + "|" + subject.getPotent();
-
       StarFourStatus status;
-      if (subject.getGenotypeFinal().is("*4","*4")) {
+      if (evaluation.getGenotypeFinal().is("*4","*4")) {
         status = StarFourStatus.Homozygous;
       }
-      else if (subject.getGenotypeFinal().contains("*4")) {
+      else if (evaluation.getGenotypeFinal().contains("*4")) {
         status = StarFourStatus.Heterozygous;
       }
       else {
         status = StarFourStatus.NonFour;
       }
 
-      if (!countMap.containsKey(key)) {
-        countMap.put(key, 1);
-      }
-      else {
-        countMap.put(key, countMap.get(key)+1);
-      }
+      countCube.increment(
+          evaluation.getGenotypeFinal().getStatus().getGroup().ordinal(),
+          evaluation.getWeak().ordinal(),
+          evaluation.getPotent().ordinal());
 
       if (subject.getSampleSources().size()>1) {
         sf_logger.warn("Multiple sample sources for "+subject.getSubjectId());
       }
-      Subject.SampleSource source = subject.getSampleSources().iterator().next();
-
-      int[] totals = sourceMap.get(source);
-      totals[fourTotal]++;
-      switch (status) {
-        case Homozygous:
-          totals[fourHomo]++;
-          break;
-        case Heterozygous:
-          totals[fourHeto]++;
-          break;
-        default:
-          totals[fourNon]++;
-      }
+      Subject.SampleSource source = countedSource(subject);
 
-      tumorFreqMap.get(siteIdx)[source.ordinal()]++;
+      sourceCube.increment(source.ordinal(), status.ordinal());
+      tumorFreqCube.increment(siteIdx, source.ordinal());
     }
   }
 
+  /**
+   * Picks the sample source a subject is counted under.  A subject with several sources is counted under the first
+   * of them in {@link Subject.SampleSource} order, so the counts don't depend on the order the sources are kept in.
+   * @param subject a subject
+   * @return the sample source to count, UNKNOWN if the subject has none
+   */
+  static Subject.SampleSource countedSource(Subject subject) {
+    for (Subject.SampleSource source : Subject.SampleSource.values()) {
+      if (subject.getSampleSources().contains(source)) {
+        return source;
+      }
+    }
+    return Subject.SampleSource.UNKNOWN;
+  }
+
+  public AbstractSummary newEmpty() {
+    return new GenotypeSummary();
+  }
+
+  public void merge(AbstractSummary other) {
+    checkMergeable(other);
+    GenotypeSummary summary = (GenotypeSummary)other;
+
+    countCube.merge(summary.countCube);
+    sourceCube.merge(summary.sourceCube);
+    tumorFreqCube.merge(summary.tumorFreqCube);
+  }
+
   public void writeToWorkbook(Workbook wb) {
     Sheet sheet = getSheet(wb);
 
@@ -140,15 +135,22 @@ public class GenotypeSummary extends AbstractSummary {
     header.createCell(3).setCellValue("Count");
 
     int rowNum = 1;
-    for (String key : countMap.keySet()) {
-      String[] fields = key.split("\\|");
-      Row data = sheet.createRow(rowNum);
-      data.createCell(0).setCellValue(fields[0]);
-      data.createCell(1).setCellValue(fields[1]);
-      data.createCell(2).setCellValue(fields[2]);
-      data.createCell(3).setCellValue(countMap.get(key));
-
-      rowNum++;
+    for (int group=0; group<sf_metabolizerGroups.length; group++) {
+      for (Value weak : Value.values()) {
+        for (Value potent : Value.values()) {
+          long count = countCube.get(group, weak.ordinal(), potent.ordinal());
+          if (count == 0) {
+            continue;
+          }
+          Row data = sheet.createRow(rowNum);
+          data.createCell(0).setCellValue(sf_metabolizerGroups[group].getText());
+          data.createCell(1).setCellValue(weak.toString());
+          data.createCell(2).setCellValue(potent.toString());
+          data.createCell(3).setCellValue(count);
+
+          rowNum++;
+        }
+      }
     }
 
     // Tumor source table
@@ -164,10 +166,13 @@ public class GenotypeSummary extends AbstractSummary {
     for (Subject.SampleSource source : Subject.SampleSource.values()) {
       row = sheet.createRow(++rowNum);
       row.createCell(0).setCellValue(source.toString());
-      row.createCell(1).setCellValue(sourceMap.get(source)[fourTotal]);
-      row.createCell(2).setCellValue(sourceMap.get(source)[fourHomo]);
-      row.createCell(3).setCellValue(sourceMap.get(source)[fourHeto]);
-      row.createCell(4).setCellValue(sourceMap.get(source)[fourNon]);
+      long homozygous = sourceCube.get(source.ordinal(), StarFourStatus.Homozygous.ordinal());
+      long heterozygous = sourceCube.get(source.ordinal(), StarFourStatus.Heterozygous.ordinal());
+      long nonFour = sourceCube.get(source.ordinal(), StarFourStatus.NonFour.ordinal());
+      row.createCell(1).setCellValue(homozygous + heterozygous + nonFour);
+      row.createCell(2).setCellValue(homozygous);
+      row.createCell(3).setCellValue(heterozygous);
+      row.createCell(4).setCellValue(nonFour);
     }
 
     rowNum++;
@@ -183,27 +188,25 @@ public class GenotypeSummary extends AbstractSummary {
       colMarker++;
     }
 
-    int[] totals = new int[]{0,0,0,0,0,0,0,0,0,0,0,0};
+    long[] totals = new long[sf_sourceCount];
     CellStyle pctStyle = sheet.getWorkbook().createCellStyle();
     DataFormat format = sheet.getWorkbook().createDataFormat();
     pctStyle.setDataFormat(format.getFormat("0.0%"));
 
-    for (Integer i : tumorFreqMap.keySet()) {
+    for (int i=0; i<ItpcUtils.SITE_COUNT; i++) {
       row = sheet.createRow(++rowNum);
-      Integer siteTotal = tumorFreqMap.get(i)[Subject.SampleSource.TUMOR_FFP.ordinal()]
-              + tumorFreqMap.get(i)[Subject.SampleSource.TUMOR_FROZEN.ordinal()]
-              + tumorFreqMap.get(i)[Subject.SampleSource.BLOOD.ordinal()]
-              + tumorFreqMap.get(i)[Subject.SampleSource.BUCCAL.ordinal()]
-              + tumorFreqMap.get(i)[Subject.SampleSource.NORMAL_PARAFFIN.ordinal()]
-              + tumorFreqMap.get(i)[Subject.SampleSource.UNKNOWN.ordinal()];
+      long siteTotal = 0;
+      for (Subject.SampleSource source : Subject.SampleSource.values()) {
+        siteTotal += tumorFreqCube.get(i, source.ordinal());
+      }
 
       Cell cell;
       row.createCell(0).setCellValue(i+1);
 
       colMarker = 0;
       for (Subject.SampleSource source : Subject.SampleSource.values()) {
-        Integer total = tumorFreqMap.get(i)[source.ordinal()];
-        Float pct = (float)tumorFreqMap.get(i)[source.ordinal()] / (float)siteTotal;
+        long total = tumorFreqCube.get(i, source.ordinal());
+        Float pct = (float)total / (float)siteTotal;
 
         row.createCell(colMarker*2+1).setCellValue(total);
 
@@ -216,12 +219,10 @@ public class GenotypeSummary extends AbstractSummary {
       }
     }
     row = sheet.createRow(++rowNum);
-    int projectTotal = totals[Subject.SampleSource.TUMOR_FFP.ordinal()]
-            + totals[Subject.SampleSource.TUMOR_FROZEN.ordinal()]
-            + totals[Subject.SampleSource.NORMAL_PARAFFIN.ordinal()]
-            + totals[Subject.SampleSource.BLOOD.ordinal()]
-            + totals[Subject.SampleSource.BUCCAL.ordinal()]
-            + totals[Subject.SampleSource.UNKNOWN.ordinal()];
+    long projectTotal = 0;
+    for (long total : totals) {
+      projectTotal += total;
+    }
 
     colMarker = 0;
     for (Subject.SampleSource source : Subject.SampleSource.values()) {
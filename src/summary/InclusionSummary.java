@@ -36,16 +36,15 @@
 
 package summary;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.pharmgkb.Subject;
+import org.pharmgkb.SubjectEvaluation;
+import util.CounterCube;
 import util.ItpcUtils;
 import util.Value;
 
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -110,106 +109,71 @@ public class InclusionSummary extends AbstractSummary {
     criteriaLabels.put(2, "Criteria 3");
   }
 
-  //
-  private List<Map<Integer,Map<Value,Integer>>> projectMap = null;
-  private Map<Integer,Map<Value,Integer>> studyMap = null;
-  private List<Map<Integer,Map<Value,Integer>>> projectExcludeMap = null;
-  private List<Map<Integer,Map<Value,Integer>>> projectCritMap = null;
-  private Map<Integer,Map<Value,Integer>> studyCritMap = null;
-  private Map<Integer, Integer> projectSubjectCount = null;
-
-  public InclusionSummary() {
-    projectMap = Lists.newArrayList();
-    projectExcludeMap = Lists.newArrayList();
-    projectCritMap = Lists.newArrayList();
-    projectSubjectCount = Maps.newHashMap();
-
-    studyMap = Maps.newHashMap();
-    studyCritMap = Maps.newHashMap();
-
-    for (int i=0; i< ItpcUtils.SITE_COUNT; i++) {
-      projectSubjectCount.put(i, 0);
-      Map<Integer,Map<Value,Integer>> inclusionMap = Maps.newHashMap();
-      projectMap.add(inclusionMap);
-
-      for (int j=0; j< inclusions.size(); j++) {
-        Map<Value, Integer> valueMap = Maps.newHashMap();
-        inclusionMap.put(j, valueMap);
-
-        valueMap.put(Value.Yes, 0);
-        valueMap.put(Value.No, 0);
-        valueMap.put(Value.Unknown, 0);
-
-        valueMap = Maps.newHashMap();
-        studyMap.put(j, valueMap);
-
-        valueMap.put(Value.Yes, 0);
-        valueMap.put(Value.No, 0);
-        valueMap.put(Value.Unknown, 0);
-      }
-
-      Map<Integer,Map<Value,Integer>> exclusionMap = Maps.newHashMap();
-      projectExcludeMap.add(exclusionMap);
-
-      for (int j=0; j<exclusions.size(); j++) {
-        Map<Value,Integer> valueMap = Maps.newHashMap();
-        exclusionMap.put(j, valueMap);
-
-        valueMap.put(Value.Yes,0);
-        valueMap.put(Value.No,0);
-      }
-
-      Map<Integer,Map<Value,Integer>> criteriaMap = Maps.newHashMap();
-      projectCritMap.add(criteriaMap);
-
-      for (int j=0; j<criteriaLabels.size(); j++) {
-        Map<Value,Integer> valueMap = Maps.newHashMap();
-        criteriaMap.put(j, valueMap);
+  private static final int sf_valueCount = Value.values().length;
+
+  // [site][inclusion][value]
+  private CounterCube projectCube = new CounterCube(ItpcUtils.SITE_COUNT, inclusions.size(), sf_valueCount);
+  // [inclusion][value]
+  private CounterCube studyCube = new CounterCube(inclusions.size(), sf_valueCount);
+  // [site][exclusion][value]
+  private CounterCube projectExcludeCube = new CounterCube(ItpcUtils.SITE_COUNT, exclusions.size(), sf_valueCount);
+  // [site][criteria][value]
+  private CounterCube projectCritCube = new CounterCube(ItpcUtils.SITE_COUNT, criteriaLabels.size(), sf_valueCount);
+  // [criteria][value]
+  private CounterCube studyCritCube = new CounterCube(criteriaLabels.size(), sf_valueCount);
+  // [site]
+  private CounterCube projectSubjectCount = new CounterCube(ItpcUtils.SITE_COUNT);
 
-        valueMap.put(Value.Yes,0);
-        valueMap.put(Value.No,0);
-
-        valueMap = Maps.newHashMap();
-        studyCritMap.put(j, valueMap);
+  @Override
+  public String getSheetTitle() {
+    return sf_sheetTitle;
+  }
 
-        valueMap.put(Value.Yes,0);
-        valueMap.put(Value.No,0);
-      }
-    }
+  @Override
+  public void addSubject(SubjectEvaluation evaluation) {
+    int site = Integer.valueOf(evaluation.getSubject().getProjectSite());
+    projectSubjectCount.increment(site-1);
+
+    addSubjectInclusion(site-1, inc1, evaluation.get(SubjectEvaluation.Check.Inclusion1));
+    addSubjectInclusion(site-1, inc2a, evaluation.get(SubjectEvaluation.Check.Inclusion2a));
+    addSubjectInclusion(site-1, inc2b, evaluation.get(SubjectEvaluation.Check.Inclusion2b));
+    addSubjectInclusion(site-1, inc3, evaluation.get(SubjectEvaluation.Check.Inclusion3));
+    addSubjectInclusion(site-1, inc4, evaluation.get(SubjectEvaluation.Check.Inclusion4));
+    addSubjectInclusion(site-1, inc4a, evaluation.get(SubjectEvaluation.Check.Inclusion4a));
+    addSubjectInclusion(site-1, inc4b, evaluation.get(SubjectEvaluation.Check.Inclusion4b));
+    addSubjectInclusion(site-1, inc4c, evaluation.get(SubjectEvaluation.Check.Inclusion4c));
+    addSubjectInclusion(site-1, inc5, evaluation.get(SubjectEvaluation.Check.Inclusion5));
+    addSubjectInclusion(site-1, inc6, evaluation.get(SubjectEvaluation.Check.Inclusion6));
+    addSubjectInclusion(site-1, inc7, evaluation.get(SubjectEvaluation.Check.Inclusion7));
+    addSubjectInclusion(site-1, inc8, evaluation.get(SubjectEvaluation.Check.Inclusion8));
+    addSubjectInclusion(site-1, inc9, evaluation.get(SubjectEvaluation.Check.Inclusion9));
+
+    addSubjectExclusion(site - 1, exc1, evaluation.get(SubjectEvaluation.Check.Exclude1));
+    addSubjectExclusion(site - 1, exc2, evaluation.get(SubjectEvaluation.Check.Exclude4));
+    addSubjectExclusion(site - 1, exc3, evaluation.get(SubjectEvaluation.Check.Exclude5));
+    addSubjectExclusion(site - 1, exc4, evaluation.get(SubjectEvaluation.Check.Exclude6));
+
+    addSubjectCriterium(site - 1, crit1, evaluation.get(SubjectEvaluation.Check.IncludeCrit1));
+    addSubjectCriterium(site - 1, crit2, evaluation.get(SubjectEvaluation.Check.IncludeCrit2));
+    addSubjectCriterium(site - 1, crit3, evaluation.get(SubjectEvaluation.Check.IncludeCrit3));
   }
 
   @Override
-  public String getSheetTitle() {
-    return sf_sheetTitle;
+  public AbstractSummary newEmpty() {
+    return new InclusionSummary();
   }
 
   @Override
-  public void addSubject(Subject subject) {
-    int site = Integer.valueOf(subject.getProjectSite());
-    projectSubjectCount.put(site-1, projectSubjectCount.get(site-1)+1);
-
-    addSubjectInclusion(site-1, inc1, subject.passInclusion1());
-    addSubjectInclusion(site-1, inc2a, subject.passInclusion2a());
-    addSubjectInclusion(site-1, inc2b, subject.passInclusion2b());
-    addSubjectInclusion(site-1, inc3, subject.passInclusion3());
-    addSubjectInclusion(site-1, inc4, subject.passInclusion4());
-    addSubjectInclusion(site-1, inc4a, subject.passInclusion4a());
-    addSubjectInclusion(site-1, inc4b, subject.passInclusion4b());
-    addSubjectInclusion(site-1, inc4c, subject.passInclusion4c());
-    addSubjectInclusion(site-1, inc5, subject.passInclusion5());
-    addSubjectInclusion(site-1, inc6, subject.passInclusion6());
-    addSubjectInclusion(site-1, inc7, subject.passInclusion7());
-    addSubjectInclusion(site-1, inc8, subject.passInclusion8());
-    addSubjectInclusion(site-1, inc9, subject.passInclusion9());
-
-    addSubjectExclusion(site - 1, exc1, subject.exclude1());
-    addSubjectExclusion(site - 1, exc2, subject.exclude4());
-    addSubjectExclusion(site - 1, exc3, subject.exclude5());
-    addSubjectExclusion(site - 1, exc4, subject.exclude6());
-
-    addSubjectCriterium(site - 1, crit1, subject.includeCrit1());
-    addSubjectCriterium(site - 1, crit2, subject.includeCrit2());
-    addSubjectCriterium(site - 1, crit3, subject.includeCrit3());
+  public void merge(AbstractSummary other) {
+    checkMergeable(other);
+    InclusionSummary summary = (InclusionSummary)other;
+
+    projectSubjectCount.merge(summary.projectSubjectCount);
+    projectCube.merge(summary.projectCube);
+    projectExcludeCube.merge(summary.projectExcludeCube);
+    projectCritCube.merge(summary.projectCritCube);
+    studyCube.merge(summary.studyCube);
+    studyCritCube.merge(summary.studyCritCube);
   }
 
   private void addSubjectInclusion(int site, int criteria, Value value) {
@@ -219,26 +183,17 @@ public class InclusionSummary extends AbstractSummary {
       useValue = Value.No;
     }
 
-    Map<Integer, Map<Value, Integer>> inclusionMap = projectMap.get(site);
-    Map<Value, Integer> valueMap = inclusionMap.get(criteria);
-    Map<Value, Integer> studyValueMap = studyMap.get(criteria);
-
-    valueMap.put(useValue, valueMap.get(useValue)+1);
-    studyValueMap.put(useValue, studyValueMap.get(useValue)+1);
+    projectCube.increment(site, criteria, useValue.ordinal());
+    studyCube.increment(criteria, useValue.ordinal());
   }
 
   private void addSubjectExclusion(int site, int criteria, Value value) {
-    Map<Integer, Map<Value,Integer>> exclusionMap = projectExcludeMap.get(site);
-    Map<Value, Integer> valueMap = exclusionMap.get(criteria);
-    valueMap.put(value, valueMap.get(value)+1);
+    projectExcludeCube.increment(site, criteria, value.ordinal());
   }
 
   private void addSubjectCriterium(int site, int criteria, Value value) {
-    Map<Integer, Map<Value,Integer>> criteriumMap = projectCritMap.get(site);
-    Map<Value, Integer> valueMap = criteriumMap.get(criteria);
-    Map<Value, Integer> studyValueMap = studyCritMap.get(criteria);
-    valueMap.put(value, valueMap.get(value)+1);
-    studyValueMap.put(value, studyValueMap.get(value)+1);
+    projectCritCube.increment(site, criteria, value.ordinal());
+    studyCritCube.increment(criteria, value.ordinal());
   }
 
   @Override
@@ -275,8 +230,8 @@ public class InclusionSummary extends AbstractSummary {
     for (Integer siteIdx : inclusions.keySet()) {
       Row dataRow = sheet.createRow(currentRow++);
       dataRow.createCell(0).setCellValue(inclusions.get(siteIdx));
-      dataRow.createCell(1).setCellValue(studyMap.get(siteIdx).get(Value.Yes));
-      dataRow.createCell(2).setCellValue(studyMap.get(siteIdx).get(Value.No));
+      dataRow.createCell(1).setCellValue(studyCube.get(siteIdx, Value.Yes.ordinal()));
+      dataRow.createCell(2).setCellValue(studyCube.get(siteIdx, Value.No.ordinal()));
     }
 
     return currentRow;
@@ -294,8 +249,8 @@ public class InclusionSummary extends AbstractSummary {
     for (Integer siteIdx : criteriaLabels.keySet()) {
       Row dataRow = sheet.createRow(currentRow++);
       dataRow.createCell(0).setCellValue(criteriaLabels.get(siteIdx));
-      dataRow.createCell(1).setCellValue(studyCritMap.get(siteIdx).get(Value.Yes));
-      dataRow.createCell(2).setCellValue(studyCritMap.get(siteIdx).get(Value.No));
+      dataRow.createCell(1).setCellValue(studyCritCube.get(siteIdx, Value.Yes.ordinal()));
+      dataRow.createCell(2).setCellValue(studyCritCube.get(siteIdx, Value.No.ordinal()));
     }
 
     return currentRow;
@@ -305,10 +260,7 @@ public class InclusionSummary extends AbstractSummary {
     // initialize the inclusion totals to 0
     Map<Integer,String> useHeaders = inclusions;
 
-    Map<Integer, Integer> inclusionTotals = Maps.newHashMap();
-    for (int i=0; i<useHeaders.size(); i++) {
-      inclusionTotals.put(i,0);
-    }
+    long[] inclusionTotals = new long[useHeaders.size()];
 
     Row title = sheet.createRow(currentRow++);
     title.createCell(0).setCellValue("Inclusion Summary (criteria passed: "+ItpcUtils.valueToInclusion(value)+")");
@@ -327,8 +279,9 @@ public class InclusionSummary extends AbstractSummary {
       siteRow.createCell(1).setCellValue(projectSubjectCount.get(i));
 
       for (int j=0; j<useHeaders.size(); j++) {
-        siteRow.createCell(j+2).setCellValue(projectMap.get(i).get(j).get(value));
-        inclusionTotals.put(j, inclusionTotals.get(j) + projectMap.get(i).get(j).get(value));
+        long count = projectCube.get(i, j, value.ordinal());
+        siteRow.createCell(j+2).setCellValue(count);
+        inclusionTotals[j] += count;
       }
     }
 
@@ -336,7 +289,7 @@ public class InclusionSummary extends AbstractSummary {
     totalsRow.createCell(0).setCellValue("Total");
     totalsRow.createCell(1).setCellValue(getSubjectTotal());
     for (int i=0; i<useHeaders.size(); i++) {
-      totalsRow.createCell(i+2).setCellValue(inclusionTotals.get(i));
+      totalsRow.createCell(i+2).setCellValue(inclusionTotals[i]);
     }
 
     return currentRow;
@@ -344,10 +297,7 @@ public class InclusionSummary extends AbstractSummary {
 
   private int writeExclusionTable(Sheet sheet, int currentRow, Value value) {
 
-    Map<Integer,Integer> exclusionTotals = Maps.newHashMap();
-    for (Integer i : exclusions.keySet()) {
-      exclusionTotals.put(i, 0);
-    }
+    long[] exclusionTotals = new long[exclusions.size()];
 
     Row titleRow = sheet.createRow(currentRow++);
     titleRow.createCell(0).setCellValue("Exclusion Summary ("+ItpcUtils.valueToExclusion(value)+")");
@@ -365,8 +315,9 @@ public class InclusionSummary extends AbstractSummary {
       siteRow.createCell(1).setCellValue(projectSubjectCount.get(i));
 
       for (Integer j : exclusions.keySet()) {
-        siteRow.createCell(j+2).setCellValue(projectExcludeMap.get(i).get(j).get(value));
-        exclusionTotals.put(j, exclusionTotals.get(j)+projectExcludeMap.get(i).get(j).get(value));
+        long count = projectExcludeCube.get(i, j, value.ordinal());
+        siteRow.createCell(j+2).setCellValue(count);
+        exclusionTotals[j] += count;
       }
     }
 
@@ -374,7 +325,7 @@ public class InclusionSummary extends AbstractSummary {
     totalsRow.createCell(0).setCellValue("Total");
     totalsRow.createCell(1).setCellValue(getSubjectTotal());
     for (int i=0; i<exclusions.size(); i++) {
-      totalsRow.createCell(i+2).setCellValue(exclusionTotals.get(i));
+      totalsRow.createCell(i+2).setCellValue(exclusionTotals[i]);
     }
 
     return currentRow;
@@ -383,10 +334,7 @@ public class InclusionSummary extends AbstractSummary {
   
   private int writeCriteriaTable(Sheet sheet, int currentRow, Value value) {
 
-    Map<Integer,Integer> criteriaTotals = Maps.newHashMap();
-    for (Integer i : criteriaLabels.keySet()) {
-      criteriaTotals.put(i, 0);
-    }
+    long[] criteriaTotals = new long[criteriaLabels.size()];
 
     Row titleRow = sheet.createRow(currentRow++);
     titleRow.createCell(0).setCellValue("Criteria ("+ItpcUtils.valueToInclusion(value)+")");
@@ -402,24 +350,25 @@ public class InclusionSummary extends AbstractSummary {
       siteRow.createCell(0).setCellValue(i+1);
 
       for (Integer j : criteriaLabels.keySet()) {
-        siteRow.createCell(j+1).setCellValue(projectCritMap.get(i).get(j).get(value));
-        criteriaTotals.put(j, criteriaTotals.get(j)+projectCritMap.get(i).get(j).get(value));
+        long count = projectCritCube.get(i, j, value.ordinal());
+        siteRow.createCell(j+1).setCellValue(count);
+        criteriaTotals[j] += count;
       }
     }
 
     Row totalsRow = sheet.createRow(currentRow++);
     totalsRow.createCell(0).setCellValue("Total");
     for (int i=0; i<criteriaLabels.size(); i++) {
-      totalsRow.createCell(i + 1).setCellValue(criteriaTotals.get(i));
+      totalsRow.createCell(i + 1).setCellValue(criteriaTotals[i]);
     }
 
     return currentRow;
   }
 
-  private int getSubjectTotal() {
-    int totalSubjects = 0;
-    for (Integer siteId : projectSubjectCount.keySet()) {
-      totalSubjects += projectSubjectCount.get(siteId);
+  private long getSubjectTotal() {
+    long totalSubjects = 0;
+    for (int i=0; i<ItpcUtils.SITE_COUNT; i++) {
+      totalSubjects += projectSubjectCount.get(i);
     }
     return totalSubjects;
   }
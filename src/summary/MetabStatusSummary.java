@@ -41,7 +41,8 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.pharmgkb.Genotype;
-import org.pharmgkb.Subject;
+import org.pharmgkb.SubjectEvaluation;
+import util.CounterCube;
 import util.GenotypeComparator;
 import util.Value;
 
@@ -81,118 +82,175 @@ public class MetabStatusSummary extends AbstractSummary {
       "No Medication Data Available\t\t\t",               //23
       "Uncategorized\t\t\t"                               //24
   };
-  protected int[] metabStatusTotals;
-  protected SortedMap<String,Integer> metabStatusByAssignment = Maps.newTreeMap();
-  protected SortedMap<Genotype,Integer> metabTypeMap = Maps.newTreeMap(GenotypeComparator.getComparator());
-
-  public MetabStatusSummary() {
-    metabStatusTotals = new int[]{0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0};
-    metabStatusByAssignment.put(Genotype.EXTENSIVE, 0);
-    metabStatusByAssignment.put(Genotype.INTERMEDIATE, 0);
-    metabStatusByAssignment.put(Genotype.POOR, 0);
-    metabStatusByAssignment.put(Genotype.UNKNOWN, 0);
+  private static final int sf_statusCount = Genotype.MetabolizerStatus.values().length;
+  private static final int sf_valueCount = Value.values().length;
+  /** metabTable row for every statusIndex, worked out from the classify rules */
+  private static final byte[] sf_statusTable = new byte[2*sf_statusCount*sf_valueCount*sf_valueCount];
+  static {
+    for (int unknown=0; unknown<2; unknown++) {
+      for (Genotype.MetabolizerStatus status : Genotype.MetabolizerStatus.values()) {
+        for (Value weak : Value.values()) {
+          for (Value potent : Value.values()) {
+            int row = classify(unknown==1, status, weak, potent);
+            sf_statusTable[statusIndex(unknown==1, status, weak, potent)] = (byte)row;
+          }
+        }
+      }
+    }
   }
 
+  protected CounterCube metabStatusTotals = new CounterCube(metabTable.length);
+  protected CounterCube metabStatusByAssignment = new CounterCube(sf_metabolizerGroups.length);
+  protected SortedMap<Genotype,Integer> metabTypeMap = Maps.newTreeMap(GenotypeComparator.getComparator());
+
   public String getSheetTitle() {
     return sf_sheetTitle;
   }
 
-  public void addSubject(Subject subject) {
-    if (subject != null) {
-      if (subject.getPotent() == Value.Yes && subject.getGenotypeFinal().isUnknown()) {
-        metabStatusTotals[17]++;
-      }
+  public void addSubject(SubjectEvaluation evaluation) {
+    if (evaluation != null) {
+      Genotype genotype = evaluation.getGenotypeFinal();
+      Genotype.MetabolizerStatus status = genotype.getStatus();
 
-      else if (subject.getPotent() == Value.Yes) {
-        metabStatusTotals[18]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.UM,Genotype.Metabolizer.UM) && subject.getWeak() == Value.No) {
-        metabStatusTotals[0]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.UM,Genotype.Metabolizer.UM) && subject.getWeak() == Value.Yes) {
-        metabStatusTotals[1]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.EM,Genotype.Metabolizer.UM) && subject.getWeak() == Value.No) {
-        metabStatusTotals[2]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.IM,Genotype.Metabolizer.UM) && subject.getWeak() == Value.No) {
-        metabStatusTotals[3]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.EM,Genotype.Metabolizer.UM) && subject.getWeak() == Value.Yes) {
-        metabStatusTotals[4]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.EM,Genotype.Metabolizer.EM) && subject.getWeak() == Value.No) {
-        metabStatusTotals[5]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.IM,Genotype.Metabolizer.UM) && subject.getWeak() == Value.Yes) {
-        metabStatusTotals[6]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.PM,Genotype.Metabolizer.UM) && subject.getWeak() == Value.No) {
-        metabStatusTotals[7]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.IM,Genotype.Metabolizer.PM) && subject.getWeak() == Value.Yes) {
-        metabStatusTotals[8]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.EM, Genotype.Metabolizer.IM) && subject.getWeak() == Value.No) {
-        metabStatusTotals[9]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.EM,Genotype.Metabolizer.EM) && subject.getWeak() == Value.Yes) {
-        metabStatusTotals[10]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.IM,Genotype.Metabolizer.IM) && subject.getWeak() == Value.No) {
-        metabStatusTotals[11]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.EM,Genotype.Metabolizer.PM) && subject.getWeak() == Value.No) {
-        metabStatusTotals[12]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.EM,Genotype.Metabolizer.IM) && subject.getWeak() == Value.Yes) {
-        metabStatusTotals[13]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.EM,Genotype.Metabolizer.PM) && subject.getWeak() == Value.Yes) {
-        metabStatusTotals[14]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.IM,Genotype.Metabolizer.IM) && subject.getWeak() == Value.Yes) {
-        metabStatusTotals[15]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.IM,Genotype.Metabolizer.PM) && subject.getWeak() == Value.No) {
-        metabStatusTotals[16]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.IM,Genotype.Metabolizer.PM) && subject.getWeak() == Value.Yes) {
-        metabStatusTotals[19]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.PM,Genotype.Metabolizer.PM) && subject.getWeak() == Value.Yes) {
-        metabStatusTotals[20]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.PM,Genotype.Metabolizer.PM) && subject.getWeak() == Value.No) {
-        metabStatusTotals[21]++;
-      }
-      else if (subject.getGenotypeFinal().is(Genotype.Metabolizer.PM,Genotype.Metabolizer.PM) && subject.getWeak() == Value.Unknown && subject.getPotent() == Value.Unknown) {
-        metabStatusTotals[22]++;
-      }
-      else if (subject.getWeak() == Value.Unknown && subject.getPotent() == Value.Unknown) {
-        metabStatusTotals[23]++;
-      }
-      else if (!(subject.getGenotypeFinal().isUnknown() && subject.getWeak() == Value.No && subject.getPotent() == Value.No)) {
-        // sf_logger.warn("No metab. status for: " + row.get(subjectId) + " :: " + metab.toString() + " :: " + subject.getWeak() + "/" + subject.getPotent());
-        metabStatusTotals[24]++;
-      }
-      else {
-        // sf_logger.warn("No matching logic for: " + row.get(subjectId) + " :: " + metab.toString() + " :: " + subject.getWeak() + "/" + subject.getPotent());
-        metabStatusTotals[24]++;
-      }
+      metabStatusTotals.increment(statusRow(genotype, status, evaluation.getWeak(), evaluation.getPotent()));
 
-      String metabGroup = subject.getGenotypeFinal().getMetabolizerGroup();
-      metabStatusByAssignment.put(metabGroup, metabStatusByAssignment.get(metabGroup) + 1);
+      metabStatusByAssignment.increment(status.getGroup().ordinal());
 
-      if (!metabTypeMap.containsKey(subject.getGenotypeFinal())) {
-        metabTypeMap.put(subject.getGenotypeFinal(), 1);
+      if (!metabTypeMap.containsKey(genotype)) {
+        metabTypeMap.put(genotype, 1);
       }
       else {
-        metabTypeMap.put(subject.getGenotypeFinal(), metabTypeMap.get(subject.getGenotypeFinal())+1);
+        metabTypeMap.put(genotype, metabTypeMap.get(genotype)+1);
       }
     }
   }
 
+  /**
+   * Looks up which {@link #metabTable} row a subject is counted in.
+   * @param genotype the subject's final genotype
+   * @param status the metabolizer status of the genotype
+   * @param weak whether a weak inhibitor was taken
+   * @param potent whether a potent inhibitor was taken
+   * @return the index of the row in {@link #metabTable}
+   */
+  static int statusRow(Genotype genotype, Genotype.MetabolizerStatus status, Value weak, Value potent) {
+    return sf_statusTable[statusIndex(genotype.isUnknown(), status, weak, potent)];
+  }
+
+  /**
+   * Finds where a subject's status row is kept in {@link #sf_statusTable}.  The genotype only matters through whether
+   * it has an Unknown allele and its metabolizer status, so those are all the table is keyed on.
+   */
+  private static int statusIndex(boolean unknown, Genotype.MetabolizerStatus status, Value weak, Value potent) {
+    return (((unknown ? 1 : 0)*sf_statusCount + status.ordinal())*sf_valueCount + weak.ordinal())*sf_valueCount + potent.ordinal();
+  }
+
+  /**
+   * The rules for which {@link #metabTable} row a subject is counted in.  These only run when the class is loaded,
+   * to fill in {@link #sf_statusTable}.
+   * @param unknown true if the genotype has an Unknown allele
+   * @param status the metabolizer status of the genotype
+   * @param weak whether a weak inhibitor was taken
+   * @param potent whether a potent inhibitor was taken
+   * @return the index of the row in {@link #metabTable}
+   */
+  private static int classify(boolean unknown, Genotype.MetabolizerStatus status, Value weak, Value potent) {
+    if (potent == Value.Yes && unknown) {
+      return 17;
+    }
+
+    else if (potent == Value.Yes) {
+      return 18;
+    }
+    else if (status == Genotype.MetabolizerStatus.UM_UM && weak == Value.No) {
+      return 0;
+    }
+    else if (status == Genotype.MetabolizerStatus.UM_UM && weak == Value.Yes) {
+      return 1;
+    }
+    else if (status == Genotype.MetabolizerStatus.EM_UM && weak == Value.No) {
+      return 2;
+    }
+    else if (status == Genotype.MetabolizerStatus.IM_UM && weak == Value.No) {
+      return 3;
+    }
+    else if (status == Genotype.MetabolizerStatus.EM_UM && weak == Value.Yes) {
+      return 4;
+    }
+    else if (status == Genotype.MetabolizerStatus.EM_EM && weak == Value.No) {
+      return 5;
+    }
+    else if (status == Genotype.MetabolizerStatus.IM_UM && weak == Value.Yes) {
+      return 6;
+    }
+    else if (status == Genotype.MetabolizerStatus.PM_UM && weak == Value.No) {
+      return 7;
+    }
+    else if (status == Genotype.MetabolizerStatus.IM_PM && weak == Value.Yes) {
+      return 8;
+    }
+    else if (status == Genotype.MetabolizerStatus.EM_IM && weak == Value.No) {
+      return 9;
+    }
+    else if (status == Genotype.MetabolizerStatus.EM_EM && weak == Value.Yes) {
+      return 10;
+    }
+    else if (status == Genotype.MetabolizerStatus.IM_IM && weak == Value.No) {
+      return 11;
+    }
+    else if (status == Genotype.MetabolizerStatus.EM_PM && weak == Value.No) {
+      return 12;
+    }
+    else if (status == Genotype.MetabolizerStatus.EM_IM && weak == Value.Yes) {
+      return 13;
+    }
+    else if (status == Genotype.MetabolizerStatus.EM_PM && weak == Value.Yes) {
+      return 14;
+    }
+    else if (status == Genotype.MetabolizerStatus.IM_IM && weak == Value.Yes) {
+      return 15;
+    }
+    else if (status == Genotype.MetabolizerStatus.IM_PM && weak == Value.No) {
+      return 16;
+    }
+    else if (status == Genotype.MetabolizerStatus.IM_PM && weak == Value.Yes) {
+      return 19;
+    }
+    else if (status == Genotype.MetabolizerStatus.PM_PM && weak == Value.Yes) {
+      return 20;
+    }
+    else if (status == Genotype.MetabolizerStatus.PM_PM && weak == Value.No) {
+      return 21;
+    }
+    else if (status == Genotype.MetabolizerStatus.PM_PM && weak == Value.Unknown && potent == Value.Unknown) {
+      return 22;
+    }
+    else if (weak == Value.Unknown && potent == Value.Unknown) {
+      return 23;
+    }
+    else if (!(unknown && weak == Value.No && potent == Value.No)) {
+      // sf_logger.warn("No metab. status for: " + row.get(subjectId) + " :: " + metab.toString() + " :: " + weak + "/" + potent);
+      return 24;
+    }
+    else {
+      // sf_logger.warn("No matching logic for: " + row.get(subjectId) + " :: " + metab.toString() + " :: " + weak + "/" + potent);
+      return 24;
+    }
+  }
+
+  public AbstractSummary newEmpty() {
+    return new MetabStatusSummary();
+  }
+
+  public void merge(AbstractSummary other) {
+    checkMergeable(other);
+    MetabStatusSummary summary = (MetabStatusSummary)other;
+
+    metabStatusTotals.merge(summary.metabStatusTotals);
+    metabStatusByAssignment.merge(summary.metabStatusByAssignment);
+    addCounts(metabTypeMap, summary.metabTypeMap);
+  }
+
   public void writeToWorkbook(Workbook wb) {
     Sheet sheet = getSheet(wb);
     int currentRow = 0;
@@ -203,10 +261,10 @@ public class MetabStatusSummary extends AbstractSummary {
     header.createCell(0).setCellValue("Status");
     header.createCell(1).setCellValue("n");
 
-    for (String group : metabStatusByAssignment.keySet()) {
+    for (int i=0; i<sf_metabolizerGroups.length; i++) {
       Row data = sheet.createRow(currentRow++);
-      data.createCell(0).setCellValue(group);
-      data.createCell(1).setCellValue(metabStatusByAssignment.get(group));
+      data.createCell(0).setCellValue(sf_metabolizerGroups[i].getText());
+      data.createCell(1).setCellValue(metabStatusByAssignment.get(i));
     }
 
     currentRow += 3;
@@ -248,7 +306,7 @@ public class MetabStatusSummary extends AbstractSummary {
         data.createCell(2).setCellValue(fields[2]);
         data.createCell(3).setCellValue(fields[3]);
       }
-      data.createCell(4).setCellValue(metabStatusTotals[i]);
+      data.createCell(4).setCellValue(metabStatusTotals.get(i));
     }
   }
 }
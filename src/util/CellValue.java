@@ -0,0 +1,146 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package util;
+
+
+/**
+ * The value of a data sheet cell, which is either text or a number.  Numeric cells are kept as numbers so they can
+ * be compared without being parsed, and they're only turned into text when the text is asked for.
+ * <br/>
+ * Two values are equal if they're both text with the same text, or both numbers with the same number.
+ *
+ * @author Ryan Whaley
+ */
+public final class CellValue {
+  private String m_text;
+  private final double m_number;
+  private final boolean m_isNumber;
+
+  private CellValue(String text, double number, boolean isNumber) {
+    m_text = text;
+    m_number = number;
+    m_isNumber = isNumber;
+  }
+
+  /**
+   * Makes a value for a text cell.
+   * @param text the text of the cell
+   * @return the value, null if the text is null
+   */
+  public static CellValue text(String text) {
+    if (text == null) {
+      return null;
+    }
+    return new CellValue(text, Double.NaN, false);
+  }
+
+  /**
+   * Makes a value for a numeric cell.
+   * @param number the number in the cell
+   * @return the value
+   */
+  public static CellValue number(double number) {
+    return new CellValue(null, number, true);
+  }
+
+  /**
+   * Whether this came from a numeric cell.
+   * @return true if this is a number, false if it's text
+   */
+  public boolean isNumber() {
+    return m_isNumber;
+  }
+
+  /**
+   * Gets the number of a numeric cell.
+   * @return the number, {@link Double#NaN} if this is text
+   */
+  public double getNumber() {
+    return m_number;
+  }
+
+  /**
+   * Gets this value as a whole number, the same way {@link Integer#parseInt(String)} would read the text of it.
+   * @return the whole number, null if this isn't one
+   */
+  public Integer toInteger() {
+    if (m_isNumber) {
+      if (m_number == Math.rint(m_number) && m_number >= Integer.MIN_VALUE && m_number <= Integer.MAX_VALUE) {
+        return (int)m_number;
+      }
+      return null;
+    }
+    try {
+      return Integer.parseInt(m_text);
+    }
+    catch (NumberFormatException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Whether this is blank according to {@link ItpcUtils#isBlank(String)}.  Numbers are never blank.
+   * @return true if this is blank text
+   */
+  public boolean isBlank() {
+    return !m_isNumber && ItpcUtils.isBlank(m_text);
+  }
+
+  /**
+   * Whether the text of this value is exactly "0".
+   * @return true if this is a zero
+   */
+  public boolean isZero() {
+    if (m_isNumber) {
+      // -0 is written as "-0"
+      return Double.compare(m_number, 0d) == 0;
+    }
+    return m_text.equals("0");
+  }
+
+  /**
+   * Gets the text of the cell.  Numbers are formatted the same way {@link POIUtils#getStringCellValues} would.
+   * @return the text of the cell
+   */
+  @Override
+  public String toString() {
+    if (m_text == null) {
+      m_text = POIUtils.formatNumber(m_number);
+    }
+    return m_text;
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.apache.poi.ss.util.CellReference;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Records changed cell values and writes them to a CSV audit file on a background thread, so whoever changes the
+ * cells never waits on file or log I/O.
+ * <br/>
+ * Changes go into a fixed size ring buffer without taking a lock.  A writer claims the next sequence number, fills
+ * in that slot, and then publishes it.  The background thread takes slots in sequence order once they're published
+ * and writes them out.  If the ring is full, writers wait for the background thread to free up a slot, so no
+ * change is ever dropped.  When it has caught up, the background thread flushes the file and parks until a writer
+ * publishes the next change.  It also counts the changes in each column.
+ *
+ * @author Ryan Whaley
+ */
+public class ChangeAudit implements Closeable {
+  private static final Logger sf_logger = Logger.getLogger(ChangeAudit.class);
+
+  private final File m_file;
+  private final int m_mask;
+  private final int[] m_rows;
+  private final int[] m_columns;
+  private final String[] m_oldValues;
+  private final String[] m_newValues;
+  /** sequence number + 1 of the change each slot holds once it's published, 0 before anything is */
+  private final AtomicLongArray m_published;
+  private final AtomicLong m_claimed = new AtomicLong();
+  private final AtomicLong m_consumed = new AtomicLong();
+  private volatile boolean m_closed = false;
+
+  private final Thread m_drainer;
+  private Writer m_out;
+  private IOException m_error = null;
+  private final SortedMap<Integer,Integer> m_columnCounts = new TreeMap<Integer,Integer>();
+
+  /**
+   * Starts the audit file and the thread that writes to it.
+   * @param file the CSV file to write the changes to
+   * @param capacity the most changes to hold before writers have to wait, rounded up to a power of 2
+   * @throws IOException if the file can't be written
+   */
+  public ChangeAudit(File file, int capacity) throws IOException {
+    if (capacity < 1 || capacity > (1 << 24)) {
+      throw new IllegalArgumentException("Capacity out of range: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    m_file = file;
+    m_mask = size - 1;
+    m_rows = new int[size];
+    m_columns = new int[size];
+    m_oldValues = new String[size];
+    m_newValues = new String[size];
+    m_published = new AtomicLongArray(size);
+
+    m_out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+    m_out.write("Cell,Row,Column,Old Value,New Value\n");
+
+    m_drainer = new Thread(new Runnable() {
+      public void run() {
+        drain();
+      }
+    }, "change-audit");
+    m_drainer.setDaemon(true);
+    m_drainer.start();
+  }
+
+  /**
+   * Records one changed cell.  This is safe to call from any number of threads at once, but not after
+   * {@link #close()}.
+   * @param row the 0-based row index of the cell
+   * @param column the 0-based column index of the cell
+   * @param oldValue what the cell had before
+   * @param newValue what the cell has now
+   */
+  public void record(int row, int column, String oldValue, String newValue) {
+    if (m_closed) {
+      throw new IllegalStateException("Change audit is closed");
+    }
+    long sequence = m_claimed.getAndIncrement();
+    while (sequence - m_consumed.get() > m_mask) {
+      // full, wait for the oldest change to be written
+      Thread.yield();
+    }
+    int slot = (int)sequence & m_mask;
+    m_rows[slot] = row;
+    m_columns[slot] = column;
+    m_oldValues[slot] = oldValue;
+    m_newValues[slot] = newValue;
+    // publishing the slot makes the writes above visible to the background thread
+    m_published.set(slot, sequence + 1);
+    // the background thread has caught up to this change, so it may be parked waiting for it
+    if (sequence == m_consumed.get()) {
+      LockSupport.unpark(m_drainer);
+    }
+  }
+
+  /**
+   * Writes out the rest of the changes, stops the background thread and closes the file.  Call this once
+   * everything that records changes is done.
+   * @throws IOException if any of the changes couldn't be written
+   */
+  public void close() throws IOException {
+    if (m_closed) {
+      return;
+    }
+    m_closed = true;
+    LockSupport.unpark(m_drainer);
+    try {
+      m_drainer.join();
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while finishing " + m_file);
+    }
+    if (m_error != null) {
+      throw m_error;
+    }
+  }
+
+  public File getFile() {
+    return m_file;
+  }
+
+  /**
+   * Gets the number of changes recorded so far.
+   * @return the change count
+   */
+  public long getChangeCount() {
+    return m_claimed.get();
+  }
+
+  /**
+   * Gets the number of changes in each column.  This is only complete once the audit has been closed.
+   * @return the change counts keyed by 0-based column index
+   */
+  public synchronized SortedMap<Integer,Integer> getColumnCounts() {
+    return Collections.unmodifiableSortedMap(new TreeMap<Integer,Integer>(m_columnCounts));
+  }
+
+  private void drain() {
+    long next = 0;
+    boolean unflushed = false;
+    while (true) {
+      int slot = (int)next & m_mask;
+      if (m_published.get(slot) == next + 1) {
+        int row = m_rows[slot];
+        int column = m_columns[slot];
+        String oldValue = m_oldValues[slot];
+        String newValue = m_newValues[slot];
+        m_oldValues[slot] = null;
+        m_newValues[slot] = null;
+        m_consumed.set(++next);
+
+        write(row, column, oldValue, newValue);
+        unflushed = true;
+      }
+      else if (m_closed && next == m_claimed.get()) {
+        break;
+      }
+      else if (unflushed) {
+        flush();
+        unflushed = false;
+      }
+      else {
+        // a writer unparks this once it publishes the change this is waiting for, and close unparks it too
+        LockSupport.park(this);
+      }
+    }
+
+    try {
+      m_out.close();
+    }
+    catch (IOException ex) {
+      if (m_error == null) {
+        m_error = ex;
+      }
+    }
+    finally {
+      IOUtils.closeQuietly(m_out);
+    }
+  }
+
+  private void write(int row, int column, String oldValue, String newValue) {
+    synchronized (this) {
+      Integer count = m_columnCounts.get(column);
+      m_columnCounts.put(column, count == null ? 1 : count + 1);
+    }
+    if (m_error != null) {
+      // keep taking changes so writers don't get stuck, there's nowhere to put them though
+      return;
+    }
+    try {
+      String columnName = CellReference.convertNumToColString(column);
+      m_out.write(columnName);
+      m_out.write(Integer.toString(row + 1));
+      m_out.write(',');
+      m_out.write(Integer.toString(row + 1));
+      m_out.write(',');
+      m_out.write(columnName);
+      m_out.write(',');
+      writeField(oldValue);
+      m_out.write(',');
+      writeField(newValue);
+      m_out.write('\n');
+    }
+    catch (IOException ex) {
+      sf_logger.error("Error writing change audit " + m_file, ex);
+      m_error = ex;
+    }
+  }
+
+  private void flush() {
+    if (m_error == null) {
+      try {
+        m_out.flush();
+      }
+      catch (IOException ex) {
+        sf_logger.error("Error writing change audit " + m_file, ex);
+        m_error = ex;
+      }
+    }
+  }
+
+  private void writeField(String value) throws IOException {
+    if (value == null) {
+      return;
+    }
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+      m_out.write(value);
+      return;
+    }
+    m_out.write('"');
+    m_out.write(value.replace("\"", "\"\""));
+    m_out.write('"');
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A fixed block of counters addressed by one to three int coordinates, usually enum ordinals and site indexes.
+ * Counts are kept in one flat long array so counting a subject doesn't box, hash or build keys.  A cube is for one
+ * thread at a time, cubes counted on different threads are combined with {@link #merge(CounterCube)}.
+ *
+ * @author Ryan Whaley
+ */
+public class CounterCube {
+  private final int[] m_dimensions;
+  private final int[] m_strides;
+  private final long[] m_counts;
+
+  /**
+   * Makes a cube of counters, all 0.
+   * @param dimensions the size of each axis, from one to three of them
+   */
+  public CounterCube(int... dimensions) {
+    if (dimensions == null || dimensions.length < 1 || dimensions.length > 3) {
+      throw new IllegalArgumentException("Need one to three dimensions");
+    }
+    m_dimensions = dimensions.clone();
+    m_strides = new int[dimensions.length];
+
+    int size = 1;
+    for (int axis = dimensions.length-1; axis >= 0; axis--) {
+      if (dimensions[axis] < 1) {
+        throw new IllegalArgumentException("Dimension " + axis + " has no cells: " + dimensions[axis]);
+      }
+      m_strides[axis] = size;
+      size *= dimensions[axis];
+    }
+    m_counts = new long[size];
+  }
+
+  public int getDimensionCount() {
+    return m_dimensions.length;
+  }
+
+  public int getDimension(int axis) {
+    return m_dimensions[axis];
+  }
+
+  public void increment(int i) {
+    m_counts[index(i)]++;
+  }
+
+  public void increment(int i, int j) {
+    m_counts[index(i, j)]++;
+  }
+
+  public void increment(int i, int j, int k) {
+    m_counts[index(i, j, k)]++;
+  }
+
+  public long get(int i) {
+    return m_counts[index(i)];
+  }
+
+  public long get(int i, int j) {
+    return m_counts[index(i, j)];
+  }
+
+  public long get(int i, int j, int k) {
+    return m_counts[index(i, j, k)];
+  }
+
+  /**
+   * Adds the counts from a cube of the same shape to this one.  The other cube isn't changed.
+   * @param other a cube with the same dimensions as this one
+   * @throws IllegalArgumentException if the cubes are different shapes
+   */
+  public void merge(CounterCube other) {
+    if (!Arrays.equals(m_dimensions, other.m_dimensions)) {
+      throw new IllegalArgumentException("Can't merge a " + Arrays.toString(other.m_dimensions)
+          + " cube into a " + Arrays.toString(m_dimensions) + " cube");
+    }
+    for (int x = 0; x < m_counts.length; x++) {
+      m_counts[x] += other.m_counts[x];
+    }
+  }
+
+  private int index(int i) {
+    checkDimensions(1);
+    return checkIndex(0, i);
+  }
+
+  private int index(int i, int j) {
+    checkDimensions(2);
+    return checkIndex(0, i)*m_strides[0] + checkIndex(1, j);
+  }
+
+  private int index(int i, int j, int k) {
+    checkDimensions(3);
+    return checkIndex(0, i)*m_strides[0] + checkIndex(1, j)*m_strides[1] + checkIndex(2, k);
+  }
+
+  private void checkDimensions(int count) {
+    if (m_dimensions.length != count) {
+      throw new IllegalArgumentException("Cube has " + m_dimensions.length + " dimensions, not " + count);
+    }
+  }
+
+  private int checkIndex(int axis, int value) {
+    if (value < 0 || value >= m_dimensions[axis]) {
+      throw new IndexOutOfBoundsException("Index " + value + " outside dimension " + axis
+          + " of size " + m_dimensions[axis]);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Finds the files in a directory that are new or have changed, once they've stopped changing.
+ * <br/>
+ * The directory is looked at each time {@link #poll()} is called.  A file's length and modification time have to stay
+ * the same for the quiet period before it's handed out, so a file that's still being copied in isn't read half
+ * written.  After that it's only handed out again if it changes.  A file that's removed and added back counts as
+ * new.
+ *
+ * @author Ryan Whaley
+ */
+public class DirectoryWatcher {
+  private final File m_directory;
+  private final FileFilter m_filter;
+  private final long m_quietMillis;
+  /** the state of each file when it was last handed out */
+  private final Map<File,State> m_handedOut = Maps.newHashMap();
+  /** files that are new or changed, with the state they were last seen in */
+  private final Map<File,State> m_pending = Maps.newHashMap();
+
+  /**
+   * Makes a watcher.  Nothing is looked at until the first poll.
+   * @param directory the directory to watch, which isn't searched recursively
+   * @param filter which files to watch, or null for all of them
+   * @param quietMillis how long a file has to go without changing before it's handed out
+   */
+  public DirectoryWatcher(File directory, FileFilter filter, long quietMillis) {
+    m_directory = directory;
+    m_filter = filter;
+    m_quietMillis = quietMillis;
+  }
+
+  public File getDirectory() {
+    return m_directory;
+  }
+
+  /**
+   * Treats the files in the directory right now as already handed out, so only files that land or change after
+   * this come out of {@link #poll()}.
+   */
+  public void skipExisting() {
+    long now = System.currentTimeMillis();
+    for (File file : listFiles()) {
+      m_handedOut.put(file, new State(file, now));
+    }
+  }
+
+  /**
+   * Looks at the directory and gets the files that are ready.
+   * @return the new or changed files that haven't changed for the quiet period, sorted by name
+   */
+  public List<File> poll() {
+    return poll(System.currentTimeMillis());
+  }
+
+  /**
+   * Looks at the directory and gets the files that are ready, as of the given time.
+   * @param now the current time in milliseconds
+   * @return the new or changed files that haven't changed for the quiet period, sorted by name
+   */
+  protected List<File> poll(long now) {
+    List<File> files = listFiles();
+    List<File> ready = Lists.newArrayList();
+    for (File file : files) {
+      State state = new State(file, now);
+      if (state.isSameAs(m_handedOut.get(file))) {
+        m_pending.remove(file);
+        continue;
+      }
+
+      State pending = m_pending.get(file);
+      if (!state.isSameAs(pending)) {
+        // new, or still being written
+        m_pending.put(file, state);
+      }
+      else if (now - pending.m_seen >= m_quietMillis) {
+        m_pending.remove(file);
+        m_handedOut.put(file, state);
+        ready.add(file);
+      }
+    }
+
+    m_handedOut.keySet().retainAll(files);
+    m_pending.keySet().retainAll(files);
+    Collections.sort(ready);
+    return ready;
+  }
+
+  private List<File> listFiles() {
+    File[] files = m_filter == null ? m_directory.listFiles() : m_directory.listFiles(m_filter);
+    List<File> list = Lists.newArrayList();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isFile()) {
+          list.add(file);
+        }
+      }
+    }
+    return list;
+  }
+
+
+  /**
+   * The length and modification time of a file, and when they were first seen
+   */
+  private static class State {
+    private final long m_length;
+    private final long m_lastModified;
+    private final long m_seen;
+
+    State(File file, long seen) {
+      m_length = file.length();
+      m_lastModified = file.lastModified();
+      m_seen = seen;
+    }
+
+    boolean isSameAs(State other) {
+      return other != null && m_length == other.m_length && m_lastModified == other.m_lastModified;
+    }
+  }
+}
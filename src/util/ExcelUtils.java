@@ -36,11 +36,20 @@
 
 package util;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Created by IntelliJ IDEA.
@@ -50,6 +59,43 @@ import org.apache.poi.ss.util.CellReference;
  */
 public class ExcelUtils {
   private static Logger sf_logger = Logger.getLogger(ExcelUtils.class);
+  private static volatile ChangeAudit s_changeAudit = null;
+
+  /**
+   * Sends the changes {@link #writeCell} makes to an audit file instead of logging each one of them.
+   * @param audit the audit to record changes to, or null to go back to logging them
+   */
+  public static void setChangeAudit(ChangeAudit audit) {
+    s_changeAudit = audit;
+  }
+
+  /**
+   * Makes a new, empty workbook in the format that goes with the given file name.
+   * @param fileName the name of an Excel file
+   * @return an XSSFWorkbook for .xlsx files, otherwise an HSSFWorkbook
+   */
+  public static Workbook newWorkbook(String fileName) {
+    if (fileName.toLowerCase().endsWith(".xlsx")) {
+      return new XSSFWorkbook();
+    }
+    return new HSSFWorkbook();
+  }
+
+  /**
+   * Writes a workbook to a file, replacing it if it's already there.
+   * @param workbook the workbook to write
+   * @param file the file to write it to
+   * @throws IOException can occur from file I/O
+   */
+  public static void saveWorkbook(Workbook workbook, File file) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      workbook.write(out);
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
 
   public static String getAddress(Cell cell) {
     StringBuilder sb = new StringBuilder();
@@ -77,15 +123,7 @@ public class ExcelUtils {
     else {
       if (cell.getCellType() == Cell.CELL_TYPE_STRING) {
         if (!value.equals(cell.getStringCellValue())) {
-          StringBuilder sb = new StringBuilder();
-          sb.append("Changed value: ")
-              .append(CellReference.convertNumToColString(cell.getColumnIndex()))
-              .append(cell.getRowIndex()+1)
-              .append(" = ")
-              .append(cell.getStringCellValue())
-              .append(" -> ")
-              .append(value);
-          sf_logger.info(sb.toString());
+          logChange(cell, cell.getStringCellValue(), value);
           if (highlight != null) {
             cell.setCellStyle(highlight);
           }
@@ -94,15 +132,7 @@ public class ExcelUtils {
       else {
         Double existingValue = cell.getNumericCellValue();
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("Changed value: ")
-            .append(CellReference.convertNumToColString(cell.getColumnIndex()))
-            .append(cell.getRowIndex()+1)
-            .append(" = ")
-            .append(existingValue)
-            .append(" -> ")
-            .append(value);
-        sf_logger.info(sb.toString());
+        logChange(cell, existingValue, value);
 
         row.removeCell(cell);
         row.createCell(idx).setCellType(Cell.CELL_TYPE_STRING);
@@ -123,15 +153,7 @@ public class ExcelUtils {
       if (cell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
         Double existingValue = cell.getNumericCellValue();
         if (value != existingValue.floatValue()) {
-          StringBuilder sb = new StringBuilder();
-          sb.append("Changed value: ")
-              .append(CellReference.convertNumToColString(cell.getColumnIndex()))
-              .append(cell.getRowIndex()+1)
-              .append(" = ")
-              .append(cell.getNumericCellValue())
-              .append(" -> ")
-              .append(value);
-          sf_logger.info(sb.toString());
+          logChange(cell, cell.getNumericCellValue(), value);
           if (highlight != null) {
             cell.setCellStyle(highlight);
           }
@@ -140,15 +162,7 @@ public class ExcelUtils {
       else {
         String existingValue = cell.getStringCellValue();
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("Changed value: ")
-            .append(CellReference.convertNumToColString(cell.getColumnIndex()))
-            .append(cell.getRowIndex()+1)
-            .append(" = ")
-            .append(existingValue)
-            .append(" -> ")
-            .append(value);
-        sf_logger.info(sb.toString());
+        logChange(cell, existingValue, value);
 
         row.removeCell(cell);
         row.createCell(idx).setCellType(Cell.CELL_TYPE_NUMERIC);
@@ -161,4 +175,20 @@ public class ExcelUtils {
     }
   }
 
+  private static void logChange(Cell cell, Object oldValue, Object newValue) {
+    ChangeAudit audit = s_changeAudit;
+    if (audit != null) {
+      audit.record(cell.getRowIndex(), cell.getColumnIndex(), String.valueOf(oldValue), String.valueOf(newValue));
+      return;
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append("Changed value: ")
+        .append(CellReference.convertNumToColString(cell.getColumnIndex()))
+        .append(cell.getRowIndex()+1)
+        .append(" = ")
+        .append(oldValue)
+        .append(" -> ")
+        .append(newValue);
+    sf_logger.info(sb.toString());
+  }
 }
@@ -0,0 +1,406 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.record.*;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+/**
+ * This is a streaming iterator for one worksheet of an Excel 97-2003 (.xls) file.  Instead of building an
+ * <code>HSSFWorkbook</code> it reads the BIFF records of the workbook stream directly.  Only the workbook globals
+ * (sheet list and shared strings) and the records of the requested sheet are decoded, every other sheet is jumped
+ * over using the offset in its BOUNDSHEET record.  Cell records are handed to {@link #processRecord(Record)} as they
+ * are read, and rows are pulled one at a time so only the current row is ever held in memory.
+ * <br/>
+ * Cell values are formatted the same way {@link POIUtils} formats them so rows look just like the ones that
+ * come out of {@link PoiWorksheetIterator}.  Rows that are missing from the sheet come back as empty lists.
+ *
+ * @author Ryan Whaley
+ */
+public class HssfStreamingIterator implements Iterator<List<String>>, Closeable, HSSFListener {
+  private DocumentInputStream m_sheetStream;
+  private RecordInputStream m_records;
+  private SSTRecord m_sharedStrings;
+  private final byte[] m_skipBuffer = new byte[RecordInputStream.MAX_RECORD_DATA_SIZE];
+  private int m_substreamDepth = 0;
+  private int m_rowNumber = 0;
+  private int m_lastRowNumber = -1;
+
+  private int m_pendingRowNumber = -1;
+  private List<String> m_pendingRow = null;
+  private int m_currentRowNumber = -1;
+  private List<String> m_currentRow = null;
+
+  private int m_formulaRow = -1;
+  private int m_formulaColumn = -1;
+
+
+  /**
+   * Standard constructor.
+   *
+   * @param file an Excel .xls file
+   * @param sheetName the name of the worksheet to iterate through
+   * @throws IOException can occur from file I/O or if the sheet can't be found
+   */
+  public HssfStreamingIterator(File file, String sheetName) throws IOException {
+    InputStream fileStream = new FileInputStream(file);
+    POIFSFileSystem fileSystem;
+    try {
+      fileSystem = new POIFSFileSystem(fileStream);
+    }
+    finally {
+      IOUtils.closeQuietly(fileStream);
+    }
+
+    try {
+      String streamName = getWorkbookStreamName(fileSystem);
+      int sheetOffset = readGlobals(fileSystem.createDocumentInputStream(streamName), sheetName);
+
+      m_sheetStream = fileSystem.createDocumentInputStream(streamName);
+      if (m_sheetStream.skip(sheetOffset) != sheetOffset) {
+        throw new IOException("Worksheet " + sheetName + " is past the end of " + file);
+      }
+      m_records = new RecordInputStream(m_sheetStream);
+      readPendingRow();
+    }
+    catch (RecordFormatException ex) {
+      close();
+      throw new IOException("Error reading " + file, ex);
+    }
+    catch (IOException ex) {
+      close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Gets the name of the document in the file that holds the workbook records.
+   */
+  private static String getWorkbookStreamName(POIFSFileSystem fileSystem) throws IOException {
+    try {
+      fileSystem.getRoot().getEntry("Workbook");
+      return "Workbook";
+    }
+    catch (FileNotFoundException ex) {
+      // older files name it "Book"
+      fileSystem.getRoot().getEntry("Book");
+      return "Book";
+    }
+  }
+
+  /**
+   * Reads the workbook globals substream, keeping the shared strings table.
+   *
+   * @return the offset of the BOF record of the named sheet in the workbook stream
+   */
+  private int readGlobals(DocumentInputStream globalsStream, String sheetName) throws IOException {
+    int sheetOffset = -1;
+
+    try {
+      RecordInputStream in = new RecordInputStream(globalsStream);
+      while (in.hasNextRecord()) {
+        in.nextRecord();
+        short sid = in.getSid();
+        if (sid == BoundSheetRecord.sid) {
+          BoundSheetRecord sheetRecord = new BoundSheetRecord(in);
+          if (sheetOffset == -1 && sheetName.equalsIgnoreCase(sheetRecord.getSheetname())) {
+            sheetOffset = sheetRecord.getPositionOfBof();
+          }
+        }
+        else if (sid == SSTRecord.sid) {
+          m_sharedStrings = new SSTRecord(in);
+        }
+        else if (sid == FilePassRecord.sid) {
+          throw new IOException("Encrypted workbooks cannot be streamed");
+        }
+        else if (sid == EOFRecord.sid) {
+          break;
+        }
+        else {
+          skipRecord(in);
+        }
+      }
+    }
+    finally {
+      globalsStream.close();
+    }
+
+    if (sheetOffset == -1) {
+      throw new IOException("Cannot find worksheet named " + sheetName);
+    }
+    return sheetOffset;
+  }
+
+  /**
+   * Reads past the data of the current record without decoding it.
+   */
+  private void skipRecord(RecordInputStream in) {
+    while (in.remaining() > 0) {
+      in.read(m_skipBuffer, 0, m_skipBuffer.length);
+    }
+  }
+
+  /**
+   * Reads records from the sheet until the next row is complete or the sheet ends.
+   */
+  private void readPendingRow() {
+    m_pendingRow = null;
+
+    while (m_pendingRow == null && m_records != null) {
+      if (!m_records.hasNextRecord()) {
+        finishSheet();
+        break;
+      }
+      m_records.nextRecord();
+
+      switch (m_records.getSid()) {
+        case BOFRecord.sid:
+        case EOFRecord.sid:
+        case RowRecord.sid:
+        case NumberRecord.sid:
+        case RKRecord.sid:
+        case MulRKRecord.sid:
+        case LabelSSTRecord.sid:
+        case LabelRecord.sid:
+        case BoolErrRecord.sid:
+        case BlankRecord.sid:
+        case MulBlankRecord.sid:
+        case FormulaRecord.sid:
+        case StringRecord.sid:
+          processRecord(RecordFactory.createSingleRecord(m_records));
+          break;
+        default:
+          skipRecord(m_records);
+      }
+    }
+  }
+
+  /**
+   * Handles one record of the sheet.  Cell values are added to the row being built and the row is handed off
+   * as the pending row once a cell from a later row shows up.
+   *
+   * @param record a record from the sheet substream
+   */
+  public void processRecord(Record record) {
+    switch (record.getSid()) {
+      case BOFRecord.sid:
+        m_substreamDepth++;
+        break;
+
+      case EOFRecord.sid:
+        m_substreamDepth--;
+        if (m_substreamDepth == 0) {
+          finishSheet();
+        }
+        break;
+
+      case RowRecord.sid:
+        m_lastRowNumber = Math.max(m_lastRowNumber, ((RowRecord)record).getRowNumber());
+        break;
+
+      case NumberRecord.sid:
+        NumberRecord number = (NumberRecord)record;
+        setCell(number.getRow(), number.getColumn(), POIUtils.formatNumber(number.getValue()));
+        break;
+
+      case RKRecord.sid:
+        processRecord(RecordFactory.convertToNumberRecord((RKRecord)record));
+        break;
+
+      case MulRKRecord.sid:
+        MulRKRecord mulRk = (MulRKRecord)record;
+        for (int i=0; i<mulRk.getNumColumns(); i++) {
+          setCell(mulRk.getRow(), mulRk.getFirstColumn() + i, POIUtils.formatNumber(mulRk.getRKNumberAt(i)));
+        }
+        break;
+
+      case LabelSSTRecord.sid:
+        LabelSSTRecord label = (LabelSSTRecord)record;
+        setCell(label.getRow(), label.getColumn(),
+            StringUtils.stripToNull(m_sharedStrings.getString(label.getSSTIndex()).getString()));
+        break;
+
+      case LabelRecord.sid:
+        LabelRecord oldLabel = (LabelRecord)record;
+        setCell(oldLabel.getRow(), oldLabel.getColumn(), StringUtils.stripToNull(oldLabel.getValue()));
+        break;
+
+      case BoolErrRecord.sid:
+        BoolErrRecord boolErr = (BoolErrRecord)record;
+        setCell(boolErr.getRow(), boolErr.getColumn(),
+            boolErr.isBoolean() ? Boolean.toString(boolErr.getBooleanValue()) : null);
+        break;
+
+      case BlankRecord.sid:
+        BlankRecord blank = (BlankRecord)record;
+        setCell(blank.getRow(), blank.getColumn(), null);
+        break;
+
+      case MulBlankRecord.sid:
+        MulBlankRecord mulBlank = (MulBlankRecord)record;
+        for (int i=0; i<mulBlank.getNumColumns(); i++) {
+          setCell(mulBlank.getRow(), mulBlank.getFirstColumn() + i, null);
+        }
+        break;
+
+      case FormulaRecord.sid:
+        processFormula((FormulaRecord)record);
+        break;
+
+      case StringRecord.sid:
+        // cached result of the formula just before it
+        if (m_formulaRow != -1) {
+          setCell(m_formulaRow, m_formulaColumn, StringUtils.stripToNull(((StringRecord)record).getString()));
+          m_formulaRow = -1;
+        }
+        break;
+    }
+  }
+
+  /**
+   * Uses the cached result of a formula as the cell value.  String results are stored in the STRING record
+   * that follows the formula.
+   */
+  private void processFormula(FormulaRecord formula) {
+    if (formula.hasCachedResultString()) {
+      m_formulaRow = formula.getRow();
+      m_formulaColumn = formula.getColumn();
+      return;
+    }
+
+    String value = null;
+    switch (formula.getCachedResultType()) {
+      case Cell.CELL_TYPE_NUMERIC:
+        value = POIUtils.formatNumber(formula.getValue());
+        break;
+      case Cell.CELL_TYPE_BOOLEAN:
+        value = Boolean.toString(formula.getCachedBooleanValue());
+        break;
+    }
+    setCell(formula.getRow(), formula.getColumn(), value);
+  }
+
+  private void setCell(int row, int column, String value) {
+    if (row != m_currentRowNumber) {
+      if (m_currentRow != null) {
+        m_pendingRow = m_currentRow;
+        m_pendingRowNumber = m_currentRowNumber;
+      }
+      m_currentRow = new ArrayList<String>();
+      m_currentRowNumber = row;
+      m_lastRowNumber = Math.max(m_lastRowNumber, row);
+    }
+
+    while (m_currentRow.size() <= column) {
+      m_currentRow.add(null);
+    }
+    m_currentRow.set(column, value);
+  }
+
+  /**
+   * Hands off the last row being built and stops reading records.
+   */
+  private void finishSheet() {
+    if (m_currentRow != null) {
+      m_pendingRow = m_currentRow;
+      m_pendingRowNumber = m_currentRowNumber;
+      m_currentRow = null;
+    }
+    m_records = null;
+  }
+
+
+  public boolean hasNext() {
+    return m_pendingRow != null || m_rowNumber <= m_lastRowNumber;
+  }
+
+  public List<String> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    if (m_pendingRow == null || m_rowNumber < m_pendingRowNumber) {
+      m_rowNumber++;
+      return new ArrayList<String>();
+    }
+
+    List<String> row = m_pendingRow;
+    m_rowNumber++;
+    try {
+      readPendingRow();
+    }
+    catch (RecordFormatException ex) {
+      throw new IllegalStateException("Error reading row " + (m_rowNumber + 1), ex);
+    }
+    return row;
+  }
+
+  /**
+   * Gets the row number of the worksheet that the next call to {@link #next()} will return.  This number begins
+   * at 0.
+   *
+   * @return the current row number of the worksheet that this iterator is on
+   */
+  public int getRowNumber() {
+    return m_rowNumber;
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException("remove() is not supported");
+  }
+
+  public void close() {
+    m_records = null;
+    if (m_sheetStream != null) {
+      m_sheetStream.close();
+      m_sheetStream = null;
+    }
+  }
+}
@@ -56,6 +56,8 @@ public class ItpcUtils {
 
   private static final Logger logger = Logger.getLogger(ItpcUtils.class);
   private static final Pattern sf_alleleRegex = Pattern.compile("\\*\\d+");
+  /** the date stamp {@link #getOutputFile(File)} puts in the name of output files */
+  private static final Pattern sf_outputStamp = Pattern.compile(".*\\.\\d{8}-\\d{4}\\..*");
 
   public static boolean isBlank(String string) {
     String trimString = StringUtils.trimToNull(string);
@@ -71,7 +73,22 @@ public class ItpcUtils {
         .append(".xls")
         .toString();
 
-    return new File(inputFile.getAbsolutePath().replaceAll("\\.xls", newExtension));  
+    String path = inputFile.getAbsolutePath();
+    if (!path.contains(".xls")) {
+      // delimited text input, the output is still an Excel file
+      return new File(path.replaceFirst("\\.[^.]*$", "") + newExtension);
+    }
+    return new File(path.replaceAll("\\.xls", newExtension));
+  }
+
+  /**
+   * Checks whether a file was written by a run of the parser, that is whether it has the date stamp that
+   * {@link #getOutputFile(File)} gives, along with the result and audit files named after the output file.
+   * @param file a file
+   * @return true if the file looks like parser output
+   */
+  public static boolean isOutputFile(File file) {
+    return sf_outputStamp.matcher(file.getName()).matches();
   }
 
   /**
@@ -0,0 +1,388 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package util;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Just enough JSON for the evaluation service: parsing a document into Maps, Lists, Strings, BigDecimals, Booleans
+ * and nulls, and writing the same kinds of values back out.
+ * <br/>
+ * Objects come back as Maps that keep the order of their keys.  Numbers come back as BigDecimals so the text of a
+ * number isn't changed by going through a double.
+ * <br/>
+ * Since the documents come from outside, arrays and objects can only be nested {@link #sf_maxDepth} deep and numbers
+ * can't have an exponent that would take more than {@link #sf_maxScale} digits to write out.
+ *
+ * @author Ryan Whaley
+ */
+public class Json {
+  /** the most arrays and objects a value can be nested in */
+  private static final int sf_maxDepth = 256;
+  /** the most digits a number can have after the point, or zeros before it, when it's written out in full */
+  private static final int sf_maxScale = 1000;
+
+  private final String m_text;
+  private int m_pos = 0;
+  private int m_depth = 0;
+
+  private Json(String text) {
+    m_text = text;
+  }
+
+  /**
+   * Parses a JSON document.
+   * @param text the document
+   * @return the value of the document
+   * @throws IllegalArgumentException if the text isn't valid JSON, with the position of the problem in the message
+   */
+  public static Object parse(String text) {
+    Json json = new Json(text);
+    Object value = json.readValue();
+    json.skipWhitespace();
+    if (json.m_pos < text.length()) {
+      throw json.error("Unexpected text after the end of the document");
+    }
+    return value;
+  }
+
+  /**
+   * Writes a value as JSON.  Maps are written as objects, Lists and arrays as arrays, Numbers and Booleans as they
+   * are, and anything else as a string.
+   * @param value the value to write
+   * @return the JSON text
+   */
+  public static String toJson(Object value) {
+    StringBuilder sb = new StringBuilder();
+    write(sb, value);
+    return sb.toString();
+  }
+
+  /**
+   * Writes a value as JSON, see {@link #toJson(Object)}.
+   * @param sb where to write the JSON
+   * @param value the value to write
+   */
+  public static void write(StringBuilder sb, Object value) {
+    if (value == null) {
+      sb.append("null");
+    }
+    else if (value instanceof Map) {
+      sb.append('{');
+      boolean first = true;
+      for (Map.Entry<?,?> entry : ((Map<?,?>)value).entrySet()) {
+        if (!first) {
+          sb.append(',');
+        }
+        first = false;
+        writeString(sb, String.valueOf(entry.getKey()));
+        sb.append(':');
+        write(sb, entry.getValue());
+      }
+      sb.append('}');
+    }
+    else if (value instanceof Iterable) {
+      sb.append('[');
+      boolean first = true;
+      for (Object element : (Iterable<?>)value) {
+        if (!first) {
+          sb.append(',');
+        }
+        first = false;
+        write(sb, element);
+      }
+      sb.append(']');
+    }
+    else if (value instanceof Object[]) {
+      write(sb, Arrays.asList((Object[])value));
+    }
+    else if (value instanceof BigDecimal) {
+      sb.append(((BigDecimal)value).toString());
+    }
+    else if (value instanceof Number) {
+      double number = ((Number)value).doubleValue();
+      if (Double.isNaN(number) || Double.isInfinite(number)) {
+        sb.append("null");
+      }
+      else {
+        sb.append(value);
+      }
+    }
+    else if (value instanceof Boolean) {
+      sb.append(value);
+    }
+    else {
+      writeString(sb, value.toString());
+    }
+  }
+
+  private static void writeString(StringBuilder sb, String string) {
+    sb.append('"');
+    for (int i=0; i<string.length(); i++) {
+      char c = string.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int)c));
+          }
+          else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+
+  private Object readValue() {
+    skipWhitespace();
+    if (m_pos >= m_text.length()) {
+      throw error("Unexpected end of the document");
+    }
+    char c = m_text.charAt(m_pos);
+    switch (c) {
+      case '{':
+      case '[':
+        if (m_depth == sf_maxDepth) {
+          throw error("Nested more than " + sf_maxDepth + " deep");
+        }
+        m_depth++;
+        Object value = c == '{' ? readObject() : readArray();
+        m_depth--;
+        return value;
+      case '"':
+        return readString();
+      case 't':
+        readWord("true");
+        return Boolean.TRUE;
+      case 'f':
+        readWord("false");
+        return Boolean.FALSE;
+      case 'n':
+        readWord("null");
+        return null;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return readNumber();
+        }
+        throw error("Unexpected character '" + c + "'");
+    }
+  }
+
+  private Map<String,Object> readObject() {
+    Map<String,Object> object = new LinkedHashMap<String,Object>();
+    m_pos++;
+    skipWhitespace();
+    if (peek() == '}') {
+      m_pos++;
+      return object;
+    }
+    while (true) {
+      skipWhitespace();
+      if (peek() != '"') {
+        throw error("Expected a string key");
+      }
+      String key = readString();
+      skipWhitespace();
+      expect(':');
+      object.put(key, readValue());
+      skipWhitespace();
+      if (peek() == ',') {
+        m_pos++;
+      }
+      else {
+        expect('}');
+        return object;
+      }
+    }
+  }
+
+  private List<Object> readArray() {
+    List<Object> array = new ArrayList<Object>();
+    m_pos++;
+    skipWhitespace();
+    if (peek() == ']') {
+      m_pos++;
+      return array;
+    }
+    while (true) {
+      array.add(readValue());
+      skipWhitespace();
+      if (peek() == ',') {
+        m_pos++;
+      }
+      else {
+        expect(']');
+        return array;
+      }
+    }
+  }
+
+  private String readString() {
+    m_pos++;
+    StringBuilder sb = null;
+    int start = m_pos;
+    while (true) {
+      if (m_pos >= m_text.length()) {
+        throw error("Unterminated string");
+      }
+      char c = m_text.charAt(m_pos);
+      if (c == '"') {
+        String string = sb == null ? m_text.substring(start, m_pos) : sb.append(m_text, start, m_pos).toString();
+        m_pos++;
+        return string;
+      }
+      if (c < 0x20) {
+        throw error("Control character in string");
+      }
+      if (c != '\\') {
+        m_pos++;
+        continue;
+      }
+
+      if (sb == null) {
+        sb = new StringBuilder();
+      }
+      sb.append(m_text, start, m_pos);
+      m_pos++;
+      if (m_pos >= m_text.length()) {
+        throw error("Unterminated string");
+      }
+      char escape = m_text.charAt(m_pos++);
+      switch (escape) {
+        case '"': sb.append('"'); break;
+        case '\\': sb.append('\\'); break;
+        case '/': sb.append('/'); break;
+        case 'b': sb.append('\b'); break;
+        case 'f': sb.append('\f'); break;
+        case 'n': sb.append('\n'); break;
+        case 'r': sb.append('\r'); break;
+        case 't': sb.append('\t'); break;
+        case 'u':
+          if (m_pos + 4 > m_text.length()) {
+            throw error("Bad unicode escape");
+          }
+          int code = 0;
+          for (int i=0; i<4; i++) {
+            // Character.digit would take other scripts' digits too
+            int digit = "0123456789abcdef".indexOf(Character.toLowerCase(m_text.charAt(m_pos + i)));
+            if (digit < 0) {
+              throw error("Bad unicode escape");
+            }
+            code = code * 16 + digit;
+          }
+          sb.append((char)code);
+          m_pos += 4;
+          break;
+        default:
+          throw error("Bad escape '\\" + escape + "'");
+      }
+      start = m_pos;
+    }
+  }
+
+  private BigDecimal readNumber() {
+    int start = m_pos;
+    while (m_pos < m_text.length() && "+-0123456789.eE".indexOf(m_text.charAt(m_pos)) >= 0) {
+      m_pos++;
+    }
+    BigDecimal number;
+    try {
+      number = new BigDecimal(m_text.substring(start, m_pos));
+    }
+    catch (NumberFormatException ex) {
+      m_pos = start;
+      throw error("Bad number");
+    }
+    if (Math.abs((long)number.scale()) > sf_maxScale) {
+      m_pos = start;
+      throw error("Number out of range");
+    }
+    return number;
+  }
+
+  private void readWord(String word) {
+    if (!m_text.startsWith(word, m_pos)) {
+      throw error("Unexpected text");
+    }
+    m_pos += word.length();
+  }
+
+  private void skipWhitespace() {
+    while (m_pos < m_text.length() && Character.isWhitespace(m_text.charAt(m_pos))) {
+      m_pos++;
+    }
+  }
+
+  private char peek() {
+    if (m_pos >= m_text.length()) {
+      throw error("Unexpected end of the document");
+    }
+    return m_text.charAt(m_pos);
+  }
+
+  private void expect(char c) {
+    if (peek() != c) {
+      throw error("Expected '" + c + "'");
+    }
+    m_pos++;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at position " + m_pos);
+  }
+}
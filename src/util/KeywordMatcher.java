@@ -0,0 +1,130 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package util;
+
+import java.util.*;
+
+
+/**
+ * Finds which of a fixed set of keywords occur anywhere in a piece of text, in a single pass over the text no matter
+ * how many keywords there are.  The keywords are compiled into an Aho-Corasick automaton up front.
+ *
+ * @author Ryan Whaley
+ */
+public class KeywordMatcher {
+  private final List<Node> m_nodes = new ArrayList<Node>();
+  private final int m_keywordCount;
+
+
+  /**
+   * Compiles the given keywords.  Matches are reported by the index of the keyword in this list.
+   *
+   * @param keywords the keywords to look for, matched case-sensitively
+   */
+  public KeywordMatcher(List<String> keywords) {
+    m_keywordCount = keywords.size();
+    Node root = new Node();
+    m_nodes.add(root);
+
+    for (int i=0; i<keywords.size(); i++) {
+      Node node = root;
+      String keyword = keywords.get(i);
+      for (int c=0; c<keyword.length(); c++) {
+        Node next = node.children.get(keyword.charAt(c));
+        if (next == null) {
+          next = new Node();
+          m_nodes.add(next);
+          node.children.put(keyword.charAt(c), next);
+        }
+        node = next;
+      }
+      node.matches.set(i);
+    }
+
+    // breadth first so each node's failure link is done before its children need it
+    LinkedList<Node> queue = new LinkedList<Node>();
+    for (Node child : root.children.values()) {
+      child.failure = root;
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      Node node = queue.removeFirst();
+      for (Map.Entry<Character,Node> entry : node.children.entrySet()) {
+        Node child = entry.getValue();
+        Node failure = node.failure;
+        while (failure != root && !failure.children.containsKey(entry.getKey())) {
+          failure = failure.failure;
+        }
+        Node target = failure.children.get(entry.getKey());
+        child.failure = target != null && target != child ? target : root;
+        child.matches.or(child.failure.matches);
+        queue.add(child);
+      }
+    }
+  }
+
+  /**
+   * Finds the keywords that occur in the given text.
+   *
+   * @param text the text to search
+   * @return the indexes of the keywords found in the text
+   */
+  public BitSet match(String text) {
+    BitSet found = new BitSet(m_keywordCount);
+    Node root = m_nodes.get(0);
+    Node node = root;
+
+    for (int i=0; i<text.length(); i++) {
+      char c = text.charAt(i);
+      Node next = node.children.get(c);
+      while (next == null && node != root) {
+        node = node.failure;
+        next = node.children.get(c);
+      }
+      node = next != null ? next : root;
+      found.or(node.matches);
+    }
+    return found;
+  }
+
+
+  private static class Node {
+    private final Map<Character,Node> children = new HashMap<Character,Node>();
+    private final BitSet matches = new BitSet();
+    private Node failure;
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+/**
+ * This is an iterator for delimited text files (CSV or TSV) that memory-maps the file instead of reading it through
+ * a Reader.  Each row is tokenized into field offsets in the mapped buffer and comes back as a read-only list that
+ * only decodes a field into a String when it's asked for, so columns that are never read never get copied out of
+ * the buffer.
+ * <br/>
+ * Fields may be wrapped in double quotes, in which case they can contain the delimiter, line breaks, and doubled
+ * quotes.  Text is read as UTF-8.  Values are trimmed and blank values come back as null, the same way
+ * {@link POIUtils} treats cells.
+ *
+ * @author Ryan Whaley
+ */
+public class MappedDelimitedIterator implements Iterator<List<String>>, Closeable {
+  private static final Charset sf_utf8 = Charset.forName("UTF-8");
+  private static final byte sf_quote = '"';
+
+  private RandomAccessFile m_file;
+  private final MappedByteBuffer m_buffer;
+  private final ByteBuffer m_copyBuffer;
+  private final byte m_delimiter;
+  private final int m_limit;
+  private int m_position = 0;
+  private int m_rowNumber = 0;
+  private byte[] m_scratch = new byte[256];
+  private int[] m_fields = new int[64];
+
+
+  /**
+   * Standard constructor.
+   *
+   * @param file a delimited text file
+   * @param delimiter the character between fields, usually ',' or '\t'
+   * @throws IOException can occur from file I/O
+   */
+  public MappedDelimitedIterator(File file, char delimiter) throws IOException {
+    if (delimiter > 127 || delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+      throw new IllegalArgumentException("Unsupported delimiter: " + delimiter);
+    }
+    m_delimiter = (byte)delimiter;
+
+    m_file = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = m_file.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(file + " is too big to map");
+      }
+      m_buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    catch (IOException ex) {
+      close();
+      throw ex;
+    }
+    m_copyBuffer = m_buffer.duplicate();
+    m_limit = m_buffer.limit();
+
+    // skip a UTF-8 byte order mark
+    if (m_limit >= 3 && (m_buffer.get(0) & 0xff) == 0xEF && (m_buffer.get(1) & 0xff) == 0xBB &&
+        (m_buffer.get(2) & 0xff) == 0xBF) {
+      m_position = 3;
+    }
+  }
+
+
+  public boolean hasNext() {
+    return m_position < m_limit;
+  }
+
+  /**
+   * Tokenizes the next row.  The returned list stays valid after later calls to <code>next</code>.
+   */
+  public List<String> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    int count = 0;
+    int pos = m_position;
+    while (true) {
+      int start = pos;
+      int end;
+      boolean quoted = false;
+
+      if (pos < m_limit && m_buffer.get(pos) == sf_quote) {
+        quoted = true;
+        start = ++pos;
+        while (pos < m_limit) {
+          if (m_buffer.get(pos) == sf_quote) {
+            if (pos + 1 < m_limit && m_buffer.get(pos + 1) == sf_quote) {
+              pos += 2;
+              continue;
+            }
+            break;
+          }
+          pos++;
+        }
+        end = pos;
+        // skip the closing quote and anything up to the end of the field
+        while (pos < m_limit && !isFieldEnd(m_buffer.get(pos))) {
+          pos++;
+        }
+      }
+      else {
+        while (pos < m_limit && !isFieldEnd(m_buffer.get(pos))) {
+          pos++;
+        }
+        end = pos;
+      }
+
+      if (count + 2 > m_fields.length) {
+        int[] fields = new int[m_fields.length * 2];
+        System.arraycopy(m_fields, 0, fields, 0, count);
+        m_fields = fields;
+      }
+      // quoted fields are flagged by storing the complement of the start offset
+      m_fields[count++] = quoted ? ~start : start;
+      m_fields[count++] = end;
+
+      if (pos >= m_limit) {
+        break;
+      }
+      byte b = m_buffer.get(pos++);
+      if (b == m_delimiter) {
+        continue;
+      }
+      if (b == '\r' && pos < m_limit && m_buffer.get(pos) == '\n') {
+        pos++;
+      }
+      break;
+    }
+    m_position = pos;
+
+    int[] fields = new int[count];
+    System.arraycopy(m_fields, 0, fields, 0, count);
+    m_rowNumber++;
+    return new Row(fields);
+  }
+
+  private boolean isFieldEnd(byte b) {
+    return b == m_delimiter || b == '\n' || b == '\r';
+  }
+
+  /**
+   * Decodes one field out of the mapped buffer, trimming it and turning blanks into null.
+   */
+  private String decode(int start, int end) {
+    boolean quoted = start < 0;
+    if (quoted) {
+      start = ~start;
+    }
+
+    while (start < end && (m_buffer.get(start) & 0xff) <= ' ') {
+      start++;
+    }
+    while (end > start && (m_buffer.get(end - 1) & 0xff) <= ' ') {
+      end--;
+    }
+    int length = end - start;
+    if (length == 0) {
+      return null;
+    }
+
+    if (m_scratch.length < length) {
+      m_scratch = new byte[Math.max(length, m_scratch.length * 2)];
+    }
+    m_copyBuffer.clear();
+    m_copyBuffer.position(start);
+    m_copyBuffer.get(m_scratch, 0, length);
+
+    if (quoted) {
+      // collapse doubled quotes
+      int out = 0;
+      for (int i=0; i<length; i++) {
+        m_scratch[out++] = m_scratch[i];
+        if (m_scratch[i] == sf_quote && i + 1 < length && m_scratch[i + 1] == sf_quote) {
+          i++;
+        }
+      }
+      length = out;
+    }
+    return new String(m_scratch, 0, length, sf_utf8);
+  }
+
+  /**
+   * Gets the row number of the file that the next call to {@link #next()} will return.  This number begins at 0.
+   *
+   * @return the current row number of the file that this iterator is on
+   */
+  public int getRowNumber() {
+    return m_rowNumber;
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException("remove() is not supported");
+  }
+
+  /**
+   * Closes the file.  The mapping itself is released when it's garbage collected.
+   */
+  public void close() {
+    if (m_file != null) {
+      try {
+        m_file.close();
+      }
+      catch (IOException ex) {
+        // nothing left to do with it
+      }
+      m_file = null;
+    }
+  }
+
+
+  /**
+   * A row of the file, backed by the field offsets into the mapped buffer.  Each field is decoded at most once.
+   */
+  private class Row extends AbstractList<String> {
+    private final int[] m_offsets;
+    private String[] m_values;
+    private boolean[] m_decoded;
+
+    private Row(int[] offsets) {
+      m_offsets = offsets;
+    }
+
+    @Override
+    public String get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+      }
+      if (m_values == null) {
+        m_values = new String[size()];
+        m_decoded = new boolean[size()];
+      }
+      if (!m_decoded[index]) {
+        m_values[index] = decode(m_offsets[index * 2], m_offsets[index * 2 + 1]);
+        m_decoded[index] = true;
+      }
+      return m_values[index];
+    }
+
+    @Override
+    public int size() {
+      return m_offsets.length / 2;
+    }
+  }
+}
@@ -59,12 +59,24 @@ public class POIUtils {
 
 
   /**
-   * Converts numbers that include exponents into a regular number.
+   * Whole numbers below this are written straight from a long.  Every double under it that is a whole number has
+   * no more than 15 digits, so the plain digits are the shortest representation.
+   */
+  private static final double sf_maxFastNumber = 1e15;
+
+  /**
+   * Converts numbers that include exponents into a regular number.  Whole numbers, which is almost everything in
+   * the data sheet, skip <code>Double.toString</code> and <code>BigDecimal</code> entirely.
    *
    * @param number original number
    * @return reformatted number
    **/
-  private static String formatNumber(double number) {
+  static String formatNumber(double number) {
+
+    if (number == (long)number && Math.abs(number) < sf_maxFastNumber
+        && (number != 0 || Double.doubleToRawLongBits(number) == 0L)) {
+      return Long.toString((long)number);
+    }
 
     String numString = Double.toString(number);
     int idx = numString.indexOf((int)'E');
@@ -91,7 +103,7 @@ public class POIUtils {
    * @param cell the cell to get the string value of
    * @return the string value of the specified cell
    */
-  private static String getStringValue(Cell cell) {
+  static String getStringValue(Cell cell) {
 
     if (cell != null) {
       switch (cell.getCellType()) {
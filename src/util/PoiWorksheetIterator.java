@@ -36,6 +36,8 @@
 
 package util;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 
@@ -58,6 +60,7 @@ public class PoiWorksheetIterator implements Iterator<List<String>> {
   private int m_currentRow;
   private int m_maxEmptyRows = MAX_EMPTY_ROWS;
   private int m_maxColumns;
+  private final PoiRowView m_view = new PoiRowView();
 
 
   /**
@@ -164,6 +167,44 @@ public class PoiWorksheetIterator implements Iterator<List<String>> {
   }
 
 
+  /**
+   * Returns the next row as a view straight over the POI row, without copying the cells into a list.  The same
+   * view is returned every time, pointed at the row that was just read.
+   *
+   * @return the next row in the iteration
+   * @see #views()
+   */
+  public RowView nextView() {
+
+    m_view.m_row = m_sheet.getRow(m_currentRow++);
+    return m_view;
+  }
+
+
+  /**
+   * Gets an iterator over the remaining rows of the worksheet as views.  It shares its position with this iterator
+   * and its rows come from {@link #nextView()}.
+   *
+   * @return an iterator of row views
+   */
+  public Iterator<RowView> views() {
+
+    return new Iterator<RowView>() {
+      public boolean hasNext() {
+        return PoiWorksheetIterator.this.hasNext();
+      }
+
+      public RowView next() {
+        return nextView();
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException("remove() is not supported");
+      }
+    };
+  }
+
+
   /**
    * Gets the current row number of the worksheet that this iterator is on.  This number begins at
    * 0.
@@ -192,4 +233,70 @@ public class PoiWorksheetIterator implements Iterator<List<String>> {
 
     throw new UnsupportedOperationException("remove() is not supported");
   }
+
+
+  /**
+   * A view of the row the iterator is on.  Cells are only read when they're asked for.
+   */
+  private class PoiRowView extends RowView {
+    private Row m_row;
+
+    public int size() {
+      if (m_row == null) {
+        return 0;
+      }
+      if (m_maxColumns != -1) {
+        return m_maxColumns + 1;
+      }
+      return Math.max(0, (int)m_row.getLastCellNum());
+    }
+
+    private Cell getCell(int col) {
+      if (col < 0) {
+        throw new IndexOutOfBoundsException("Column " + col);
+      }
+      if (m_row == null || col >= size()) {
+        return null;
+      }
+      return m_row.getCell(col);
+    }
+
+    public String getString(int col) {
+      return POIUtils.getStringValue(getCell(col));
+    }
+
+    @Override
+    public CellValue getValue(int col) {
+      Cell cell = getCell(col);
+      if (cell != null && cell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
+        return CellValue.number(cell.getNumericCellValue());
+      }
+      return CellValue.text(POIUtils.getStringValue(cell));
+    }
+
+    @Override
+    public double getDouble(int col) {
+      Cell cell = getCell(col);
+      if (cell != null && cell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
+        return cell.getNumericCellValue();
+      }
+      return super.getDouble(col);
+    }
+
+    @Override
+    public boolean isBlank(int col) {
+      Cell cell = getCell(col);
+      if (cell == null) {
+        return true;
+      }
+      switch (cell.getCellType()) {
+        case Cell.CELL_TYPE_BLANK:
+          return true;
+        case Cell.CELL_TYPE_STRING:
+          return StringUtils.isBlank(cell.getRichStringCellValue().getString());
+        default:
+          return super.isBlank(col);
+      }
+    }
+  }
 }
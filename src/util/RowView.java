@@ -0,0 +1,256 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package util;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * A read-only view of the cells in one row of a data sheet.  Cells are read by their 0-based column index, and
+ * cells past the end of the row are blank.
+ * <br/>
+ * Views are cursors: an iterator that hands out views may hand out the same instance for every row, pointed at the
+ * row it just read.  So a view is only good until the iterator it came from is advanced again.  Use
+ * {@link #toList()} to keep the values around.
+ *
+ * @author Ryan Whaley
+ */
+public abstract class RowView {
+
+  /**
+   * Gets the number of columns in the row.
+   * @return the number of columns, 0 for an empty row
+   */
+  public abstract int size();
+
+  /**
+   * Gets the value of a cell as a String, the same way {@link POIUtils#getStringCellValues} would.
+   * @param col the 0-based column index
+   * @return the value of the cell, null if it's blank or past the end of the row
+   * @throws IndexOutOfBoundsException if the column index is negative
+   */
+  public abstract String getString(int col);
+
+  /**
+   * Gets the value of a cell as a number.
+   * @param col the 0-based column index
+   * @return the value of the cell, {@link Double#NaN} if it's blank
+   * @throws NumberFormatException if the cell isn't a number
+   */
+  public double getDouble(int col) {
+    String value = getString(col);
+    if (value == null) {
+      return Double.NaN;
+    }
+    return Double.parseDouble(value);
+  }
+
+  /**
+   * Gets the value of a cell, keeping numeric cells as numbers when the row knows which cells are numeric.
+   * @param col the 0-based column index
+   * @return the value of the cell, null if it's blank or past the end of the row
+   */
+  public CellValue getValue(int col) {
+    return CellValue.text(getString(col));
+  }
+
+  /**
+   * Checks whether a cell is blank, which is the case for empty or whitespace-only cells and cells past the end of
+   * the row.
+   * @param col the 0-based column index
+   * @return true if the cell has no value
+   */
+  public boolean isBlank(int col) {
+    return StringUtils.isBlank(getString(col));
+  }
+
+  /**
+   * Copies the values of the row into a new list.
+   * @return the values of the row, one per column
+   */
+  public List<String> toList() {
+    List<String> values = new ArrayList<String>(size());
+    for (int i=0; i<size(); i++) {
+      values.add(getString(i));
+    }
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    return toList().toString();
+  }
+
+  /**
+   * Turns an iterator of rows as lists of values into an iterator of views.  The same view is returned for every
+   * row.  If the given iterator is {@link Closeable}, closing the returned iterator closes it.
+   * @param rows an iterator of rows
+   * @return an iterator of views of the same rows
+   */
+  public static Iterator<RowView> wrap(Iterator<List<String>> rows) {
+    return new ListIterator(rows);
+  }
+
+  /**
+   * Copies the values of a row into a view of its own, which stays good after the row is read past.  Numeric cells
+   * stay numbers.
+   * @param row a row
+   * @return a copy of the row
+   */
+  public static RowView copyOf(RowView row) {
+    CellValue[] values = new CellValue[row.size()];
+    for (int i=0; i<values.length; i++) {
+      values[i] = row.getValue(i);
+    }
+    return new ValueView(values);
+  }
+
+  /**
+   * Copies some of the values of a row into a view of its own, which stays good after the row is read past.  The
+   * other columns of the copy are blank.  Numeric cells stay numbers.
+   * @param row a row
+   * @param columns the 0-based indexes of the columns to copy
+   * @return a copy of the given columns of the row
+   */
+  public static RowView copyOf(RowView row, Collection<Integer> columns) {
+    CellValue[] values = new CellValue[row.size()];
+    for (int col : columns) {
+      if (col < values.length) {
+        values[col] = row.getValue(col);
+      }
+    }
+    return new ValueView(values);
+  }
+
+
+  /**
+   * A view of a row that's already been read into a list.
+   */
+  private static class ListView extends RowView {
+    private List<String> m_values;
+
+    public int size() {
+      return m_values.size();
+    }
+
+    public String getString(int col) {
+      if (col < 0) {
+        throw new IndexOutOfBoundsException("Column " + col);
+      }
+      return col < m_values.size() ? m_values.get(col) : null;
+    }
+
+    @Override
+    public List<String> toList() {
+      return new ArrayList<String>(m_values);
+    }
+  }
+
+
+  /**
+   * A view of a row that's been copied into an array of values.
+   */
+  private static class ValueView extends RowView {
+    private final CellValue[] m_values;
+
+    private ValueView(CellValue[] values) {
+      m_values = values;
+    }
+
+    public int size() {
+      return m_values.length;
+    }
+
+    public String getString(int col) {
+      CellValue value = getValue(col);
+      return value == null ? null : value.toString();
+    }
+
+    @Override
+    public CellValue getValue(int col) {
+      if (col < 0) {
+        throw new IndexOutOfBoundsException("Column " + col);
+      }
+      return col < m_values.length ? m_values[col] : null;
+    }
+
+    @Override
+    public double getDouble(int col) {
+      CellValue value = getValue(col);
+      if (value != null && value.isNumber()) {
+        return value.getNumber();
+      }
+      return super.getDouble(col);
+    }
+  }
+
+
+  private static class ListIterator implements Iterator<RowView>, Closeable {
+    private final Iterator<List<String>> m_rows;
+    private final ListView m_view = new ListView();
+
+    private ListIterator(Iterator<List<String>> rows) {
+      m_rows = rows;
+    }
+
+    public boolean hasNext() {
+      return m_rows.hasNext();
+    }
+
+    public RowView next() {
+      m_view.m_values = m_rows.next();
+      return m_view;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException("remove() is not supported");
+    }
+
+    public void close() throws IOException {
+      if (m_rows instanceof Closeable) {
+        ((Closeable)m_rows).close();
+      }
+    }
+  }
+}
@@ -0,0 +1,446 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+
+/**
+ * A compact, columnar copy of the rows of a worksheet that can be read back without POI.
+ * <br/>
+ * The snapshot holds the header row and the legend row followed by the data rows.  Each column is stored separately as a dictionary of
+ * its distinct values and one code per row, using 1, 2 or 4 bytes per code depending on how big the dictionary is.
+ * The snapshot is keyed by a SHA-1 hash of the file it was made from so a stale snapshot is never used.
+ * <br/>
+ * When reading, the file is memory-mapped and only the dictionaries are loaded.  Rows are views over the mapped
+ * codes so a cell is only looked up when it's asked for, and each distinct value is a single shared String.
+ * The header row comes back first, then the legend row, then the data rows.
+ *
+ * @author Ryan Whaley
+ */
+public class SheetSnapshot implements Iterator<List<String>>, Closeable {
+  private static final Logger sf_logger = Logger.getLogger(SheetSnapshot.class);
+  private static final int sf_magic = 0x49545053; // "ITPS"
+  private static final int sf_version = 2;
+  private static final Charset sf_utf8 = Charset.forName("UTF-8");
+
+  private RandomAccessFile m_file;
+  private MappedByteBuffer m_buffer;
+  private List<String> m_header;
+  private List<String> m_legend;
+  private int m_rowCount;
+  private int m_columnCount;
+  private String[][] m_dictionaries;
+  private int[] m_codeWidths;
+  private int[] m_codeOffsets;
+  private int m_rowNumber = 0;
+
+
+  /**
+   * Gets the snapshot file that goes with the given input file.
+   * @param inputFile the file the snapshot is made from
+   * @return the snapshot file, which may not exist yet
+   */
+  public static File getSnapshotFile(File inputFile) {
+    return new File(inputFile.getAbsolutePath() + ".snapshot");
+  }
+
+  /**
+   * Makes a SHA-1 hash of the contents of a file.
+   * @param file a file
+   * @return the hash
+   * @throws IOException can occur from file I/O
+   */
+  public static byte[] hashFile(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new IOException("SHA-1 is not available", ex);
+    }
+
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    finally {
+      IOUtils.closeQuietly(in);
+    }
+    return digest.digest();
+  }
+
+  /**
+   * Opens a snapshot if it exists and was made from a file with the given hash.
+   * @param snapshotFile the snapshot file
+   * @param hash the hash of the file the snapshot should have been made from
+   * @return the opened snapshot, or null if there's no snapshot or it's out of date
+   * @throws IOException can occur from file I/O
+   */
+  public static SheetSnapshot open(File snapshotFile, byte[] hash) throws IOException {
+    if (!snapshotFile.exists()) {
+      return null;
+    }
+
+    SheetSnapshot snapshot = new SheetSnapshot(snapshotFile);
+    try {
+      if (!snapshot.readHeader(hash)) {
+        snapshot.close();
+        return null;
+      }
+    }
+    catch (RuntimeException ex) {
+      // a truncated or corrupt snapshot just gets rebuilt
+      sf_logger.warn("Ignoring unreadable snapshot " + snapshotFile, ex);
+      snapshot.close();
+      return null;
+    }
+    return snapshot;
+  }
+
+  private SheetSnapshot(File snapshotFile) throws IOException {
+    m_file = new RandomAccessFile(snapshotFile, "r");
+    FileChannel channel = m_file.getChannel();
+    if (channel.size() > Integer.MAX_VALUE) {
+      close();
+      throw new IOException(snapshotFile + " is too big to map");
+    }
+    m_buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+  }
+
+  /**
+   * Reads everything up to the column codes: the hash, the header and legend rows and the dictionaries.
+   * @return false if the snapshot isn't for the file with the given hash
+   */
+  private boolean readHeader(byte[] hash) {
+    ByteBuffer in = m_buffer.duplicate();
+    if (in.getInt() != sf_magic || in.getInt() != sf_version) {
+      return false;
+    }
+    byte[] snapshotHash = new byte[in.getInt()];
+    in.get(snapshotHash);
+    if (!Arrays.equals(hash, snapshotHash)) {
+      return false;
+    }
+
+    m_rowCount = in.getInt();
+    int headerCount = in.getInt();
+    m_header = Lists.newArrayListWithCapacity(headerCount);
+    for (int i=0; i<headerCount; i++) {
+      m_header.add(readString(in));
+    }
+    int legendCount = in.getInt();
+    m_legend = Lists.newArrayListWithCapacity(legendCount);
+    for (int i=0; i<legendCount; i++) {
+      m_legend.add(readString(in));
+    }
+
+    m_columnCount = in.getInt();
+    m_dictionaries = new String[m_columnCount][];
+    m_codeWidths = new int[m_columnCount];
+    m_codeOffsets = new int[m_columnCount];
+    for (int col=0; col<m_columnCount; col++) {
+      String[] dictionary = new String[in.getInt()];
+      for (int i=0; i<dictionary.length; i++) {
+        dictionary[i] = readString(in);
+      }
+      m_dictionaries[col] = dictionary;
+      m_codeWidths[col] = in.get();
+      m_codeOffsets[col] = in.position();
+      in.position(in.position() + m_codeWidths[col] * m_rowCount);
+    }
+    return true;
+  }
+
+  private static String readString(ByteBuffer in) {
+    int length = in.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, sf_utf8);
+  }
+
+  private String getValue(int row, int column) {
+    if (column >= m_columnCount) {
+      return null;
+    }
+    int offset = m_codeOffsets[column] + row * m_codeWidths[column];
+    int code;
+    switch (m_codeWidths[column]) {
+      case 1:
+        code = m_buffer.get(offset) & 0xff;
+        break;
+      case 2:
+        code = m_buffer.getShort(offset) & 0xffff;
+        break;
+      default:
+        code = m_buffer.getInt(offset);
+    }
+    return m_dictionaries[column][code];
+  }
+
+  /**
+   * Gets the number of data rows in the snapshot.
+   * @return the number of data rows
+   */
+  public int getRowCount() {
+    return m_rowCount;
+  }
+
+
+  public boolean hasNext() {
+    return m_rowNumber < m_rowCount + 2;
+  }
+
+  public List<String> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    int rowNumber = m_rowNumber++;
+    if (rowNumber == 0) {
+      return m_header;
+    }
+    else if (rowNumber == 1) {
+      return m_legend;
+    }
+    return new Row(rowNumber - 2);
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException("remove() is not supported");
+  }
+
+  /**
+   * Closes the file.  The mapping itself is released when it's garbage collected.
+   */
+  public void close() {
+    if (m_file != null) {
+      try {
+        m_file.close();
+      }
+      catch (IOException ex) {
+        // nothing left to do with it
+      }
+      m_file = null;
+    }
+  }
+
+
+  /**
+   * A data row of the snapshot, backed by the mapped column codes.
+   */
+  private class Row extends AbstractList<String> {
+    private final int m_row;
+
+    private Row(int row) {
+      m_row = row;
+    }
+
+    @Override
+    public String get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+      }
+      return getValue(m_row, index);
+    }
+
+    @Override
+    public int size() {
+      return Math.max(m_columnCount, m_header.size());
+    }
+  }
+
+
+  /**
+   * Collects rows and writes them out as a snapshot.  Each column is dictionary-encoded as rows are added so only
+   * the distinct values and one int per cell are kept in memory.
+   */
+  public static class Writer {
+    private final byte[] m_hash;
+    private final List<String> m_header;
+    private List<String> m_legend = new ArrayList<String>();
+    private final List<Map<String,Integer>> m_codeMaps = Lists.newArrayList();
+    private final List<List<String>> m_dictionaries = Lists.newArrayList();
+    private final List<int[]> m_codes = Lists.newArrayList();
+    private int m_rowCount = 0;
+
+    /**
+     * Standard constructor.
+     * @param hash the hash of the file the rows come from
+     * @param header the header row
+     */
+    public Writer(byte[] hash, List<String> header) {
+      m_hash = hash;
+      m_header = new ArrayList<String>(header);
+    }
+
+    /**
+     * Sets the legend row, which is empty until this is called.
+     * @param legend the legend row
+     */
+    public void setLegend(List<String> legend) {
+      m_legend = new ArrayList<String>(legend);
+    }
+
+    /**
+     * Adds a data row to the snapshot.
+     * @param row the values of the row, one per column
+     */
+    public void addRow(List<String> row) {
+      while (m_codes.size() < row.size()) {
+        // a new column, every row before this one is null in it
+        Map<String,Integer> codeMap = Maps.newHashMap();
+        codeMap.put(null, 0);
+        m_codeMaps.add(codeMap);
+        m_dictionaries.add(Lists.<String>newArrayList((String)null));
+        m_codes.add(new int[Math.max(16, m_rowCount * 2)]);
+      }
+
+      for (int col=0; col<m_codes.size(); col++) {
+        String value = col < row.size() ? row.get(col) : null;
+        Map<String,Integer> codeMap = m_codeMaps.get(col);
+        Integer code = codeMap.get(value);
+        if (code == null) {
+          code = m_dictionaries.get(col).size();
+          m_dictionaries.get(col).add(value);
+          codeMap.put(value, code);
+        }
+
+        int[] codes = m_codes.get(col);
+        if (codes.length <= m_rowCount) {
+          codes = Arrays.copyOf(codes, codes.length * 2);
+          m_codes.set(col, codes);
+        }
+        codes[m_rowCount] = code;
+      }
+      m_rowCount++;
+    }
+
+    /**
+     * Writes the snapshot.  It's written to a temporary file first and then renamed so a partly written snapshot
+     * is never picked up.
+     * @param snapshotFile the file to write to
+     * @throws IOException can occur from file I/O
+     */
+    public void write(File snapshotFile) throws IOException {
+      File tempFile = new File(snapshotFile.getAbsolutePath() + ".tmp");
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      try {
+        out.writeInt(sf_magic);
+        out.writeInt(sf_version);
+        out.writeInt(m_hash.length);
+        out.write(m_hash);
+        out.writeInt(m_rowCount);
+
+        out.writeInt(m_header.size());
+        for (String value : m_header) {
+          writeString(out, value);
+        }
+        out.writeInt(m_legend.size());
+        for (String value : m_legend) {
+          writeString(out, value);
+        }
+
+        out.writeInt(m_codes.size());
+        for (int col=0; col<m_codes.size(); col++) {
+          List<String> dictionary = m_dictionaries.get(col);
+          out.writeInt(dictionary.size());
+          for (String value : dictionary) {
+            writeString(out, value);
+          }
+
+          int width = dictionary.size() <= 0xff ? 1 : dictionary.size() <= 0xffff ? 2 : 4;
+          out.writeByte(width);
+          int[] codes = m_codes.get(col);
+          for (int row=0; row<m_rowCount; row++) {
+            switch (width) {
+              case 1:
+                out.writeByte(codes[row]);
+                break;
+              case 2:
+                out.writeShort(codes[row]);
+                break;
+              default:
+                out.writeInt(codes[row]);
+            }
+          }
+        }
+      }
+      finally {
+        IOUtils.closeQuietly(out);
+      }
+
+      if (snapshotFile.exists() && !snapshotFile.delete()) {
+        tempFile.delete();
+        throw new IOException("Can't replace " + snapshotFile);
+      }
+      if (!tempFile.renameTo(snapshotFile)) {
+        tempFile.delete();
+        throw new IOException("Can't write " + snapshotFile);
+      }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+      if (value == null) {
+        out.writeInt(-1);
+        return;
+      }
+      byte[] bytes = value.getBytes(sf_utf8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,292 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+package util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.*;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+
+/**
+ * Writes one worksheet of an Excel 2007 (.xlsx) file a row at a time, so a sheet of any size can be written without
+ * holding its rows in memory.  The rows go straight to a temporary file as sheet XML.  When the sheet is done it's
+ * put into a workbook that was built the usual way with POI, by saving that workbook and swapping the XML of an
+ * empty sheet of the same name for the streamed one.
+ * <br/>
+ * Cells are written as inline strings, except for text that is exactly how {@link POIUtils} formats a number, which
+ * is written as that number.  That turns the values the streaming iterators read back into the cells they came from.
+ *
+ * @author Ryan Whaley
+ */
+public class StreamingXlsxWriter implements Closeable {
+  public static final int MAX_ROWS = 1048576;
+  public static final int MAX_COLUMNS = 16384;
+  private static final String sf_sheetStart = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+      "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>\n";
+  private static final String sf_sheetEnd = "</sheetData></worksheet>\n";
+
+  private final String m_sheetName;
+  private File m_rowsFile;
+  private Writer m_rows;
+  private int m_rowCount = 0;
+  private String[] m_columnNames = new String[64];
+
+  /**
+   * Starts a new sheet.
+   * @param sheetName the name of the sheet in the finished workbook
+   * @throws IOException if the temporary file can't be made
+   */
+  public StreamingXlsxWriter(String sheetName) throws IOException {
+    m_sheetName = sheetName;
+    m_rowsFile = File.createTempFile("itpc", ".sheet.xml");
+    m_rows = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(m_rowsFile), "UTF-8"), 1 << 16);
+  }
+
+  /**
+   * Writes the next row of the sheet.
+   * @param values the cell values of the row, null for a blank cell
+   * @throws IOException if the row can't be written
+   */
+  public void writeRow(List<String> values) throws IOException {
+    if (m_rows == null) {
+      throw new IllegalStateException("Sheet is already finished");
+    }
+    if (m_rowCount >= MAX_ROWS) {
+      throw new IOException("More than " + MAX_ROWS + " rows in sheet " + m_sheetName);
+    }
+    if (values.size() > MAX_COLUMNS) {
+      throw new IOException("More than " + MAX_COLUMNS + " columns in row " + (m_rowCount+1));
+    }
+
+    String rowNumber = Integer.toString(++m_rowCount);
+    m_rows.write("<row r=\"");
+    m_rows.write(rowNumber);
+    m_rows.write("\">");
+    for (int col=0; col<values.size(); col++) {
+      String value = values.get(col);
+      if (value == null) {
+        continue;
+      }
+      m_rows.write("<c r=\"");
+      m_rows.write(getColumnName(col));
+      m_rows.write(rowNumber);
+      if (isNumber(value)) {
+        m_rows.write("\"><v>");
+        m_rows.write(value);
+        m_rows.write("</v></c>");
+      }
+      else {
+        m_rows.write("\" t=\"inlineStr\"><is><t");
+        if (value.length() > 0 && (Character.isWhitespace(value.charAt(0))
+            || Character.isWhitespace(value.charAt(value.length()-1)))) {
+          m_rows.write(" xml:space=\"preserve\"");
+        }
+        m_rows.write('>');
+        writeEscaped(value);
+        m_rows.write("</t></is></c>");
+      }
+    }
+    m_rows.write("</row>\n");
+  }
+
+  /**
+   * Gets the number of rows written so far.
+   * @return the row count
+   */
+  public int getRowCount() {
+    return m_rowCount;
+  }
+
+  /**
+   * Writes the workbook to a file with the streamed rows as the sheet of this writer's name.  If the workbook has
+   * no sheet by that name an empty one is added in front of the others.  The workbook itself isn't changed
+   * otherwise, and the sheet can't be written to afterwards.
+   * @param workbook the rest of the workbook
+   * @param outputFile the .xlsx file to write
+   * @throws IOException if the file can't be written
+   */
+  public void finish(XSSFWorkbook workbook, File outputFile) throws IOException {
+    m_rows.close();
+    m_rows = null;
+
+    XSSFSheet sheet = workbook.getSheet(m_sheetName);
+    if (sheet == null) {
+      sheet = workbook.createSheet(m_sheetName);
+      workbook.setSheetOrder(m_sheetName, 0);
+    }
+    // zip entry names don't have the leading slash of part names
+    String sheetEntry = sheet.getPackagePart().getPartName().getName().substring(1);
+
+    File templateFile = File.createTempFile("itpc", ".xlsx");
+    ZipFile template = null;
+    ZipOutputStream out = null;
+    try {
+      OutputStream templateOut = new FileOutputStream(templateFile);
+      try {
+        workbook.write(templateOut);
+      }
+      finally {
+        IOUtils.closeQuietly(templateOut);
+      }
+
+      template = new ZipFile(templateFile);
+      out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+      Enumeration<? extends ZipEntry> entries = template.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        out.putNextEntry(new ZipEntry(entry.getName()));
+        if (entry.getName().equals(sheetEntry)) {
+          writeSheet(out);
+        }
+        else {
+          InputStream in = template.getInputStream(entry);
+          try {
+            IOUtils.copy(in, out);
+          }
+          finally {
+            IOUtils.closeQuietly(in);
+          }
+        }
+        out.closeEntry();
+      }
+      out.finish();
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+      if (template != null) {
+        template.close();
+      }
+      templateFile.delete();
+    }
+  }
+
+  /**
+   * Throws away the rows if the sheet wasn't finished and deletes the temporary file.
+   */
+  public void close() {
+    IOUtils.closeQuietly(m_rows);
+    m_rows = null;
+    if (m_rowsFile != null) {
+      m_rowsFile.delete();
+      m_rowsFile = null;
+    }
+  }
+
+  private void writeSheet(OutputStream out) throws IOException {
+    out.write(sf_sheetStart.getBytes("UTF-8"));
+    InputStream in = new FileInputStream(m_rowsFile);
+    try {
+      IOUtils.copy(in, out);
+    }
+    finally {
+      IOUtils.closeQuietly(in);
+    }
+    out.write(sf_sheetEnd.getBytes("UTF-8"));
+  }
+
+  /**
+   * Escapes the characters XML needs escaped and drops the control characters it can't hold at all.
+   */
+  private void writeEscaped(String value) throws IOException {
+    for (int i=0; i<value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '&':
+          m_rows.write("&amp;");
+          break;
+        case '<':
+          m_rows.write("&lt;");
+          break;
+        case '>':
+          m_rows.write("&gt;");
+          break;
+        case '\t':
+        case '\n':
+        case '\r':
+          m_rows.write(c);
+          break;
+        default:
+          if (c >= 0x20 && c != 0xfffe && c != 0xffff) {
+            m_rows.write(c);
+          }
+      }
+    }
+  }
+
+  private String getColumnName(int col) {
+    if (col >= m_columnNames.length) {
+      String[] names = new String[Math.max(col+1, m_columnNames.length*2)];
+      System.arraycopy(m_columnNames, 0, names, 0, m_columnNames.length);
+      m_columnNames = names;
+    }
+    if (m_columnNames[col] == null) {
+      StringBuilder sb = new StringBuilder();
+      for (int n=col+1; n>0; n=(n-1)/26) {
+        sb.insert(0, (char)('A' + (n-1)%26));
+      }
+      m_columnNames[col] = sb.toString();
+    }
+    return m_columnNames[col];
+  }
+
+  /**
+   * Whether the text is a number just as {@link POIUtils#formatNumber(double)} would have written it, so writing it
+   * as a number gives back the same text.
+   */
+  static boolean isNumber(String value) {
+    if (value.length() == 0 || value.length() > 24) {
+      return false;
+    }
+    char first = value.charAt(0);
+    if (!(first == '-' || (first >= '0' && first <= '9'))) {
+      return false;
+    }
+    try {
+      return POIUtils.formatNumber(Double.parseDouble(value)).equals(value);
+    }
+    catch (NumberFormatException ex) {
+      return false;
+    }
+  }
+}
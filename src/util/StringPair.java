@@ -48,9 +48,12 @@ import java.util.List;
  */
 public abstract class StringPair {
   public static final String UNKNOWN = "Unknown";
-  private List<String> m_strings = new ArrayList<String>();
+  private List<String> m_strings;
 
   public List<String> getStrings() {
+    if (m_strings == null) {
+      m_strings = new ArrayList<String>(2);
+    }
     return m_strings;
   }
 
@@ -63,16 +66,16 @@ public abstract class StringPair {
 
   public void addString(String string) {
     if (isValid(string)) {
-      m_strings.add(string);
+      getStrings().add(string);
     }
     else {
-      m_strings.add(UNKNOWN);
+      getStrings().add(UNKNOWN);
     }
-    Collections.sort(m_strings, String.CASE_INSENSITIVE_ORDER);
+    Collections.sort(getStrings(), String.CASE_INSENSITIVE_ORDER);
   }
 
   public void removeString(String string) {
-    m_strings.remove(string);
+    getStrings().remove(string);
   }
 
   public void addAll(StringPair pair) {
@@ -82,12 +85,12 @@ public abstract class StringPair {
   }
 
   public String get(int i) {
-    return m_strings.get(i);
+    return getStrings().get(i);
   }
 
   public int count(String datum) {
     int count = 0;
-    for (String element : m_strings) {
+    for (String element : getStrings()) {
       if (element.equalsIgnoreCase(datum)) count++;
     }
     return count;
@@ -114,15 +117,15 @@ public abstract class StringPair {
   }
 
   public boolean hasData() {
-    return !m_strings.isEmpty() && m_strings.size()==2;
+    return !getStrings().isEmpty() && getStrings().size()==2;
   }
 
   public boolean isEmpty() {
-    return m_strings.isEmpty();
+    return getStrings().isEmpty();
   }
 
   public int size() {
-    return m_strings.size();
+    return getStrings().size();
   }
 
   public String toString() {
@@ -0,0 +1,332 @@
+/*
+ * ----- BEGIN LICENSE BLOCK -----
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is PharmGen.
+ *
+ * The Initial Developer of the Original Code is PharmGKB (The Pharmacogenetics
+ * and Pharmacogenetics Knowledge Base, supported by NIH U01GM61374). Portions
+ * created by the Initial Developer are Copyright (C) 2013 the Initial Developer.
+ * All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in
+ * which case the provisions of the GPL or the LGPL are applicable instead of
+ * those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ----- END LICENSE BLOCK -----
+ */
+
+
+package util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+/**
+ * This is a streaming iterator for one worksheet of an Excel 2007 (.xlsx) file.  It uses the POI event
+ * model ({@link XSSFReader}) to get at the raw sheet XML and pulls rows out of it one at a time, so only the
+ * current row is ever held in memory no matter how many rows the sheet has.  The shared strings table is
+ * kept in memory as plain Strings.
+ * <br/>
+ * Cell values are formatted the same way {@link POIUtils} formats them so rows look just like the ones that
+ * come out of {@link PoiWorksheetIterator}.  Rows that are missing from the sheet come back as empty lists.
+ *
+ * @author Ryan Whaley
+ */
+public class XssfStreamingIterator implements Iterator<List<String>>, Closeable {
+  private static final XMLInputFactory sf_xmlFactory = XMLInputFactory.newInstance();
+
+  private OPCPackage m_package;
+  private InputStream m_sheetStream;
+  private XMLStreamReader m_reader;
+  private List<String> m_sharedStrings;
+  private int m_rowNumber = 0;
+  private int m_pendingRowNumber = -1;
+  private List<String> m_pendingRow = null;
+
+
+  /**
+   * Standard constructor.
+   *
+   * @param file an Excel .xlsx file
+   * @param sheetName the name of the worksheet to iterate through
+   * @throws IOException can occur from file I/O or if the sheet can't be found
+   */
+  public XssfStreamingIterator(File file, String sheetName) throws IOException {
+    try {
+      m_package = OPCPackage.open(file.getAbsolutePath(), PackageAccess.READ);
+      XSSFReader xssfReader = new XSSFReader(m_package);
+      m_sharedStrings = readSharedStrings(xssfReader);
+
+      XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator)xssfReader.getSheetsData();
+      while (sheets.hasNext() && m_sheetStream == null) {
+        InputStream sheetStream = sheets.next();
+        if (sheetName.equalsIgnoreCase(sheets.getSheetName())) {
+          m_sheetStream = sheetStream;
+        }
+        else {
+          IOUtils.closeQuietly(sheetStream);
+        }
+      }
+      if (m_sheetStream == null) {
+        throw new IOException("Cannot find worksheet named " + sheetName);
+      }
+
+      m_reader = sf_xmlFactory.createXMLStreamReader(m_sheetStream);
+      readPendingRow();
+    }
+    catch (OpenXML4JException ex) {
+      close();
+      throw new IOException("Error opening " + file, ex);
+    }
+    catch (XMLStreamException ex) {
+      close();
+      throw new IOException("Error reading " + file, ex);
+    }
+    catch (IOException ex) {
+      close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Reads the whole shared strings table.  Rich text runs are concatenated and phonetic runs are skipped.
+   */
+  private static List<String> readSharedStrings(XSSFReader xssfReader) throws IOException, OpenXML4JException,
+      XMLStreamException {
+    List<String> strings = new ArrayList<String>();
+
+    InputStream sstStream = xssfReader.getSharedStringsData();
+    if (sstStream == null) {
+      return strings;
+    }
+
+    XMLStreamReader reader = sf_xmlFactory.createXMLStreamReader(sstStream);
+    try {
+      StringBuilder sb = new StringBuilder();
+      boolean inPhonetic = false;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          String name = reader.getLocalName();
+          if (name.equals("si")) {
+            sb.setLength(0);
+          }
+          else if (name.equals("rPh")) {
+            inPhonetic = true;
+          }
+          else if (name.equals("t") && !inPhonetic) {
+            sb.append(reader.getElementText());
+          }
+        }
+        else if (event == XMLStreamConstants.END_ELEMENT) {
+          String name = reader.getLocalName();
+          if (name.equals("si")) {
+            strings.add(sb.toString());
+          }
+          else if (name.equals("rPh")) {
+            inPhonetic = false;
+          }
+        }
+      }
+    }
+    finally {
+      reader.close();
+      IOUtils.closeQuietly(sstStream);
+    }
+    return strings;
+  }
+
+  /**
+   * Advances the XML reader past the next &lt;row&gt; element and buffers its cell values.  If there are no more
+   * rows the buffered row is set to null.
+   */
+  private void readPendingRow() throws XMLStreamException {
+    m_pendingRow = null;
+
+    while (m_reader.hasNext()) {
+      int event = m_reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT && m_reader.getLocalName().equals("row")) {
+        String rowRef = m_reader.getAttributeValue(null, "r");
+        m_pendingRowNumber = rowRef != null ? Integer.parseInt(rowRef) - 1 : m_pendingRowNumber + 1;
+        m_pendingRow = readCells();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reads all the &lt;c&gt; elements of the current row, leaving the XML reader on the row's end element.
+   */
+  private List<String> readCells() throws XMLStreamException {
+    List<String> values = new ArrayList<String>();
+
+    int column = -1;
+    String type = null;
+    String value = null;
+    while (m_reader.hasNext()) {
+      int event = m_reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        String name = m_reader.getLocalName();
+        if (name.equals("c")) {
+          String cellRef = m_reader.getAttributeValue(null, "r");
+          column = cellRef != null ? parseColumn(cellRef) : column + 1;
+          type = m_reader.getAttributeValue(null, "t");
+          value = null;
+        }
+        else if (name.equals("v") || name.equals("t")) {
+          value = m_reader.getElementText();
+        }
+      }
+      else if (event == XMLStreamConstants.END_ELEMENT) {
+        String name = m_reader.getLocalName();
+        if (name.equals("c")) {
+          while (values.size() <= column) {
+            values.add(null);
+          }
+          values.set(column, formatValue(type, value));
+        }
+        else if (name.equals("row")) {
+          break;
+        }
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Formats a raw cell value from the sheet XML the way {@link POIUtils} would format the equivalent cell.
+   *
+   * @param type the cell's "t" attribute, null for numbers
+   * @param value the raw text of the cell's value, may be null for blank cells
+   * @return the String value of the cell
+   */
+  private String formatValue(String type, String value) {
+    if (value == null) {
+      return null;
+    }
+
+    if (type == null || type.equals("n")) {
+      return POIUtils.formatNumber(Double.parseDouble(value));
+    }
+    else if (type.equals("s")) {
+      return StringUtils.stripToNull(m_sharedStrings.get(Integer.parseInt(value.trim())));
+    }
+    else if (type.equals("b")) {
+      return Boolean.toString(value.trim().equals("1"));
+    }
+    else {
+      return StringUtils.stripToNull(value);
+    }
+  }
+
+  /**
+   * Gets the 0-based column index from a cell reference like "AB12".
+   */
+  private static int parseColumn(String cellRef) {
+    int column = 0;
+    for (int i=0; i<cellRef.length(); i++) {
+      char c = cellRef.charAt(i);
+      if (c < 'A' || c > 'Z') {
+        break;
+      }
+      column = column*26 + (c - 'A' + 1);
+    }
+    return column - 1;
+  }
+
+
+  public boolean hasNext() {
+    return m_pendingRow != null;
+  }
+
+  public List<String> next() {
+    if (m_pendingRow == null) {
+      throw new NoSuchElementException();
+    }
+
+    if (m_rowNumber < m_pendingRowNumber) {
+      m_rowNumber++;
+      return new ArrayList<String>();
+    }
+
+    List<String> row = m_pendingRow;
+    m_rowNumber++;
+    try {
+      readPendingRow();
+    }
+    catch (XMLStreamException ex) {
+      throw new IllegalStateException("Error reading row " + (m_rowNumber + 1), ex);
+    }
+    return row;
+  }
+
+  /**
+   * Gets the row number of the worksheet that the next call to {@link #next()} will return.  This number begins
+   * at 0.
+   *
+   * @return the current row number of the worksheet that this iterator is on
+   */
+  public int getRowNumber() {
+    return m_rowNumber;
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException("remove() is not supported");
+  }
+
+  public void close() {
+    if (m_reader != null) {
+      try {
+        m_reader.close();
+      }
+      catch (XMLStreamException ex) {
+        // nothing left to do with it
+      }
+      m_reader = null;
+    }
+    IOUtils.closeQuietly(m_sheetStream);
+    m_sheetStream = null;
+    if (m_package != null) {
+      // the package is read-only so revert rather than close, close() would try to save it
+      m_package.revert();
+      m_package = null;
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package export;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class JdbcSinkTest extends TestCase {
+  private List<String> m_calls = null;
+  private List<String> m_params = null;
+  private Connection m_connection = null;
+
+  public void setUp() {
+    m_calls = new ArrayList<String>();
+    m_params = new ArrayList<String>();
+    PreparedStatement statement = (PreparedStatement)Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[]{PreparedStatement.class}, new Recorder("statement", null));
+    m_connection = (Connection)Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[]{Connection.class}, new Recorder("connection", statement));
+  }
+
+  public void testBatchesAndCommits() throws Exception {
+    JdbcSink sink = new JdbcSink(m_connection, 2, 3);
+    assertEquals("connection.setAutoCommit(false)", m_calls.get(0));
+    assertTrue(m_calls.get(1).startsWith("connection.prepareStatement(insert into tamoxdata(subjectid,projectid,"));
+    assertTrue(m_calls.get(1).endsWith("genosource) values (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?))"));
+    m_calls.clear();
+
+    for (int i=1; i<=5; i++) {
+      sink.write(row("PA" + i));
+    }
+    sink.close();
+    sink.close();
+
+    assertEquals(5, sink.getRowCount());
+    assertEquals(80, m_params.size());
+    assertEquals(Arrays.asList(
+        "statement.addBatch", "statement.addBatch", "statement.executeBatch",
+        "statement.addBatch", "statement.executeBatch", "connection.commit",
+        "statement.addBatch", "statement.addBatch", "statement.executeBatch",
+        "connection.commit",
+        "statement.close"
+    ), m_calls);
+  }
+
+  public void testNullValues() throws Exception {
+    JdbcSink sink = new JdbcSink(m_connection, 10, 0);
+    m_calls.clear();
+    String[] values = row("PA1");
+    values[2] = null;
+    sink.write(values);
+
+    assertEquals("statement.setString(1,PA1)", m_params.get(0));
+    assertEquals("statement.setNull(3,12)", m_params.get(2));
+    assertEquals(Arrays.asList("statement.addBatch"), m_calls);
+    sink.close();
+    assertEquals(Arrays.asList("statement.addBatch", "statement.executeBatch", "connection.commit",
+        "statement.close"), m_calls);
+  }
+
+  public void testAbort() throws Exception {
+    JdbcSink sink = new JdbcSink(m_connection, 2, 2);
+    m_calls.clear();
+    for (int i=1; i<=3; i++) {
+      sink.write(row("PA" + i));
+    }
+    sink.abort();
+    sink.abort();
+    sink.close();
+
+    // the first two rows were already committed, only the third is rolled back
+    assertEquals(Arrays.asList(
+        "statement.addBatch", "statement.addBatch", "statement.executeBatch", "connection.commit",
+        "statement.addBatch",
+        "connection.rollback",
+        "statement.close"
+    ), m_calls);
+  }
+
+  private static String[] row(String subjectId) {
+    return new String[]{subjectId, "1", "50", "", "", "", "", "", "", "", "*1", "*4", "Yes", "No", "Unknown",
+        "Tumor"};
+  }
+
+  /**
+   * Records the calls made on a proxied JDBC object, with the statement parameters kept apart from the rest
+   */
+  private class Recorder implements InvocationHandler {
+    private final String m_name;
+    private final PreparedStatement m_statement;
+
+    public Recorder(String name, PreparedStatement statement) {
+      m_name = name;
+      m_statement = statement;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      String call = m_name + "." + method.getName();
+      if (args != null) {
+        StringBuilder sb = new StringBuilder(call).append('(');
+        for (int i=0; i<args.length; i++) {
+          sb.append(i > 0 ? "," : "").append(args[i]);
+        }
+        call = sb.append(')').toString();
+      }
+      if (m_name.equals("statement") && method.getName().startsWith("set")) {
+        m_params.add(call);
+      }
+      else {
+        m_calls.add(call);
+      }
+
+      if (method.getName().equals("prepareStatement")) {
+        return m_statement;
+      }
+      if (method.getName().equals("executeBatch")) {
+        return new int[0];
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package export;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class TamoxdataExportTest extends TestCase {
+  private static final String sf_insert = "insert into tamoxdata(subjectid,projectid,ageatdiagnosis,menostatusatdx," +
+      "maxtumordim,numposnodes,grading,erstatus,pgrstatus,radiotherapy,cyp2d6_1,cyp2d6_2,crit1,crit2,crit3," +
+      "genosource) values ";
+  private File m_dir = null;
+
+  public void setUp() throws Exception {
+    m_dir = File.createTempFile("itpc", "export");
+    m_dir.delete();
+    m_dir.mkdir();
+  }
+
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(m_dir);
+  }
+
+  public void testMakeInsert() {
+    assertEquals(sf_insert + "('PA1','O''Brien',NULL,'','','','','','','','*1','*4','Yes','No','Unknown','Tumor');",
+        InsertExport.makeInsert(row("PA1", "O'Brien", null)));
+  }
+
+  public void testBatchedInserts() throws Exception {
+    TamoxdataExport export = TamoxdataExport.newExport(TamoxdataExport.Format.insert, base(), 2, 0);
+    for (int i=1; i<=3; i++) {
+      export.write(row("PA" + i, "1", "50"));
+    }
+    export.close();
+    export.close();
+
+    assertEquals(Arrays.asList(new File(base() + ".sql")), export.getFiles());
+    assertEquals(3, export.getRowCount());
+    String values = "','1','50','','','','','','','','*1','*4','Yes','No','Unknown','Tumor')";
+    assertEquals(sf_insert + "('PA1" + values + ",\n('PA2" + values + ";\n" +
+        sf_insert + "('PA3" + values + ";\ncommit;\n",
+        FileUtils.readFileToString(export.getFiles().get(0), "UTF-8"));
+  }
+
+  public void testCopyRollover() throws Exception {
+    TamoxdataExport export = TamoxdataExport.newExport(TamoxdataExport.Format.copy, base(), 1, 2);
+    export.write(row("PA1", "a\tb\\c", null));
+    export.write(row("PA2", "line\nbreak", "\u00e9"));
+    export.write(row("PA3", "1", "50"));
+    export.close();
+
+    assertEquals(Arrays.asList(new File(base() + ".sql"), new File(base() + ".part2.sql")), export.getFiles());
+    String header = "COPY tamoxdata (subjectid,projectid,ageatdiagnosis,menostatusatdx,maxtumordim,numposnodes," +
+        "grading,erstatus,pgrstatus,radiotherapy,cyp2d6_1,cyp2d6_2,crit1,crit2,crit3,genosource) FROM stdin;\n";
+    String rest = "\t\t\t\t\t\t\t\t*1\t*4\tYes\tNo\tUnknown\tTumor\n";
+    assertEquals(header + "PA1\ta\\tb\\\\c\t\\N" + rest + "PA2\tline\\nbreak\t\u00e9" + rest + "\\.\n",
+        FileUtils.readFileToString(export.getFiles().get(0), "UTF-8"));
+    assertEquals(header + "PA3\t1\t50" + rest + "\\.\n",
+        FileUtils.readFileToString(export.getFiles().get(1), "UTF-8"));
+  }
+
+  public void testBinary() throws Exception {
+    TamoxdataExport export = TamoxdataExport.newExport(TamoxdataExport.Format.binary, base(), 1, 0);
+    export.write(row("PA1", null, "\u00e9"));
+    export.close();
+
+    byte[] bytes = FileUtils.readFileToByteArray(export.getFiles().get(0));
+    int pos = 0;
+    for (char c : "PGCOPY\n\u00ff\r\n\u0000".toCharArray()) {
+      assertEquals((byte)c, bytes[pos++]);
+    }
+    assertEquals(0, readInt(bytes, pos));
+    assertEquals(0, readInt(bytes, pos+4));
+    pos += 8;
+    assertEquals(TamoxdataExport.COLUMNS.length, readShort(bytes, pos));
+    pos += 2;
+    assertEquals(3, readInt(bytes, pos));
+    assertEquals("PA1", new String(bytes, pos+4, 3, "UTF-8"));
+    pos += 7;
+    assertEquals(-1, readInt(bytes, pos));
+    pos += 4;
+    assertEquals(2, readInt(bytes, pos));
+    assertEquals("\u00e9", new String(bytes, pos+4, 2, "UTF-8"));
+    assertEquals(-1, readShort(bytes, bytes.length-2));
+  }
+
+  public void testAbort() throws Exception {
+    TamoxdataExport export = TamoxdataExport.newExport(TamoxdataExport.Format.copy, base(), 1, 1);
+    export.write(row("PA1", "1", "50"));
+    export.write(row("PA2", "1", "50"));
+    assertEquals(2, export.getFiles().size());
+    export.abort();
+    export.close();
+
+    for (File file : export.getFiles()) {
+      assertFalse(file.exists());
+    }
+  }
+
+  public void testWrongColumnCount() throws Exception {
+    TamoxdataExport export = TamoxdataExport.newExport(TamoxdataExport.Format.copy, base(), 1, 0);
+    try {
+      export.write(new String[]{"PA1"});
+      fail("Should not take a short row");
+    }
+    catch (IllegalArgumentException ex) {
+      // expected
+    }
+    export.close();
+  }
+
+  private String base() {
+    return new File(m_dir, "tamoxdata").getAbsolutePath();
+  }
+
+  private static String[] row(String subjectId, String projectSite, String age) {
+    return new String[]{subjectId, projectSite, age, "", "", "", "", "", "", "", "*1", "*4", "Yes", "No", "Unknown",
+        "Tumor"};
+  }
+
+  private static int readInt(byte[] bytes, int pos) {
+    return (bytes[pos] << 24) | ((bytes[pos+1] & 0xff) << 16) | ((bytes[pos+2] & 0xff) << 8) | (bytes[pos+3] & 0xff);
+  }
+
+  private static short readShort(byte[] bytes, int pos) {
+    return (short)(((bytes[pos] & 0xff) << 8) | (bytes[pos+1] & 0xff));
+  }
+}
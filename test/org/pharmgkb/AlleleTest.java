@@ -0,0 +1,60 @@
+package org.pharmgkb;
+
+import junit.framework.TestCase;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class AlleleTest extends TestCase {
+
+  public void testInterned() {
+    assertSame(Allele.forText("*4"), Allele.forText("*4"));
+    assertSame(Allele.forText("*4"), Allele.forText(new String("*4")));
+    assertNotSame(Allele.forText("*4"), Allele.forText("*4K"));
+
+    // only alleles that can be part of a Genotype are kept
+    assertNotSame(Allele.forText("*99"), Allele.forText("*99"));
+    assertNotSame(Allele.forText("foo"), Allele.forText("foo"));
+  }
+
+  public void testParsed() {
+    Allele allele = Allele.forText("*4K");
+    assertEquals("*4", allele.getName());
+    assertEquals(Genotype.Metabolizer.PM, allele.getMetabolizer());
+    assertEquals(0f, allele.getScore());
+    assertEquals(Integer.valueOf(1), allele.getPriority());
+    assertEquals(4, allele.getNumber());
+    assertTrue(allele.isValid());
+
+    allele = Allele.forText("*2xn");
+    assertEquals("*2XN", allele.getName());
+    assertEquals(Genotype.Metabolizer.UM, allele.getMetabolizer());
+    assertEquals(2f, allele.getScore());
+    assertEquals(2, allele.getNumber());
+
+    assertEquals("*2A", Allele.forText("*2a").getName());
+    assertEquals(Genotype.Metabolizer.EM, Allele.forText("*2a").getMetabolizer());
+  }
+
+  public void testUnknown() {
+    Allele allele = Allele.forText("Unknown");
+    assertTrue(allele.isValid());
+    assertEquals(Genotype.Metabolizer.Unknown, allele.getMetabolizer());
+    assertNull(allele.getScore());
+    assertEquals(Integer.valueOf(5), allele.getPriority());
+    assertEquals(-1, allele.getNumber());
+  }
+
+  public void testUnmapped() {
+    Allele allele = Allele.forText("*99");
+    assertEquals("*99", allele.getName());
+    assertNull(allele.getMetabolizer());
+    assertFalse(allele.isValid());
+
+    allele = Allele.forText("foo");
+    assertNull(allele.getName());
+    assertFalse(allele.isValid());
+    assertEquals(-1, allele.getNumber());
+  }
+}
@@ -0,0 +1,119 @@
+package org.pharmgkb;
+
+import junit.framework.TestCase;
+import util.Med;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class ColumnProfileTest extends TestCase {
+  private File m_directory = null;
+
+  public void setUp() throws Exception {
+    m_directory = File.createTempFile("profiles", "");
+    m_directory.delete();
+  }
+
+  public void tearDown() {
+    ColumnProfile.setDirectory(null);
+    File[] files = m_directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    m_directory.delete();
+  }
+
+  public void testMatch() {
+    List<String> headers = Arrays.asList(
+        "PharmGKB Subject ID",
+        null,
+        "Project Site",
+        "Race (OMB)",
+        "Race (Self-Reported)",
+        "rs1065852",
+        "rs1065852 genotyping source",
+        "CYP2D6 *5",
+        "CYP2D6*5 genotyping source",
+        "Fluoxetine",
+        " Estrogen Receptor ",
+        "Project Notes");
+    ColumnProfile profile = ColumnProfile.forHeaders(headers, "test");
+
+    assertEquals(0, profile.getIndex(Column.SUBJECT_ID));
+    assertEquals(2, profile.getIndex(Column.PROJECT_SITE));
+    assertEquals(3, profile.getIndex(Column.RACE));
+    assertEquals(5, profile.getIndex(Column.RS1065852));
+    assertEquals(7, profile.getIndex(Column.STAR5));
+    assertEquals(9, profile.getIndex(Column.FLUOXETINE));
+    assertEquals(10, profile.getIndex(Column.ER_STATUS));
+    assertEquals(11, profile.getIndex(Column.PROJECT_NOTES));
+    assertEquals(-1, profile.getIndex(Column.AGE));
+    assertEquals(1, profile.getSampleSourceColumns().size());
+    assertTrue(profile.getSampleSourceColumns().contains(6));
+    assertEquals(Integer.valueOf(9), profile.getMedColumns().get(Med.Fluoxetine));
+
+    // the same header row gets the same profile back
+    assertSame(profile, ColumnProfile.forHeaders(headers, "other"));
+  }
+
+  public void testSavedProfile() {
+    List<String> headers = Arrays.asList("Subject ID", "Gender", "Paroxetine", "rs16947 genotyping source");
+
+    ColumnProfile.setDirectory(m_directory);
+    ColumnProfile profile = ColumnProfile.forHeaders(headers, "site1");
+    assertTrue(new File(m_directory, "site1.profile").exists());
+
+    // a different header row with the same name gets its own file
+    ColumnProfile.forHeaders(Arrays.asList("Subject ID", "Age at Diagnosis"), "site1");
+    assertEquals(2, m_directory.listFiles().length);
+
+    // loading the directory again gets the saved profile back
+    ColumnProfile.setDirectory(m_directory);
+    ColumnProfile loaded = ColumnProfile.forHeaders(headers, "site2");
+    assertNotSame(profile, loaded);
+    assertEquals("site1", loaded.getName());
+    assertEquals(profile.getSignature(), loaded.getSignature());
+    assertEquals(1, loaded.getIndex(Column.GENDER));
+    assertEquals(2, loaded.getIndex(Column.PAROXETINE));
+    assertEquals(profile.getSampleSourceColumns(), loaded.getSampleSourceColumns());
+    assertEquals(profile.getMedColumns(), loaded.getMedColumns());
+  }
+
+  public void testOtherRules() throws Exception {
+    List<String> headers = Arrays.asList("Subject ID", "Gender", "Paroxetine");
+    ColumnProfile.setDirectory(m_directory);
+    ColumnProfile.forHeaders(headers, "site1");
+
+    // a profile saved with different column rules is matched again
+    File file = new File(m_directory, "site1.profile");
+    Properties props = new Properties();
+    InputStream in = new FileInputStream(file);
+    try {
+      props.load(in);
+    }
+    finally {
+      in.close();
+    }
+    props.setProperty("version", "1");
+    OutputStream out = new FileOutputStream(file);
+    try {
+      props.store(out, null);
+    }
+    finally {
+      out.close();
+    }
+
+    ColumnProfile.setDirectory(m_directory);
+    ColumnProfile profile = ColumnProfile.forHeaders(headers, "site2");
+    assertEquals("site2", profile.getName());
+    assertEquals(1, profile.getIndex(Column.GENDER));
+  }
+}
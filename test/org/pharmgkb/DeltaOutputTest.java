@@ -0,0 +1,63 @@
+package org.pharmgkb;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import util.MappedDelimitedIterator;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class DeltaOutputTest extends TestCase {
+  private File m_resultsFile = null;
+  private File m_changesFile = null;
+
+  public void setUp() throws Exception {
+    m_resultsFile = File.createTempFile("itpc", ".results.tsv");
+    m_changesFile = File.createTempFile("itpc", ".changes.tsv");
+  }
+
+  public void tearDown() {
+    m_resultsFile.delete();
+    m_changesFile.delete();
+  }
+
+  public void testWrite() throws Exception {
+    DeltaOutput output = new DeltaOutput(m_resultsFile, m_changesFile,
+        Arrays.asList("Criterion 1", "Inc 1\nPostmenopausal", "Genotyping Source"));
+    output.write(2, "PA1", new String[]{"Include", null, "BLOOD"}, new String[]{"Include", "Exclude", "BLOOD"});
+    output.write(3, "PA2", new String[]{"Include", "Include", "BLOOD"}, new String[]{"Exclude", null, "BLOOD,\"TUMOR\""});
+    output.close();
+
+    assertEquals(2, output.getRowCount());
+    assertEquals(2, output.getChangeCount());
+
+    MappedDelimitedIterator results = new MappedDelimitedIterator(m_resultsFile, '\t');
+    assertEquals(Arrays.asList("Subject ID", "Criterion 1", "Inc 1\nPostmenopausal", "Genotyping Source"),
+        results.next());
+    assertEquals(Arrays.asList("PA1", "Include", "Exclude", "BLOOD"), results.next());
+    List<String> row = results.next();
+    assertEquals(Arrays.asList("PA2", "Exclude", null, "BLOOD,\"TUMOR\""), row);
+    assertFalse(results.hasNext());
+    results.close();
+
+    // a blank old value isn't a change, and neither is a missing new value
+    assertEquals("Row\tSubject ID\tColumn\tOld Value\tNew Value\n" +
+        "4\tPA2\tCriterion 1\tInclude\tExclude\n" +
+        "4\tPA2\tGenotyping Source\tBLOOD\t\"BLOOD,\"\"TUMOR\"\"\"\n",
+        FileUtils.readFileToString(m_changesFile, "UTF-8"));
+  }
+
+  public void testAbort() throws Exception {
+    DeltaOutput output = new DeltaOutput(m_resultsFile, m_changesFile, Arrays.asList("Criterion 1"));
+    output.write(2, "PA1", new String[]{"Include"}, new String[]{"Exclude"});
+    output.abort();
+
+    assertFalse(m_resultsFile.exists());
+    assertFalse(m_changesFile.exists());
+  }
+}
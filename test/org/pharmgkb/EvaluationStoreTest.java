@@ -0,0 +1,102 @@
+package org.pharmgkb;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class EvaluationStoreTest extends TestCase {
+  private File m_file = null;
+  private File m_moreFile = null;
+  private File m_storeFile = null;
+
+  public void setUp() throws Exception {
+    m_file = SubjectPipelineTest.writeSubjects(200);
+    m_moreFile = SubjectPipelineTest.writeSubjects(210);
+    m_storeFile = File.createTempFile("itpc", ".evaluations");
+    m_storeFile.delete();
+  }
+
+  public void tearDown() {
+    m_file.delete();
+    m_moreFile.delete();
+    m_storeFile.delete();
+  }
+
+  public void testReuseUnchangedRows() throws Exception {
+    List<String> expected = readAll(m_moreFile, null, 1);
+
+    EvaluationStore store = EvaluationStore.open(m_storeFile);
+    readAll(m_file, store, 1);
+    assertEquals(0, store.getReusedCount());
+    assertEquals(200, store.getEvaluatedCount());
+    store.save();
+
+    // the first 200 subjects are the same, so only the 10 new ones get evaluated
+    store = EvaluationStore.open(m_storeFile);
+    assertEquals(expected, readAll(m_moreFile, store, 4));
+    assertEquals(200, store.getReusedCount());
+    assertEquals(10, store.getEvaluatedCount());
+    store.save();
+
+    store = EvaluationStore.open(m_storeFile);
+    assertEquals(expected, readAll(m_moreFile, store, 1));
+    assertEquals(210, store.getReusedCount());
+    assertEquals(0, store.getEvaluatedCount());
+  }
+
+  public void testOtherRules() throws Exception {
+    EvaluationStore store = EvaluationStore.open(m_storeFile);
+    readAll(m_file, store, 1);
+    store.save();
+
+    // a store from a build whose rule classes differ is thrown away
+    RandomAccessFile file = new RandomAccessFile(m_storeFile, "rw");
+    try {
+      file.seek(9);
+      int b = file.read();
+      file.seek(9);
+      file.write(b ^ 0xff);
+    }
+    finally {
+      file.close();
+    }
+
+    store = EvaluationStore.open(m_storeFile);
+    readAll(m_file, store, 1);
+    assertEquals(0, store.getReusedCount());
+    assertEquals(200, store.getEvaluatedCount());
+  }
+
+  public void testRulesDigest() {
+    assertEquals(20, EvaluationStore.getRulesDigest().length);
+    assertSame(EvaluationStore.getRulesDigest(), EvaluationStore.getRulesDigest());
+  }
+
+  /**
+   * Reads every subject, keeping what the output would get from each evaluation
+   */
+  private List<String> readAll(File file, EvaluationStore store, int threads) throws Exception {
+    List<String> results = new ArrayList<String>();
+    DelimitedSubjectSource source = new DelimitedSubjectSource(file);
+    SubjectPipeline pipeline = new SubjectPipeline(source, threads, store);
+    try {
+      SubjectEvaluation evaluation;
+      while ((evaluation = pipeline.next()) != null) {
+        results.add(pipeline.getCurrentRowIndex() + " " + evaluation.makeSqlInsert() + " " +
+            Arrays.asList(source.getCalculatedValues(evaluation)));
+      }
+    }
+    finally {
+      pipeline.close();
+    }
+    return results;
+  }
+}
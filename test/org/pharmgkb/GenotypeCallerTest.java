@@ -0,0 +1,68 @@
+package org.pharmgkb;
+
+import junit.framework.TestCase;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class GenotypeCallerTest extends TestCase {
+
+  private Subject makeSubject(String... snps) {
+    Subject subject = new Subject();
+    subject.setDeletion("no deletion");
+    subject.setRs4986774(new VariantAlleles(snps[0]));
+    subject.setRs1065852(new VariantAlleles(snps[1]));
+    subject.setRs3892097(new VariantAlleles(snps[2]));
+    subject.setRs5030655(new VariantAlleles(snps[3]));
+    subject.setRs16947(new VariantAlleles(snps[4]));
+    subject.setRs28371706(new VariantAlleles(snps[5]));
+    subject.setRs28371725(new VariantAlleles(snps[6]));
+    return subject;
+  }
+
+  public void testMatchesRules() {
+    String[][] cases = new String[][] {
+        {"a/a", "c/c", "g/g", "t/t", "c/c", "c/c", "g/g"},
+        {"a/-", "c/t", "g/a", "t/t", "c/t", "c/c", "g/g"},
+        {"a/a", "t/t", "g/g", "t/t", "t/t", "t/t", "g/a"},
+        {"a/a", "c/c", "a/a", "t/-", "c/c", "c/c", null},
+        {"a/a", "c/c", "g/g", "t/t", "c/t", null, "g/g"},
+        {"a", "t", "a/g", "t/t", "t", "c/c", "g/g"},
+    };
+    for (String[] snps : cases) {
+      Subject subject = makeSubject(snps);
+      assertEquals(subject.callGenotypePgkb().toString(), subject.getGenotypePgkb().toString());
+      // a second subject in the same state gets its call from the table
+      assertEquals(subject.getGenotypePgkb().toString(), makeSubject(snps).getGenotypePgkb().toString());
+    }
+  }
+
+  public void testKeys() {
+    Subject subject = makeSubject("a/a", "c/c", "g/g", "t/t", "c/c", "c/c", "g/g");
+    int key = GenotypeCaller.getKey(subject);
+    assertTrue(key >= 0);
+
+    // rs4986774 is only asked about "-" and "a", so any other base is the same
+    subject.setRs4986774(new VariantAlleles("a/c"));
+    int otherKey = GenotypeCaller.getKey(subject);
+    subject.setRs4986774(new VariantAlleles("Unknown/a"));
+    assertEquals(otherKey, GenotypeCaller.getKey(subject));
+    assertFalse(key == otherKey);
+
+    subject.setRs4986774(new VariantAlleles("a/c/g"));
+    assertEquals(-1, GenotypeCaller.getKey(subject));
+    assertEquals(subject.callGenotypePgkb().toString(), subject.getGenotypePgkb().toString());
+
+    subject.setDeletion("deletion");
+    subject.setRs4986774(new VariantAlleles("a/a"));
+    assertFalse(key == GenotypeCaller.getKey(subject));
+  }
+
+  public void testCallsAreCopies() {
+    Subject subject = makeSubject("a/a", "c/c", "g/g", "t/t", "c/c", "c/c", "g/g");
+    subject.getGenotypePgkb().removeString("*1");
+
+    assertEquals("*1/*1", makeSubject("a/a", "c/c", "g/g", "t/t", "c/c", "c/c", "g/g").getGenotypePgkb().toString());
+  }
+}
@@ -90,6 +90,87 @@ public class GenotypeTest extends TestCase {
     Assert.assertEquals("Unknown", genotype.getMetabolizerGroup());
   }
 
+  public void testGetStatus() {
+    Genotype genotype = new Genotype("*3","*1XN");
+    assertEquals(Genotype.MetabolizerStatus.PM_UM, genotype.getStatus());
+    assertSame(genotype.getStatus(), new Genotype("*1XN","*4").getStatus());
+    assertEquals(Genotype.MetabolizerGroup.Intermediate, genotype.getStatus().getGroup());
+    Assert.assertEquals(2f, genotype.getStatus().getScore());
+
+    genotype = new Genotype("*1","Unknown");
+    assertEquals(Genotype.MetabolizerStatus.EM_Unknown, genotype.getStatus());
+    assertEquals("EM/Unknown", genotype.getMetabolizerStatus());
+    assertNull(genotype.getScore());
+
+    genotype = new Genotype();
+    assertEquals(Genotype.MetabolizerStatus.Unknown, genotype.getStatus());
+    genotype.addString("*9");
+    assertEquals(Genotype.MetabolizerStatus.IM, genotype.getStatus());
+    assertEquals("IM", genotype.getMetabolizerStatus());
+    assertNull(genotype.getScore());
+
+    for (Genotype.Metabolizer first : Genotype.Metabolizer.values()) {
+      for (Genotype.Metabolizer second : Genotype.Metabolizer.values()) {
+        assertSame(Genotype.MetabolizerStatus.forAlleles(first, second),
+            Genotype.MetabolizerStatus.forAlleles(second, first));
+      }
+    }
+  }
+
+  public void testMoreThanTwoAlleles() {
+    Genotype genotype = new Genotype("*1","*4");
+    genotype.getStrings().add("*9");
+
+    assertEquals(Genotype.MetabolizerStatus.Unknown, genotype.getStatus());
+    assertEquals("EM/IM/PM", genotype.getMetabolizerStatus());
+    assertEquals("Unknown", genotype.getMetabolizerGroup());
+    assertNull(genotype.getScore());
+  }
+
+  public void testMetabolizerStatusValues() {
+    for (Genotype.MetabolizerStatus status : Genotype.MetabolizerStatus.values()) {
+      String text = status.getText();
+      String[] classes = text.split("/");
+      if (classes.length == 2) {
+        Genotype.Metabolizer first = Genotype.Metabolizer.valueOf(classes[0]);
+        Genotype.Metabolizer second = Genotype.Metabolizer.valueOf(classes[1]);
+        assertSame(status, Genotype.MetabolizerStatus.forAlleles(first, second));
+        assertTrue(text, String.CASE_INSENSITIVE_ORDER.compare(classes[0], classes[1]) <= 0);
+      }
+      else if (status != Genotype.MetabolizerStatus.Unknown) {
+        assertSame(status, Genotype.MetabolizerStatus.forAllele(Genotype.Metabolizer.valueOf(text)));
+        assertNull(status.getScore());
+      }
+
+      // the groups the status texts used to be sorted into
+      Genotype.MetabolizerGroup group = Genotype.MetabolizerGroup.Unknown;
+      if (text.equals("EM/EM") || text.equals("EM/UM") || text.equals("IM/UM") || text.equals("UM/UM")) {
+        group = Genotype.MetabolizerGroup.Extensive;
+      }
+      else if (text.equals("EM/PM") || text.equals("IM/IM") || text.equals("IM/PM") || text.equals("PM/UM")
+          || text.equals("EM/IM")) {
+        group = Genotype.MetabolizerGroup.Intermediate;
+      }
+      else if (text.equals("PM/PM")) {
+        group = Genotype.MetabolizerGroup.Poor;
+      }
+      assertEquals(text, group, status.getGroup());
+    }
+
+    assertEquals("Unknown", Genotype.MetabolizerStatus.Unknown.getText());
+    assertSame(Genotype.MetabolizerStatus.Unknown, Genotype.MetabolizerStatus.forAllele(null));
+    assertSame(Genotype.MetabolizerStatus.Unknown, Genotype.MetabolizerStatus.forAllele(Genotype.Metabolizer.Unknown));
+    assertSame(Genotype.MetabolizerStatus.Unknown_Unknown, Genotype.MetabolizerStatus.forAlleles(null, null));
+    assertEquals(3f, Genotype.MetabolizerStatus.EM_UM.getScore());
+    assertEquals(0f, Genotype.MetabolizerStatus.PM_PM.getScore());
+    assertNull(Genotype.MetabolizerStatus.EM_Unknown.getScore());
+
+    assertEquals("Extensive", Genotype.MetabolizerGroup.Extensive.getText());
+    assertEquals("Intermediate", Genotype.MetabolizerGroup.Intermediate.getText());
+    assertEquals("Poor", Genotype.MetabolizerGroup.Poor.getText());
+    assertEquals("Unknown", Genotype.MetabolizerGroup.Unknown.getText());
+  }
+
   public void testToString() {
     Genotype unknownGenotype = new Genotype("Unknown/*1");
     Assert.assertEquals("*1/Unknown", unknownGenotype.toString());
@@ -0,0 +1,105 @@
+package org.pharmgkb;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class SubjectPipelineTest extends TestCase {
+  private File m_file = null;
+
+  public void setUp() throws Exception {
+    m_file = writeSubjects(500);
+  }
+
+  /**
+   * Writes a TSV file with a header that every field is found in, followed by the legend row and some subjects.
+   * @param count the number of subjects
+   * @return a temporary file
+   */
+  static File writeSubjects(int count) throws Exception {
+    StringBuilder header = new StringBuilder();
+    StringBuilder legend = new StringBuilder();
+    for (Column column : Column.values()) {
+      if (header.length() > 0) {
+        header.append('\t');
+        legend.append('\t');
+      }
+      if (column.getMatch() == Column.Match.CONTAINS) {
+        header.append(column.getTerms().toString().replaceAll("[\\[\\],]", ""));
+      }
+      else {
+        header.append(column.getTerms().get(0));
+      }
+      legend.append("legend");
+    }
+
+    StringBuilder contents = new StringBuilder();
+    contents.append(header).append('\n').append(legend).append('\n');
+    for (int i=1; i<=count; i++) {
+      for (Column column : Column.values()) {
+        if (column != Column.SUBJECT_ID) {
+          contents.append('\t');
+        }
+        switch (column) {
+          case SUBJECT_ID: contents.append("S").append(i); break;
+          case AGE: contents.append(45 + i * 3); break;
+          case MENO_STATUS: contents.append(i == 1 ? "2" : ""); break;
+          case RS3892097: contents.append(i == 2 ? "g/a" : "g/g"); break;
+          case ADDITIONAL_CANCER: contents.append("1"); break;
+          case ADD_CX_DISTANT_RECUR: contents.append(100 * i); break;
+          case PAROXETINE: contents.append(i % 2); break;
+          default: contents.append("0");
+        }
+      }
+      contents.append('\n');
+    }
+
+    File file = File.createTempFile("itpc", ".tsv");
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(contents.toString().getBytes("UTF-8"));
+    out.close();
+    return file;
+  }
+
+  public void tearDown() {
+    if (m_file != null) {
+      m_file.delete();
+    }
+  }
+
+  public void testThreadsKeepRowOrder() throws Exception {
+    List<String> expected = readAll(1);
+    assertEquals(500, expected.size());
+    assertEquals(expected, readAll(4));
+  }
+
+  public void testCloseEarly() throws Exception {
+    SubjectPipeline pipeline = new SubjectPipeline(new DelimitedSubjectSource(m_file), 4);
+    assertNotNull(pipeline.next());
+    assertEquals(2, pipeline.getCurrentRowIndex());
+    pipeline.close();
+    assertNull(pipeline.next());
+  }
+
+  private List<String> readAll(int threads) throws Exception {
+    List<String> inserts = new ArrayList<String>();
+    SubjectPipeline pipeline = new SubjectPipeline(new DelimitedSubjectSource(m_file), threads);
+    try {
+      SubjectEvaluation evaluation;
+      while ((evaluation = pipeline.next()) != null) {
+        inserts.add(pipeline.getCurrentRowIndex() + " " + evaluation.makeSqlInsert());
+      }
+    }
+    finally {
+      pipeline.close();
+    }
+    return inserts;
+  }
+}
@@ -2,6 +2,7 @@ package org.pharmgkb;
 
 import junit.framework.Assert;
 import junit.framework.TestCase;
+import util.CellValue;
 import util.Med;
 import util.Value;
 
@@ -336,6 +337,12 @@ public class SubjectTest extends TestCase {
     subject.setFirstAdjEndoTher("1");
     Assert.assertEquals(Value.Yes, subject.passInclusion4a());
 
+    subject.setTimeBtwSurgTamoxCell(CellValue.number(180));
+    Assert.assertEquals(Value.Yes, subject.passInclusion4a());
+    Assert.assertEquals("180", subject.getTimeBtwSurgTamox());
+
+    subject.setTimeBtwSurgTamoxCell(CellValue.number(180.5));
+    Assert.assertEquals(Value.No, subject.passInclusion4a());
   }
 
   public void testInclusion4b() {
@@ -530,6 +537,22 @@ public class SubjectTest extends TestCase {
     assertEquals(Value.Yes, subject.exclude6());
   }
 
+  public void testNumericCells() {
+    Subject subject = makeDefaultSubject();
+    subject.setDiseaseFreeSurvivalTime("10");
+    subject.setAddCxLastEvalCell(CellValue.number(12));
+    subject.setSurvivalNotDiedCell(CellValue.number(14d));
+    assertEquals(Value.Yes, subject.exclude6());
+    assertEquals("12", subject.getAddCxLastEval());
+
+    subject.setMenoStatus(null);
+    subject.setAgeCell(CellValue.number(50));
+    assertEquals(Value.Yes, subject.passInclusion1());
+    subject.setAgeCell(CellValue.number(49.5));
+    assertEquals(Value.No, subject.passInclusion1());
+    assertEquals("49.5", subject.getAge());
+  }
+
   private void setPhenotypes(Subject subject) {
     subject.setMenoStatus("2");
     subject.setMetastatic("0");
@@ -548,6 +571,32 @@ public class SubjectTest extends TestCase {
     subject.setFollowup("1");
   }
 
+  public void testEvaluation() {
+    Subject subject = makeDefaultSubject();
+    setPhenotypes(subject);
+    subject.setGenotypeAmplichip("*1/*4");
+
+    SubjectEvaluation evaluation = new SubjectEvaluation(subject);
+    assertSame(subject, evaluation.getSubject());
+    assertEquals(subject.include(), evaluation.get(SubjectEvaluation.Check.Include));
+    assertEquals(subject.includeWo4a(), evaluation.get(SubjectEvaluation.Check.IncludeWo4a));
+    assertEquals(subject.includeCrit1(), evaluation.get(SubjectEvaluation.Check.IncludeCrit1));
+    assertEquals(subject.includeCrit2(), evaluation.get(SubjectEvaluation.Check.IncludeCrit2));
+    assertEquals(subject.includeCrit3(), evaluation.get(SubjectEvaluation.Check.IncludeCrit3));
+    assertEquals(subject.excludeSummary(), evaluation.get(SubjectEvaluation.Check.ExcludeSummary));
+    assertEquals(subject.getWeak(), evaluation.getWeak());
+    assertEquals(subject.getPotent(), evaluation.getPotent());
+    assertEquals("EM/PM", evaluation.getMetabolizerStatus());
+    assertEquals(subject.getMetabolizerGroup(), evaluation.getMetabolizerGroup());
+    assertEquals(subject.makeSqlInsert(), evaluation.makeSqlInsert());
+
+    // the evaluation doesn't change along with the subject
+    subject.setFollowup("2");
+    assertEquals(Value.No, subject.include());
+    assertEquals(Value.Yes, evaluation.get(SubjectEvaluation.Check.Inclusion8));
+    assertEquals(Value.No, new SubjectEvaluation(subject).get(SubjectEvaluation.Check.Include));
+  }
+
   private void weaksToNo(Subject subject) {
     subject.addMedStatus(Med.Cimetidine, Value.No);
     subject.addMedStatus(Med.Sertraline, Value.No);
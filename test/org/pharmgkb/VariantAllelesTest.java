@@ -28,4 +28,46 @@ public class VariantAllelesTest extends TestCase {
 
   }
 
+  public void testCounts() {
+    VariantAlleles va = new VariantAlleles("T/c");
+    assertEquals("c/t", va.toString());
+    assertEquals(1, va.count("C"));
+    assertEquals(1, va.count("t"));
+    assertEquals(0, va.count("a"));
+    assertEquals(0, va.count(null));
+    assertTrue(va.hasData());
+    assertFalse(va.isUncertain());
+
+    va = new VariantAlleles("-");
+    assertEquals(1, va.size());
+    assertFalse(va.hasData());
+    assertTrue(va.isUncertain());
+    assertFalse(va.is("-", "-"));
+
+    va = new VariantAlleles(null);
+    assertTrue(va.isEmpty());
+    assertEquals("", va.toString());
+  }
+
+  public void testMoreThanTwo() {
+    VariantAlleles va = new VariantAlleles("t/a/t");
+    assertEquals(3, va.size());
+    assertEquals(2, va.count("t"));
+    assertEquals("t", va.get(2));
+    assertFalse(va.hasData());
+    assertTrue(va.isUncertain());
+    assertEquals(-1, VariantAlleles.pack(va));
+
+    va.removeString("t");
+    assertTrue(va.is("a", "t"));
+    assertTrue(va.hasData());
+  }
+
+  public void testPack() {
+    VariantAlleles ct = new VariantAlleles("c/t");
+    VariantAlleles tc = new VariantAlleles("t/c");
+    assertEquals(ct.getPair(), tc.getPair());
+    assertEquals(VariantAlleles.pack(ct, new VariantAlleles("a/a")), VariantAlleles.pack(tc, new VariantAlleles("A/A")));
+    assertFalse(VariantAlleles.pack(ct, new VariantAlleles("a/a")) == VariantAlleles.pack(new VariantAlleles("a/a"), ct));
+  }
 }
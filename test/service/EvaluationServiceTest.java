@@ -0,0 +1,132 @@
+package service;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import util.Json;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class EvaluationServiceTest extends TestCase {
+  private EvaluationService m_service = null;
+
+  public void setUp() throws Exception {
+    m_service = new EvaluationService(0, 2);
+    m_service.start();
+  }
+
+  public void tearDown() {
+    m_service.stop();
+  }
+
+  public void testEvaluate() throws Exception {
+    Map<?,?> result = (Map<?,?>)Json.parse(post(200,
+        "{\"SUBJECT_ID\": \"PA1\", \"project_site\": 1, \"AMPLICHIP\": \"*1/*4\", \"Paroxetine\": 1}"));
+    assertEquals("PA1", result.get("subjectId"));
+    assertEquals("*1/*4", result.get("genotype"));
+    assertEquals("Yes", ((Map<?,?>)result.get("checks")).get("Potent"));
+
+    List<?> results = (List<?>)Json.parse(post(200,
+        "[{\"SUBJECT_ID\": \"PA2\", \"AMPLICHIP\": \"*4/*4\"}, {}, {\"SUBJECT_ID\": \"PA3\"}]"));
+    assertEquals(3, results.size());
+    assertEquals("*4/*4", ((Map<?,?>)results.get(0)).get("genotype"));
+    assertEquals("PA3", ((Map<?,?>)results.get(2)).get("subjectId"));
+  }
+
+  public void testBadRequests() throws Exception {
+    assertTrue(post(400, "{\"SUBJECT_ID\": ").contains("position"));
+    assertTrue(post(400, "[1, 2]").contains("error"));
+    assertTrue(post(400, "\"PA1\"").contains("error"));
+
+    // unknown fields turn the whole request away before anything is evaluated
+    assertEquals("Unknown field: NOT_A_FIELD", ((Map<?,?>)Json.parse(post(400,
+        "[{\"SUBJECT_ID\": \"PA2\"}, {\"NOT_A_FIELD\": 1}]"))).get("error"));
+
+    assertTrue(post(400, StringUtils.repeat("[", 100000) + StringUtils.repeat("]", 100000)).contains("deep"));
+    assertTrue(post(400, "{\"SUBJECT_ID\": 1e2147483647}").contains("range"));
+    assertTrue(post(413, "[" + StringUtils.repeat("{},", 1024) + "{}]").contains("1024"));
+
+    // a body that's too big is turned away on its length, without reading it
+    Socket socket = new Socket("127.0.0.1", m_service.getPort());
+    try {
+      OutputStream out = socket.getOutputStream();
+      out.write(("POST /evaluate HTTP/1.1\r\nHost: 127.0.0.1\r\nContent-Length: " +
+          (EvaluationService.sf_maxRequestBytes + 1) + "\r\n\r\n").getBytes("US-ASCII"));
+      out.flush();
+      socket.setSoTimeout(10000);
+      String status = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII")).readLine();
+      assertTrue(status, status.startsWith("HTTP/1.1 413"));
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  public void testReadBody() throws Exception {
+    assertEquals("{}", EvaluationService.readBody(new ByteArrayInputStream("{}".getBytes("UTF-8")), 2));
+    assertNull(EvaluationService.readBody(new ByteArrayInputStream("{ }".getBytes("UTF-8")), 2));
+    String big = StringUtils.repeat("x", 20000);
+    assertEquals(big, EvaluationService.readBody(new ByteArrayInputStream(big.getBytes("UTF-8")), 20000));
+    assertNull(EvaluationService.readBody(new ByteArrayInputStream(big.getBytes("UTF-8")), 19999));
+  }
+
+  public void testManyRequests() throws Exception {
+    final Throwable[] failure = new Throwable[1];
+    Thread[] threads = new Thread[8];
+    for (int i=0; i<threads.length; i++) {
+      final String id = "PA" + i;
+      threads[i] = new Thread() {
+        public void run() {
+          try {
+            for (int j=0; j<25; j++) {
+              Map<?,?> result = (Map<?,?>)Json.parse(post(200, "{\"SUBJECT_ID\": \"" + id + "\"}"));
+              assertEquals(id, result.get("subjectId"));
+            }
+          }
+          catch (Throwable ex) {
+            failure[0] = ex;
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (failure[0] != null) {
+      throw new Exception("Request failed", failure[0]);
+    }
+  }
+
+  private String post(int status, String body) throws Exception {
+    HttpURLConnection connection = (HttpURLConnection)new URL("http://127.0.0.1:" + m_service.getPort() +
+        "/evaluate").openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    OutputStream out = connection.getOutputStream();
+    out.write(body.getBytes("UTF-8"));
+    out.close();
+
+    assertEquals(status, connection.getResponseCode());
+    InputStream in = status == 200 ? connection.getInputStream() : connection.getErrorStream();
+    try {
+      return IOUtils.toString(in, "UTF-8");
+    }
+    finally {
+      in.close();
+    }
+  }
+}
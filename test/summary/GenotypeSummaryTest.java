@@ -0,0 +1,26 @@
+package summary;
+
+import junit.framework.TestCase;
+import org.pharmgkb.Subject;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class GenotypeSummaryTest extends TestCase {
+
+  public void testCountedSource() {
+    Subject subject = new Subject();
+    assertEquals(Subject.SampleSource.UNKNOWN, GenotypeSummary.countedSource(subject));
+
+    subject.addSampleSource(Subject.SampleSource.NORMAL_PARAFFIN);
+    assertEquals(Subject.SampleSource.NORMAL_PARAFFIN, GenotypeSummary.countedSource(subject));
+
+    // with several sources the first in SampleSource order is counted, whatever order they were added in
+    subject.addSampleSource(Subject.SampleSource.BUCCAL);
+    subject.addSampleSource(Subject.SampleSource.UNKNOWN);
+    assertEquals(Subject.SampleSource.BUCCAL, GenotypeSummary.countedSource(subject));
+    subject.addSampleSource(Subject.SampleSource.TUMOR_FFP);
+    assertEquals(Subject.SampleSource.TUMOR_FFP, GenotypeSummary.countedSource(subject));
+  }
+}
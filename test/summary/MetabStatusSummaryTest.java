@@ -0,0 +1,123 @@
+package summary;
+
+import junit.framework.TestCase;
+import org.pharmgkb.Genotype;
+import util.Value;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class MetabStatusSummaryTest extends TestCase {
+  /** an allele of every metabolizer class */
+  private static final String[] sf_alleles = new String[] {"*1", "*1XN", "*4", "*10", "Unknown"};
+
+  public void testTableMatchesRules() {
+    List<Genotype> genotypes = new ArrayList<Genotype>();
+    genotypes.add(new Genotype());
+    for (int i=0; i<sf_alleles.length; i++) {
+      Genotype single = new Genotype();
+      single.addString(sf_alleles[i]);
+      genotypes.add(single);
+      for (int j=i; j<sf_alleles.length; j++) {
+        genotypes.add(new Genotype(sf_alleles[i], sf_alleles[j]));
+      }
+    }
+
+    Set<Genotype.MetabolizerStatus> statuses = EnumSet.noneOf(Genotype.MetabolizerStatus.class);
+    for (Genotype genotype : genotypes) {
+      statuses.add(genotype.getStatus());
+      for (Value weak : Value.values()) {
+        for (Value potent : Value.values()) {
+          assertEquals(genotype + " " + weak + "/" + potent, cascade(genotype, weak, potent),
+              MetabStatusSummary.statusRow(genotype, genotype.getStatus(), weak, potent));
+        }
+      }
+    }
+    assertEquals(EnumSet.allOf(Genotype.MetabolizerStatus.class), statuses);
+  }
+
+  /**
+   * The rules the summary used to run for every subject, before they were worked into a table.
+   */
+  private static int cascade(Genotype genotype, Value weak, Value potent) {
+    if (potent == Value.Yes && genotype.isUnknown()) {
+      return 17;
+    }
+    else if (potent == Value.Yes) {
+      return 18;
+    }
+    else if (genotype.is(Genotype.Metabolizer.UM,Genotype.Metabolizer.UM) && weak == Value.No) {
+      return 0;
+    }
+    else if (genotype.is(Genotype.Metabolizer.UM,Genotype.Metabolizer.UM) && weak == Value.Yes) {
+      return 1;
+    }
+    else if (genotype.is(Genotype.Metabolizer.EM,Genotype.Metabolizer.UM) && weak == Value.No) {
+      return 2;
+    }
+    else if (genotype.is(Genotype.Metabolizer.IM,Genotype.Metabolizer.UM) && weak == Value.No) {
+      return 3;
+    }
+    else if (genotype.is(Genotype.Metabolizer.EM,Genotype.Metabolizer.UM) && weak == Value.Yes) {
+      return 4;
+    }
+    else if (genotype.is(Genotype.Metabolizer.EM,Genotype.Metabolizer.EM) && weak == Value.No) {
+      return 5;
+    }
+    else if (genotype.is(Genotype.Metabolizer.IM,Genotype.Metabolizer.UM) && weak == Value.Yes) {
+      return 6;
+    }
+    else if (genotype.is(Genotype.Metabolizer.PM,Genotype.Metabolizer.UM) && weak == Value.No) {
+      return 7;
+    }
+    else if (genotype.is(Genotype.Metabolizer.IM,Genotype.Metabolizer.PM) && weak == Value.Yes) {
+      return 8;
+    }
+    else if (genotype.is(Genotype.Metabolizer.EM, Genotype.Metabolizer.IM) && weak == Value.No) {
+      return 9;
+    }
+    else if (genotype.is(Genotype.Metabolizer.EM,Genotype.Metabolizer.EM) && weak == Value.Yes) {
+      return 10;
+    }
+    else if (genotype.is(Genotype.Metabolizer.IM,Genotype.Metabolizer.IM) && weak == Value.No) {
+      return 11;
+    }
+    else if (genotype.is(Genotype.Metabolizer.EM,Genotype.Metabolizer.PM) && weak == Value.No) {
+      return 12;
+    }
+    else if (genotype.is(Genotype.Metabolizer.EM,Genotype.Metabolizer.IM) && weak == Value.Yes) {
+      return 13;
+    }
+    else if (genotype.is(Genotype.Metabolizer.EM,Genotype.Metabolizer.PM) && weak == Value.Yes) {
+      return 14;
+    }
+    else if (genotype.is(Genotype.Metabolizer.IM,Genotype.Metabolizer.IM) && weak == Value.Yes) {
+      return 15;
+    }
+    else if (genotype.is(Genotype.Metabolizer.IM,Genotype.Metabolizer.PM) && weak == Value.No) {
+      return 16;
+    }
+    else if (genotype.is(Genotype.Metabolizer.IM,Genotype.Metabolizer.PM) && weak == Value.Yes) {
+      return 19;
+    }
+    else if (genotype.is(Genotype.Metabolizer.PM,Genotype.Metabolizer.PM) && weak == Value.Yes) {
+      return 20;
+    }
+    else if (genotype.is(Genotype.Metabolizer.PM,Genotype.Metabolizer.PM) && weak == Value.No) {
+      return 21;
+    }
+    else if (genotype.is(Genotype.Metabolizer.PM,Genotype.Metabolizer.PM) && weak == Value.Unknown && potent == Value.Unknown) {
+      return 22;
+    }
+    else if (weak == Value.Unknown && potent == Value.Unknown) {
+      return 23;
+    }
+    return 24;
+  }
+}
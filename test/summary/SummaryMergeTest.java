@@ -0,0 +1,101 @@
+package summary;
+
+import junit.framework.TestCase;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.pharmgkb.Subject;
+import org.pharmgkb.SubjectEvaluation;
+import org.pharmgkb.VariantAlleles;
+import util.Med;
+import util.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class SummaryMergeTest extends TestCase {
+  private static final String[] sf_amplichip = new String[] {null, "*1/*1", "*1/*4", "*4/*4", "*2xn/*10", "*41/*5"};
+  private static final String[] sf_snps = new String[] {null, "c/c", "c/t", "t/t"};
+  private static final Value[] sf_values = Value.values();
+
+  private List<SubjectEvaluation> m_evaluations = null;
+
+  public void setUp() {
+    Random random = new Random(42);
+    m_evaluations = new ArrayList<SubjectEvaluation>();
+    for (int i=0; i<300; i++) {
+      Subject subject = new Subject();
+      subject.setSubjectId("S" + i);
+      subject.setProjectSite(String.valueOf(1 + random.nextInt(12)));
+      subject.setMenoStatus(String.valueOf(random.nextInt(3)));
+      subject.setErStatus(String.valueOf(random.nextInt(2)));
+      subject.setGenotypeAmplichip(sf_amplichip[random.nextInt(sf_amplichip.length)]);
+      subject.setRs1065852(new VariantAlleles(sf_snps[random.nextInt(sf_snps.length)]));
+      subject.setRs16947(new VariantAlleles(sf_snps[random.nextInt(sf_snps.length)]));
+      subject.setDeletion("no deletion");
+      subject.addSampleSource(Subject.SampleSource.values()[random.nextInt(Subject.SampleSource.values().length)]);
+      for (Med med : Med.values()) {
+        subject.addMedStatus(med, sf_values[random.nextInt(sf_values.length)]);
+      }
+      m_evaluations.add(new SubjectEvaluation(subject));
+    }
+  }
+
+  public void testMergedRangesMatchSequential() {
+    List<AbstractSummary> summaries = new ArrayList<AbstractSummary>();
+    summaries.add(new GenotypeSummary());
+    summaries.add(new MetabStatusSummary());
+    summaries.add(new InclusionSummary());
+
+    for (AbstractSummary sequential : summaries) {
+      for (SubjectEvaluation evaluation : m_evaluations) {
+        sequential.addSubject(evaluation);
+      }
+
+      // three uneven ranges, merged in order
+      AbstractSummary merged = sequential.newEmpty();
+      int[] bounds = new int[] {0, 17, 160, m_evaluations.size()};
+      for (int i=0; i<bounds.length-1; i++) {
+        AbstractSummary range = sequential.newEmpty();
+        for (SubjectEvaluation evaluation : m_evaluations.subList(bounds[i], bounds[i+1])) {
+          range.addSubject(evaluation);
+        }
+        merged.merge(range);
+      }
+
+      assertEquals(sequential.getSheetTitle(), dump(sequential), dump(merged));
+    }
+  }
+
+  public void testMergeOtherKind() {
+    try {
+      new GenotypeSummary().merge(new InclusionSummary());
+      fail("merged different kinds of summaries");
+    }
+    catch (IllegalArgumentException ex) {
+      // expected
+    }
+  }
+
+  private String dump(AbstractSummary summary) {
+    Workbook wb = new HSSFWorkbook();
+    summary.writeToWorkbook(wb);
+    Sheet sheet = wb.getSheet(summary.getSheetTitle());
+
+    StringBuilder sb = new StringBuilder();
+    for (Row row : sheet) {
+      for (Cell cell : row) {
+        sb.append(cell.toString()).append('\t');
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+}
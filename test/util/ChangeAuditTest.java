@@ -0,0 +1,81 @@
+package util;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class ChangeAuditTest extends TestCase {
+  private File m_auditFile = null;
+
+  public void setUp() throws Exception {
+    m_auditFile = File.createTempFile("itpc", ".audit.csv");
+  }
+
+  public void tearDown() {
+    m_auditFile.delete();
+  }
+
+  public void testRecord() throws Exception {
+    ChangeAudit audit = new ChangeAudit(m_auditFile, 3);
+    audit.record(4, 1, "Include", "Exclude");
+    audit.record(5, 27, "3.0", "BLOOD,\"TUMOR\"");
+    audit.record(6, 1, "", null);
+    audit.close();
+    audit.close();
+
+    assertEquals(3, audit.getChangeCount());
+    SortedMap<Integer,Integer> counts = audit.getColumnCounts();
+    assertEquals(2, counts.size());
+    assertEquals(Integer.valueOf(2), counts.get(1));
+    assertEquals(Integer.valueOf(1), counts.get(27));
+    assertEquals("Cell,Row,Column,Old Value,New Value\n" +
+        "B5,5,B,Include,Exclude\n" +
+        "AB6,6,AB,3.0,\"BLOOD,\"\"TUMOR\"\"\"\n" +
+        "B7,7,B,,\n",
+        FileUtils.readFileToString(m_auditFile, "UTF-8"));
+
+    try {
+      audit.record(1, 1, "a", "b");
+      fail("Should not record after closing");
+    }
+    catch (IllegalStateException ex) {
+      // expected
+    }
+  }
+
+  public void testManyWriters() throws Exception {
+    final ChangeAudit audit = new ChangeAudit(m_auditFile, 16);
+    final int perThread = 5000;
+    Thread[] threads = new Thread[4];
+    for (int i=0; i<threads.length; i++) {
+      final int column = i;
+      threads[i] = new Thread() {
+        public void run() {
+          for (int row=0; row<perThread; row++) {
+            audit.record(row, column, "old", "new" + row);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    audit.close();
+
+    // the ring is much smaller than the number of changes, so writers had to wait without losing any
+    assertEquals(threads.length * perThread, audit.getChangeCount());
+    for (int i=0; i<threads.length; i++) {
+      assertEquals(Integer.valueOf(perThread), audit.getColumnCounts().get(i));
+    }
+    List<?> lines = FileUtils.readLines(m_auditFile, "UTF-8");
+    assertEquals(threads.length * perThread + 1, lines.size());
+  }
+}
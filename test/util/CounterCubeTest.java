@@ -0,0 +1,61 @@
+package util;
+
+import junit.framework.TestCase;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class CounterCubeTest extends TestCase {
+
+  public void testCounts() {
+    CounterCube cube = new CounterCube(2, 3, 4);
+    cube.increment(0, 0, 0);
+    cube.increment(1, 2, 3);
+    cube.increment(1, 2, 3);
+    cube.increment(0, 2, 1);
+
+    assertEquals(1, cube.get(0, 0, 0));
+    assertEquals(2, cube.get(1, 2, 3));
+    assertEquals(1, cube.get(0, 2, 1));
+    assertEquals(0, cube.get(1, 0, 0));
+    assertEquals(3, cube.getDimensionCount());
+    assertEquals(3, cube.getDimension(1));
+
+    try {
+      cube.increment(0, 3, 0);
+      fail("index outside a dimension should fail");
+    }
+    catch (IndexOutOfBoundsException ex) {
+      // expected
+    }
+    try {
+      cube.get(0, 0);
+      fail("wrong number of coordinates should fail");
+    }
+    catch (IllegalArgumentException ex) {
+      // expected
+    }
+  }
+
+  public void testMerge() {
+    CounterCube cube = new CounterCube(3, 2);
+    CounterCube other = new CounterCube(3, 2);
+    cube.increment(0, 1);
+    other.increment(0, 1);
+    other.increment(2, 0);
+
+    cube.merge(other);
+    assertEquals(2, cube.get(0, 1));
+    assertEquals(1, cube.get(2, 0));
+    assertEquals(1, other.get(0, 1));
+
+    try {
+      cube.merge(new CounterCube(2, 3));
+      fail("cubes of different shapes shouldn't merge");
+    }
+    catch (IllegalArgumentException ex) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package util;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class DirectoryWatcherTest extends TestCase {
+  private File m_dir = null;
+
+  public void setUp() throws Exception {
+    m_dir = File.createTempFile("itpc", "watch");
+    m_dir.delete();
+    m_dir.mkdir();
+  }
+
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(m_dir);
+  }
+
+  public void testQuietPeriod() throws Exception {
+    File old = write("old.csv", "a", 1000);
+    DirectoryWatcher watcher = new DirectoryWatcher(m_dir, new FileFilter() {
+      public boolean accept(File file) {
+        return file.getName().endsWith(".csv");
+      }
+    }, 500);
+    watcher.skipExisting();
+
+    File data = write("data.csv", "a", 2000);
+    write("notes.txt", "a", 2000);
+    assertEquals(Collections.<File>emptyList(), watcher.poll(10000));
+    // still being written
+    write("data.csv", "ab", 3000);
+    assertEquals(Collections.<File>emptyList(), watcher.poll(10400));
+    assertEquals(Collections.<File>emptyList(), watcher.poll(10800));
+    assertEquals(Arrays.asList(data), watcher.poll(10900));
+    assertEquals(Collections.<File>emptyList(), watcher.poll(20000));
+
+    // changed files come back, after the quiet period again
+    write("old.csv", "b", 4000);
+    write("data.csv", "abc", 4000);
+    assertEquals(Collections.<File>emptyList(), watcher.poll(30000));
+    assertEquals(Arrays.asList(data, old), watcher.poll(30500));
+
+    // a file that's removed and put back is new
+    old.delete();
+    assertEquals(Collections.<File>emptyList(), watcher.poll(31000));
+    write("old.csv", "b", 4000);
+    assertEquals(Collections.<File>emptyList(), watcher.poll(32000));
+    assertEquals(Arrays.asList(old), watcher.poll(33000));
+  }
+
+  private File write(String name, String contents, long lastModified) throws Exception {
+    File file = new File(m_dir, name);
+    FileUtils.writeStringToFile(file, contents, "UTF-8");
+    file.setLastModified(lastModified);
+    return file;
+  }
+}
@@ -0,0 +1,91 @@
+package util;
+
+import junit.framework.TestCase;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.*;
+import org.pharmgkb.ItpcSheet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class HssfStreamingIteratorTest extends TestCase {
+  private File m_xlsFile = null;
+
+  public void tearDown() {
+    if (m_xlsFile != null) {
+      m_xlsFile.delete();
+    }
+  }
+
+  public void testMatchesWorksheetIterator() throws Exception {
+    File sampleFile = new File("test/sample.data.xls");
+    Workbook sample = WorkbookFactory.create(new FileInputStream(sampleFile));
+    PoiWorksheetIterator poiIterator = new PoiWorksheetIterator(sample.getSheet(ItpcSheet.SHEET_NAME));
+    HssfStreamingIterator streamIterator = new HssfStreamingIterator(sampleFile, ItpcSheet.SHEET_NAME);
+
+    int rows = 0;
+    while (poiIterator.hasNext()) {
+      assertTrue(streamIterator.hasNext());
+      assertEquals("row " + rows, poiIterator.next(), streamIterator.next());
+      rows++;
+    }
+    assertTrue(rows > 2);
+    streamIterator.close();
+  }
+
+  public void testCellTypes() throws Exception {
+    HSSFWorkbook workbook = new HSSFWorkbook();
+    workbook.createSheet("Some Other Sheet").createRow(0).createCell(0).setCellValue("ignore me");
+    Sheet sheet = workbook.createSheet(ItpcSheet.SHEET_NAME);
+
+    Row row = sheet.createRow(0);
+    row.createCell(0).setCellValue(" subject ");
+    row.createCell(2).setCellValue(1234567.0);
+    row.createCell(3).setCellValue(true);
+    row.createCell(4).setCellFormula("2*3");
+    row.createCell(5).setCellFormula("\"abc\"");
+    row.createCell(6);
+    // a gap, then a row of numbers
+    row = sheet.createRow(2);
+    row.createCell(1).setCellValue(0.5);
+    row.createCell(2).setCellValue(12);
+
+    m_xlsFile = File.createTempFile("itpc", ".xls");
+    FileOutputStream out = new FileOutputStream(m_xlsFile);
+    workbook.write(out);
+    out.close();
+
+    HssfStreamingIterator streamIterator = new HssfStreamingIterator(m_xlsFile, ItpcSheet.SHEET_NAME);
+    assertTrue(streamIterator.hasNext());
+    List<String> values = streamIterator.next();
+    assertEquals("subject", values.get(0));
+    assertNull(values.get(1));
+    assertEquals("1234567", values.get(2));
+    assertEquals("true", values.get(3));
+    assertEquals(7, values.size());
+    assertNull(values.get(6));
+
+    assertEquals(1, streamIterator.getRowNumber());
+    assertTrue(streamIterator.next().isEmpty());
+    assertEquals(Arrays.asList(null, "0.5", "12"), streamIterator.next());
+    assertFalse(streamIterator.hasNext());
+    streamIterator.close();
+  }
+
+  public void testMissingSheet() throws Exception {
+    try {
+      new HssfStreamingIterator(new File("test/sample.data.xls"), "Not There");
+      fail("Should not find a missing sheet");
+    }
+    catch (Exception ex) {
+      // expected
+    }
+  }
+}
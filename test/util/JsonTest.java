@@ -0,0 +1,76 @@
+package util;
+
+import junit.framework.TestCase;
+import org.apache.commons.lang.StringUtils;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class JsonTest extends TestCase {
+
+  public void testParse() {
+    Map<?,?> object = (Map<?,?>)Json.parse(" {\"id\": \"PA\\u00e91\\n\", \"site\": 12, \"age\": -52.50, " +
+        "\"list\": [true, false, null, []], \"empty\": {}} ");
+    assertEquals(Arrays.asList("id", "site", "age", "list", "empty"), Arrays.asList(object.keySet().toArray()));
+    assertEquals("PA\u00e91\n", object.get("id"));
+    assertEquals(new BigDecimal("12"), object.get("site"));
+    assertEquals("-52.50", ((BigDecimal)object.get("age")).toPlainString());
+    List<?> list = (List<?>)object.get("list");
+    assertEquals(Arrays.asList(Boolean.TRUE, Boolean.FALSE, null, Arrays.asList()), list);
+    assertTrue(((Map<?,?>)object.get("empty")).isEmpty());
+  }
+
+  public void testBadJson() {
+    for (String text : new String[]{"", "{", "{\"a\" 1}", "[1,]", "\"open", "{} x", "tru", "[\"\\q\"]",
+        "\"\\u+041\"", "\"\\u-041\"", "\"\\u 041\"", "\"\\u04\"", "1e2147483647", "1e-1001", "1e2147483648"}) {
+      try {
+        Json.parse(text);
+        fail("Should not parse " + text);
+      }
+      catch (IllegalArgumentException ex) {
+        assertTrue(ex.getMessage().contains("position"));
+      }
+    }
+  }
+
+  public void testLimits() {
+    assertEquals("\u00e9\u00E9", Json.parse("\"\\u00E9\\u00e9\""));
+    assertEquals(new BigDecimal("1e1000"), Json.parse("1e1000"));
+    assertEquals(new BigDecimal("1e-1000"), Json.parse("1e-1000"));
+
+    String nested = StringUtils.repeat("[", 256) + StringUtils.repeat("]", 256);
+    assertEquals(nested, Json.toJson(Json.parse(nested)));
+    try {
+      Json.parse("{\"a\":" + nested + "}");
+      fail("Should not parse more than 256 deep");
+    }
+    catch (IllegalArgumentException ex) {
+      assertTrue(ex.getMessage().contains("deep"));
+    }
+    try {
+      Json.parse(StringUtils.repeat("[", 1000000));
+      fail("Should not parse");
+    }
+    catch (IllegalArgumentException ex) {
+      assertTrue(ex.getMessage().contains("deep"));
+    }
+  }
+
+  public void testWrite() {
+    Map<String,Object> object = new LinkedHashMap<String,Object>();
+    object.put("id", "a\"b\\c\u0001");
+    object.put("score", 1.5f);
+    object.put("none", null);
+    object.put("values", Arrays.asList(Value.Yes, Double.NaN, true));
+    String json = Json.toJson(object);
+    assertEquals("{\"id\":\"a\\\"b\\\\c\\u0001\",\"score\":1.5,\"none\":null,\"values\":[\"Yes\",null,true]}", json);
+    assertEquals("a\"b\\c\u0001", ((Map<?,?>)Json.parse(json)).get("id"));
+  }
+}
@@ -0,0 +1,76 @@
+package util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class MappedDelimitedIteratorTest extends TestCase {
+  private File m_file = null;
+
+  public void tearDown() {
+    if (m_file != null) {
+      m_file.delete();
+    }
+  }
+
+  private MappedDelimitedIterator open(String contents, char delimiter) throws Exception {
+    m_file = File.createTempFile("itpc", ".csv");
+    FileOutputStream out = new FileOutputStream(m_file);
+    out.write(contents.getBytes("UTF-8"));
+    out.close();
+    return new MappedDelimitedIterator(m_file, delimiter);
+  }
+
+  public void testCsv() throws Exception {
+    MappedDelimitedIterator it = open("\uFEFFSubject ID, Age ,,Notes\r\n" +
+        "1,65,\"\",\"DCIS, no \"\"invasive\"\"\ncomponent\"\n" +
+        "2,NA\n" +
+        "\u00e9t\u00e9,,,", ',');
+
+    assertTrue(it.hasNext());
+    assertEquals(Arrays.asList("Subject ID", "Age", null, "Notes"), it.next());
+
+    List<String> row = it.next();
+    assertEquals(4, row.size());
+    assertEquals("DCIS, no \"invasive\"\ncomponent", row.get(3));
+    assertNull(row.get(2));
+    assertEquals("1", row.get(0));
+    assertEquals("65", row.get(1));
+
+    assertEquals(Arrays.asList("2", "NA"), it.next());
+    assertEquals(Arrays.asList("\u00e9t\u00e9", null, null, null), it.next());
+    assertEquals(4, it.getRowNumber());
+    assertFalse(it.hasNext());
+
+    // rows stay readable after the iterator has moved on
+    assertEquals("65", row.get(1));
+    it.close();
+  }
+
+  public void testTsv() throws Exception {
+    MappedDelimitedIterator it = open("a\tb, c\t\n\n1\t2\n", '\t');
+
+    assertEquals(Arrays.asList("a", "b, c", null), it.next());
+    List<String> blank = it.next();
+    assertEquals(1, blank.size());
+    assertNull(blank.get(0));
+    assertEquals(Arrays.asList("1", "2"), it.next());
+    assertFalse(it.hasNext());
+
+    try {
+      blank.get(1);
+      fail("Should be out of bounds");
+    }
+    catch (IndexOutOfBoundsException ex) {
+      // expected
+    }
+    it.close();
+  }
+}
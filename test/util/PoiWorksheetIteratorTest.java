@@ -0,0 +1,80 @@
+package util;
+
+import junit.framework.TestCase;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.pharmgkb.ItpcSheet;
+
+import java.io.FileInputStream;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class PoiWorksheetIteratorTest extends TestCase {
+
+  public void testViewsMatchLists() throws Exception {
+    Sheet sheet = WorkbookFactory.create(new FileInputStream("test/sample.data.xls")).getSheet(ItpcSheet.SHEET_NAME);
+    PoiWorksheetIterator listIterator = new PoiWorksheetIterator(sheet);
+    Iterator<RowView> viewIterator = new PoiWorksheetIterator(sheet).views();
+
+    int rows = 0;
+    RowView lastView = null;
+    while (listIterator.hasNext()) {
+      assertTrue(viewIterator.hasNext());
+      List<String> expected = listIterator.next();
+      RowView view = viewIterator.next();
+      if (lastView != null) {
+        assertSame(lastView, view);
+      }
+      lastView = view;
+
+      assertEquals("row " + rows, expected, view.toList());
+      for (int i=0; i<expected.size(); i++) {
+        assertEquals(expected.get(i) == null || expected.get(i).trim().length() == 0, view.isBlank(i));
+      }
+      assertNull(view.getString(expected.size()));
+      rows++;
+    }
+    assertFalse(viewIterator.hasNext());
+    assertTrue(rows > 2);
+  }
+
+  public void testTypedValues() {
+    Sheet sheet = new HSSFWorkbook().createSheet();
+    Row row = sheet.createRow(0);
+    row.createCell(0).setCellValue(12.5);
+    row.createCell(1).setCellValue("  ");
+    row.createCell(2).setCellValue("7");
+    row.createCell(4).setCellValue("abc");
+
+    RowView view = new PoiWorksheetIterator(sheet).nextView();
+    assertEquals(5, view.size());
+    assertEquals("12.5", view.getString(0));
+    assertEquals(12.5, view.getDouble(0));
+    assertTrue(view.isBlank(1));
+    assertTrue(Double.isNaN(view.getDouble(1)));
+    assertEquals(7d, view.getDouble(2));
+    assertTrue(view.isBlank(3));
+    assertFalse(view.isBlank(4));
+    assertTrue(view.isBlank(10));
+    try {
+      view.getDouble(4);
+      fail("abc is not a number");
+    }
+    catch (NumberFormatException ex) {
+      // expected
+    }
+    try {
+      view.getString(-1);
+      fail("negative columns don't exist");
+    }
+    catch (IndexOutOfBoundsException ex) {
+      // expected
+    }
+  }
+}
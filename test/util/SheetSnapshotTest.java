@@ -0,0 +1,93 @@
+package util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class SheetSnapshotTest extends TestCase {
+  private File m_inputFile = null;
+  private File m_snapshotFile = null;
+
+  public void setUp() throws Exception {
+    m_inputFile = File.createTempFile("itpc", ".xls");
+    FileOutputStream out = new FileOutputStream(m_inputFile);
+    out.write("not really a workbook".getBytes());
+    out.close();
+    m_snapshotFile = SheetSnapshot.getSnapshotFile(m_inputFile);
+  }
+
+  public void tearDown() {
+    m_inputFile.delete();
+    m_snapshotFile.delete();
+  }
+
+  public void testRoundTrip() throws Exception {
+    byte[] hash = SheetSnapshot.hashFile(m_inputFile);
+    SheetSnapshot.Writer writer = new SheetSnapshot.Writer(hash, Arrays.asList("Subject ID", null, "Age", "Notes"));
+
+    List<List<String>> rows = new ArrayList<List<String>>();
+    for (int i=0; i<300; i++) {
+      // enough distinct values in the first column to need 2 byte codes
+      rows.add(Arrays.asList("PA" + i, null, Integer.toString(40 + i % 30), i % 2 == 0 ? "DCIS" : null));
+    }
+    rows.add(Arrays.asList("PA300", "extra"));
+    for (List<String> row : rows) {
+      writer.addRow(row);
+    }
+    writer.write(m_snapshotFile);
+
+    SheetSnapshot snapshot = SheetSnapshot.open(m_snapshotFile, hash);
+    assertNotNull(snapshot);
+    assertEquals(rows.size(), snapshot.getRowCount());
+    assertEquals(Arrays.asList("Subject ID", null, "Age", "Notes"), snapshot.next());
+    assertTrue(snapshot.next().isEmpty());
+
+    for (List<String> row : rows) {
+      assertTrue(snapshot.hasNext());
+      List<String> snapshotRow = snapshot.next();
+      assertEquals(4, snapshotRow.size());
+      for (int col=0; col<snapshotRow.size(); col++) {
+        assertEquals(col < row.size() ? row.get(col) : null, snapshotRow.get(col));
+      }
+    }
+    assertFalse(snapshot.hasNext());
+    snapshot.close();
+  }
+
+  public void testLegend() throws Exception {
+    byte[] hash = SheetSnapshot.hashFile(m_inputFile);
+    SheetSnapshot.Writer writer = new SheetSnapshot.Writer(hash, Arrays.asList("Subject ID", "Age"));
+    writer.setLegend(Arrays.asList("legend", null, "extra"));
+    writer.addRow(Arrays.asList("PA1", "50"));
+    writer.write(m_snapshotFile);
+
+    SheetSnapshot snapshot = SheetSnapshot.open(m_snapshotFile, hash);
+    assertEquals(Arrays.asList("Subject ID", "Age"), snapshot.next());
+    assertEquals(Arrays.asList("legend", null, "extra"), snapshot.next());
+    assertEquals(Arrays.asList("PA1", "50"), snapshot.next());
+    assertFalse(snapshot.hasNext());
+    snapshot.close();
+  }
+
+  public void testStaleSnapshot() throws Exception {
+    SheetSnapshot.Writer writer = new SheetSnapshot.Writer(SheetSnapshot.hashFile(m_inputFile),
+        Arrays.asList("Subject ID"));
+    writer.addRow(Arrays.asList("PA1"));
+    writer.write(m_snapshotFile);
+
+    FileOutputStream out = new FileOutputStream(m_inputFile, true);
+    out.write('!');
+    out.close();
+
+    assertNull(SheetSnapshot.open(m_snapshotFile, SheetSnapshot.hashFile(m_inputFile)));
+    assertNull(SheetSnapshot.open(new File(m_snapshotFile.getPath() + ".missing"), new byte[20]));
+  }
+}
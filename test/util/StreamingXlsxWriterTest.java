@@ -0,0 +1,82 @@
+package util;
+
+import junit.framework.TestCase;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class StreamingXlsxWriterTest extends TestCase {
+  private File m_xlsxFile = null;
+
+  public void setUp() throws Exception {
+    m_xlsxFile = File.createTempFile("itpc", ".xlsx");
+  }
+
+  public void tearDown() {
+    m_xlsxFile.delete();
+  }
+
+  public void testWriteSheet() throws Exception {
+    List<List<String>> rows = Arrays.asList(
+        Arrays.asList("Subject ID", "Age", "Notes"),
+        Arrays.<String>asList(),
+        Arrays.asList("PA1", "52.5", "DCIS & <more>"),
+        Arrays.asList("007", null, " line\nbreak\u0001"),
+        Arrays.asList("PA3", "-12", "1E5")
+    );
+
+    StreamingXlsxWriter writer = new StreamingXlsxWriter("Data");
+    for (List<String> row : rows) {
+      writer.writeRow(row);
+    }
+    assertEquals(5, writer.getRowCount());
+
+    XSSFWorkbook workbook = new XSSFWorkbook();
+    workbook.createSheet("Summary").createRow(0).createCell(0).setCellValue("Total");
+    writer.finish(workbook, m_xlsxFile);
+    writer.close();
+
+    XSSFWorkbook result = new XSSFWorkbook(new FileInputStream(m_xlsxFile));
+    assertEquals("Data", result.getSheetName(0));
+    assertEquals("Summary", result.getSheetName(1));
+    assertEquals("Total", result.getSheet("Summary").getRow(0).getCell(0).getStringCellValue());
+
+    Sheet sheet = result.getSheet("Data");
+    assertEquals("Subject ID", sheet.getRow(0).getCell(0).getStringCellValue());
+    assertEquals(0, sheet.getRow(1).getPhysicalNumberOfCells());
+    assertEquals(Cell.CELL_TYPE_NUMERIC, sheet.getRow(2).getCell(1).getCellType());
+    assertEquals(52.5, sheet.getRow(2).getCell(1).getNumericCellValue());
+    assertEquals("DCIS & <more>", sheet.getRow(2).getCell(2).getStringCellValue());
+    assertEquals("007", sheet.getRow(3).getCell(0).getStringCellValue());
+    assertNull(sheet.getRow(3).getCell(1));
+    assertEquals(" line\nbreak", sheet.getRow(3).getCell(2).getStringCellValue());
+    assertEquals(-12.0, sheet.getRow(4).getCell(1).getNumericCellValue());
+    assertEquals("1E5", sheet.getRow(4).getCell(2).getStringCellValue());
+
+    // the streaming iterator reads back the same text that was written
+    XssfStreamingIterator iterator = new XssfStreamingIterator(m_xlsxFile, "Data");
+    assertEquals(rows.get(0), iterator.next());
+    assertTrue(iterator.next().isEmpty());
+    assertEquals(rows.get(2), iterator.next());
+    iterator.close();
+  }
+
+  public void testIsNumber() {
+    assertTrue(StreamingXlsxWriter.isNumber("12"));
+    assertTrue(StreamingXlsxWriter.isNumber("-0.25"));
+    assertFalse(StreamingXlsxWriter.isNumber("012"));
+    assertFalse(StreamingXlsxWriter.isNumber("12.0"));
+    assertFalse(StreamingXlsxWriter.isNumber("1d"));
+    assertFalse(StreamingXlsxWriter.isNumber("*4"));
+    assertFalse(StreamingXlsxWriter.isNumber(""));
+  }
+}
@@ -0,0 +1,86 @@
+package util;
+
+import junit.framework.TestCase;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.pharmgkb.ItpcSheet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.List;
+
+/**
+ * Created by IntelliJ IDEA.
+ * User: whaleyr
+ */
+public class XssfStreamingIteratorTest extends TestCase {
+  private File m_xlsxFile = null;
+  private Sheet m_sheet = null;
+
+  public void setUp() throws Exception {
+    // make an .xlsx copy of the sample data sheet so the streamed rows can be checked against the usermodel ones
+    Workbook sample = WorkbookFactory.create(new FileInputStream("test/sample.data.xls"));
+    Sheet sampleSheet = sample.getSheet(ItpcSheet.SHEET_NAME);
+
+    XSSFWorkbook workbook = new XSSFWorkbook();
+    workbook.createSheet("Some Other Sheet").createRow(0).createCell(0).setCellValue("ignore me");
+    m_sheet = workbook.createSheet(ItpcSheet.SHEET_NAME);
+    for (int i=0; i<=sampleSheet.getLastRowNum(); i++) {
+      Row sampleRow = sampleSheet.getRow(i);
+      if (sampleRow == null) {
+        continue;
+      }
+      Row row = m_sheet.createRow(i);
+      for (Cell sampleCell : sampleRow) {
+        Cell cell = row.createCell(sampleCell.getColumnIndex());
+        if (sampleCell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
+          cell.setCellValue(sampleCell.getNumericCellValue());
+        }
+        else if (sampleCell.getCellType() == Cell.CELL_TYPE_STRING) {
+          cell.setCellValue(sampleCell.getStringCellValue());
+        }
+      }
+    }
+    // leave a gap before one more row
+    m_sheet.createRow(sampleSheet.getLastRowNum()+3).createCell(2).setCellValue(12.5);
+
+    m_xlsxFile = File.createTempFile("itpc", ".xlsx");
+    FileOutputStream out = new FileOutputStream(m_xlsxFile);
+    workbook.write(out);
+    out.close();
+  }
+
+  public void tearDown() {
+    if (m_xlsxFile != null) {
+      m_xlsxFile.delete();
+    }
+  }
+
+  public void testMatchesWorksheetIterator() throws Exception {
+    XssfStreamingIterator streamIterator = new XssfStreamingIterator(m_xlsxFile, ItpcSheet.SHEET_NAME);
+    PoiWorksheetIterator poiIterator = new PoiWorksheetIterator(m_sheet);
+
+    int rows = 0;
+    while (poiIterator.hasNext()) {
+      assertTrue(streamIterator.hasNext());
+      List<String> expected = poiIterator.next();
+      List<String> actual = streamIterator.next();
+      assertEquals("row " + rows, expected, actual);
+      rows++;
+    }
+    assertFalse(streamIterator.hasNext());
+    assertEquals(m_sheet.getLastRowNum()+1, rows);
+    streamIterator.close();
+  }
+
+  public void testMissingSheet() throws Exception {
+    try {
+      new XssfStreamingIterator(m_xlsxFile, "Not There");
+      fail("Should not find a missing sheet");
+    }
+    catch (Exception ex) {
+      // expected
+    }
+  }
+}